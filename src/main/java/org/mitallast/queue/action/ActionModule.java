@@ -4,7 +4,9 @@ import com.google.inject.AbstractModule;
 import org.mitallast.queue.action.queue.delete.DeleteAction;
 import org.mitallast.queue.action.queue.get.GetAction;
 import org.mitallast.queue.action.queue.peek.PeekQueueAction;
+import org.mitallast.queue.action.queue.pop.BatchPopAction;
 import org.mitallast.queue.action.queue.pop.PopAction;
+import org.mitallast.queue.action.queue.push.BatchPushAction;
 import org.mitallast.queue.action.queue.push.PushAction;
 import org.mitallast.queue.action.queue.stats.QueueStatsAction;
 import org.mitallast.queue.action.queue.transactional.commit.TransactionCommitAction;
@@ -15,6 +17,9 @@ import org.mitallast.queue.action.queue.transactional.rollback.TransactionRollba
 import org.mitallast.queue.action.queues.create.CreateQueueAction;
 import org.mitallast.queue.action.queues.delete.DeleteQueueAction;
 import org.mitallast.queue.action.queues.stats.QueuesStatsAction;
+import org.mitallast.queue.action.stream.commit.StreamCommitAction;
+import org.mitallast.queue.action.stream.push.StreamPushAction;
+import org.mitallast.queue.action.stream.read.StreamReadAction;
 
 public class ActionModule extends AbstractModule {
     @Override
@@ -24,6 +29,8 @@ public class ActionModule extends AbstractModule {
         bind(PeekQueueAction.class).asEagerSingleton();
         bind(DeleteAction.class).asEagerSingleton();
         bind(GetAction.class).asEagerSingleton();
+        bind(BatchPushAction.class).asEagerSingleton();
+        bind(BatchPopAction.class).asEagerSingleton();
 
         bind(TransactionCommitAction.class).asEagerSingleton();
         bind(TransactionRollbackAction.class).asEagerSingleton();
@@ -37,6 +44,10 @@ public class ActionModule extends AbstractModule {
         bind(DeleteQueueAction.class).asEagerSingleton();
         bind(QueuesStatsAction.class).asEagerSingleton();
 
+        bind(StreamPushAction.class).asEagerSingleton();
+        bind(StreamReadAction.class).asEagerSingleton();
+        bind(StreamCommitAction.class).asEagerSingleton();
+
         bind(ActionStreamInitializer.class).asEagerSingleton();
     }
 }
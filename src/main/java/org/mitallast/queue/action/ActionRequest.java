@@ -6,4 +6,10 @@ import org.mitallast.queue.common.validation.ValidationBuilder;
 public interface ActionRequest<E extends ActionRequest> extends Entry<E> {
 
     ValidationBuilder validate();
+
+    /**
+     * Release buffers held by request, called by transport after request is executed.
+     */
+    default void release() {
+    }
 }
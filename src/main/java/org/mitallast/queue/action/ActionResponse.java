@@ -12,4 +12,10 @@ public interface ActionResponse<E extends ActionResponse> extends Entry<E> {
     default StreamableError error() {
         return null;
     }
+
+    /**
+     * Release buffers held by response, called by transport after response is written.
+     */
+    default void release() {
+    }
 }
@@ -7,8 +7,12 @@ import org.mitallast.queue.action.queue.get.GetRequest;
 import org.mitallast.queue.action.queue.get.GetResponse;
 import org.mitallast.queue.action.queue.peek.PeekQueueRequest;
 import org.mitallast.queue.action.queue.peek.PeekQueueResponse;
+import org.mitallast.queue.action.queue.pop.BatchPopRequest;
+import org.mitallast.queue.action.queue.pop.BatchPopResponse;
 import org.mitallast.queue.action.queue.pop.PopRequest;
 import org.mitallast.queue.action.queue.pop.PopResponse;
+import org.mitallast.queue.action.queue.push.BatchPushRequest;
+import org.mitallast.queue.action.queue.push.BatchPushResponse;
 import org.mitallast.queue.action.queue.push.PushRequest;
 import org.mitallast.queue.action.queue.push.PushResponse;
 import org.mitallast.queue.action.queue.stats.QueueStatsRequest;
@@ -29,6 +33,12 @@ import org.mitallast.queue.action.queues.delete.DeleteQueueRequest;
 import org.mitallast.queue.action.queues.delete.DeleteQueueResponse;
 import org.mitallast.queue.action.queues.stats.QueuesStatsRequest;
 import org.mitallast.queue.action.queues.stats.QueuesStatsResponse;
+import org.mitallast.queue.action.stream.commit.StreamCommitRequest;
+import org.mitallast.queue.action.stream.commit.StreamCommitResponse;
+import org.mitallast.queue.action.stream.push.StreamPushRequest;
+import org.mitallast.queue.action.stream.push.StreamPushResponse;
+import org.mitallast.queue.action.stream.read.StreamReadRequest;
+import org.mitallast.queue.action.stream.read.StreamReadResponse;
 import org.mitallast.queue.common.stream.StreamService;
 
 public class ActionStreamInitializer {
@@ -83,5 +93,24 @@ public class ActionStreamInitializer {
 
         streamService.registerClass(QueuesStatsRequest.Builder.class, QueuesStatsRequest.Builder::new, ++id);
         streamService.registerClass(QueuesStatsResponse.Builder.class, QueuesStatsResponse.Builder::new, ++id);
+
+        // batch
+
+        streamService.registerClass(BatchPopRequest.Builder.class, BatchPopRequest.Builder::new, ++id);
+        streamService.registerClass(BatchPopResponse.Builder.class, BatchPopResponse.Builder::new, ++id);
+
+        streamService.registerClass(BatchPushRequest.Builder.class, BatchPushRequest.Builder::new, ++id);
+        streamService.registerClass(BatchPushResponse.Builder.class, BatchPushResponse.Builder::new, ++id);
+
+        // stream
+
+        streamService.registerClass(StreamPushRequest.Builder.class, StreamPushRequest.Builder::new, ++id);
+        streamService.registerClass(StreamPushResponse.Builder.class, StreamPushResponse.Builder::new, ++id);
+
+        streamService.registerClass(StreamReadRequest.Builder.class, StreamReadRequest.Builder::new, ++id);
+        streamService.registerClass(StreamReadResponse.Builder.class, StreamReadResponse.Builder::new, ++id);
+
+        streamService.registerClass(StreamCommitRequest.Builder.class, StreamCommitRequest.Builder::new, ++id);
+        streamService.registerClass(StreamCommitResponse.Builder.class, StreamCommitResponse.Builder::new, ++id);
     }
 }
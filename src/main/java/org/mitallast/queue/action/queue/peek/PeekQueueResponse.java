@@ -20,6 +20,13 @@ public class PeekQueueResponse implements ActionResponse<PeekQueueResponse> {
         return message;
     }
 
+    @Override
+    public void release() {
+        if (message != null) {
+            message.release();
+        }
+    }
+
     @Override
     public Builder toBuilder() {
         return new Builder().from(this);
@@ -0,0 +1,39 @@
+package org.mitallast.queue.action.queue.pop;
+
+import com.google.inject.Inject;
+import org.mitallast.queue.action.AbstractAction;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.queue.transactional.TransactionalQueueService;
+import org.mitallast.queue.queues.QueueMissingException;
+import org.mitallast.queue.queues.transactional.TransactionalQueuesService;
+import org.mitallast.queue.transport.TransportController;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class BatchPopAction extends AbstractAction<BatchPopRequest, BatchPopResponse> {
+
+    private final TransactionalQueuesService queuesService;
+
+    @Inject
+    public BatchPopAction(Settings settings, TransportController controller, TransactionalQueuesService queuesService) {
+        super(settings, controller);
+        this.queuesService = queuesService;
+    }
+
+    @Override
+    protected void executeInternal(BatchPopRequest request, CompletableFuture<BatchPopResponse> listener) {
+        TransactionalQueueService queueService = queuesService.queue(request.queue());
+        if (queueService == null) {
+            listener.completeExceptionally(new QueueMissingException(request.queue()));
+            return;
+        }
+        try {
+            listener.complete(BatchPopResponse.builder()
+                .setMessages(queueService.lockAndPop(request.size()))
+                .build());
+        } catch (IOException e) {
+            listener.completeExceptionally(e);
+        }
+    }
+}
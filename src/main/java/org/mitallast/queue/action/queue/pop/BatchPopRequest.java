@@ -0,0 +1,84 @@
+package org.mitallast.queue.action.queue.pop;
+
+import org.mitallast.queue.action.ActionRequest;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.validation.ValidationBuilder;
+
+import java.io.IOException;
+
+public class BatchPopRequest implements ActionRequest<BatchPopRequest> {
+    private final String queue;
+    private final int size;
+
+    private BatchPopRequest(String queue, int size) {
+        this.queue = queue;
+        this.size = size;
+    }
+
+    public String queue() {
+        return queue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ValidationBuilder validate() {
+        ValidationBuilder builder = ValidationBuilder.builder()
+            .missing("queue", queue);
+        if (size <= 0) {
+            builder = builder.missing("size");
+        }
+        return builder;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<BatchPopRequest> {
+        private String queue;
+        private int size;
+
+        private Builder from(BatchPopRequest entry) {
+            queue = entry.queue;
+            size = entry.size;
+            return this;
+        }
+
+        public Builder setQueue(String queue) {
+            this.queue = queue;
+            return this;
+        }
+
+        public Builder setSize(int size) {
+            this.size = size;
+            return this;
+        }
+
+        @Override
+        public BatchPopRequest build() {
+            return new BatchPopRequest(queue, size);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeText(queue);
+            stream.writeInt(size);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            queue = stream.readText();
+            size = stream.readInt();
+        }
+    }
+}
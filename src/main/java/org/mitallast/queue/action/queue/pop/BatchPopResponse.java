@@ -0,0 +1,68 @@
+package org.mitallast.queue.action.queue.pop;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.action.ActionResponse;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.io.IOException;
+
+public class BatchPopResponse implements ActionResponse<BatchPopResponse> {
+
+    private final ImmutableList<QueueMessage> messages;
+
+    private BatchPopResponse(ImmutableList<QueueMessage> messages) {
+        this.messages = messages;
+    }
+
+    public ImmutableList<QueueMessage> messages() {
+        return messages;
+    }
+
+    @Override
+    public void release() {
+        for (QueueMessage message : messages) {
+            message.release();
+        }
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<BatchPopResponse> {
+        private ImmutableList<QueueMessage> messages;
+
+        private Builder from(BatchPopResponse entry) {
+            messages = entry.messages;
+            return this;
+        }
+
+        public Builder setMessages(ImmutableList<QueueMessage> messages) {
+            this.messages = messages;
+            return this;
+        }
+
+        @Override
+        public BatchPopResponse build() {
+            return new BatchPopResponse(messages);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            messages = stream.readStreamableList(QueueMessage::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeStreamableList(messages);
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.mitallast.queue.transport.TransportController;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class PopAction extends AbstractAction<PopRequest, PopResponse> {
 
@@ -30,12 +31,35 @@ public class PopAction extends AbstractAction<PopRequest, PopResponse> {
         }
         TransactionalQueueService queueService = queuesService.queue(request.queue());
         try {
-            QueueMessage message = queueService.lockAndPop();
-            listener.complete(PopResponse.builder()
-                .setMessage(message)
-                .build());
+            final CompletableFuture<QueueMessage> waiter = queueService.lockAndPop(request.timeout(), TimeUnit.MILLISECONDS);
+            // request is cancelled, parked pop is done empty, so message handed to it later is rolled back by queue
+            listener.whenComplete((response, error) -> waiter.complete(null));
+            waiter.whenComplete((message, error) -> {
+                if (error == null) {
+                    boolean completed = listener.complete(PopResponse.builder()
+                        .setMessage(message)
+                        .build());
+                    if (!completed && message != null) {
+                        rollback(queueService, message);
+                    }
+                } else {
+                    listener.completeExceptionally(error);
+                }
+            });
         } catch (IOException e) {
             listener.completeExceptionally(e);
         }
     }
+
+    private void rollback(TransactionalQueueService queueService, QueueMessage message) {
+        message.release();
+        try {
+            QueueMessage rolledBack = queueService.unlockAndRollback(message.getUuid());
+            if (rolledBack != null) {
+                rolledBack.release();
+            }
+        } catch (IOException e) {
+            logger.error("error rollback message {}", message.getUuid(), e);
+        }
+    }
 }
\ No newline at end of file
@@ -10,15 +10,24 @@ import java.io.IOException;
 
 public class PopRequest implements ActionRequest<PopRequest> {
     private final String queue;
+    private final long timeout;
 
-    private PopRequest(String queue) {
+    private PopRequest(String queue, long timeout) {
         this.queue = queue;
+        this.timeout = timeout;
     }
 
     public String queue() {
         return queue;
     }
 
+    /**
+     * Time in milliseconds to wait for message if queue is empty, 0 to return immediately.
+     */
+    public long timeout() {
+        return timeout;
+    }
+
     @Override
     public ValidationBuilder validate() {
         return ValidationBuilder.builder()
@@ -36,9 +45,11 @@ public class PopRequest implements ActionRequest<PopRequest> {
 
     public static class Builder implements EntryBuilder<PopRequest> {
         private String queue;
+        private long timeout;
 
         private Builder from(PopRequest entry) {
             queue = entry.queue();
+            timeout = entry.timeout();
             return this;
         }
 
@@ -47,19 +58,26 @@ public class PopRequest implements ActionRequest<PopRequest> {
             return this;
         }
 
+        public Builder setTimeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
         @Override
         public PopRequest build() {
-            return new PopRequest(queue);
+            return new PopRequest(queue, timeout);
         }
 
         @Override
         public void writeTo(StreamOutput stream) throws IOException {
             stream.writeText(queue);
+            stream.writeLong(timeout);
         }
 
         @Override
         public void readFrom(StreamInput stream) throws IOException {
             queue = stream.readText();
+            timeout = stream.readLong();
         }
     }
 }
\ No newline at end of file
@@ -20,6 +20,13 @@ public class PopResponse implements ActionResponse<PopResponse> {
         return message;
     }
 
+    @Override
+    public void release() {
+        if (message != null) {
+            message.release();
+        }
+    }
+
     @Override
     public Builder toBuilder() {
         return new Builder().from(this);
@@ -0,0 +1,48 @@
+package org.mitallast.queue.action.queue.push;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import org.mitallast.queue.action.AbstractAction;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageUuidDuplicateException;
+import org.mitallast.queue.queue.transactional.TransactionalQueueService;
+import org.mitallast.queue.queues.QueueMissingException;
+import org.mitallast.queue.queues.transactional.TransactionalQueuesService;
+import org.mitallast.queue.transport.TransportController;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public class BatchPushAction extends AbstractAction<BatchPushRequest, BatchPushResponse> {
+
+    private final TransactionalQueuesService queuesService;
+
+    @Inject
+    public BatchPushAction(Settings settings, TransportController controller, TransactionalQueuesService queuesService) {
+        super(settings, controller);
+        this.queuesService = queuesService;
+    }
+
+    @Override
+    protected void executeInternal(BatchPushRequest request, CompletableFuture<BatchPushResponse> listener) {
+        TransactionalQueueService queueService = queuesService.queue(request.queue());
+        if (queueService == null) {
+            listener.completeExceptionally(new QueueMissingException(request.queue()));
+            return;
+        }
+        try {
+            queueService.push(request.messages());
+            ImmutableList.Builder<UUID> messageUUIDs = ImmutableList.builder();
+            for (QueueMessage message : request.messages()) {
+                messageUUIDs.add(message.getUuid());
+            }
+            listener.complete(BatchPushResponse.builder()
+                .setMessageUUIDs(messageUUIDs.build())
+                .build());
+        } catch (QueueMessageUuidDuplicateException | IOException e) {
+            listener.completeExceptionally(e);
+        }
+    }
+}
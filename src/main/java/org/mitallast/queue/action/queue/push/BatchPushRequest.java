@@ -0,0 +1,92 @@
+package org.mitallast.queue.action.queue.push;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.action.ActionRequest;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.validation.ValidationBuilder;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.io.IOException;
+
+public class BatchPushRequest implements ActionRequest<BatchPushRequest> {
+    private final String queue;
+    private final ImmutableList<QueueMessage> messages;
+
+    private BatchPushRequest(String queue, ImmutableList<QueueMessage> messages) {
+        this.queue = queue;
+        this.messages = messages;
+    }
+
+    public String queue() {
+        return queue;
+    }
+
+    public ImmutableList<QueueMessage> messages() {
+        return messages;
+    }
+
+    @Override
+    public ValidationBuilder validate() {
+        return ValidationBuilder.builder()
+            .missing("queue", queue)
+            .missing("messages", messages);
+    }
+
+    @Override
+    public void release() {
+        if (messages != null) {
+            for (QueueMessage message : messages) {
+                message.release();
+            }
+        }
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<BatchPushRequest> {
+        private String queue;
+        private ImmutableList<QueueMessage> messages;
+
+        private Builder from(BatchPushRequest entry) {
+            queue = entry.queue;
+            messages = entry.messages;
+            return this;
+        }
+
+        public Builder setQueue(String queue) {
+            this.queue = queue;
+            return this;
+        }
+
+        public Builder setMessages(ImmutableList<QueueMessage> messages) {
+            this.messages = messages;
+            return this;
+        }
+
+        @Override
+        public BatchPushRequest build() {
+            return new BatchPushRequest(queue, messages);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            queue = stream.readTextOrNull();
+            messages = stream.readStreamableList(QueueMessage::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeTextOrNull(queue);
+            stream.writeStreamableList(messages);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.mitallast.queue.action.queue.push;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.action.ActionResponse;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.UUID;
+
+public class BatchPushResponse implements ActionResponse<BatchPushResponse> {
+    private final ImmutableList<UUID> messageUUIDs;
+
+    private BatchPushResponse(ImmutableList<UUID> messageUUIDs) {
+        this.messageUUIDs = messageUUIDs;
+    }
+
+    public ImmutableList<UUID> messageUUIDs() {
+        return messageUUIDs;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<BatchPushResponse> {
+        private ImmutableList<UUID> messageUUIDs;
+
+        private Builder from(BatchPushResponse entry) {
+            messageUUIDs = entry.messageUUIDs;
+            return this;
+        }
+
+        public Builder setMessageUUIDs(ImmutableList<UUID> messageUUIDs) {
+            this.messageUUIDs = messageUUIDs;
+            return this;
+        }
+
+        @Override
+        public BatchPushResponse build() {
+            return new BatchPushResponse(messageUUIDs);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            int size = stream.readInt();
+            ImmutableList.Builder<UUID> builder = ImmutableList.builder();
+            for (int i = 0; i < size; i++) {
+                builder.add(stream.readUUID());
+            }
+            messageUUIDs = builder.build();
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeInt(messageUUIDs.size());
+            for (UUID messageUUID : messageUUIDs) {
+                stream.writeUUID(messageUUID);
+            }
+        }
+    }
+}
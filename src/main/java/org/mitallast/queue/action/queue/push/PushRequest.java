@@ -33,6 +33,13 @@ public class PushRequest implements ActionRequest<PushRequest> {
             .missing("message", message);
     }
 
+    @Override
+    public void release() {
+        if (message != null) {
+            message.release();
+        }
+    }
+
     @Override
     public Builder toBuilder() {
         return new Builder().from(this);
@@ -28,6 +28,13 @@ public class TransactionDeleteResponse implements ActionResponse<TransactionDele
         return messageUUID;
     }
 
+    @Override
+    public void release() {
+        if (deleted != null) {
+            deleted.release();
+        }
+    }
+
     @Override
     public Builder toBuilder() {
         return new Builder().from(this);
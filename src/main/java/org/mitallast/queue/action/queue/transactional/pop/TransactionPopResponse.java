@@ -26,6 +26,13 @@ public class TransactionPopResponse implements ActionResponse<TransactionPopResp
         return message;
     }
 
+    @Override
+    public void release() {
+        if (message != null) {
+            message.release();
+        }
+    }
+
     @Override
     public Builder toBuilder() {
         return new Builder().from(this);
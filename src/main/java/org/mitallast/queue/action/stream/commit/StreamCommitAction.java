@@ -0,0 +1,34 @@
+package org.mitallast.queue.action.stream.commit;
+
+import com.google.inject.Inject;
+import org.mitallast.queue.action.AbstractAction;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.log.group.ConsumerGroupLogService;
+import org.mitallast.queue.transport.TransportController;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class StreamCommitAction extends AbstractAction<StreamCommitRequest, StreamCommitResponse> {
+
+    private final ConsumerGroupLogService logService;
+
+    @Inject
+    public StreamCommitAction(Settings settings, TransportController controller, ConsumerGroupLogService logService) {
+        super(settings, controller);
+        this.logService = logService;
+    }
+
+    @Override
+    protected void executeInternal(StreamCommitRequest request, CompletableFuture<StreamCommitResponse> listener) {
+        try {
+            logService.log(request.stream()).commit(request.group(), request.offset());
+            listener.complete(StreamCommitResponse.builder()
+                .setGroup(request.group())
+                .setOffset(request.offset())
+                .build());
+        } catch (IOException e) {
+            listener.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.mitallast.queue.action.stream.commit;
+
+import org.mitallast.queue.action.ActionRequest;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.validation.ValidationBuilder;
+
+import java.io.IOException;
+
+public class StreamCommitRequest implements ActionRequest<StreamCommitRequest> {
+    private final String stream;
+    private final String group;
+    private final long offset;
+
+    private StreamCommitRequest(String stream, String group, long offset) {
+        this.stream = stream;
+        this.group = group;
+        this.offset = offset;
+    }
+
+    public String stream() {
+        return stream;
+    }
+
+    public String group() {
+        return group;
+    }
+
+    /**
+     * @return offset of next message to read by group
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public ValidationBuilder validate() {
+        ValidationBuilder builder = ValidationBuilder.builder()
+            .missing("stream", stream)
+            .missing("group", group);
+        if (offset < 0) {
+            builder = builder.missing("offset");
+        }
+        return builder;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<StreamCommitRequest> {
+        private String stream;
+        private String group;
+        private long offset = -1;
+
+        private Builder from(StreamCommitRequest entry) {
+            stream = entry.stream;
+            group = entry.group;
+            offset = entry.offset;
+            return this;
+        }
+
+        public Builder setStream(String stream) {
+            this.stream = stream;
+            return this;
+        }
+
+        public Builder setGroup(String group) {
+            this.group = group;
+            return this;
+        }
+
+        public Builder setOffset(long offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        @Override
+        public StreamCommitRequest build() {
+            return new StreamCommitRequest(stream, group, offset);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeText(this.stream);
+            stream.writeText(group);
+            stream.writeLong(offset);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            this.stream = stream.readText();
+            group = stream.readText();
+            offset = stream.readLong();
+        }
+    }
+}
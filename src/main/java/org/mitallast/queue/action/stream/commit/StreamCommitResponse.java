@@ -0,0 +1,73 @@
+package org.mitallast.queue.action.stream.commit;
+
+import org.mitallast.queue.action.ActionResponse;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+
+import java.io.IOException;
+
+public class StreamCommitResponse implements ActionResponse<StreamCommitResponse> {
+    private final String group;
+    private final long offset;
+
+    private StreamCommitResponse(String group, long offset) {
+        this.group = group;
+        this.offset = offset;
+    }
+
+    public String group() {
+        return group;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<StreamCommitResponse> {
+        private String group;
+        private long offset;
+
+        private Builder from(StreamCommitResponse entry) {
+            group = entry.group;
+            offset = entry.offset;
+            return this;
+        }
+
+        public Builder setGroup(String group) {
+            this.group = group;
+            return this;
+        }
+
+        public Builder setOffset(long offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        @Override
+        public StreamCommitResponse build() {
+            return new StreamCommitResponse(group, offset);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            group = stream.readText();
+            offset = stream.readLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeText(group);
+            stream.writeLong(offset);
+        }
+    }
+}
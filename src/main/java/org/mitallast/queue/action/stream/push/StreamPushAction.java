@@ -0,0 +1,33 @@
+package org.mitallast.queue.action.stream.push;
+
+import com.google.inject.Inject;
+import org.mitallast.queue.action.AbstractAction;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.log.group.ConsumerGroupLogService;
+import org.mitallast.queue.transport.TransportController;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class StreamPushAction extends AbstractAction<StreamPushRequest, StreamPushResponse> {
+
+    private final ConsumerGroupLogService logService;
+
+    @Inject
+    public StreamPushAction(Settings settings, TransportController controller, ConsumerGroupLogService logService) {
+        super(settings, controller);
+        this.logService = logService;
+    }
+
+    @Override
+    protected void executeInternal(StreamPushRequest request, CompletableFuture<StreamPushResponse> listener) {
+        try {
+            long offset = logService.log(request.stream()).append(request.messages());
+            listener.complete(StreamPushResponse.builder()
+                .setOffset(offset)
+                .build());
+        } catch (IOException e) {
+            listener.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.mitallast.queue.action.stream.push;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.action.ActionRequest;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.validation.ValidationBuilder;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.io.IOException;
+
+public class StreamPushRequest implements ActionRequest<StreamPushRequest> {
+    private final String stream;
+    private final ImmutableList<QueueMessage> messages;
+
+    private StreamPushRequest(String stream, ImmutableList<QueueMessage> messages) {
+        this.stream = stream;
+        this.messages = messages;
+    }
+
+    public String stream() {
+        return stream;
+    }
+
+    public ImmutableList<QueueMessage> messages() {
+        return messages;
+    }
+
+    @Override
+    public ValidationBuilder validate() {
+        return ValidationBuilder.builder()
+            .missing("stream", stream)
+            .missing("messages", messages);
+    }
+
+    @Override
+    public void release() {
+        if (messages != null) {
+            for (QueueMessage message : messages) {
+                message.release();
+            }
+        }
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<StreamPushRequest> {
+        private String stream;
+        private ImmutableList<QueueMessage> messages;
+
+        private Builder from(StreamPushRequest entry) {
+            stream = entry.stream;
+            messages = entry.messages;
+            return this;
+        }
+
+        public Builder setStream(String stream) {
+            this.stream = stream;
+            return this;
+        }
+
+        public Builder setMessages(ImmutableList<QueueMessage> messages) {
+            this.messages = messages;
+            return this;
+        }
+
+        @Override
+        public StreamPushRequest build() {
+            return new StreamPushRequest(stream, messages);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            this.stream = stream.readTextOrNull();
+            messages = stream.readStreamableList(QueueMessage::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeTextOrNull(this.stream);
+            stream.writeStreamableList(messages);
+        }
+    }
+}
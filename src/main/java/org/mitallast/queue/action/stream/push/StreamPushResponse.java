@@ -0,0 +1,61 @@
+package org.mitallast.queue.action.stream.push;
+
+import org.mitallast.queue.action.ActionResponse;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+
+import java.io.IOException;
+
+public class StreamPushResponse implements ActionResponse<StreamPushResponse> {
+    private final long offset;
+
+    private StreamPushResponse(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * @return offset of last pushed message, messages of request are appended at consecutive offsets
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<StreamPushResponse> {
+        private long offset;
+
+        private Builder from(StreamPushResponse entry) {
+            offset = entry.offset;
+            return this;
+        }
+
+        public Builder setOffset(long offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        @Override
+        public StreamPushResponse build() {
+            return new StreamPushResponse(offset);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            offset = stream.readLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeLong(offset);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.mitallast.queue.action.stream.read;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import org.mitallast.queue.action.AbstractAction;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.log.entry.MessageLogEntry;
+import org.mitallast.queue.log.group.ConsumerGroupLog;
+import org.mitallast.queue.log.group.ConsumerGroupLogService;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.transport.TransportController;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads next batch of consumer group. Messages are slices of stream segments,
+ * they are written to response without copy and released by transport after write.
+ */
+public class StreamReadAction extends AbstractAction<StreamReadRequest, StreamReadResponse> {
+
+    private final ConsumerGroupLogService logService;
+
+    @Inject
+    public StreamReadAction(Settings settings, TransportController controller, ConsumerGroupLogService logService) {
+        super(settings, controller);
+        this.logService = logService;
+    }
+
+    @Override
+    protected void executeInternal(StreamReadRequest request, CompletableFuture<StreamReadResponse> listener) {
+        try {
+            ConsumerGroupLog groupLog = logService.log(request.stream());
+            ImmutableList<MessageLogEntry> entries = groupLog.read(request.group(), request.size(), request.bytes());
+            ImmutableList.Builder<QueueMessage> messages = ImmutableList.builder();
+            for (MessageLogEntry entry : entries) {
+                messages.add(entry.message());
+            }
+            long offset = entries.isEmpty()
+                ? groupLog.readOffset(request.group())
+                : entries.get(entries.size() - 1).index() + 1;
+            listener.complete(StreamReadResponse.builder()
+                .setMessages(messages.build())
+                .setOffset(offset)
+                .build());
+        } catch (IOException e) {
+            listener.completeExceptionally(e);
+        }
+    }
+}
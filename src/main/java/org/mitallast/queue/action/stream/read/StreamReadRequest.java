@@ -0,0 +1,124 @@
+package org.mitallast.queue.action.stream.read;
+
+import org.mitallast.queue.action.ActionRequest;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.validation.ValidationBuilder;
+
+import java.io.IOException;
+
+public class StreamReadRequest implements ActionRequest<StreamReadRequest> {
+    private final String stream;
+    private final String group;
+    private final int size;
+    private final long bytes;
+
+    private StreamReadRequest(String stream, String group, int size, long bytes) {
+        this.stream = stream;
+        this.group = group;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    public String stream() {
+        return stream;
+    }
+
+    public String group() {
+        return group;
+    }
+
+    /**
+     * @return max count of messages in batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return max size of batch in bytes
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public ValidationBuilder validate() {
+        ValidationBuilder builder = ValidationBuilder.builder()
+            .missing("stream", stream)
+            .missing("group", group);
+        if (size <= 0) {
+            builder = builder.missing("size");
+        }
+        if (bytes <= 0) {
+            builder = builder.missing("bytes");
+        }
+        return builder;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<StreamReadRequest> {
+        private String stream;
+        private String group;
+        private int size;
+        private long bytes = Long.MAX_VALUE;
+
+        private Builder from(StreamReadRequest entry) {
+            stream = entry.stream;
+            group = entry.group;
+            size = entry.size;
+            bytes = entry.bytes;
+            return this;
+        }
+
+        public Builder setStream(String stream) {
+            this.stream = stream;
+            return this;
+        }
+
+        public Builder setGroup(String group) {
+            this.group = group;
+            return this;
+        }
+
+        public Builder setSize(int size) {
+            this.size = size;
+            return this;
+        }
+
+        public Builder setBytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        @Override
+        public StreamReadRequest build() {
+            return new StreamReadRequest(stream, group, size, bytes);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeText(this.stream);
+            stream.writeText(group);
+            stream.writeInt(size);
+            stream.writeLong(bytes);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            this.stream = stream.readText();
+            group = stream.readText();
+            size = stream.readInt();
+            bytes = stream.readLong();
+        }
+    }
+}
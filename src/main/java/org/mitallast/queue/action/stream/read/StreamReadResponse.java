@@ -0,0 +1,86 @@
+package org.mitallast.queue.action.stream.read;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.action.ActionResponse;
+import org.mitallast.queue.common.builder.EntryBuilder;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.io.IOException;
+
+public class StreamReadResponse implements ActionResponse<StreamReadResponse> {
+
+    private final ImmutableList<QueueMessage> messages;
+    private final long offset;
+
+    private StreamReadResponse(ImmutableList<QueueMessage> messages, long offset) {
+        this.messages = messages;
+        this.offset = offset;
+    }
+
+    public ImmutableList<QueueMessage> messages() {
+        return messages;
+    }
+
+    /**
+     * @return offset of message next to batch, committed by group when batch is processed
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public void release() {
+        for (QueueMessage message : messages) {
+            message.release();
+        }
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements EntryBuilder<StreamReadResponse> {
+        private ImmutableList<QueueMessage> messages;
+        private long offset;
+
+        private Builder from(StreamReadResponse entry) {
+            messages = entry.messages;
+            offset = entry.offset;
+            return this;
+        }
+
+        public Builder setMessages(ImmutableList<QueueMessage> messages) {
+            this.messages = messages;
+            return this;
+        }
+
+        public Builder setOffset(long offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        @Override
+        public StreamReadResponse build() {
+            return new StreamReadResponse(messages, offset);
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            messages = stream.readStreamableList(QueueMessage::new);
+            offset = stream.readLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeStreamableList(messages);
+            stream.writeLong(offset);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.mitallast.queue.common.collection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free bloom filter of UUID keys, does not support remove.
+ * Random UUIDs are already well distributed, so bit indexes are derived from uuid bits by double hashing.
+ */
+public class UUIDBloomFilter {
+
+    public final static double DEFAULT_FPP = 0.01;
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+
+    public UUIDBloomFilter(int expectedInsertions) {
+        this(expectedInsertions, DEFAULT_FPP);
+    }
+
+    public UUIDBloomFilter(int expectedInsertions, double fpp) {
+        long optimalBits = (long) (-Math.max(expectedInsertions, 1) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / Math.max(expectedInsertions, 1) * Math.log(2)));
+    }
+
+    public void put(UUID uuid) {
+        final long hash1 = mix(uuid.getMostSignificantBits());
+        final long hash2 = mix(uuid.getLeastSignificantBits());
+        long combined = hash1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            setBit(index);
+            combined += hash2;
+        }
+    }
+
+    public boolean mightContain(UUID uuid) {
+        final long hash1 = mix(uuid.getMostSignificantBits());
+        final long hash2 = mix(uuid.getLeastSignificantBits());
+        long combined = hash1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = (combined & Long.MAX_VALUE) % bitSize;
+            if (!getBit(index)) {
+                return false;
+            }
+            combined += hash2;
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Write bits of filter, should not be called concurrently with put.
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            output.writeLong(bits.get(i));
+        }
+    }
+
+    /**
+     * Read bits written by filter of same expected insertions and fpp.
+     *
+     * @return false if written filter has another size, filter is not modified in this case
+     */
+    public boolean readFrom(DataInput input) throws IOException {
+        if (input.readInt() != bits.length()) {
+            return false;
+        }
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, input.readLong());
+        }
+        return true;
+    }
+
+    private void setBit(long index) {
+        final int word = (int) (index >>> 6);
+        final long mask = 1L << index;
+        while (true) {
+            long current = bits.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return;
+            }
+        }
+    }
+
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,243 @@
+package org.mitallast.queue.common.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of timeouts with millisecond deadlines.
+ * <p/>
+ * Level 0 has one bucket per tick, each next level has buckets of wheel size ticks of previous level.
+ * Timeout is placed to the lowest level which covers it's deadline and is moved to lower levels
+ * when wheel reaches it's bucket, so add and expire are O(1) per timeout and advance does not scan pending timeouts.
+ * <p/>
+ * Timeouts can be added and cancelled from any thread, wheel is advanced by single thread.
+ * Bucket is intrusive linked list of timeouts, so cancelled timeout is unlinked in O(1) by next advance
+ * instead of being held until it's deadline. Timeout cancelled concurrently with expire may still be passed
+ * to consumer, so consumer should check it.
+ */
+public class TimingWheel<T extends TimingWheel.Timeout> {
+
+    private final static int MAX_LEVELS = 8;
+
+    private final long tick;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final ConcurrentLinkedQueue<T> added;
+    private final ConcurrentLinkedQueue<T> cancelled;
+    private final AtomicLong size;
+    private final List<Timeout[]> levels;
+    // next not expired tick, all timeouts of previous ticks are expired
+    private long currentTick;
+
+    /**
+     * @param tick      tick duration in milliseconds
+     * @param wheelSize count of buckets of each level, rounded up to power of 2
+     * @param now       current time in milliseconds
+     */
+    public TimingWheel(long tick, int wheelSize, long now) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        if (wheelSize < 2) {
+            throw new IllegalArgumentException("wheel size must be greater than 1");
+        }
+        this.tick = tick;
+        this.wheelBits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.wheelMask = (1 << wheelBits) - 1;
+        this.added = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicLong();
+        this.levels = new ArrayList<>();
+        this.currentTick = now / tick;
+    }
+
+    /**
+     * Thread safe, timeout is placed to bucket by next advance.
+     */
+    public void add(T timeout) {
+        size.incrementAndGet();
+        added.add(timeout);
+    }
+
+    /**
+     * Thread safe, timeout is removed from bucket by next advance and is not passed to consumer.
+     */
+    public void cancel(T timeout) {
+        if (!timeout.cancelled) {
+            timeout.cancelled = true;
+            cancelled.add(timeout);
+        }
+    }
+
+    /**
+     * @return count of not expired and not removed cancelled timeouts
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Expire timeouts with deadline before current tick, should be called by single thread.
+     * Consumer may add new timeouts, they are expired by next advance.
+     */
+    public void advance(long now, Consumer<T> consumer) {
+        final List<T> expired = new ArrayList<>();
+        T timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                size.decrementAndGet();
+            } else {
+                place(timeout, expired);
+            }
+        }
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.linked) {
+                unlink(timeout);
+                size.decrementAndGet();
+            }
+        }
+        final long targetTick = now / tick;
+        while (currentTick < targetTick) {
+            if (size.get() == expired.size()) {
+                // no timeouts in buckets
+                currentTick = targetTick;
+                break;
+            }
+            takeBucket(0, currentTick, expired);
+            currentTick++;
+            cascade();
+        }
+        for (T expiredTimeout : expired) {
+            size.decrementAndGet();
+            if (!expiredTimeout.cancelled) {
+                consumer.accept(expiredTimeout);
+            }
+        }
+    }
+
+    /**
+     * Move timeouts of level buckets reached by current tick to lower levels.
+     */
+    private void cascade() {
+        for (int level = 1; level < levels.size(); level++) {
+            final int shift = wheelBits * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            final List<T> bucket = new ArrayList<>();
+            takeBucket(level, currentTick >>> shift, bucket);
+            for (T timeout : bucket) {
+                place(timeout, null);
+            }
+        }
+    }
+
+    private void place(T timeout, List<T> expired) {
+        final long timeoutTick = Math.max(0, timeout.deadline()) / tick;
+        if (timeoutTick < currentTick) {
+            if (expired != null) {
+                expired.add(timeout);
+                return;
+            }
+            throw new IllegalStateException("timeout is not cascaded in time");
+        }
+        int level = 0;
+        while (level < MAX_LEVELS - 1 && (timeoutTick >>> (wheelBits * level)) - (currentTick >>> (wheelBits * level)) > wheelMask) {
+            level++;
+        }
+        final long slot = timeoutTick >>> (wheelBits * level);
+        link(level, (int) (slot & wheelMask), timeout);
+    }
+
+    private void link(int level, int index, Timeout timeout) {
+        while (levels.size() <= level) {
+            levels.add(new Timeout[wheelMask + 1]);
+        }
+        final Timeout[] buckets = levels.get(level);
+        final Timeout head = buckets[index];
+        timeout.linked = true;
+        timeout.level = level;
+        timeout.index = index;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            levels.get(timeout.level)[timeout.index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.linked = false;
+    }
+
+    /**
+     * Unlink all timeouts of bucket to given list.
+     */
+    @SuppressWarnings("unchecked")
+    private void takeBucket(int level, long slot, List<T> timeouts) {
+        if (levels.size() <= level) {
+            return;
+        }
+        final Timeout[] buckets = levels.get(level);
+        final int index = (int) (slot & wheelMask);
+        Timeout timeout = buckets[index];
+        buckets[index] = null;
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.linked = false;
+            timeouts.add((T) timeout);
+            timeout = next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimingWheel{" +
+            "tick=" + tick +
+            ", size=" + size.get() +
+            ", levels=" + levels.size() +
+            '}';
+    }
+
+    public static class Timeout {
+        private volatile long deadline;
+        // cancel is final, cancelled timeout added again is dropped
+        volatile boolean cancelled;
+        // bucket links, accessed only by advancing thread
+        boolean linked;
+        int level;
+        int index;
+        Timeout prev;
+        Timeout next;
+
+        public Timeout(long deadline) {
+            this.deadline = deadline;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        /**
+         * Reschedule expired timeout before it's added again.
+         */
+        public void deadline(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.mitallast.queue.common.manifest;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.common.stream.Streamable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of streamable records, persists small state by appending changes instead of rewriting state file.
+ * <p/>
+ * File starts with magic, each record is framed as length, crc32 of record bytes and record bytes.
+ * File is fsynced after each append. Tail record torn by crash is detected by length or checksum
+ * and truncated on read, so log is always replayed up to last complete append. Bad record followed
+ * by other records is not a torn append, open fails instead of dropping records after it.
+ * <p/>
+ * Snapshot replaces log with given records: it is written to temporary file, fsynced and atomically renamed over log.
+ */
+public class Manifest<T extends Streamable> implements Closeable {
+
+    private final static Logger logger = LoggerFactory.getLogger(Manifest.class);
+    private final static int MAGIC = 0x4d4e4631;
+    private final static int HEADER_SIZE = 4;
+    private final static int FRAME_HEADER_SIZE = 8;
+
+    private final StreamService streamService;
+    private final File file;
+    private final Supplier<T> factory;
+    private FileChannel channel;
+    // records appended since last snapshot
+    private int appended;
+
+    public Manifest(StreamService streamService, File file, Supplier<T> factory) {
+        this.streamService = streamService;
+        this.file = file;
+        this.factory = factory;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Opens manifest for append, creates empty manifest if file does not exist.
+     *
+     * @return records in append order
+     */
+    public synchronized ImmutableList<T> open() throws IOException {
+        if (channel != null) {
+            throw new IOException("Manifest already open " + file);
+        }
+        if (!file.exists()) {
+            snapshot(ImmutableList.of());
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<T> builder = ImmutableList.builder();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Manifest file is too large " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of manifest file " + file);
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Manifest file is corrupted " + file);
+            }
+
+            int count = 0;
+            int valid = buffer.position();
+            while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < 0) {
+                    throw new IOException("Manifest file is corrupted " + file + " at " + valid + ", negative record length");
+                }
+                if (length > buffer.remaining()) {
+                    // tail record is not complete
+                    break;
+                }
+                if (checksum != checksum(buffer.array(), buffer.position(), length)) {
+                    if (length == buffer.remaining()) {
+                        // tail record is complete by length, but not all its bytes reached disk
+                        break;
+                    }
+                    throw new IOException("Manifest file is corrupted " + file + " at " + valid + ", checksum mismatch");
+                }
+                try (StreamInput input = streamService.input(new ByteArrayInputStream(buffer.array(), buffer.position(), length))) {
+                    builder.add(input.readStreamable(factory));
+                }
+                buffer.position(buffer.position() + length);
+                valid = buffer.position();
+                count++;
+            }
+            if (valid < size) {
+                logger.warn("truncate manifest {} at {} of {} bytes, tail record is not complete", file, valid, size);
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            channel.position(valid);
+            appended = count;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return count of records appended since last snapshot, including records read on open
+     */
+    public synchronized int appended() {
+        return appended;
+    }
+
+    public synchronized void append(T record) throws IOException {
+        checkOpen();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeRecord(new DataOutputStream(bytes), record);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        appended++;
+    }
+
+    public synchronized void snapshot(Collection<T> records) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        for (T record : records) {
+            writeRecord(output, record);
+        }
+        try (FileChannel tmpChannel = FileChannel.open(tmp.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                tmpChannel.write(buffer);
+            }
+            tmpChannel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        FileChannel prev = channel;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        appended = 0;
+        if (prev != null) {
+            prev.close();
+        }
+        logger.info("snapshot manifest {} of {} records", file, records.size());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void writeRecord(DataOutputStream output, T record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (StreamOutput stream = streamService.output(bytes)) {
+            stream.writeStreamable(record);
+        }
+        byte[] data = bytes.toByteArray();
+        output.writeInt(data.length);
+        output.writeInt(checksum(data, 0, data.length));
+        output.write(data);
+    }
+
+    private void checkOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("Manifest is not open " + file);
+        }
+    }
+
+    /**
+     * Makes rename durable, not supported on some platforms.
+     */
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            logger.debug("error sync directory of {}", file, e);
+        }
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
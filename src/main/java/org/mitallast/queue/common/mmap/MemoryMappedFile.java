@@ -1,6 +1,8 @@
 package org.mitallast.queue.common.mmap;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
 import java.io.File;
@@ -17,6 +19,9 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     private final int pageSize;
     private final FileChannel channel;
     private final MemoryMappedPageCache pageCache;
+    // single mapping mode: whole file is one page, accessed without page cache
+    private final boolean singleMapping;
+    private volatile MemoryMappedPage mapping;
 
     public MemoryMappedFile(File file) throws IOException {
         this(file, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
@@ -28,15 +33,43 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
         this.pageSize = pageSize;
         channel = randomAccessFile.getChannel();
         pageCache = new MemoryMappedPageCacheImpl(this, maxPages);
+        singleMapping = false;
+    }
+
+    /**
+     * Single mapping mode for file of known max size: file is mapped once on first access,
+     * values are read and written by absolute offset without page lookup and reference counting.
+     */
+    public MemoryMappedFile(File file, long mapSize) throws IOException {
+        if (mapSize <= 0 || mapSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Map size must be in (0, " + Integer.MAX_VALUE + "], actual " + mapSize);
+        }
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.pageSize = (int) mapSize;
+        channel = randomAccessFile.getChannel();
+        pageCache = null;
+        singleMapping = true;
     }
 
     public File getFile() {
         return file;
     }
 
+    public boolean isSingleMapping() {
+        return singleMapping;
+    }
+
     @Override
     public void close() throws IOException {
-        pageCache.close();
+        if (singleMapping) {
+            MemoryMappedPage page = mapping;
+            if (page != null) {
+                page.close();
+            }
+        } else {
+            pageCache.close();
+        }
         channel.close();
         randomAccessFile.close();
     }
@@ -49,6 +82,10 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public void putLong(long offset, long value) throws IOException {
+        if (singleMapping) {
+            mapping().putLong(offset, value);
+            return;
+        }
         MemoryMappedPage page = getPage(offset);
         long pageMax = page.getOffset() + pageSize;
         try {
@@ -66,6 +103,9 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public long getLong(long offset) throws IOException {
+        if (singleMapping) {
+            return mapping().getLong(offset);
+        }
         MemoryMappedPage page = getPage(offset);
         long pageMax = page.getOffset() + pageSize;
         long value = 0;
@@ -86,6 +126,10 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public void putInt(long offset, int value) throws IOException {
+        if (singleMapping) {
+            mapping().putInt(offset, value);
+            return;
+        }
         MemoryMappedPage page = getPage(offset);
         try {
             page.putInt(offset, value);
@@ -95,6 +139,9 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public int getInt(long offset) throws IOException {
+        if (singleMapping) {
+            return mapping().getInt(offset);
+        }
         MemoryMappedPage page = getPage(offset);
         try {
             return page.getInt(offset);
@@ -104,6 +151,10 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public void getBytes(long offset, ByteBuf buffer, int length) throws IOException {
+        if (singleMapping) {
+            mapping().getBytes(offset, buffer, length);
+            return;
+        }
         long position = offset;
         long end = offset + length;
         int dataPosition = 0;
@@ -121,11 +172,51 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
         }
     }
 
+    /**
+     * Read bytes without copy. Returned buffer is slice of mapped page, or composite of page slices
+     * if range crosses page boundary. Pages are pinned against cache eviction until buffer is released.
+     */
+    public ByteBuf slice(long offset, int length) throws IOException {
+        if (offset % pageSize + length <= pageSize) {
+            return slicePage(offset, length);
+        }
+        CompositeByteBuf composite = Unpooled.compositeBuffer((int) (length / pageSize) + 2);
+        try {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                int max = pageSize - (int) (position % pageSize);
+                max = (int) Math.min(max, end - position);
+                composite.addComponent(slicePage(position, max));
+                position += max;
+            }
+            composite.writerIndex(length);
+            return composite;
+        } catch (IOException | RuntimeException e) {
+            composite.release();
+            throw e;
+        }
+    }
+
+    private ByteBuf slicePage(long offset, int length) throws IOException {
+        MemoryMappedPage page = getPage(offset);
+        try {
+            return new MemoryMappedPageBuf(this, page, page.slice(offset, length));
+        } catch (RuntimeException e) {
+            releasePage(page);
+            throw e;
+        }
+    }
+
     public void getBytes(long offset, byte[] data) throws IOException {
         getBytes(offset, data, 0, data.length);
     }
 
     public void getBytes(final long offset, byte[] data, final int start, final int length) throws IOException {
+        if (singleMapping) {
+            mapping().getBytes(offset, data, start, length);
+            return;
+        }
         long position = offset;
         long end = offset + length;
         int dataPosition = start;
@@ -152,6 +243,10 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public void putBytes(long offset, ByteBuf byteBuf, int length) throws IOException {
+        if (singleMapping) {
+            mapping().putBytes(offset, byteBuf, length);
+            return;
+        }
         long position = offset;
         long end = offset + length;
         int dataPosition = 0;
@@ -170,6 +265,10 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
     }
 
     public void putBytes(final long offset, final byte[] data, final int start, final int length) throws IOException {
+        if (singleMapping) {
+            mapping().putBytes(offset, data, start, length);
+            return;
+        }
         long position = offset;
         long end = offset + length;
         int dataPosition = start;
@@ -195,24 +294,74 @@ public class MemoryMappedFile implements MemoryMappedPageCacheLoader, Closeable
         return randomAccessFile.length() == 0;
     }
 
+    /**
+     * Map and fault in file ahead of first write: whole file in single mapping mode, first page otherwise.
+     */
+    public void warmup() throws IOException {
+        MemoryMappedPage page = getPage(0);
+        try {
+            page.load();
+        } finally {
+            releasePage(page);
+        }
+    }
+
     public void flush() throws IOException {
-        pageCache.flush();
+        if (singleMapping) {
+            MemoryMappedPage page = mapping;
+            if (page != null) {
+                page.flush();
+            }
+        } else {
+            pageCache.flush();
+        }
     }
 
     public MemoryMappedPage getPage(long offset) throws IOException {
+        if (singleMapping) {
+            MemoryMappedPage page = mapping();
+            if (!page.acquire()) {
+                throw new IOException("File closed " + file);
+            }
+            return page;
+        }
         long pageOffset = (offset / pageSize) * pageSize;
         return pageCache.acquire(pageOffset);
     }
 
     public void releasePage(MemoryMappedPage page) throws IOException {
-        pageCache.release(page);
+        if (singleMapping) {
+            page.release();
+        } else {
+            pageCache.release(page);
+        }
+    }
+
+    /**
+     * Mapping is created lazily, so new file is empty until first access.
+     */
+    private MemoryMappedPage mapping() throws IOException {
+        MemoryMappedPage page = mapping;
+        if (page == null) {
+            synchronized (channel) {
+                page = mapping;
+                if (page == null) {
+                    page = load(0);
+                    mapping = page;
+                }
+            }
+        }
+        return page;
     }
 
     @Override
     public MemoryMappedPage load(long offset) throws IOException {
         synchronized (channel) {
             MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, pageSize);
-            buffer.load();
+            // whole file mapping is paged in on access instead of loading it at once
+            if (!singleMapping) {
+                buffer.load();
+            }
             buffer.order(java.nio.ByteOrder.LITTLE_ENDIAN);
             return new MemoryMappedPage(buffer, offset);
         }
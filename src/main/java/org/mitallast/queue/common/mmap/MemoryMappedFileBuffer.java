@@ -1,7 +1,8 @@
 package org.mitallast.queue.common.mmap;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
 
 import java.io.Closeable;
 import java.io.File;
@@ -10,7 +11,13 @@ import java.io.RandomAccessFile;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
+/**
+ * Mapping is released by {@link #close()} together with retained slices of {@link #buffer()},
+ * so file is unmapped only after last slice is released.
+ */
 public class MemoryMappedFileBuffer implements Closeable {
+    public static final int PAGE_SIZE = 4096;
+
     private final File file;
     private final RandomAccessFile randomAccessFile;
     private final MappedByteBuffer mappedByteBuffer;
@@ -22,15 +29,24 @@ public class MemoryMappedFileBuffer implements Closeable {
     }
 
     public MemoryMappedFileBuffer(File file, long offset, long size) throws IOException {
+        this(file, offset, size, true);
+    }
+
+    /**
+     * @param load if false, pages are not loaded on map and may be touched later by {@link #touch(int, int)}
+     */
+    public MemoryMappedFileBuffer(File file, long offset, long size, boolean load) throws IOException {
         this.file = file;
         this.randomAccessFile = new RandomAccessFile(file, "rw");
         FileChannel channel = randomAccessFile.getChannel();
 
         mappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
-        mappedByteBuffer.load();
+        if (load) {
+            mappedByteBuffer.load();
+        }
         mappedByteBuffer.order(java.nio.ByteOrder.LITTLE_ENDIAN);
 
-        buffer = Unpooled.wrappedBuffer(mappedByteBuffer);
+        buffer = new MappedBuf(mappedByteBuffer);
     }
 
     public File file() {
@@ -45,6 +61,21 @@ public class MemoryMappedFileBuffer implements Closeable {
         return buffer;
     }
 
+    /**
+     * Fault in pages of given range for write, by rewriting first byte of each page.
+     * Should not be called concurrently with writers of the same range.
+     */
+    public void touch(int offset, int length) {
+        int end = Math.min(offset + length, mappedByteBuffer.capacity());
+        for (int i = offset; i < end; i += PAGE_SIZE) {
+            mappedByteBuffer.put(i, mappedByteBuffer.get(i));
+        }
+    }
+
+    public int capacity() {
+        return mappedByteBuffer.capacity();
+    }
+
     public void flush() throws IOException {
         synchronized (this) {
             if (closed) {
@@ -62,8 +93,24 @@ public class MemoryMappedFileBuffer implements Closeable {
                 return;
             }
             closed = true;
-            MappedByteBufferCleaner.clean(mappedByteBuffer);
             randomAccessFile.close();
+            buffer.release();
+        }
+    }
+
+    private static class MappedBuf extends UnpooledDirectByteBuf {
+
+        private final MappedByteBuffer mappedByteBuffer;
+
+        private MappedBuf(MappedByteBuffer mappedByteBuffer) {
+            super(UnpooledByteBufAllocator.DEFAULT, mappedByteBuffer, mappedByteBuffer.capacity());
+            this.mappedByteBuffer = mappedByteBuffer;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            MappedByteBufferCleaner.clean(mappedByteBuffer);
         }
     }
 }
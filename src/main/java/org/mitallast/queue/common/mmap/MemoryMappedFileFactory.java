@@ -12,12 +12,14 @@ public class MemoryMappedFileFactory extends AbstractComponent {
     private final File directory;
     private final int pageSize;
     private final int maxPages;
+    private final boolean singleMapping;
 
     public MemoryMappedFileFactory(Settings settings, File directory) throws IOException {
         super(settings);
         this.directory = directory;
         pageSize = this.settings.getAsInt("page_size", MemoryMappedFile.DEFAULT_PAGE_SIZE);
         maxPages = this.settings.getAsInt("max_pages", MemoryMappedFile.DEFAULT_MAX_PAGES);
+        singleMapping = this.settings.getAsBoolean("single_mapping", true);
         if (!directory.exists()) {
             if (!directory.mkdir()) {
                 throw new IOException("Error create directory " + directory);
@@ -33,9 +35,30 @@ public class MemoryMappedFileFactory extends AbstractComponent {
         return new MemoryMappedFile(file, pageSize, maxPages);
     }
 
+    /**
+     * @param maxSize known max size of file, file is mapped once if single mapping is enabled
+     */
+    public MemoryMappedFile createFile(File file, long maxSize) throws IOException {
+        if (!singleMapping || maxSize > Integer.MAX_VALUE) {
+            return createFile(file);
+        }
+        if (!file.exists() && !file.createNewFile()) {
+            throw new IOException("Error create new file " + file);
+        }
+
+        return new MemoryMappedFile(file, maxSize);
+    }
+
     public MemoryMappedFile createFile(String ext) throws IOException {
+        return createFile(newFile(ext));
+    }
+
+    public MemoryMappedFile createFile(String ext, long maxSize) throws IOException {
+        return createFile(newFile(ext), maxSize);
+    }
+
+    private File newFile(String ext) {
         String fileName = UUIDs.generateRandom().toString() + '.' + ext;
-        File file = new File(directory, fileName);
-        return createFile(file);
+        return new File(directory, fileName);
     }
 }
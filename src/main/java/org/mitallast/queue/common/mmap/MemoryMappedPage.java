@@ -5,26 +5,25 @@ import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
-import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class MemoryMappedPage implements Closeable {
 
     private final static AtomicIntegerFieldUpdater<MemoryMappedPage> referenceCountUpdater =
         AtomicIntegerFieldUpdater.newUpdater(MemoryMappedPage.class, "referenceCount");
 
-    private final static AtomicLongFieldUpdater<MemoryMappedPage> timestampUpdater =
-        AtomicLongFieldUpdater.newUpdater(MemoryMappedPage.class, "timestamp");
-
     private final long offset;
     private MappedByteBuffer buffer;
     private ByteBuf buf;
-    private boolean dirty = false;
-    private boolean closed = false;
+    private volatile boolean dirty = false;
+    // closed page is unmapped once last reference is released
+    private volatile boolean closed = false;
 
     private volatile int referenceCount = 0;
-    private volatile long timestamp = 0;
+    // CLOCK reference bit, set on access and cleared by evictor
+    private volatile boolean referenced = true;
 
     public MemoryMappedPage(MappedByteBuffer buffer, long offset) {
         this.buffer = buffer;
@@ -77,35 +76,40 @@ public class MemoryMappedPage implements Closeable {
 
     public void putBytes(long offset, byte[] data, int start, int length) {
         int index = getIndex(offset);
-        for (int i = 0; i < length; i++, index++, start++) {
-            buffer.put(index, data[start]);
-        }
+        buf.setBytes(index, data, start, length);
         dirty = true;
     }
 
     public void getBytes(long offset, ByteBuf buffer, int length) {
         int index = getIndex(offset);
-        for (int i = 0; i < length; i++, index++) {
-            buffer.writeByte(this.buffer.get(index));
-        }
+        buffer.writeBytes(buf, index, length);
     }
 
     public void getBytes(long offset, ByteBuf buffer, int start, int length) {
         int index = getIndex(offset);
-        for (int i = 0, j = start; i < length; i++, index++, j++) {
-            byte byteValue = this.buffer.get(index);
-            buffer.setByte(j, byteValue);
-        }
+        buf.getBytes(index, buffer, start, length);
     }
 
     public void getBytes(long offset, byte[] data, int start, int length) {
         int index = getIndex(offset);
-        for (int i = 0; i < length; i++, index++, start++) {
-            data[start] = buffer.get(index);
-        }
+        buf.getBytes(index, data, start, length);
+    }
+
+    /**
+     * @return view of page bytes without copy, valid only while page is acquired
+     */
+    public ByteBuffer slice(long offset, int length) {
+        int index = getIndex(offset);
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(index);
+        duplicate.limit(index + length);
+        return duplicate.slice();
     }
 
     public boolean acquire() {
+        if (closed) {
+            return false;
+        }
         while (true) {
             int current = referenceCount;
             if (current >= 0) {
@@ -119,7 +123,11 @@ public class MemoryMappedPage implements Closeable {
     }
 
     public int release() {
-        return referenceCountUpdater.decrementAndGet(this);
+        int count = referenceCountUpdater.decrementAndGet(this);
+        if (count == 0 && closed && garbage()) {
+            unmap();
+        }
+        return count;
     }
 
     public boolean garbage() {
@@ -135,22 +143,33 @@ public class MemoryMappedPage implements Closeable {
         }
     }
 
-    public void lockTimestamp() {
-        timestamp = -Math.abs(timestamp);
-    }
-
-    public void unlockTimestamp() {
-        timestamp = Math.abs(timestamp);
+    /**
+     * Mark page as recently used, write is skipped if bit is already set to keep cache line shared.
+     */
+    public void touch() {
+        if (!referenced) {
+            referenced = true;
+        }
     }
 
-    public long getTimestamp() {
-        return timestamp;
+    /**
+     * @return true if page was used since last call, clears reference bit
+     */
+    public boolean clearReferenced() {
+        if (referenced) {
+            referenced = false;
+            return true;
+        }
+        return false;
     }
 
-    public void updateTimestamp(long newTimestamp) {
-        long current = timestampUpdater.get(this);
-        if (current > 0 && current < newTimestamp) {
-            timestampUpdater.compareAndSet(this, current, newTimestamp);
+    /**
+     * Fault in page memory ahead of access.
+     */
+    public void load() {
+        synchronized (this) {
+            if (closed) return;
+            buffer.load();
         }
     }
 
@@ -158,22 +177,35 @@ public class MemoryMappedPage implements Closeable {
         synchronized (this) {
             if (closed) return;
             if (dirty) {
-                buffer.force();
+                // reset before force, so concurrent write marks page dirty again
                 dirty = false;
+                buffer.force();
             }
         }
     }
 
+    /**
+     * Page is unmapped now if it is not acquired, otherwise by release of last reference,
+     * so slices of page stay readable after close.
+     */
     @Override
     public void close() throws IOException {
         synchronized (this) {
             flush();
             if (closed) return;
             closed = true;
-            MappedByteBufferCleaner.clean(buffer);
-            buffer = null;
-            buf = null;
         }
+        // page marked as garbage by evictor is not acquired anymore
+        if (garbage() || referenceCount < 0) {
+            unmap();
+        }
+    }
+
+    private synchronized void unmap() {
+        if (buffer == null) return;
+        MappedByteBufferCleaner.clean(buffer);
+        buffer = null;
+        buf = null;
     }
 
     @Override
@@ -185,7 +217,7 @@ public class MemoryMappedPage implements Closeable {
             ", dirty=" + dirty +
             ", closed=" + closed +
             ", referenceCount=" + referenceCount +
-            ", timestamp=" + timestamp +
+            ", referenced=" + referenced +
             '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package org.mitallast.queue.common.mmap;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Direct buffer over part of mapped page, holds page reference until buffer is deallocated,
+ * so page is not evicted from cache while buffer is in use.
+ */
+class MemoryMappedPageBuf extends UnpooledDirectByteBuf {
+
+    private final MemoryMappedFile file;
+    private final MemoryMappedPage page;
+
+    MemoryMappedPageBuf(MemoryMappedFile file, MemoryMappedPage page, ByteBuffer buffer) {
+        super(UnpooledByteBufAllocator.DEFAULT, buffer, buffer.remaining());
+        this.file = file;
+        this.page = page;
+    }
+
+    @Override
+    protected void deallocate() {
+        super.deallocate();
+        try {
+            file.releasePage(page);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
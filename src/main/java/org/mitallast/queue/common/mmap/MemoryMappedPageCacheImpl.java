@@ -1,34 +1,57 @@
 package org.mitallast.queue.common.mmap;
 
 import org.mitallast.queue.common.concurrent.MapReentrantLock;
+import org.mitallast.queue.common.concurrent.NamedExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Page cache with CLOCK eviction.
+ * Acquire of loaded page is lock free and only sets page reference bit, release only decrements page reference count.
+ * When cache grows over twice max pages, pages are evicted in background down to max pages: evictor walks pages
+ * in load order, page with reference bit set gets second chance and moves to tail with bit cleared,
+ * page not referenced and not acquired is unmapped.
+ */
 public class MemoryMappedPageCacheImpl implements MemoryMappedPageCache {
 
-    private final static Comparator<MemoryMappedPage> comparator =
-        (o1, o2) -> (int) (o1.getTimestamp() - o2.getTimestamp());
+    private final static Logger logger = LoggerFactory.getLogger(MemoryMappedPageCacheImpl.class);
+
+    // shared by all caches, thread is stopped when idle
+    private final static ExecutorService evictor = new ThreadPoolExecutor(
+        0, 1,
+        1, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        NamedExecutors.newThreadFactory("mmap-evictor")
+    );
+
     private final MemoryMappedPageCacheLoader loader;
     private final int maxPages;
     private final ConcurrentHashMap<Long, MemoryMappedPage> pageMap;
-    private final ArrayList<MemoryMappedPage> garbage = new ArrayList<>();
+    private final ConcurrentLinkedQueue<MemoryMappedPage> clock;
     private final MapReentrantLock pageLock;
-    private final ReentrantLock gcLock;
     private final AtomicInteger pagesCount;
+    private final AtomicBoolean evictScheduled;
+    private volatile boolean closed = false;
 
     public MemoryMappedPageCacheImpl(MemoryMappedPageCacheLoader loader, int maxPages) {
         this.loader = loader;
         this.maxPages = maxPages;
         pageMap = new ConcurrentHashMap<>();
+        clock = new ConcurrentLinkedQueue<>();
         pageLock = new MapReentrantLock(maxPages);
-        gcLock = new ReentrantLock();
         pagesCount = new AtomicInteger();
+        evictScheduled = new AtomicBoolean();
     }
 
     @Override
@@ -36,22 +59,29 @@ public class MemoryMappedPageCacheImpl implements MemoryMappedPageCache {
         MemoryMappedPage page;
         page = pageMap.get(offset);
         if (page != null && page.acquire()) {
-            page.updateTimestamp(System.currentTimeMillis());
+            page.touch();
             return page;
         }
         final ReentrantLock lock = pageLock.get(offset);
         lock.lock();
         try {
+            if (closed) {
+                throw new IOException("Page cache closed");
+            }
             page = pageMap.get(offset);
             if (page != null && page.acquire()) {
-                page.updateTimestamp(System.currentTimeMillis());
+                page.touch();
                 return page;
             }
+            // page is not loaded or evicted, evicted page is removed from map by evictor
             page = loader.load(offset);
-            assert page.acquire();
-            page.updateTimestamp(System.currentTimeMillis());
+            boolean acquired = page.acquire();
+            assert acquired;
             pageMap.put(offset, page);
-            pagesCount.incrementAndGet();
+            clock.offer(page);
+            if (pagesCount.incrementAndGet() > maxPages * 2) {
+                scheduleEvict();
+            }
             return page;
         } finally {
             lock.unlock();
@@ -61,7 +91,10 @@ public class MemoryMappedPageCacheImpl implements MemoryMappedPageCache {
     @Override
     public void release(MemoryMappedPage page) throws IOException {
         page.release();
-        garbageCollect();
+    }
+
+    public int pagesCount() {
+        return pagesCount.get();
     }
 
     @Override
@@ -79,6 +112,7 @@ public class MemoryMappedPageCacheImpl implements MemoryMappedPageCache {
 
     @Override
     public synchronized void close() throws IOException {
+        closed = true;
         for (MemoryMappedPage page : pageMap.values()) {
             final ReentrantLock lock = pageLock.get(page.getOffset());
             lock.lock();
@@ -90,25 +124,35 @@ public class MemoryMappedPageCacheImpl implements MemoryMappedPageCache {
         }
     }
 
-    private void garbageCollect() throws IOException {
-        if (pagesCount.get() > maxPages * 2 && gcLock.tryLock()) {
+    private void scheduleEvict() {
+        if (evictScheduled.compareAndSet(false, true)) {
+            evictor.execute(this::evict);
+        }
+    }
+
+    /**
+     * Each page is visited at most twice: first pass clears reference bit, second evicts it.
+     * Pages acquired by readers are skipped, they will be evicted by next run after release.
+     */
+    synchronized void evict() {
+        // pages loaded while running schedule next run
+        evictScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        int steps = pagesCount.get() * 2;
+        MemoryMappedPage page;
+        while (pagesCount.get() > maxPages && steps-- > 0 && (page = clock.poll()) != null) {
+            if (page.clearReferenced() || !page.garbage()) {
+                clock.offer(page);
+                continue;
+            }
+            pageMap.remove(page.getOffset(), page);
+            pagesCount.decrementAndGet();
             try {
-                garbage.clear();
-                garbage.addAll(pageMap.values());
-                garbage.forEach(MemoryMappedPage::lockTimestamp);
-                Collections.sort(garbage, comparator);
-                garbage.forEach(MemoryMappedPage::unlockTimestamp);
-                for (int i = garbage.size() - 1; i > 0 && garbage.size() > maxPages; i--) {
-                    MemoryMappedPage page = garbage.get(i);
-                    if (page.garbage()) {
-                        pageMap.remove(page.getOffset(), page);
-                        garbage.remove(i);
-                        pagesCount.decrementAndGet();
-                        page.close();
-                    }
-                }
-            } finally {
-                gcLock.unlock();
+                page.close();
+            } catch (IOException e) {
+                logger.error("error close page {}", page, e);
             }
         }
     }
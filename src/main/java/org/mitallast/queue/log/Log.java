@@ -5,7 +5,11 @@ import org.mitallast.queue.common.settings.Settings;
 import org.mitallast.queue.log.entry.LogEntry;
 
 import java.io.IOException;
+import java.util.List;
 
+/**
+ * Log supports single appender and concurrent readers, appends, truncate and skip should be serialized by caller.
+ */
 public class Log extends AbstractComponent {
 
     protected final SegmentManager segmentManager;
@@ -45,12 +49,15 @@ public class Log extends AbstractComponent {
     }
 
     public long lastIndex() {
-        return !isEmpty() ? segmentManager.lastSegment().lastIndex() : 0;
+        // last segment is empty right after roll
+        return !isEmpty() ? segmentManager.lastSegment().nextIndex() - 1 : 0;
     }
 
     private void checkRoll() throws IOException {
         if (segmentManager.currentSegment().isFull()) {
             segmentManager.nextSegment();
+        } else {
+            segmentManager.checkPreallocate();
         }
     }
 
@@ -66,12 +73,80 @@ public class Log extends AbstractComponent {
         }
     }
 
+    /**
+     * Append batch of entries with consecutive indexes starting from next index. Each segment takes
+     * as much of batch as it has room for, log rolls to next segment only between segment batches.
+     *
+     * @return index of last appended entry
+     */
+    public long appendEntries(List<? extends LogEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return lastIndex();
+        }
+        long index = nextIndex();
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).index() != index + i) {
+                throw new IndexOutOfBoundsException("inconsistent index: " + entries.get(i).index() + " expected: " + (index + i));
+            }
+        }
+
+        checkRoll();
+        int from = 0;
+        while (true) {
+            Segment segment = segmentManager.currentSegment();
+            int appended = segment.appendEntries(entries, from);
+            from += appended;
+            if (from == entries.size()) {
+                return entries.get(from - 1).index();
+            }
+            if (appended == 0 && segment.isEmpty()) {
+                throw new LogException("entry " + entries.get(from).index() + " does not fit into empty segment");
+            }
+            logger.debug("segment is full");
+            segmentManager.nextSegment();
+        }
+    }
+
     public <T extends LogEntry> T getEntry(long index) throws IOException {
         checkIndex(index);
-        Segment segment = segmentManager.segment(index);
-        if (segment == null)
-            throw new IndexOutOfBoundsException("invalid index: " + index);
-        return segment.getEntry(index);
+        while (true) {
+            Segment segment = segmentManager.segment(index);
+            if (segment == null)
+                throw new IndexOutOfBoundsException("invalid index: " + index);
+            try {
+                return segment.getEntry(index);
+            } catch (IllegalStateException e) {
+                checkReplaced(segment, index, e);
+            }
+        }
+    }
+
+    /**
+     * @return size in bytes of serialized entry, -1 if log does not contain entry
+     */
+    public int entryLength(long index) throws IOException {
+        if (!containsIndex(index))
+            return -1;
+        while (true) {
+            Segment segment = segmentManager.segment(index);
+            if (segment == null)
+                return -1;
+            try {
+                return segment.entryLength(index);
+            } catch (IllegalStateException e) {
+                checkReplaced(segment, index, e);
+            }
+        }
+    }
+
+    /**
+     * Segment closed by compaction or truncate is replaced in segment manager before it is closed,
+     * so read is retried with current segment, otherwise error is rethrown.
+     */
+    private void checkReplaced(Segment segment, long index, IllegalStateException e) {
+        if (segmentManager.segment(index) == segment) {
+            throw e;
+        }
     }
 
     public boolean containsIndex(long index) {
@@ -81,8 +156,16 @@ public class Log extends AbstractComponent {
     public boolean containsEntry(long index) throws IOException {
         if (!containsIndex(index))
             return false;
-        Segment segment = segmentManager.segment(index);
-        return segment != null && segment.containsEntry(index);
+        while (true) {
+            Segment segment = segmentManager.segment(index);
+            if (segment == null)
+                return false;
+            try {
+                return segment.containsEntry(index);
+            } catch (IllegalStateException e) {
+                checkReplaced(segment, index, e);
+            }
+        }
     }
 
     public void skip(long entries) throws IOException {
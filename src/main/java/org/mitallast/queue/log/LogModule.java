@@ -1,11 +1,13 @@
 package org.mitallast.queue.log;
 
 import com.google.inject.AbstractModule;
+import org.mitallast.queue.log.group.ConsumerGroupLogService;
 
 public class LogModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(LogStreamService.class).asEagerSingleton();
         bind(LogService.class).asEagerSingleton();
+        bind(ConsumerGroupLogService.class).asEagerSingleton();
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package org.mitallast.queue.log;
 
 import com.google.inject.Inject;
 import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.log.entry.MessageLogEntry;
 import org.mitallast.queue.log.entry.TextLogEntry;
 
 public class LogStreamService {
@@ -9,5 +10,6 @@ public class LogStreamService {
     public LogStreamService(StreamService streamService) {
         int i = 9000000;
         streamService.registerClass(TextLogEntry.Builder.class, TextLogEntry::builder, ++i);
+        streamService.registerClass(MessageLogEntry.Builder.class, MessageLogEntry::builder, ++i);
     }
 }
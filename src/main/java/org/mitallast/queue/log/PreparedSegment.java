@@ -0,0 +1,43 @@
+package org.mitallast.queue.log;
+
+import org.mitallast.queue.common.mmap.MemoryMappedFileBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Segment and index files created and mapped ahead of roll. Descriptor is used only for file names,
+ * first index of segment is not known until roll.
+ */
+public class PreparedSegment implements Closeable {
+    private final SegmentDescriptor descriptor;
+    private final MemoryMappedFileBuffer segmentBuffer;
+    private final MemoryMappedFileBuffer indexBuffer;
+
+    public PreparedSegment(SegmentDescriptor descriptor, MemoryMappedFileBuffer segmentBuffer, MemoryMappedFileBuffer indexBuffer) {
+        this.descriptor = descriptor;
+        this.segmentBuffer = segmentBuffer;
+        this.indexBuffer = indexBuffer;
+    }
+
+    public SegmentDescriptor descriptor() {
+        return descriptor;
+    }
+
+    public MemoryMappedFileBuffer segmentBuffer() {
+        return segmentBuffer;
+    }
+
+    public MemoryMappedFileBuffer indexBuffer() {
+        return indexBuffer;
+    }
+
+    /**
+     * Unmap files of segment which has not been rolled to.
+     */
+    @Override
+    public void close() throws IOException {
+        segmentBuffer.close();
+        indexBuffer.close();
+    }
+}
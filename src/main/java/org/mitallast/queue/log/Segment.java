@@ -11,25 +11,43 @@ import org.mitallast.queue.log.entry.LogEntry;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Segment supports single appender and concurrent readers. Entries are read from per call slices of segment
+ * buffer and do not touch shared reader index, appended entries become visible to readers when they are indexed.
+ * Readers pin segment while they read its buffers, so segment closed by compaction or truncate is unmapped
+ * only after last reader is done.
+ */
 public class Segment implements Closeable {
+
+    private final static AtomicIntegerFieldUpdater<Segment> referenceCountUpdater =
+        AtomicIntegerFieldUpdater.newUpdater(Segment.class, "referenceCount");
+
     private final File file;
     private final SegmentDescriptor descriptor;
     private final MemoryMappedFileBuffer fileBuffer;
     private final ByteBuf buffer;
-    private final StreamInput streamInput;
+    private final StreamService streamService;
     private final StreamOutput streamOutput;
     private final SegmentIndex offsetIndex;
-    private int skip = 0;
-    private boolean closed;
+    private volatile int skip = 0;
+    private volatile boolean closed;
+    // one reference is held by segment itself until close
+    private volatile int referenceCount = 1;
 
     public Segment(File file, SegmentDescriptor descriptor, SegmentIndex offsetIndex, StreamService streamService) throws IOException {
+        this(file, descriptor, new MemoryMappedFileBuffer(file, descriptor.maxSegmentSize()), offsetIndex, streamService);
+    }
+
+    public Segment(File file, SegmentDescriptor descriptor, MemoryMappedFileBuffer fileBuffer, SegmentIndex offsetIndex, StreamService streamService) throws IOException {
         this.file = file;
         this.descriptor = descriptor;
-        this.fileBuffer = new MemoryMappedFileBuffer(file, descriptor.maxSegmentSize());
+        this.fileBuffer = fileBuffer;
         this.buffer = fileBuffer.buffer();
         this.offsetIndex = offsetIndex;
-        this.streamInput = streamService.input(buffer);
+        this.streamService = streamService;
         this.streamOutput = streamService.output(buffer);
 
         buffer.writerIndex((int) offsetIndex.nextPosition());
@@ -55,6 +73,16 @@ public class Segment implements Closeable {
             || offsetIndex.size() >= descriptor.maxEntries();
     }
 
+    /**
+     * @return max of bytes and entries fill ratio, from 0 to 1
+     */
+    public double fill() {
+        return Math.max(
+            (double) size() / descriptor.maxSegmentSize(),
+            (double) offsetIndex.size() / descriptor.maxEntries()
+        );
+    }
+
     /**
      * @return size in bytes
      */
@@ -117,43 +145,112 @@ public class Segment implements Closeable {
         // flush();
 
         int end = buffer.writerIndex();
-        offsetIndex.index(offset, start, end - start, MessageStatus.QUEUED);
 
-        // Reset skip to zero since we wrote a new entry.
+        // Reset skip to zero since we wrote a new entry, before entry is published by index.
         skip = 0;
+        offsetIndex.index(offset, start, end - start, MessageStatus.QUEUED);
         return index;
     }
 
-    public <T extends LogEntry> T getEntry(long index) throws IOException {
+    /**
+     * Append entries starting from {@code from} while segment has room for them. Free index slots are
+     * reserved once per batch, entries are serialized one after another into segment buffer and then
+     * indexed in bulk. Entry which does not fit into segment buffer is discarded along with the rest of batch.
+     *
+     * @return count of appended entries, 0 if segment is full
+     */
+    public int appendEntries(List<? extends LogEntry> entries, int from) throws IOException {
         checkClosed();
-        checkRange(index);
+        int count = (int) Math.min(entries.size() - from, descriptor.maxEntries() - offsetIndex.size());
+        if (count <= 0 || size() >= descriptor.maxSegmentSize()) {
+            return 0;
+        }
+        long index = nextIndex();
+        for (int i = 0; i < count; i++) {
+            LogEntry entry = entries.get(from + i);
+            if (entry.index() != index + i) {
+                throw new IndexOutOfBoundsException("inconsistent index: " + entry.index() + " entry: " + entry);
+            }
+        }
 
-        // Get the offset of the index within this segment.
-        int offset = offset(index);
+        int[] bounds = new int[count + 1];
+        bounds[0] = buffer.writerIndex();
+        int appended = 0;
+        try {
+            for (; appended < count; appended++) {
+                EntryBuilder entryBuilder = entries.get(from + appended).toBuilder();
+                streamOutput.writeClass(entryBuilder.getClass());
+                streamOutput.writeStreamable(entryBuilder);
+                bounds[appended + 1] = buffer.writerIndex();
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // segment buffer is full, drop partially written entry
+            buffer.writerIndex(bounds[appended]);
+        }
+
+        if (appended > 0) {
+            // Reset skip to zero since we wrote new entries, before entries are published by index.
+            skip = 0;
+            offsetIndex.index(offset(index), bounds, appended, MessageStatus.QUEUED);
+        }
+        return appended;
+    }
 
-        // Get the start position of the offset from the offset index.
-        long position = offsetIndex.position(offset);
-
-        // If the position is -1 then that indicates no start position was found. The offset may have been removed from
-        // the index via deduplication or compaction.
-        if (position != -1) {
-            // Deserialize the entry from a slice of the underlying buffer.
-            buffer.readerIndex((int) position);
-            LogEntry.Builder<?, T> entryBuilder = streamInput.readStreamable();
-            entryBuilder.setIndex(index);
-            return entryBuilder.build();
+    public <T extends LogEntry> T getEntry(long index) throws IOException {
+        acquire();
+        try {
+            checkRange(index);
+
+            // Get the offset of the index within this segment.
+            int offset = offset(index);
+
+            // Get the start position and length of the offset from the offset index.
+            MessageMeta meta = offsetIndex.meta(offset);
+
+            // If the meta is null then that indicates no start position was found. The offset may have been removed from
+            // the index via deduplication or compaction.
+            if (meta != null) {
+                // Deserialize the entry from a slice of the underlying buffer, slice has own reader index.
+                StreamInput streamInput = streamService.input(buffer.slice((int) meta.position, meta.length));
+                LogEntry.Builder<?, T> entryBuilder = streamInput.readStreamable();
+                entryBuilder.setIndex(index);
+                return entryBuilder.build();
+            }
+            return null;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return size in bytes of serialized entry, -1 if entry is removed
+     */
+    public int entryLength(long index) throws IOException {
+        acquire();
+        try {
+            checkRange(index);
+            return offsetIndex.length(offset(index));
+        } finally {
+            release();
         }
-        return null;
     }
 
     public boolean containsIndex(long index) {
         checkClosed();
+        return inRange(index);
+    }
+
+    private boolean inRange(long index) {
         return !isEmpty() && index >= descriptor.index() && index <= lastIndex();
     }
 
     public boolean containsEntry(long index) throws IOException {
-        checkClosed();
-        return containsIndex(index) && offsetIndex.contains(offset(index));
+        acquire();
+        try {
+            return inRange(index) && offsetIndex.contains(offset(index));
+        } finally {
+            release();
+        }
     }
 
     public Segment skip(long entries) {
@@ -186,13 +283,34 @@ public class Segment implements Closeable {
         }
     }
 
+    private void acquire() {
+        while (true) {
+            int current = referenceCount;
+            if (current <= 0) {
+                throw new IllegalStateException("Segment is closed " + descriptor.id() + ":" + descriptor.version());
+            }
+            if (referenceCountUpdater.compareAndSet(this, current, current + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void release() throws IOException {
+        if (referenceCountUpdater.decrementAndGet(this) == 0) {
+            fileBuffer.close();
+            offsetIndex.close();
+        }
+    }
+
+    /**
+     * Buffers are closed now if segment is not read, otherwise by last reader.
+     */
     @Override
     public synchronized void close() throws IOException {
         if (!closed) {
             flush();
             closed = true;
-            fileBuffer.close();
-            offsetIndex.close();
+            release();
         }
     }
 }
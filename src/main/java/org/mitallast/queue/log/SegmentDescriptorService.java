@@ -45,8 +45,11 @@ public class SegmentDescriptorService extends AbstractComponent {
         return maxEntries;
     }
 
-    public SegmentDescriptor createDescriptor(long id, long index, long version) throws IOException {
-        SegmentDescriptor descriptor = SegmentDescriptor.builder()
+    /**
+     * Build descriptor without writing it to disk.
+     */
+    public SegmentDescriptor descriptor(long id, long index, long version) {
+        return SegmentDescriptor.builder()
             .setId(id)
             .setIndex(index)
             .setVersion(version)
@@ -54,6 +57,10 @@ public class SegmentDescriptorService extends AbstractComponent {
             .setMaxSegmentSize(maxSegmentSize)
             .setMaxEntries(maxEntries)
             .build();
+    }
+
+    public SegmentDescriptor createDescriptor(long id, long index, long version) throws IOException {
+        SegmentDescriptor descriptor = descriptor(id, index, version);
         File file = fileService.createDescriptorFile(descriptor);
         logger.info("write segment {}:{}", descriptor.id(), descriptor.version());
         try (StreamOutput output = streamService.output(file)) {
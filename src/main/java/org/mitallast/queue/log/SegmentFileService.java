@@ -28,7 +28,7 @@ public class SegmentFileService extends AbstractComponent {
     }
 
     public ImmutableList<SegmentFile> listDescriptorFiles() {
-        return listFiles(".descriptor");
+        return listFiles(".info");
     }
 
     public ImmutableList<SegmentFile> listFiles(String extension) {
@@ -54,6 +54,20 @@ public class SegmentFileService extends AbstractComponent {
         return new File(directory, String.format("log-%d-%d.index", descriptor.id(), descriptor.version()));
     }
 
+    /**
+     * Segment file mapped ahead of roll, renamed to segment file at roll.
+     */
+    public File createPreparedSegmentFile(SegmentDescriptor descriptor) {
+        return new File(directory, String.format("log-%d-%d.log.prepared", descriptor.id(), descriptor.version()));
+    }
+
+    /**
+     * Index file mapped ahead of roll, renamed to index file at roll.
+     */
+    public File createPreparedIndexFile(SegmentDescriptor descriptor) {
+        return new File(directory, String.format("log-%d-%d.index.prepared", descriptor.id(), descriptor.version()));
+    }
+
     public File createDescriptorFile(SegmentDescriptor descriptor) {
         return new File(directory, String.format("log-%d-%d.info", descriptor.id(), descriptor.version()));
     }
@@ -20,6 +20,9 @@ import java.util.BitSet;
  *     int status;
  * }
  * </pre>
+ * Index supports single writer and concurrent readers. Writer fills index slots before publishing them
+ * by volatile write of size and last offset, readers check range before reading slots.
+ * Truncate requires exclusive access.
  */
 public class SegmentIndex implements Closeable {
 
@@ -39,23 +42,33 @@ public class SegmentIndex implements Closeable {
     private final MemoryMappedFileBuffer fileBuffer;
 
     private ByteBuf buffer;
-    private int size = 0;
+    private volatile int size = 0;
 
-    private long firstOffset = -1;
-    private long lastOffset = -1;
+    private volatile long firstOffset = -1;
+    private volatile long lastOffset = -1;
 
     public SegmentIndex(File file, int maxEntries) throws IOException {
-        boolean needInit = file.length() > 0;
+        // file length is checked before mapping, which extends the file
+        this(file, maxEntries, file.length() > 0, new MemoryMappedFileBuffer(file, maxEntries * ENTRY_SIZE));
+    }
 
+    /**
+     * @param needInit if true, existing entries are read from buffer, else index is empty
+     * @param fileBuffer mapped buffer of at least {@code maxEntries * ENTRY_SIZE} bytes
+     */
+    public SegmentIndex(File file, int maxEntries, boolean needInit, MemoryMappedFileBuffer fileBuffer) throws IOException {
         this.file = file;
         this.maxSize = maxEntries * ENTRY_SIZE;
-        this.fileBuffer = new MemoryMappedFileBuffer(file, maxSize);
+        this.fileBuffer = fileBuffer;
         this.buffer = fileBuffer.buffer();
         this.bitsSize = (int) HashFunctions.toPow2(maxEntries);
         this.bits = new BitSet(this.bitsSize);
 
         if (needInit) {
             init();
+        } else {
+            // mark empty index, so zero filled file is not read as entries on reopen
+            buffer.setLong(0, -1);
         }
     }
 
@@ -87,14 +100,14 @@ public class SegmentIndex implements Closeable {
     }
 
     public long lastPosition() throws IOException {
-        return lastOffset >= 0
-            ? position(lastOffset)
+        return size > 0
+            ? buffer.getLong((size - 1) * ENTRY_SIZE + OFFSET_SIZE)
             : 0;
     }
 
     public int lastLength() throws IOException {
-        return lastOffset >= 0
-            ? length(lastOffset)
+        return size > 0
+            ? buffer.getInt((size - 1) * ENTRY_SIZE + OFFSET_SIZE + POSITION_SIZE)
             : 0;
     }
 
@@ -139,6 +152,38 @@ public class SegmentIndex implements Closeable {
         lastOffset = offset;
     }
 
+    /**
+     * Index {@code count} consecutive offsets starting at {@code offset}, entry {@code i} spans from
+     * {@code bounds[i]} to {@code bounds[i + 1]}. End of index marker is written once after the last entry.
+     */
+    public void index(long offset, int[] bounds, int count, MessageStatus status) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (lastOffset > -1 && offset <= lastOffset) {
+            throw new IllegalArgumentException("offset cannot be less than or equal to the last offset in the index");
+        }
+
+        int pos = size * ENTRY_SIZE;
+        for (int i = 0; i < count; i++, pos += ENTRY_SIZE) {
+            buffer.setLong(pos, offset + i);
+            buffer.setLong(pos + OFFSET_SIZE, bounds[i]);
+            buffer.setInt(pos + OFFSET_SIZE + POSITION_SIZE, bounds[i + 1] - bounds[i]);
+            buffer.setInt(pos + OFFSET_SIZE + POSITION_SIZE + LENGTH_SIZE, status.ordinal());
+            bits.set((int) ((offset + i) % bitsSize));
+        }
+        if (pos < maxSize) {
+            buffer.setLong(pos, -1);
+        }
+
+        if (firstOffset == -1) {
+            firstOffset = offset;
+        }
+
+        size += count;
+        lastOffset = offset + count - 1;
+    }
+
     public MessageMeta peek() throws IOException {
         for (int index = 0; index < maxSize; index += ENTRY_SIZE) {
             long offset = buffer.getLong(index);
@@ -180,7 +225,7 @@ public class SegmentIndex implements Closeable {
 
     public MessageMeta lock(long offset) throws IOException {
         int index = search(offset);
-        if (buffer.getLong(index) != offset) {
+        if (index == -1) {
             return null;
         }
         int status = buffer.getInt(index + OFFSET_SIZE + POSITION_SIZE + LENGTH_SIZE);
@@ -198,7 +243,7 @@ public class SegmentIndex implements Closeable {
 
     public MessageMeta unlockAndDelete(long offset) throws IOException {
         int index = search(offset);
-        if (buffer.getLong(index) != offset) {
+        if (index == -1) {
             return null;
         }
         int status = buffer.getInt(index + OFFSET_SIZE + POSITION_SIZE + LENGTH_SIZE);
@@ -216,7 +261,7 @@ public class SegmentIndex implements Closeable {
 
     public MessageMeta unlockAndQueue(long offset) throws IOException {
         int index = search(offset);
-        if (buffer.getLong(index) != offset) {
+        if (index == -1) {
             return null;
         }
         int status = buffer.getInt(index + OFFSET_SIZE + POSITION_SIZE + LENGTH_SIZE);
@@ -250,10 +295,6 @@ public class SegmentIndex implements Closeable {
     }
 
     public long position(long offset) throws IOException {
-        if (!bits.get((int) (offset % this.bitsSize))) {
-            return -1;
-        }
-
         int index = search(offset);
         if (index == -1) {
             return -1;
@@ -262,10 +303,6 @@ public class SegmentIndex implements Closeable {
     }
 
     public int length(long offset) throws IOException {
-        if (!bits.get((int) (offset % this.bitsSize))) {
-            return -1;
-        }
-
         int index = search(offset);
         if (index == -1) {
             return -1;
@@ -287,11 +324,31 @@ public class SegmentIndex implements Closeable {
         return true;
     }
 
+    /**
+     * @return true if index has no holes, so entry of offset is stored at slot {@code offset - firstOffset}.
+     * Offsets are dense until segment is compacted or entries are skipped.
+     */
+    public boolean isDense() {
+        return size > 0 && lastOffset - firstOffset + 1 == size;
+    }
+
+    /**
+     * @return position of index entry of offset in index buffer, -1 if offset is not indexed
+     */
     public int search(long offset) throws IOException {
-        if (size == 0) {
+        if (size == 0 || offset < firstOffset || offset > lastOffset) {
             return -1;
         }
+        if (isDense()) {
+            return (int) (offset - firstOffset) * ENTRY_SIZE;
+        }
+        if (!bits.get((int) (offset % this.bitsSize))) {
+            return -1;
+        }
+        return binarySearch(offset);
+    }
 
+    private int binarySearch(long offset) {
         int lo = 0;
         int hi = size - 1;
 
@@ -318,26 +375,44 @@ public class SegmentIndex implements Closeable {
         return -1;
     }
 
+    /**
+     * @return slot of first index entry with offset greater than given offset
+     */
+    private int higherSlot(long offset) {
+        if (offset < firstOffset) {
+            return 0;
+        }
+        if (isDense()) {
+            return (int) (offset - firstOffset) + 1;
+        }
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = lo + (hi - lo) / 2;
+            if (buffer.getLong(mid * ENTRY_SIZE) <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Remove all entries after offset. Entries are removed as a single range by moving end of index marker
+     * to the first removed slot.
+     */
     public void truncate(final long offset) throws IOException {
-        if (offset == lastOffset)
+        if (offset >= lastOffset)
             return;
 
-        int index = search(offset + 1);
-        if (index == -1)
-            throw new IllegalStateException("unknown offset: " + offset);
-
-        for (long i = offset + 1; i <= lastOffset; i++) {
-            int i_index = search(i);
-            if (i_index != -1) {
-                long i_position = buffer.getLong(i_index + OFFSET_SIZE);
-                if (i_position != -1) {
-                    size--;
-                }
-                // clear
-                buffer.setLong(i_index, -1);
-            }
+        int slot = higherSlot(offset);
+        buffer.setLong(slot * ENTRY_SIZE, -1);
+        size = slot;
+        lastOffset = offset;
+        if (size == 0) {
+            firstOffset = -1;
         }
-        this.lastOffset = offset;
     }
 
     public void delete() throws IOException {
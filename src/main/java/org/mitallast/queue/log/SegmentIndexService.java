@@ -1,6 +1,7 @@
 package org.mitallast.queue.log;
 
 import org.mitallast.queue.common.component.AbstractComponent;
+import org.mitallast.queue.common.mmap.MemoryMappedFileBuffer;
 import org.mitallast.queue.common.settings.Settings;
 
 import java.io.File;
@@ -25,6 +26,13 @@ public class SegmentIndexService extends AbstractComponent {
         return new SegmentIndex(file, (int) descriptor.maxEntries());
     }
 
+    /**
+     * Create empty index over buffer mapped ahead of time, buffer file should be renamed to index file.
+     */
+    public SegmentIndex createIndex(SegmentDescriptor descriptor, MemoryMappedFileBuffer fileBuffer) throws IOException {
+        return new SegmentIndex(fileService.createIndexFile(descriptor), (int) descriptor.maxEntries(), false, fileBuffer);
+    }
+
     public void deleteIndex(SegmentDescriptor descriptor) throws IOException {
         File file = fileService.createIndexFile(descriptor);
         if (file.exists()) {
@@ -2,6 +2,7 @@ package org.mitallast.queue.log;
 
 import com.google.common.collect.ImmutableSortedMap;
 import org.mitallast.queue.common.component.AbstractLifecycleComponent;
+import org.mitallast.queue.common.concurrent.NamedExecutors;
 import org.mitallast.queue.common.settings.Settings;
 
 import java.io.IOException;
@@ -9,18 +10,29 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class SegmentManager extends AbstractLifecycleComponent {
     private final SegmentDescriptorService descriptorService;
     private final SegmentService segmentService;
+    private final boolean preallocate;
+    private final double preallocateThreshold;
 
-    private Segment currentSegment;
-    private ImmutableSortedMap<Long, Segment> segments = ImmutableSortedMap.of();
+    private volatile ExecutorService preallocateExecutor;
+    // files of next segment, prepared in background once current segment passes fill threshold
+    private volatile Preallocation preallocated;
+
+    // written by appender, read by concurrent log readers
+    private volatile Segment currentSegment;
+    private volatile ImmutableSortedMap<Long, Segment> segments = ImmutableSortedMap.of();
 
     public SegmentManager(Settings settings, SegmentDescriptorService descriptorService, SegmentService segmentService) {
         super(settings);
         this.descriptorService = descriptorService;
         this.segmentService = segmentService;
+        this.preallocate = componentSettings.getAsBoolean("preallocate", true);
+        this.preallocateThreshold = componentSettings.getAsDouble("preallocate_threshold", 0.5);
     }
 
     public SegmentDescriptorService descriptorService() {
@@ -29,6 +41,10 @@ public class SegmentManager extends AbstractLifecycleComponent {
 
     @Override
     protected void doStart() throws IOException {
+        if (preallocate) {
+            preallocateExecutor = NamedExecutors.newSingleThreadPool("log-" + componentSettings.get("name", "default") + "-preallocate");
+        }
+
         // Load existing log segments from disk.
         ImmutableSortedMap.Builder<Long, Segment> builder = ImmutableSortedMap.naturalOrder();
         for (Segment segment : loadSegments()) {
@@ -47,6 +63,14 @@ public class SegmentManager extends AbstractLifecycleComponent {
 
     @Override
     protected void doStop() throws IOException {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = preallocateExecutor;
+            preallocateExecutor = null;
+        }
+        discardPreallocated();
+        NamedExecutors.terminate(executor);
+
         for (Segment segment : segments.values()) {
             logger.info("closing segment: {}", segment.descriptor().id());
             try {
@@ -83,14 +107,108 @@ public class SegmentManager extends AbstractLifecycleComponent {
         return currentSegment != null ? currentSegment : lastSegment();
     }
 
+    /**
+     * Start preparing files of next segment in background, once current segment fill passes threshold,
+     * so roll does not create, map and fault in files on appender thread.
+     */
+    public void checkPreallocate() {
+        if (preallocateExecutor == null || preallocated != null) {
+            return;
+        }
+        Segment segment = currentSegment;
+        if (segment != null && segment.fill() >= preallocateThreshold) {
+            Segment lastSegment = lastSegment();
+            if (lastSegment != null) {
+                preallocate(lastSegment.descriptor().id() + 1);
+            }
+        }
+    }
+
+    private synchronized void preallocate(long id) {
+        if (preallocateExecutor == null || preallocated != null) {
+            return;
+        }
+        SegmentDescriptor descriptor = descriptorService.descriptor(id, 0, 1);
+        logger.info("preallocate segment: {}:{}", descriptor.id(), descriptor.version());
+        Preallocation preallocation = new Preallocation(descriptor);
+        preallocated = preallocation;
+        preallocation.future = preallocateExecutor.submit(() -> prepare(preallocation));
+    }
+
+    private void prepare(Preallocation preallocation) {
+        PreparedSegment prepared = null;
+        Exception error = null;
+        try {
+            prepared = segmentService.prepareSegment(preallocation.descriptor);
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        synchronized (this) {
+            preallocation.done = true;
+            if (!preallocation.abandoned) {
+                if (error != null) {
+                    logger.warn("error preallocate segment", error);
+                }
+                preallocation.prepared = prepared;
+                return;
+            }
+        }
+        if (prepared != null) {
+            try {
+                deletePreallocated(prepared);
+            } catch (IOException e) {
+                logger.warn("error delete preallocated segment", e);
+            }
+        }
+    }
+
+    /**
+     * Roll never waits for preparation: if it is still in progress, it is abandoned and interrupted,
+     * and files it has prepared are deleted by preparation itself.
+     *
+     * @return prepared files of segment with given id, or null if there are none
+     */
+    private synchronized PreparedSegment takePreallocated(long id) throws IOException {
+        Preallocation preallocation = preallocated;
+        if (preallocation == null) {
+            return null;
+        }
+        preallocated = null;
+        if (!preallocation.done) {
+            logger.info("abandon preallocation of segment: {}:{}", preallocation.descriptor.id(), preallocation.descriptor.version());
+            preallocation.abandoned = true;
+            preallocation.future.cancel(true);
+            return null;
+        }
+        PreparedSegment prepared = preallocation.prepared;
+        if (prepared == null) {
+            return null;
+        }
+        if (prepared.descriptor().id() != id) {
+            deletePreallocated(prepared);
+            return null;
+        }
+        return prepared;
+    }
+
+    private void discardPreallocated() throws IOException {
+        // no segment has id -1, so prepared files are deleted
+        takePreallocated(-1);
+    }
+
+    private void deletePreallocated(PreparedSegment prepared) throws IOException {
+        logger.info("delete preallocated segment: {}:{}", prepared.descriptor().id(), prepared.descriptor().version());
+        prepared.close();
+        segmentService.deletePreparedSegment(prepared.descriptor());
+    }
+
     public Segment nextSegment() throws IOException {
         Segment lastSegment = lastSegment();
-        SegmentDescriptor descriptor = descriptorService.createDescriptor(
-            lastSegment != null ? lastSegment.descriptor().id() + 1 : 1,
-            currentSegment.lastIndex() + 1,
-            1
-        );
-        currentSegment = createSegment(descriptor);
+        long id = lastSegment != null ? lastSegment.descriptor().id() + 1 : 1;
+        PreparedSegment prepared = takePreallocated(id);
+        // descriptor is written at roll, because first index of segment is known only now
+        SegmentDescriptor descriptor = descriptorService.createDescriptor(id, currentSegment.lastIndex() + 1, 1);
+        currentSegment = prepared != null ? createSegment(descriptor, prepared) : createSegment(descriptor);
         segments = ImmutableSortedMap.<Long, Segment>naturalOrder()
             .putAll(segments)
             .put(descriptor.index(), currentSegment)
@@ -144,6 +262,18 @@ public class SegmentManager extends AbstractLifecycleComponent {
         return segment;
     }
 
+    private synchronized Segment createSegment(SegmentDescriptor descriptor, PreparedSegment prepared) throws IOException {
+        Segment segment;
+        try {
+            segment = segmentService.createSegment(descriptor, prepared);
+        } catch (IOException | RuntimeException e) {
+            prepared.close();
+            throw e;
+        }
+        logger.info("created segment from preallocated: {}:{}", segment.descriptor().id(), segment.descriptor().version());
+        return segment;
+    }
+
     private Collection<Segment> loadSegments() throws IOException {
         // Once we've constructed a map of the most recent descriptors, load the segments.
         List<Segment> segments = new ArrayList<>();
@@ -203,6 +333,21 @@ public class SegmentManager extends AbstractLifecycleComponent {
         }
     }
 
+    /**
+     * Background preparation of next segment files, fields are guarded by manager monitor.
+     */
+    private static class Preallocation {
+        private final SegmentDescriptor descriptor;
+        private Future<?> future;
+        private PreparedSegment prepared;
+        private boolean done;
+        private boolean abandoned;
+
+        private Preallocation(SegmentDescriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+    }
+
     private void deleteSegment(Segment segment) throws IOException {
         logger.info("deleting segment: {}:{}", segment.descriptor().id(), segment.descriptor().version());
         segment.close();
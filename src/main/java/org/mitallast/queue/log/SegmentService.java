@@ -1,22 +1,33 @@
 package org.mitallast.queue.log;
 
 import org.mitallast.queue.common.component.AbstractComponent;
+import org.mitallast.queue.common.mmap.MemoryMappedFileBuffer;
 import org.mitallast.queue.common.settings.Settings;
 import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.common.unit.ByteSizeUnit;
+import org.mitallast.queue.common.unit.ByteSizeValue;
+import org.mitallast.queue.common.unit.TimeValue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class SegmentService extends AbstractComponent {
     private final StreamService streamService;
     private final SegmentFileService fileService;
     private final SegmentIndexService indexService;
+    private final int touchChunkSize;
+    private final long touchInterval;
 
     public SegmentService(Settings settings, StreamService streamService, SegmentFileService fileService, SegmentIndexService indexService) {
         super(settings);
         this.streamService = streamService;
         this.fileService = fileService;
         this.indexService = indexService;
+        this.touchChunkSize = (int) componentSettings.getAsBytesSize("preallocate.chunk_size", new ByteSizeValue(1, ByteSizeUnit.MB)).bytes();
+        this.touchInterval = componentSettings.getAsTime("preallocate.chunk_interval", TimeValue.timeValueMillis(1)).millis();
     }
 
     public Segment createSegment(SegmentDescriptor descriptor) throws IOException {
@@ -29,6 +40,93 @@ public class SegmentService extends AbstractComponent {
         return new Segment(segmentFile, descriptor, indexService.createIndex(descriptor), streamService);
     }
 
+    /**
+     * Create segment over files prepared by {@link #prepareSegment(SegmentDescriptor)}.
+     * Prepared files are renamed to segment files only now, so preparation which is not finished at roll
+     * never touches files of segment created without it.
+     */
+    public Segment createSegment(SegmentDescriptor descriptor, PreparedSegment prepared) throws IOException {
+        if (descriptor.id() != prepared.descriptor().id() || descriptor.version() != prepared.descriptor().version()) {
+            throw new IllegalArgumentException("prepared segment " + prepared.descriptor().id() + ":" + prepared.descriptor().version()
+                + " does not match " + descriptor.id() + ":" + descriptor.version());
+        }
+        File segmentFile = fileService.createSegmentFile(descriptor);
+        File indexFile = fileService.createIndexFile(descriptor);
+        Files.move(prepared.indexBuffer().file().toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(prepared.segmentBuffer().file().toPath(), segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        SegmentIndex offsetIndex = indexService.createIndex(descriptor, prepared.indexBuffer());
+        return new Segment(segmentFile, descriptor, prepared.segmentBuffer(), offsetIndex, streamService);
+    }
+
+    /**
+     * Create and map prepared segment and index files, then fault in their pages by chunks with pause between chunks,
+     * so preparation does not saturate disk and page cache. Descriptor is used only for file names and sizes.
+     * Preparation is stopped by interrupt, files are deleted then.
+     */
+    public PreparedSegment prepareSegment(SegmentDescriptor descriptor) throws IOException {
+        // files may be left by previous run, which has not been rolled to
+        deletePreparedSegment(descriptor);
+        File segmentFile = fileService.createPreparedSegmentFile(descriptor);
+        File indexFile = fileService.createPreparedIndexFile(descriptor);
+        if (!segmentFile.exists()) {
+            if (!segmentFile.createNewFile()) {
+                throw new IOException("Error create new file: " + segmentFile);
+            }
+        }
+        if (!indexFile.exists()) {
+            if (!indexFile.createNewFile()) {
+                throw new IOException("Error create new file: " + indexFile);
+            }
+        }
+
+        MemoryMappedFileBuffer segmentBuffer = null;
+        MemoryMappedFileBuffer indexBuffer = null;
+        try {
+            segmentBuffer = new MemoryMappedFileBuffer(segmentFile, 0, descriptor.maxSegmentSize(), false);
+            indexBuffer = new MemoryMappedFileBuffer(indexFile, 0, descriptor.maxEntries() * SegmentIndex.ENTRY_SIZE, false);
+            // mark empty index, so files left after crash are read as empty segment
+            indexBuffer.buffer().setLong(0, -1);
+            touch(indexBuffer);
+            touch(segmentBuffer);
+            return new PreparedSegment(descriptor, segmentBuffer, indexBuffer);
+        } catch (IOException | RuntimeException e) {
+            if (segmentBuffer != null) {
+                segmentBuffer.close();
+            }
+            if (indexBuffer != null) {
+                indexBuffer.close();
+            }
+            try {
+                deletePreparedSegment(descriptor);
+            } catch (IOException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            throw e;
+        }
+    }
+
+    private void touch(MemoryMappedFileBuffer fileBuffer) throws IOException {
+        for (int offset = 0; offset < fileBuffer.capacity(); offset += touchChunkSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("segment preparation interrupted: " + fileBuffer.file());
+            }
+            fileBuffer.touch(offset, touchChunkSize);
+            if (touchInterval > 0) {
+                try {
+                    Thread.sleep(touchInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("segment preparation interrupted: " + fileBuffer.file());
+                }
+            }
+        }
+    }
+
+    public void deletePreparedSegment(SegmentDescriptor descriptor) throws IOException {
+        Files.deleteIfExists(fileService.createPreparedSegmentFile(descriptor).toPath());
+        Files.deleteIfExists(fileService.createPreparedIndexFile(descriptor).toPath());
+    }
+
     public void deleteSegment(SegmentDescriptor descriptor) throws IOException {
         indexService.deleteIndex(descriptor);
         File segmentFile = fileService.createSegmentFile(descriptor);
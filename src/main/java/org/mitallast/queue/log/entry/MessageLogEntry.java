@@ -0,0 +1,65 @@
+package org.mitallast.queue.log.entry;
+
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.io.IOException;
+
+/**
+ * Log entry of queue message. Message read from segment holds slice of segment buffer and must be released.
+ */
+public class MessageLogEntry extends LogEntry<MessageLogEntry> {
+    private final QueueMessage message;
+
+    public MessageLogEntry(long index, QueueMessage message) {
+        super(index);
+        this.message = message;
+    }
+
+    public QueueMessage message() {
+        return message;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return new Builder().from(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder extends LogEntry.Builder<Builder, MessageLogEntry> {
+        private QueueMessage message;
+
+        @Override
+        public Builder from(MessageLogEntry entry) {
+            message = entry.message;
+            return super.from(entry);
+        }
+
+        public Builder setMessage(QueueMessage message) {
+            this.message = message;
+            return this;
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            super.readFrom(stream);
+            message = new QueueMessage();
+            message.readFrom(stream);
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            super.writeTo(stream);
+            message.writeTo(stream);
+        }
+
+        @Override
+        public MessageLogEntry build() {
+            return new MessageLogEntry(index, message);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.mitallast.queue.log.group;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.mitallast.queue.common.manifest.Manifest;
+import org.mitallast.queue.log.Log;
+import org.mitallast.queue.log.entry.MessageLogEntry;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stream of messages appended to log and read by consumer groups.
+ * <p/>
+ * Each group reads log from it's own offset, so groups consume same entries at their own pace
+ * without copying messages per group. Consumers of one group share group offset and receive disjoint batches.
+ * <p/>
+ * Committed offsets are persisted to manifest and group resumes from committed offset after restart,
+ * so entries read but not committed are delivered again. Messages are read as slices of segment buffers
+ * and must be released after use.
+ * <p/>
+ * Appends are serialized by append lock. Read of group reserves next batch under group lock and decodes
+ * entries outside of locks, so consumers decode batches in parallel with each other and with appender.
+ */
+public class ConsumerGroupLog implements Closeable {
+
+    private final String name;
+    private final Log log;
+    private final Manifest<GroupOffsetRecord> manifest;
+    private final int manifestSnapshotRecords;
+    private final Object appendLock = new Object();
+    // next offset to read by group
+    private final Map<String, Long> readOffsets = new HashMap<>();
+    private final Map<String, Long> committedOffsets = new HashMap<>();
+
+    public ConsumerGroupLog(String name, Log log, Manifest<GroupOffsetRecord> manifest, int manifestSnapshotRecords) throws IOException {
+        this.name = name;
+        this.log = log;
+        this.manifest = manifest;
+        this.manifestSnapshotRecords = manifestSnapshotRecords;
+
+        for (GroupOffsetRecord record : manifest.open()) {
+            committedOffsets.put(record.getGroup(), record.getOffset());
+        }
+        readOffsets.putAll(committedOffsets);
+        if (manifest.appended() != committedOffsets.size()) {
+            snapshot();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Log log() {
+        return log;
+    }
+
+    /**
+     * @return index of appended entry
+     */
+    public long append(QueueMessage message) throws IOException {
+        synchronized (appendLock) {
+            return log.appendEntry(MessageLogEntry.builder()
+                .setIndex(log.nextIndex())
+                .setMessage(message)
+                .build());
+        }
+    }
+
+    /**
+     * @return index of last appended entry
+     */
+    public long append(List<QueueMessage> messages) throws IOException {
+        synchronized (appendLock) {
+            long index = log.nextIndex();
+            List<MessageLogEntry> entries = new ArrayList<>(messages.size());
+            for (QueueMessage message : messages) {
+                entries.add(MessageLogEntry.builder()
+                    .setIndex(index++)
+                    .setMessage(message)
+                    .build());
+            }
+            return log.appendEntries(entries);
+        }
+    }
+
+    /**
+     * Reads next batch of group and moves group read offset after it.
+     * Batch is limited by count of entries and by size in bytes of serialized entries,
+     * first entry is returned even if it is greater than max bytes.
+     *
+     * @return entries in index order, empty if group has read all entries
+     */
+    public ImmutableList<MessageLogEntry> read(String group, int maxEntries, long maxBytes) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("max entries should be positive: " + maxEntries);
+        }
+        // reserve batch using index only
+        final long start;
+        final long end;
+        synchronized (this) {
+            if (log.isEmpty()) {
+                return ImmutableList.of();
+            }
+            final long lastIndex = log.lastIndex();
+            long offset = Math.max(readOffset(group), log.firstIndex());
+            start = offset;
+            long bytes = 0;
+            int count = 0;
+            while (offset <= lastIndex && count < maxEntries) {
+                int length = log.entryLength(offset);
+                if (length > 0) {
+                    if (count > 0 && bytes + length > maxBytes) {
+                        break;
+                    }
+                    bytes += length;
+                    count++;
+                }
+                offset++;
+            }
+            end = offset;
+            readOffsets.put(group, end);
+        }
+        // decode reserved batch
+        List<MessageLogEntry> entries = new ArrayList<>((int) Math.min(end - start, 1024));
+        for (long index = start; index < end; index++) {
+            MessageLogEntry entry = log.getEntry(index);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return ImmutableList.copyOf(entries);
+    }
+
+    /**
+     * @return next offset to read by group
+     */
+    public synchronized long readOffset(String group) {
+        Long offset = readOffsets.get(group);
+        if (offset == null) {
+            offset = committedOffset(group);
+        }
+        return offset;
+    }
+
+    /**
+     * @return committed offset of group, first index of log if group has no committed offset
+     */
+    public synchronized long committedOffset(String group) {
+        Long offset = committedOffsets.get(group);
+        return offset != null ? offset : Math.max(log.firstIndex(), 1);
+    }
+
+    /**
+     * Persists offset of next entry to read by group after restart.
+     * Read offset of group is moved forward to committed offset.
+     */
+    public synchronized void commit(String group, long offset) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset should not be negative: " + offset);
+        }
+        manifest.append(new GroupOffsetRecord(group, offset));
+        committedOffsets.put(group, offset);
+        if (readOffset(group) < offset) {
+            readOffsets.put(group, offset);
+        }
+        if (manifest.appended() >= Math.max(manifestSnapshotRecords, committedOffsets.size() * 2)) {
+            snapshot();
+        }
+    }
+
+    /**
+     * @return committed offsets of groups
+     */
+    public synchronized ImmutableMap<String, Long> groups() {
+        return ImmutableMap.copyOf(committedOffsets);
+    }
+
+    private void snapshot() throws IOException {
+        List<GroupOffsetRecord> records = new ArrayList<>(committedOffsets.size());
+        for (Map.Entry<String, Long> entry : committedOffsets.entrySet()) {
+            records.add(new GroupOffsetRecord(entry.getKey(), entry.getValue()));
+        }
+        manifest.snapshot(records);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        manifest.close();
+    }
+}
@@ -0,0 +1,73 @@
+package org.mitallast.queue.log.group;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import org.mitallast.queue.common.Immutable;
+import org.mitallast.queue.common.component.AbstractLifecycleComponent;
+import org.mitallast.queue.common.manifest.Manifest;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.log.Log;
+import org.mitallast.queue.log.LogService;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Stream queues: logs of messages with consumer groups, opened on first use.
+ * Stream log is stored in log directory {@code work_dir/stream-<name>}, with groups manifest in same directory.
+ */
+public class ConsumerGroupLogService extends AbstractLifecycleComponent {
+
+    private final static String logPrefix = "stream-";
+    private final static String manifestFileName = "groups.manifest";
+
+    private final StreamService streamService;
+    private final LogService logService;
+    private final int manifestSnapshotRecords;
+    private ImmutableMap<String, ConsumerGroupLog> logMap = ImmutableMap.of();
+
+    @Inject
+    public ConsumerGroupLogService(Settings settings, StreamService streamService, LogService logService) {
+        super(settings);
+        this.streamService = streamService;
+        this.logService = logService;
+        this.manifestSnapshotRecords = componentSettings.getAsInt("manifest_snapshot_records", 1024);
+    }
+
+    public synchronized ConsumerGroupLog log(String name) throws IOException {
+        ConsumerGroupLog groupLog = logMap.get(name);
+        if (groupLog == null) {
+            final String logName = logPrefix + name;
+            final Log log = logService.log(logName);
+            final File logDir = new File(settings.get("work_dir", "data"), logName);
+            final Manifest<GroupOffsetRecord> manifest = new Manifest<>(streamService, new File(logDir, manifestFileName), GroupOffsetRecord::new);
+            groupLog = new ConsumerGroupLog(name, log, manifest, manifestSnapshotRecords);
+            logMap = Immutable.compose(logMap, name, groupLog);
+            logger.info("open stream {}, groups {}", name, groupLog.groups());
+        }
+        return groupLog;
+    }
+
+    @Override
+    protected void doStart() throws IOException {
+
+    }
+
+    @Override
+    protected void doStop() throws IOException {
+
+    }
+
+    @Override
+    protected synchronized void doClose() throws IOException {
+        for (ConsumerGroupLog groupLog : logMap.values()) {
+            try {
+                groupLog.close();
+            } catch (IOException e) {
+                logger.error("error close stream {}", groupLog.name(), e);
+            }
+        }
+        logMap = ImmutableMap.of();
+    }
+}
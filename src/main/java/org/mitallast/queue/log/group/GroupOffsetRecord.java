@@ -0,0 +1,52 @@
+package org.mitallast.queue.log.group;
+
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.stream.Streamable;
+
+import java.io.IOException;
+
+/**
+ * Consumer groups manifest record, last record of group is it's committed offset.
+ */
+public class GroupOffsetRecord implements Streamable {
+
+    private String group;
+    private long offset;
+
+    public GroupOffsetRecord() {
+    }
+
+    public GroupOffsetRecord(String group, long offset) {
+        this.group = group;
+        this.offset = offset;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void readFrom(StreamInput stream) throws IOException {
+        group = stream.readText();
+        offset = stream.readLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput stream) throws IOException {
+        stream.writeText(group);
+        stream.writeLong(offset);
+    }
+
+    @Override
+    public String toString() {
+        return "GroupOffsetRecord{" +
+            "group='" + group + '\'' +
+            ", offset=" + offset +
+            '}';
+    }
+}
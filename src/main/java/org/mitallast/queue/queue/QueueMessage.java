@@ -25,6 +25,8 @@ public class QueueMessage implements ToXStream, Streamable {
     private UUID uuid;
     private QueueMessageType type;
     private ByteBuf buffer;
+    private long deliverAt;
+    private long ttl;
 
     public QueueMessage() {
     }
@@ -56,6 +58,28 @@ public class QueueMessage implements ToXStream, Streamable {
         return type;
     }
 
+    /**
+     * @return time in millis when message is queued, 0 to queue on push
+     */
+    public long getDeliverAt() {
+        return deliverAt;
+    }
+
+    public void setDeliverAt(long deliverAt) {
+        this.deliverAt = deliverAt;
+    }
+
+    /**
+     * @return time to live in millis since message is queued, 0 if message does not expire
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
     public String getMessage() {
         return buffer.toString(defaultCharset);
     }
@@ -69,6 +93,13 @@ public class QueueMessage implements ToXStream, Streamable {
         return Unpooled.wrappedBuffer(buffer);
     }
 
+    /**
+     * @return view of message bytes sharing memory and reference count with message buffer, must be released
+     */
+    public ByteBuf retainedSource() {
+        return buffer.slice(0, buffer.writerIndex()).retain();
+    }
+
     public void setSource(TreeNode tree) throws IOException {
         JsonFactory jsonFactory = new JsonFactory();
         if (buffer == null) {
@@ -90,6 +121,16 @@ public class QueueMessage implements ToXStream, Streamable {
         this.buffer = buffer;
     }
 
+    /**
+     * Release message buffer after last use. Required for messages read by zero-copy path,
+     * which hold mapped pages of queue segment.
+     */
+    public void release() {
+        if (buffer != null && buffer.refCnt() > 0) {
+            buffer.release();
+        }
+    }
+
     @Override
     public void toXStream(XStreamBuilder builder) throws IOException {
         builder.writeStartObject();
@@ -105,6 +146,12 @@ public class QueueMessage implements ToXStream, Streamable {
                 builder.writeRawField("message", buffer);
             }
         }
+        if (deliverAt > 0) {
+            builder.writeNumberField("deliver_at", deliverAt);
+        }
+        if (ttl > 0) {
+            builder.writeNumberField("ttl", ttl);
+        }
         builder.writeEndObject();
     }
 
@@ -113,6 +160,8 @@ public class QueueMessage implements ToXStream, Streamable {
         uuid = stream.readUUIDOrNull();
         type = stream.readEnumOrNull(QueueMessageType.class);
         buffer = stream.readByteBufOrNull();
+        deliverAt = stream.readLong();
+        ttl = stream.readLong();
     }
 
     @Override
@@ -120,6 +169,8 @@ public class QueueMessage implements ToXStream, Streamable {
         stream.writeUUIDOrNull(uuid);
         stream.writeEnumOrNull(type);
         stream.writeByteBufOrNull(buffer);
+        stream.writeLong(deliverAt);
+        stream.writeLong(ttl);
     }
 
     @Override
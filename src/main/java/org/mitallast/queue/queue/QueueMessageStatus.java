@@ -1,5 +1,5 @@
 package org.mitallast.queue.queue;
 
 public enum QueueMessageStatus {
-    INIT, QUEUED, LOCKED, DELETED
+    INIT, QUEUED, LOCKED, DELETED, DELAYED
 }
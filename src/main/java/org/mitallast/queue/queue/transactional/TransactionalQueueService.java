@@ -1,11 +1,15 @@
 package org.mitallast.queue.queue.transactional;
 
+import com.google.common.collect.ImmutableList;
 import org.mitallast.queue.queue.QueueComponent;
 import org.mitallast.queue.queue.QueueMessage;
 import org.mitallast.queue.queues.stats.QueueStats;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public interface TransactionalQueueService extends TransactionalQueueComponent, QueueComponent {
 
@@ -13,6 +17,22 @@ public interface TransactionalQueueService extends TransactionalQueueComponent,
 
     public boolean push(QueueMessage queueMessage) throws IOException;
 
+    /**
+     * Push messages in order, new messages are written to segment in batches.
+     */
+    public boolean push(List<QueueMessage> queueMessages) throws IOException;
+
+    /**
+     * Lock and pop up to size queued messages.
+     */
+    public ImmutableList<QueueMessage> lockAndPop(int size) throws IOException;
+
+    /**
+     * Lock and pop message, if queue is empty wait up to timeout for message to be queued.
+     * Future is completed with null if no message was queued in time.
+     */
+    public CompletableFuture<QueueMessage> lockAndPop(long timeout, TimeUnit unit) throws IOException;
+
     public QueueStats stats() throws IOException;
 
     public void delete() throws IOException;
@@ -0,0 +1,484 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+import com.google.common.collect.ImmutableList;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.queue.Queue;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.transactional.AbstractQueueService;
+import org.mitallast.queue.queue.transactional.QueueTransaction;
+import org.mitallast.queue.queue.transactional.TransactionalQueueService;
+import org.mitallast.queue.queues.stats.QueueStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Queue of independent partitions, each partition is mmap queue with own segments, locks, timers and directory,
+ * so pushes and pops of different partitions do not contend.
+ * <p/>
+ * Message with uuid is routed to partition by uuid, so duplicates are detected in single partition,
+ * new messages are routed round-robin. Lookup by uuid reads partitions which may contain message
+ * by their segment filters, starting from routed partition.
+ * Pop starts from partition of current thread and steals from other partitions, order is FIFO within partition.
+ * <p/>
+ * Count of partitions can not be changed for existing queue.
+ */
+public class MMapPartitionedQueueService extends AbstractQueueService implements TransactionalQueueService {
+
+    public final static int MAX_PARTITIONS = 1024;
+    private final static int TRANSACTION_PURGE_INTERVAL = 1024;
+
+    private final ImmutableList<MMapTransactionalQueueService> partitions;
+    private final AtomicInteger pushCounter;
+    private final ConcurrentMap<UUID, PartitionedQueueTransaction> transactionMap;
+    private final AtomicInteger transactionCounter;
+
+    public MMapPartitionedQueueService(Settings settings, Settings queueSettings, Queue queue, StreamService streamService) {
+        super(settings, queueSettings, queue);
+        final int partitionsCount = queueSettings.getAsInt("partitions", 1);
+        if (partitionsCount < 1 || partitionsCount > MAX_PARTITIONS) {
+            throw new IllegalArgumentException("partitions should be in range [1, " + MAX_PARTITIONS + "]: " + partitionsCount);
+        }
+        // partition queue directory is work_dir/queue/partition-N
+        final File queueDir = new File(this.settings.get("work_dir", "data"), queue.getName());
+        final Settings partitionSettings = ImmutableSettings.builder()
+            .put(this.settings)
+            .put("work_dir", queueDir.getPath())
+            .build();
+        final ImmutableList.Builder<MMapTransactionalQueueService> builder = ImmutableList.builder();
+        for (int i = 0; i < partitionsCount; i++) {
+            builder.add(new MMapTransactionalQueueService(partitionSettings, queueSettings, new Queue("partition-" + i), streamService));
+        }
+        partitions = builder.build();
+        pushCounter = new AtomicInteger();
+        transactionMap = new ConcurrentHashMap<>();
+        transactionCounter = new AtomicInteger();
+    }
+
+    @Override
+    protected void doStart() throws IOException {
+        for (MMapTransactionalQueueService partition : partitions) {
+            partition.start();
+        }
+    }
+
+    @Override
+    protected void doStop() throws IOException {
+        for (MMapTransactionalQueueService partition : partitions) {
+            partition.stop();
+        }
+        transactionMap.clear();
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        for (MMapTransactionalQueueService partition : partitions) {
+            partition.close();
+        }
+    }
+
+    public int partitionsSize() {
+        return partitions.size();
+    }
+
+    public MMapTransactionalQueueService partition(int index) {
+        return partitions.get(index);
+    }
+
+    /**
+     * Uuid hash is spread, so time based uuids of consecutive messages are spread over partitions.
+     */
+    private int partition(UUID uuid) {
+        int hash = uuid.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return (hash & 0x7fffffff) % partitions.size();
+    }
+
+    private int nextPartition() {
+        return (pushCounter.getAndIncrement() & 0x7fffffff) % partitions.size();
+    }
+
+    /**
+     * Pop of each thread starts from it's own partition, so consumers do not contend on head of single partition.
+     */
+    private int homePartition() {
+        return (int) (Thread.currentThread().getId() % partitions.size());
+    }
+
+    @Override
+    public QueueTransaction transaction(UUID id) {
+        final PartitionedQueueTransaction transaction = transactionMap.computeIfAbsent(id, PartitionedQueueTransaction::new);
+        // purged outside of mapping function, map must not be updated by it
+        if (transactionCounter.incrementAndGet() % TRANSACTION_PURGE_INTERVAL == 0) {
+            purgeTransactions();
+        }
+        return transaction;
+    }
+
+    /**
+     * Remove transactions completed in all partitions without commit or rollback, i.e. expired by lease.
+     */
+    private void purgeTransactions() {
+        for (PartitionedQueueTransaction transaction : transactionMap.values()) {
+            if (transaction.isExpired()) {
+                transactionMap.remove(transaction.id, transaction);
+            }
+        }
+    }
+
+    @Override
+    public QueueMessage get(UUID uuid) throws IOException {
+        return find(uuid, MMapTransactionalQueueService::get);
+    }
+
+    @Override
+    public QueueMessage lock(UUID uuid) throws IOException {
+        return find(uuid, MMapTransactionalQueueService::lock);
+    }
+
+    @Override
+    public QueueMessage unlockAndDelete(UUID uuid) throws IOException {
+        return find(uuid, MMapTransactionalQueueService::unlockAndDelete);
+    }
+
+    @Override
+    public QueueMessage unlockAndRollback(UUID uuid) throws IOException {
+        return find(uuid, MMapTransactionalQueueService::unlockAndRollback);
+    }
+
+    /**
+     * Apply operation to partitions which may contain message, starting from routed partition.
+     */
+    private QueueMessage find(UUID uuid, PartitionOperation operation) throws IOException {
+        final int routed = partition(uuid);
+        for (int i = 0; i < partitions.size(); i++) {
+            final MMapTransactionalQueueService partition = partitions.get((routed + i) % partitions.size());
+            if (partition.mightContain(uuid)) {
+                QueueMessage queueMessage = operation.apply(partition, uuid);
+                if (queueMessage != null) {
+                    return queueMessage;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public QueueMessage peek() throws IOException {
+        final int home = homePartition();
+        for (int i = 0; i < partitions.size(); i++) {
+            QueueMessage queueMessage = partitions.get((home + i) % partitions.size()).peek();
+            if (queueMessage != null) {
+                return queueMessage;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public QueueMessage lockAndPop() throws IOException {
+        final int home = homePartition();
+        for (int i = 0; i < partitions.size(); i++) {
+            QueueMessage queueMessage = partitions.get((home + i) % partitions.size()).lockAndPop();
+            if (queueMessage != null) {
+                return queueMessage;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public ImmutableList<QueueMessage> lockAndPop(int size) throws IOException {
+        final ImmutableList.Builder<QueueMessage> builder = ImmutableList.builder();
+        final int home = homePartition();
+        int count = 0;
+        for (int i = 0; i < partitions.size() && count < size; i++) {
+            ImmutableList<QueueMessage> queueMessages = partitions.get((home + i) % partitions.size()).lockAndPop(size - count);
+            builder.addAll(queueMessages);
+            count += queueMessages.size();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Waits on all partitions, first popped message completes future,
+     * messages popped by other partitions concurrently are rolled back.
+     */
+    @Override
+    public CompletableFuture<QueueMessage> lockAndPop(long timeout, TimeUnit unit) throws IOException {
+        final QueueMessage queueMessage = lockAndPop();
+        if (queueMessage != null || timeout <= 0) {
+            return CompletableFuture.completedFuture(queueMessage);
+        }
+        final CompletableFuture<QueueMessage> result = new CompletableFuture<>();
+        final List<CompletableFuture<QueueMessage>> waiters = new ArrayList<>(partitions.size());
+        final AtomicInteger pending = new AtomicInteger(partitions.size());
+        for (MMapTransactionalQueueService partition : partitions) {
+            final CompletableFuture<QueueMessage> waiter = partition.lockAndPop(timeout, unit);
+            waiters.add(waiter);
+            waiter.whenComplete((message, error) -> {
+                if (message != null) {
+                    if (!result.complete(message)) {
+                        rollback(partition, message);
+                    }
+                } else if (error != null) {
+                    result.completeExceptionally(error);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    result.complete(null);
+                }
+            });
+            if (result.isDone()) {
+                break;
+            }
+        }
+        // parked waiters of other partitions are done with null, so they do not pop messages
+        result.whenComplete((message, error) -> {
+            for (CompletableFuture<QueueMessage> waiter : waiters) {
+                waiter.complete(null);
+            }
+        });
+        return result;
+    }
+
+    private void rollback(MMapTransactionalQueueService partition, QueueMessage queueMessage) {
+        queueMessage.release();
+        try {
+            QueueMessage rolledBack = partition.unlockAndRollback(queueMessage.getUuid());
+            if (rolledBack != null) {
+                rolledBack.release();
+            }
+        } catch (IOException e) {
+            logger.error("error rollback message {}", queueMessage.getUuid(), e);
+        }
+    }
+
+    @Override
+    public boolean push(QueueMessage queueMessage) throws IOException {
+        if (queueMessage.getUuid() == null) {
+            return partitions.get(nextPartition()).push(queueMessage);
+        }
+        return partitions.get(partition(queueMessage.getUuid())).push(queueMessage);
+    }
+
+    /**
+     * New messages of batch are written to single partition, messages with uuid to routed partitions.
+     */
+    @Override
+    public boolean push(List<QueueMessage> queueMessages) throws IOException {
+        final List<List<QueueMessage>> batches = new ArrayList<>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            batches.add(null);
+        }
+        final int next = nextPartition();
+        for (QueueMessage queueMessage : queueMessages) {
+            final int partition = queueMessage.getUuid() == null ? next : partition(queueMessage.getUuid());
+            List<QueueMessage> batch = batches.get(partition);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.set(partition, batch);
+            }
+            batch.add(queueMessage);
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            if (batches.get(i) != null) {
+                partitions.get(i).push(batches.get(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return count of messages ready to pop in all partitions
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (MMapTransactionalQueueService partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @Override
+    public QueueStats stats() {
+        final QueueStats stats = new QueueStats();
+        stats.setQueue(queue);
+        for (MMapTransactionalQueueService partition : partitions) {
+            final QueueStats partitionStats = partition.stats();
+            stats.setSize(stats.getSize() + partitionStats.getSize());
+            stats.setLockedSize(stats.getLockedSize() + partitionStats.getLockedSize());
+            stats.setDelayedSize(stats.getDelayedSize() + partitionStats.getDelayedSize());
+            stats.setDeletedSize(stats.getDeletedSize() + partitionStats.getDeletedSize());
+            stats.setBytes(stats.getBytes() + partitionStats.getBytes());
+            stats.setPushCount(stats.getPushCount() + partitionStats.getPushCount());
+            stats.setPopCount(stats.getPopCount() + partitionStats.getPopCount());
+            stats.setPushRate(stats.getPushRate() + partitionStats.getPushRate());
+            stats.setPopRate(stats.getPopRate() + partitionStats.getPopRate());
+            stats.setOldestAge(Math.max(stats.getOldestAge(), partitionStats.getOldestAge()));
+            stats.setFlushCount(stats.getFlushCount() + partitionStats.getFlushCount());
+            stats.setFlushBatchMax(Math.max(stats.getFlushBatchMax(), partitionStats.getFlushBatchMax()));
+            stats.setFlushWaitCount(stats.getFlushWaitCount() + partitionStats.getFlushWaitCount());
+            stats.setFlushWaitNanos(stats.getFlushWaitNanos() + partitionStats.getFlushWaitNanos());
+            stats.setFlushWaitMaxNanos(Math.max(stats.getFlushWaitMaxNanos(), partitionStats.getFlushWaitMaxNanos()));
+        }
+        return stats;
+    }
+
+    @Override
+    public void delete() throws IOException {
+        for (MMapTransactionalQueueService partition : partitions) {
+            partition.delete();
+        }
+    }
+
+    private interface PartitionOperation {
+        QueueMessage apply(MMapTransactionalQueueService partition, UUID uuid) throws IOException;
+    }
+
+    /**
+     * Transaction is started in partition on first operation with it, commit and rollback are applied
+     * to each started partition transaction in partition order, so commit is not atomic across partitions.
+     * Partition transactions have own leases, expired partition transaction fails commit.
+     */
+    private class PartitionedQueueTransaction implements QueueTransaction {
+        private final UUID id;
+        private final AtomicReferenceArray<QueueTransaction> transactions;
+
+        private PartitionedQueueTransaction(UUID id) {
+            this.id = id;
+            this.transactions = new AtomicReferenceArray<>(partitions.size());
+            // started eagerly, so abandoned transaction is expired by lease of it's partition
+            transaction(partition(id));
+        }
+
+        private QueueTransaction transaction(int partition) {
+            QueueTransaction transaction = transactions.get(partition);
+            if (transaction == null) {
+                transactions.compareAndSet(partition, null, partitions.get(partition).transaction(id));
+                transaction = transactions.get(partition);
+            }
+            return transaction;
+        }
+
+        /**
+         * @return true if all started partition transactions are completed
+         */
+        private boolean isExpired() {
+            for (int i = 0; i < transactions.length(); i++) {
+                final QueueTransaction transaction = transactions.get(i);
+                if (transaction != null && partitions.get(i).activeTransaction(id) == transaction) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public UUID id() throws IOException {
+            return id;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            try {
+                complete(true);
+            } finally {
+                transactionMap.remove(id, this);
+            }
+        }
+
+        @Override
+        public void rollback() throws IOException {
+            try {
+                complete(false);
+            } finally {
+                transactionMap.remove(id, this);
+            }
+        }
+
+        /**
+         * Complete all started partition transactions, first error is thrown after all partitions are completed.
+         */
+        private void complete(boolean commit) throws IOException {
+            IOException error = null;
+            for (int i = 0; i < transactions.length(); i++) {
+                final QueueTransaction transaction = transactions.get(i);
+                if (transaction == null) {
+                    continue;
+                }
+                try {
+                    if (commit) {
+                        transaction.commit();
+                    } else {
+                        transaction.rollback();
+                    }
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        /**
+         * New messages are pushed to partition of transaction, so short transaction is started in single partition.
+         */
+        @Override
+        public void push(QueueMessage queueMessage) throws IOException {
+            if (queueMessage.getUuid() == null) {
+                transaction(partition(id)).push(queueMessage);
+            } else {
+                transaction(partition(queueMessage.getUuid())).push(queueMessage);
+            }
+        }
+
+        @Override
+        public QueueMessage pop() throws IOException {
+            final int home = homePartition();
+            for (int i = 0; i < partitions.size(); i++) {
+                final int partition = (home + i) % partitions.size();
+                if (partitions.get(partition).size() > 0) {
+                    QueueMessage queueMessage = transaction(partition).pop();
+                    if (queueMessage != null) {
+                        return queueMessage;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public QueueMessage delete(UUID uuid) throws IOException {
+            final int routed = partition(uuid);
+            for (int i = 0; i < partitions.size(); i++) {
+                final int partition = (routed + i) % partitions.size();
+                if (partitions.get(partition).mightContain(uuid)) {
+                    QueueMessage queueMessage = transaction(partition).delete(uuid);
+                    if (queueMessage != null) {
+                        return queueMessage;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+public enum MMapQueueDurability {
+    /**
+     * Pages are flushed on close only.
+     */
+    NONE,
+    /**
+     * Pages are flushed in background at fixed interval, push is acknowledged without wait.
+     */
+    INTERVAL,
+    /**
+     * Push and commit wait for shared flush of all requests accumulated in batch window.
+     */
+    GROUP
+}
@@ -0,0 +1,247 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+import org.mitallast.queue.common.component.AbstractComponent;
+import org.mitallast.queue.common.concurrent.NamedExecutors;
+import org.mitallast.queue.common.settings.Settings;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group commit of mapped pages.
+ * <p>
+ * In group mode each {@link #sync()} takes a ticket and waits until flush thread forces pages with ticket included.
+ * Flush thread takes all tickets requested before flush start as one batch, so concurrent writers share one fsync.
+ * Each waiter holds it's batch and receives result of that batch, independent of results of other batches.
+ */
+public class MMapQueueFlusher extends AbstractComponent implements Closeable {
+
+    private final MMapQueueDurability durability;
+    private final Flushable target;
+    private final long windowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition requestedCondition = lock.newCondition();
+    private final Condition flushedCondition = lock.newCondition();
+    private long requested = 0;
+    private long flushed = 0;
+    // batch joined by new tickets, replaced when flush thread takes it
+    private Batch pending = new Batch();
+    private boolean closed;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushBatchTotal = new AtomicLong();
+    private final AtomicLong flushBatchMax = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+
+    private ScheduledExecutorService intervalExecutor;
+    private ExecutorService groupExecutor;
+
+    public MMapQueueFlusher(Settings settings, String name, MMapQueueDurability durability, long intervalMillis, long windowNanos, Flushable target) {
+        super(settings);
+        this.durability = durability;
+        this.target = target;
+        this.windowNanos = windowNanos;
+        switch (durability) {
+            case INTERVAL:
+                intervalExecutor = NamedExecutors.newScheduledSingleThreadPool(name + "-flush");
+                intervalExecutor.scheduleWithFixedDelay(this::flushInterval, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+                break;
+            case GROUP:
+                groupExecutor = NamedExecutors.newSingleThreadPool(name + "-flush");
+                groupExecutor.execute(this::flushGroup);
+                break;
+        }
+    }
+
+    public MMapQueueDurability durability() {
+        return durability;
+    }
+
+    /**
+     * Wait until all writes made before call are forced to disk, returns immediately if durability is not group.
+     */
+    public void sync() throws IOException {
+        if (durability != MMapQueueDurability.GROUP) {
+            return;
+        }
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Flusher is closed");
+            }
+            final Batch batch = pending;
+            requested++;
+            requestedCondition.signal();
+            while (!batch.done) {
+                flushedCondition.awaitUninterruptibly();
+            }
+            if (batch.error != null) {
+                throw batch.error;
+            }
+        } finally {
+            lock.unlock();
+        }
+        final long wait = System.nanoTime() - start;
+        waitCount.incrementAndGet();
+        waitNanosTotal.addAndGet(wait);
+        updateMax(waitNanosMax, wait);
+    }
+
+    /**
+     * Wait until all writes made before call are forced to disk regardless of durability,
+     * used where data must be on disk before files holding its previous copy are removed.
+     */
+    public void force() throws IOException {
+        if (durability == MMapQueueDurability.GROUP) {
+            sync();
+        } else {
+            flush(1);
+        }
+    }
+
+    private void flushInterval() {
+        try {
+            flush(1);
+        } catch (IOException e) {
+            logger.error("error flush", e);
+        }
+    }
+
+    private void flushGroup() {
+        while (true) {
+            final long batchStart;
+            final long batchEnd;
+            final Batch batch;
+            lock.lock();
+            try {
+                while (requested == flushed && !closed) {
+                    requestedCondition.awaitUninterruptibly();
+                }
+                if (requested == flushed) {
+                    return;
+                }
+                batchStart = flushed;
+            } finally {
+                lock.unlock();
+            }
+            if (windowNanos > 0) {
+                // let concurrent writers join current batch
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+            }
+            lock.lock();
+            try {
+                batchEnd = requested;
+                batch = pending;
+                pending = new Batch();
+            } finally {
+                lock.unlock();
+            }
+            IOException error = null;
+            try {
+                flush(batchEnd - batchStart);
+            } catch (IOException e) {
+                logger.error("error flush", e);
+                error = e;
+            }
+            lock.lock();
+            try {
+                flushed = batchEnd;
+                batch.error = error;
+                batch.done = true;
+                flushedCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void flush(long batchSize) throws IOException {
+        target.flush();
+        flushCount.incrementAndGet();
+        flushBatchTotal.addAndGet(batchSize);
+        updateMax(flushBatchMax, batchSize);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while ((current = max.get()) < value) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFlushBatchTotal() {
+        return flushBatchTotal.get();
+    }
+
+    public long getFlushBatchMax() {
+        return flushBatchMax.get();
+    }
+
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public long getWaitNanosTotal() {
+        return waitNanosTotal.get();
+    }
+
+    public long getWaitNanosMax() {
+        return waitNanosMax.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            requestedCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        NamedExecutors.terminate(intervalExecutor);
+        NamedExecutors.terminate(groupExecutor);
+    }
+
+    /**
+     * Result of one flush, guarded by lock.
+     */
+    private static class Batch {
+        private boolean done;
+        private IOException error;
+    }
+
+    @Override
+    public String toString() {
+        return "MMapQueueFlusher{" +
+            "durability=" + durability +
+            ", flushCount=" + flushCount +
+            ", flushBatchTotal=" + flushBatchTotal +
+            ", flushBatchMax=" + flushBatchMax +
+            ", waitCount=" + waitCount +
+            ", waitNanosTotal=" + waitNanosTotal +
+            ", waitNanosMax=" + waitNanosMax +
+            '}';
+    }
+}
@@ -1,26 +1,51 @@
 package org.mitallast.queue.queue.transactional.mmap;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import org.mitallast.queue.queue.QueueMessage;
 import org.mitallast.queue.queue.QueueMessageStatus;
+import org.mitallast.queue.queue.QueueMessageUuidDuplicateException;
 import org.mitallast.queue.queue.transactional.mmap.data.MMapQueueMessageAppendSegment;
 import org.mitallast.queue.queue.transactional.mmap.meta.MMapQueueMessageMetaSegment;
+import org.mitallast.queue.queue.transactional.mmap.meta.QueueMessageCounters;
 import org.mitallast.queue.queue.transactional.mmap.meta.QueueMessageMeta;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MMapQueueMessageSegment implements TransactionalQueueSegment {
 
+    public final static ByteBufAllocator HEAP_ALLOCATOR = new UnpooledByteBufAllocator(false);
+
     private final MMapQueueMessageAppendSegment messageAppendSegment;
     private final MMapQueueMessageMetaSegment messageMetaSegment;
+    private final ByteBufAllocator allocator;
+    private final int zeroCopyMinSize;
     private final AtomicInteger referenceCount;
+    private volatile QueueMessageCounters counters = QueueMessageCounters.NONE;
 
     public MMapQueueMessageSegment(MMapQueueMessageAppendSegment messageAppendSegment, MMapQueueMessageMetaSegment messageMetaSegment) {
+        this(messageAppendSegment, messageMetaSegment, 0);
+    }
+
+    public MMapQueueMessageSegment(MMapQueueMessageAppendSegment messageAppendSegment, MMapQueueMessageMetaSegment messageMetaSegment, int zeroCopyMinSize) {
+        this(messageAppendSegment, messageMetaSegment, HEAP_ALLOCATOR, zeroCopyMinSize);
+    }
+
+    /**
+     * @param allocator       allocator of buffers for copied messages, pooled buffers must be released by consumer
+     * @param zeroCopyMinSize messages of this size or larger are returned by get, lock, peek and pop as
+     *                        slices of mapped pages, which must be released by consumer; 0 to always copy
+     */
+    public MMapQueueMessageSegment(MMapQueueMessageAppendSegment messageAppendSegment, MMapQueueMessageMetaSegment messageMetaSegment, ByteBufAllocator allocator, int zeroCopyMinSize) {
         this.messageAppendSegment = messageAppendSegment;
         this.messageMetaSegment = messageMetaSegment;
+        this.allocator = allocator;
+        this.zeroCopyMinSize = zeroCopyMinSize;
         this.referenceCount = new AtomicInteger();
     }
 
@@ -32,6 +57,18 @@ public class MMapQueueMessageSegment implements TransactionalQueueSegment {
         return messageMetaSegment;
     }
 
+    /**
+     * Move segment counts to queue counters, should be called before segment is added to queue
+     * and after it's removed.
+     */
+    public synchronized void setCounters(QueueMessageCounters counters) {
+        final QueueMessageCounters previous = this.counters;
+        this.counters = counters;
+        previous.addBytes(-messageAppendSegment.size());
+        counters.addBytes(messageAppendSegment.size());
+        messageMetaSegment.setCounters(counters);
+    }
+
     public int acquire() {
         while (true) {
             int current = referenceCount.get();
@@ -52,21 +89,75 @@ public class MMapQueueMessageSegment implements TransactionalQueueSegment {
         return referenceCount.compareAndSet(0, -1);
     }
 
-    private QueueMessage readMessage(QueueMessageMeta meta) throws IOException {
-        ByteBuf buffer = Unpooled.buffer(meta.getLength());
-        messageAppendSegment.read(buffer, meta.getOffset(), meta.getLength());
-        return new QueueMessage(
+    /**
+     * Make segment released by {@link #releaseGarbage()} available for acquire again.
+     */
+    public void cancelGarbage() {
+        referenceCount.compareAndSet(-1, 0);
+    }
+
+    /**
+     * @return copy of message data, buffer must be released by consumer if allocator is pooled
+     */
+    public QueueMessage readMessage(QueueMessageMeta meta) throws IOException {
+        ByteBuf buffer = allocator.buffer(meta.getLength());
+        try {
+            messageAppendSegment.read(buffer, meta.getOffset(), meta.getLength());
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+        return createMessage(meta, buffer);
+    }
+
+    private QueueMessage sliceMessage(QueueMessageMeta meta) throws IOException {
+        if (zeroCopyMinSize <= 0 || meta.getLength() < zeroCopyMinSize) {
+            return readMessage(meta);
+        }
+        return createMessage(meta, messageAppendSegment.slice(meta.getOffset(), meta.getLength()));
+    }
+
+    private static QueueMessage createMessage(QueueMessageMeta meta, ByteBuf buffer) {
+        QueueMessage queueMessage = new QueueMessage(
             meta.getUuid(),
             meta.getType(),
             buffer
         );
+        queueMessage.setDeliverAt(meta.getDeliverAt());
+        return queueMessage;
+    }
+
+    /**
+     * Time to live is counted from delivery time, so delayed message does not expire before it's queued.
+     */
+    private static QueueMessageMeta createMeta(UUID uuid, QueueMessage queueMessage, long offset, int length) {
+        final long deliverAt = queueMessage.getDeliverAt();
+        final long expireAt = queueMessage.getTtl() > 0
+            ? Math.max(deliverAt, System.currentTimeMillis()) + queueMessage.getTtl()
+            : 0;
+        return new QueueMessageMeta(
+            uuid,
+            QueueMessageStatus.QUEUED,
+            offset,
+            length,
+            queueMessage.getMessageType(),
+            deliverAt,
+            expireAt
+        );
+    }
+
+    /**
+     * @return false if segment definitely does not contain message, checked without access to mapped file
+     */
+    public boolean mightContain(UUID uuid) {
+        return messageMetaSegment.mightContain(uuid);
     }
 
     @Override
     public QueueMessage get(UUID uuid) throws IOException {
         QueueMessageMeta meta = messageMetaSegment.readMeta(uuid);
         if (meta != null) {
-            return readMessage(meta);
+            return sliceMessage(meta);
         }
         return null;
     }
@@ -87,24 +178,125 @@ public class MMapQueueMessageSegment implements TransactionalQueueSegment {
         source.resetReaderIndex();
         int length = source.readableBytes();
         long offset = messageAppendSegment.append(source);
+        counters.addBytes(length);
+
+        messageMetaSegment.writeMeta(createMeta(queueMessage.getUuid(), queueMessage, offset, length), pos);
+        return true;
+    }
+
+    /**
+     * Write message moved from another segment with status and timers of source meta,
+     * locked message is queued on unlock, rollback or lease deadline.
+     *
+     * @param leaseDeadline lease of locked message, 0 to hold lock until unlock
+     */
+    public boolean moveMessage(QueueMessage queueMessage, QueueMessageMeta sourceMeta, int pos, long leaseDeadline) throws IOException {
+        ByteBuf source = queueMessage.getSource();
+        source.resetReaderIndex();
+        int length = source.readableBytes();
+        long offset = messageAppendSegment.append(source);
+        counters.addBytes(length);
 
         QueueMessageMeta messageMeta = new QueueMessageMeta(
             queueMessage.getUuid(),
             QueueMessageStatus.QUEUED,
             offset,
             length,
-            queueMessage.getMessageType()
+            queueMessage.getMessageType(),
+            sourceMeta.getDeliverAt(),
+            sourceMeta.getExpireAt()
         );
 
-        messageMetaSegment.writeMeta(messageMeta, pos);
+        if (sourceMeta.getStatus() == QueueMessageStatus.LOCKED) {
+            messageMetaSegment.writeMetaLocked(messageMeta, pos, leaseDeadline);
+        } else {
+            messageMetaSegment.writeMeta(messageMeta, pos);
+        }
         return true;
     }
 
+    /**
+     * Insert and write messages starting from index, while segment has free slots.
+     * Meta slots are reserved at once and data of all messages is appended with single offset reservation.
+     * If batch fails before data is appended, reserved slots are released and no message of batch is written.
+     *
+     * @return count of written messages
+     */
+    public int writeMessages(List<QueueMessage> messages, int from) throws IOException {
+        final int length = messages.size() - from;
+        final UUID[] uuids = new UUID[length];
+        for (int i = 0; i < length; i++) {
+            uuids[i] = messages.get(from + i).getUuid();
+        }
+        final int[] positions = new int[length];
+        final int count = messageMetaSegment.insert(uuids, 0, length, positions);
+        if (count == 0) {
+            return 0;
+        }
+        final List<ByteBuf> sources = new ArrayList<>(count);
+        final int[] lengths = new int[count];
+        long total = 0;
+        long offset;
+        int locked = 0;
+        try {
+            for (; locked < count; locked++) {
+                if (positions[locked] < 0 || !messageMetaSegment.writeLock(positions[locked])) {
+                    throw new QueueMessageUuidDuplicateException(uuids[locked]);
+                }
+                ByteBuf source = messages.get(from + locked).getSource();
+                source.resetReaderIndex();
+                lengths[locked] = source.readableBytes();
+                total += lengths[locked];
+                sources.add(source);
+            }
+            offset = messageAppendSegment.append(sources);
+        } catch (IOException | RuntimeException e) {
+            releaseInserted(positions, locked, count);
+            throw e;
+        }
+        counters.addBytes(total);
+        for (int i = 0; i < count; i++) {
+            QueueMessageMeta messageMeta = createMeta(uuids[i], messages.get(from + i), offset, lengths[i]);
+            messageMetaSegment.writeMeta(messageMeta, positions[i]);
+            offset += lengths[i];
+        }
+        return count;
+    }
+
+    /**
+     * Release slots reserved by batch insert, so segment with failed batch can still become garbage:
+     * slots claimed by batch are deleted, reservation of duplicate or not inserted uuid is returned.
+     *
+     * @param locked count of slots write locked by batch
+     */
+    private void releaseInserted(int[] positions, int locked, int count) throws IOException {
+        for (int i = 0; i < locked; i++) {
+            messageMetaSegment.unlockAndDelete(positions[i]);
+        }
+        int released = 0;
+        for (int i = locked; i < count; i++) {
+            if (positions[i] >= 0 && messageMetaSegment.writeLock(positions[i])) {
+                // claimed by batch, but not write locked yet
+                messageMetaSegment.unlockAndDelete(positions[i]);
+            } else {
+                released++;
+            }
+        }
+        messageMetaSegment.releaseSize(released);
+    }
+
     @Override
     public QueueMessage lock(UUID uuid) throws IOException {
-        QueueMessageMeta meta = messageMetaSegment.lock(uuid);
+        return lock(uuid, 0);
+    }
+
+    /**
+     * @param leaseDeadline time in millis when lock is rolled back, 0 to hold lock until unlock
+     */
+    public QueueMessage lock(UUID uuid, long leaseDeadline) throws IOException {
+        QueueMessageMeta meta = messageMetaSegment.lock(uuid, leaseDeadline);
         if (meta != null) {
-            return readMessage(meta);
+            return sliceMessage(meta);
         }
         return null;
     }
@@ -113,16 +305,23 @@ public class MMapQueueMessageSegment implements TransactionalQueueSegment {
     public QueueMessage peek() throws IOException {
         QueueMessageMeta meta = messageMetaSegment.peek();
         if (meta != null) {
-            return readMessage(meta);
+            return sliceMessage(meta);
         }
         return null;
     }
 
     @Override
     public QueueMessage lockAndPop() throws IOException {
-        QueueMessageMeta meta = messageMetaSegment.lockAndPop();
+        return lockAndPop(0);
+    }
+
+    /**
+     * @param leaseDeadline time in millis when lock is rolled back, 0 to hold lock until unlock
+     */
+    public QueueMessage lockAndPop(long leaseDeadline) throws IOException {
+        QueueMessageMeta meta = messageMetaSegment.lockAndPop(leaseDeadline);
         if (meta != null) {
-            return readMessage(meta);
+            return sliceMessage(meta);
         }
         return null;
     }
@@ -174,9 +373,77 @@ public class MMapQueueMessageSegment implements TransactionalQueueSegment {
         messageMetaSegment.unlockAndQueue(uuid);
     }
 
+    /**
+     * @return count of messages ready to pop
+     */
     @Override
     public long size() {
-        return 0;
+        return queuedSize();
+    }
+
+    public int queuedSize() {
+        return messageMetaSegment.queuedSize();
+    }
+
+    public int liveSize() {
+        return messageMetaSegment.liveSize();
+    }
+
+    /**
+     * @return time in millis when message at queue head was queued, 0 if unknown or segment has no queued messages
+     */
+    public long headQueuedAt() {
+        return messageMetaSegment.headQueuedAt();
+    }
+
+    public int delayedSize() {
+        return messageMetaSegment.delayedSize();
+    }
+
+    /**
+     * @param lockStamp stamp of leased lock, 0 for delivery and expire timers
+     * @return next timer deadline of message, 0 if message has no more timers
+     */
+    public long timeout(int pos, long now, int lockStamp) throws IOException {
+        return messageMetaSegment.timeout(pos, now, lockStamp);
+    }
+
+    public boolean isFull() {
+        return messageMetaSegment.isFull();
+    }
+
+    /**
+     * @return meta of queued and locked messages, ordered by data offset
+     */
+    public List<QueueMessageMeta> readLive() throws IOException {
+        return messageMetaSegment.readLive();
+    }
+
+    /**
+     * Prepare new segment for writes: build meta tables and fault in mapped files.
+     */
+    public void warmup() throws IOException {
+        // tables are built before meta file is mapped, so empty file is not scanned
+        messageMetaSegment.load();
+        messageAppendSegment.getMappedFile().warmup();
+        messageMetaSegment.getMappedFile().warmup();
+    }
+
+    /**
+     * @return true if meta was written since last flush, data is always written before meta
+     */
+    public boolean isDirty() {
+        return messageMetaSegment.isDirty();
+    }
+
+    /**
+     * Force data before meta, so flushed meta never points to not flushed data.
+     */
+    public void flush() throws IOException {
+        // reset before force, so concurrent write marks segment dirty again
+        messageMetaSegment.clearDirty();
+        messageAppendSegment.flush();
+        messageMetaSegment.flush();
     }
 
     @Override
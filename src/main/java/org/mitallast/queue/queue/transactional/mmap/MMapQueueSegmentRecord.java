@@ -0,0 +1,83 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.stream.Streamable;
+
+import java.io.IOException;
+
+/**
+ * Segment manifest record, segment is identified by path of append file.
+ */
+public class MMapQueueSegmentRecord implements Streamable {
+
+    public enum Type {ADD, REMOVE}
+
+    private Type type;
+    private String append;
+    private String meta;
+
+    public MMapQueueSegmentRecord() {
+    }
+
+    private MMapQueueSegmentRecord(Type type, String append, String meta) {
+        this.type = type;
+        this.append = append;
+        this.meta = meta;
+    }
+
+    public static MMapQueueSegmentRecord add(MMapQueueMessageSegment segment) {
+        return new MMapQueueSegmentRecord(Type.ADD, appendPath(segment), metaPath(segment));
+    }
+
+    public static MMapQueueSegmentRecord remove(MMapQueueMessageSegment segment) {
+        return new MMapQueueSegmentRecord(Type.REMOVE, appendPath(segment), null);
+    }
+
+    public static MMapQueueSegmentRecord add(String append, String meta) {
+        return new MMapQueueSegmentRecord(Type.ADD, append, meta);
+    }
+
+    private static String appendPath(MMapQueueMessageSegment segment) {
+        return segment.getMessageAppendSegment().getMappedFile().getFile().getAbsolutePath();
+    }
+
+    private static String metaPath(MMapQueueMessageSegment segment) {
+        return segment.getMessageMetaSegment().getMappedFile().getFile().getAbsolutePath();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getAppend() {
+        return append;
+    }
+
+    public String getMeta() {
+        return meta;
+    }
+
+    @Override
+    public void readFrom(StreamInput stream) throws IOException {
+        type = stream.readEnum(Type.class);
+        append = stream.readText();
+        meta = stream.readTextOrNull();
+    }
+
+    @Override
+    public void writeTo(StreamOutput stream) throws IOException {
+        stream.writeEnum(type);
+        stream.writeText(append);
+        stream.writeTextOrNull(meta);
+    }
+
+    @Override
+    public String toString() {
+        return "MMapQueueSegmentRecord{" +
+            "type=" + type +
+            ", append='" + append + '\'' +
+            ", meta='" + meta + '\'' +
+            '}';
+    }
+}
@@ -1,71 +1,250 @@
 package org.mitallast.queue.queue.transactional.mmap;
 
 import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.collect.ImmutableList;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.mitallast.queue.common.UUIDs;
+import org.mitallast.queue.common.concurrent.NamedExecutors;
+import org.mitallast.queue.common.concurrent.TimingWheel;
+import org.mitallast.queue.common.manifest.Manifest;
 import org.mitallast.queue.common.mmap.MemoryMappedFile;
 import org.mitallast.queue.common.mmap.MemoryMappedFileFactory;
 import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.common.unit.TimeValue;
 import org.mitallast.queue.queue.Queue;
 import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageStatus;
 import org.mitallast.queue.queue.QueueMessageUuidDuplicateException;
 import org.mitallast.queue.queue.transactional.AbstractQueueService;
 import org.mitallast.queue.queue.transactional.QueueTransaction;
 import org.mitallast.queue.queue.transactional.TransactionalQueueService;
 import org.mitallast.queue.queue.transactional.mmap.data.MMapQueueMessageAppendSegment;
 import org.mitallast.queue.queue.transactional.mmap.meta.MMapQueueMessageMetaSegment;
+import org.mitallast.queue.queue.transactional.mmap.meta.QueueMessageCounters;
+import org.mitallast.queue.queue.transactional.mmap.meta.QueueMessageMeta;
+import org.mitallast.queue.queue.transactional.mmap.meta.QueueMessageTimerListener;
+import org.mitallast.queue.queues.stats.QueueStats;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 public class MMapTransactionalQueueService extends AbstractQueueService implements TransactionalQueueService {
 
+    private final StreamService streamService;
     private final String workDir;
     private final int segmentMaxSize;
     private final float segmentLoadFactor;
+    private final int segmentWarmupThreads;
+    private final int segmentStandbyThreshold;
+    private final int segmentZeroCopyMinSize;
+    private final int manifestSnapshotRecords;
+    private final int segmentCompactThreshold;
+    private final long reclaimInterval;
+    private final long timerTick;
+    private final int timerWheelSize;
+    private final long lockTimeout;
+    private final long transactionTimeout;
+    private final ByteBufAllocator segmentAllocator;
+    private final MMapQueueDurability durability;
+    private final long durabilityInterval;
+    private final long durabilityGroupWindow;
     private final ReentrantLock segmentsLock = new ReentrantLock();
+    // write locked while compaction moves messages between segments, see find()
+    private final StampedLock compactionLock = new StampedLock();
     private final ConcurrentMap<UUID, MMapMemoryQueueTransaction> transactionMap;
+    // segments which may hold queued messages, ordered by creation sequence
+    private final ConcurrentSkipListMap<Long, MMapQueueMessageSegment> queuedSegments;
+    private final AtomicLong segmentSequence;
+    // parked pop requests, completed by push and rollback
+    private final ConcurrentLinkedDeque<CompletableFuture<QueueMessage>> waiters;
+    // next tail segment, created in background when tail segment is filled over standby ratio
+    private final AtomicReference<CompletableFuture<MMapQueueMessageSegment>> standby;
+    // standby segment is written to state, guarded by segments lock
+    private boolean standbyPersisted = false;
     private File queueDir;
+    private Manifest<MMapQueueSegmentRecord> manifest;
     private MemoryMappedFileFactory mmapFileFactory;
+    private ExecutorService warmupExecutor;
+    private ScheduledExecutorService waitExecutor;
+    private ExecutorService standbyExecutor;
+    private ScheduledExecutorService reclaimExecutor;
+    private ScheduledExecutorService timerExecutor;
+    // timers of delayed, expiring and leased messages and of transactions
+    private TimingWheel<QueueTimeout> timerWheel;
+    private MMapQueueFlusher flusher;
+    // counters of registered segments, replaced on start
+    private volatile QueueMessageCounters counters = new QueueMessageCounters();
     private volatile ImmutableList<MMapQueueMessageSegment> segments = ImmutableList.of();
 
-    public MMapTransactionalQueueService(Settings settings, Settings queueSettings, Queue queue) {
+    public MMapTransactionalQueueService(Settings settings, Settings queueSettings, Queue queue, StreamService streamService) {
         super(settings, queueSettings, queue);
+        this.streamService = streamService;
         workDir = this.settings.get("work_dir", "data");
         segmentMaxSize = this.settings.getAsInt("segment.max_size", MMapQueueMessageMetaSegment.DEFAULT_MAX_SIZE);
         segmentLoadFactor = this.settings.getAsFloat("segment.load_factor", MMapQueueMessageMetaSegment.DEFAULT_LOAD_FACTOR);
+        segmentWarmupThreads = this.settings.getAsInt("segment.warmup_threads", 1);
+        float standbyFillRatio = this.settings.getAsFloat("segment.standby_fill_ratio", 0.75f);
+        segmentStandbyThreshold = standbyFillRatio > 0 ? Math.max(1, (int) (segmentMaxSize * standbyFillRatio)) : 0;
+        segmentZeroCopyMinSize = this.settings.getAsInt("segment.zero_copy_min_size", 0);
+        manifestSnapshotRecords = this.settings.getAsInt("segment.manifest_snapshot_records", 1024);
+        float compactLiveRatio = this.settings.getAsFloat("segment.compact_live_ratio", 0.05f);
+        segmentCompactThreshold = compactLiveRatio > 0 ? Math.max(1, (int) (segmentMaxSize * compactLiveRatio)) : 0;
+        reclaimInterval = this.settings.getAsTime("segment.reclaim_interval", TimeValue.timeValueSeconds(10)).millis();
+        timerTick = Math.max(1, this.settings.getAsTime("timer.tick", TimeValue.timeValueMillis(10)).millis());
+        timerWheelSize = this.settings.getAsInt("timer.wheel_size", 512);
+        segmentAllocator = this.settings.getAsBoolean("segment.pooled_buffers", false)
+            ? PooledByteBufAllocator.DEFAULT
+            : MMapQueueMessageSegment.HEAP_ALLOCATOR;
+        durability = MMapQueueDurability.valueOf(queueSettings.get("durability",
+            this.settings.get("durability", "none")).toUpperCase());
+        durabilityInterval = queueSettings.getAsTime("durability.interval",
+            this.settings.getAsTime("durability.interval", TimeValue.timeValueSeconds(1))).millis();
+        durabilityGroupWindow = queueSettings.getAsTime("durability.group_window",
+            this.settings.getAsTime("durability.group_window", TimeValue.timeValueMillis(0))).nanos();
+        // off by default, so lock is held until unlock as without lease
+        lockTimeout = queueSettings.getAsTime("lease.lock_timeout",
+            this.settings.getAsTime("lease.lock_timeout", TimeValue.timeValueMillis(0))).millis();
+        transactionTimeout = queueSettings.getAsTime("lease.transaction_timeout",
+            this.settings.getAsTime("lease.transaction_timeout", TimeValue.timeValueMinutes(5))).millis();
         transactionMap = new ConcurrentHashMap<>();
+        queuedSegments = new ConcurrentSkipListMap<>();
+        segmentSequence = new AtomicLong();
+        waiters = new ConcurrentLinkedDeque<>();
+        standby = new AtomicReference<>();
     }
 
     @Override
     protected void doStart() throws IOException {
         segments = ImmutableList.of();
+        queuedSegments.clear();
         queueDir = new File(workDir, queue.getName());
         if (!queueDir.exists() && !queueDir.mkdirs()) {
             throw new IOException("Error create dir " + queueDir);
         }
         mmapFileFactory = new MemoryMappedFileFactory(settings, queueDir);
+        manifest = new Manifest<>(streamService, new File(queueDir, "segments.manifest"), MMapQueueSegmentRecord::new);
+        timerWheel = new TimingWheel<>(timerTick, timerWheelSize, System.currentTimeMillis());
+        counters = new QueueMessageCounters();
         readState();
+        warmup();
+        flusher = new MMapQueueFlusher(settings, "queue-" + queue.getName(), durability,
+            durabilityInterval, durabilityGroupWindow, this::flushSegments);
+        waitExecutor = NamedExecutors.newScheduledSingleThreadPool("queue-" + queue.getName() + "-wait");
+        standbyExecutor = NamedExecutors.newSingleThreadPool("queue-" + queue.getName() + "-standby");
+        if (reclaimInterval > 0) {
+            reclaimExecutor = NamedExecutors.newScheduledSingleThreadPool("queue-" + queue.getName() + "-reclaim");
+            reclaimExecutor.scheduleWithFixedDelay(this::reclaim, reclaimInterval, reclaimInterval, TimeUnit.MILLISECONDS);
+        }
+        timerExecutor = NamedExecutors.newScheduledSingleThreadPool("queue-" + queue.getName() + "-timer");
+        timerExecutor.scheduleWithFixedDelay(this::advanceTimers, timerTick, timerTick, TimeUnit.MILLISECONDS);
     }
 
-    private void readState() throws IOException {
-        File state = new File(queueDir, "state.json");
-        if (!state.exists()) return;
+    /**
+     * Segments are loaded lazily on first access, warm-up loads them in background in queue order.
+     * Without warm-up segments with delayed messages are loaded on start, so their timers are scheduled.
+     */
+    private void warmup() throws IOException {
+        if (segmentWarmupThreads <= 0) {
+            for (MMapQueueMessageSegment segment : segments) {
+                if (segment.delayedSize() > 0) {
+                    segment.getMessageMetaSegment().load();
+                }
+            }
+            return;
+        }
+        final ExecutorService executor = NamedExecutors.newFixedThreadPool("queue-" + queue.getName() + "-warmup", segmentWarmupThreads);
+        for (MMapQueueMessageSegment segment : segments) {
+            executor.execute(() -> {
+                if (executor.isShutdown()) {
+                    return;
+                }
+                try {
+                    segment.getMessageMetaSegment().load();
+                } catch (IOException e) {
+                    logger.error("error load segment", e);
+                }
+            });
+        }
+        warmupExecutor = executor;
+    }
 
+    /**
+     * Replays segment manifest, segments are ordered by add.
+     * Manifest is compacted to snapshot of live segments if it holds removed segments.
+     */
+    private void readState() throws IOException {
         logger.info("read state of segments");
+        ImmutableList<MMapQueueSegmentRecord> records = manifest.open();
+        File legacyState = new File(queueDir, "state.json");
+        if (records.isEmpty() && legacyState.exists()) {
+            records = readLegacyState(legacyState);
+            manifest.snapshot(records);
+            if (!legacyState.delete()) {
+                throw new IOException("error delete file " + legacyState);
+            }
+        }
+
+        Map<String, MMapQueueSegmentRecord> live = new LinkedHashMap<>();
+        for (MMapQueueSegmentRecord record : records) {
+            switch (record.getType()) {
+                case ADD:
+                    live.put(record.getAppend(), record);
+                    break;
+                case REMOVE:
+                    live.remove(record.getAppend());
+                    break;
+            }
+        }
+        if (manifest.appended() != live.size()) {
+            manifest.snapshot(live.values());
+        }
 
         ImmutableList.Builder<MMapQueueMessageSegment> builder = ImmutableList.builder();
+        for (MMapQueueSegmentRecord record : live.values()) {
+            MemoryMappedFile appendFile = mmapFileFactory.createFile(new File(record.getAppend()));
+            MemoryMappedFile metaFile = mmapFileFactory.createFile(new File(record.getMeta()), metaFileSize());
+            MMapQueueMessageSegment segment = new MMapQueueMessageSegment(
+                createAppendSegment(appendFile),
+                createMetaSegment(metaFile),
+                segmentAllocator,
+                segmentZeroCopyMinSize
+            );
+            builder.add(register(segment));
+        }
+        segments = builder.build();
+        logger.info("read state of {} segments done", segments.size());
+    }
+
+    /**
+     * Reads segments of json state file, written by previous versions.
+     */
+    private ImmutableList<MMapQueueSegmentRecord> readLegacyState(File state) throws IOException {
+        logger.info("migrate state {} to manifest", state);
+        ImmutableList.Builder<MMapQueueSegmentRecord> builder = ImmutableList.builder();
         try (FileInputStream inputStream = new FileInputStream(state)) {
             JsonFactory factory = new JsonFactory();
             JsonParser parser = factory.createParser(inputStream);
@@ -99,22 +278,12 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
                 if (metaFilePath == null) {
                     throw new IOException("Queue meta file not found");
                 }
-                MemoryMappedFile appendFile = mmapFileFactory.createFile(new File(appendFilePath));
-                MemoryMappedFile metaFile = mmapFileFactory.createFile(new File(metaFilePath));
-                MMapQueueMessageAppendSegment appendSegment = createAppendSegment(appendFile);
-                MMapQueueMessageMetaSegment metaSegment = createMetaSegment(metaFile);
-                MMapQueueMessageSegment segment = new MMapQueueMessageSegment(
-                    appendSegment,
-                    metaSegment
-                );
-                builder.add(segment);
+                builder.add(MMapQueueSegmentRecord.add(appendFilePath, metaFilePath));
             }
             assertEquals(JsonToken.END_OBJECT, parser.nextToken());
             parser.close();
-
-            segments = builder.build();
-            logger.info("read state of {} segments done", segments.size());
         }
+        return builder.build();
     }
 
     private <T> void assertEquals(T expected, T actual) {
@@ -123,47 +292,51 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         }
     }
 
-    private void writeState() throws IOException {
-        ImmutableList<MMapQueueMessageSegment> segments = this.segments;
-        logger.info("write state of {} segments", segments.size());
-        long start = System.currentTimeMillis();
-        File state = new File(queueDir, "state.json");
-        if (!state.exists() && !state.createNewFile()) {
-            throw new IOException("error create new file " + state);
+    /**
+     * Replaces manifest with snapshot of live segments, when it grows over snapshot threshold.
+     * Should be called under segments lock.
+     */
+    private void checkSnapshot() throws IOException {
+        if (manifest.appended() < manifestSnapshotRecords) {
+            return;
         }
-
-        try (FileOutputStream outputStream = new FileOutputStream(state)) {
-            JsonFactory factory = new JsonFactory();
-            JsonGenerator generator = factory.createGenerator(outputStream);
-            generator.writeStartObject();
-
-            generator.writeFieldName("segments");
-            generator.writeStartArray();
-            for (MMapQueueMessageSegment segment : segments) {
-                generator.writeStartObject();
-                generator.writeFieldName("append");
-                generator.writeString(segment.getMessageAppendSegment().getMappedFile().getFile().getAbsolutePath());
-                generator.writeFieldName("meta");
-                generator.writeString(segment.getMessageMetaSegment().getMappedFile().getFile().getAbsolutePath());
-                generator.writeEndObject();
-            }
-            generator.writeEndArray();
-            // end write segments
-
-            generator.writeEndObject();
-            generator.close();
-        } finally {
-            long end = System.currentTimeMillis();
-            logger.info("write state of {} segments done at {}ms", segments.size(), end - start);
+        List<MMapQueueSegmentRecord> records = new ArrayList<>(segments.size() + 1);
+        for (MMapQueueMessageSegment segment : segments) {
+            records.add(MMapQueueSegmentRecord.add(segment));
+        }
+        if (standbyPersisted) {
+            records.add(MMapQueueSegmentRecord.add(standby.get().join()));
         }
+        manifest.snapshot(records);
     }
 
     @Override
     protected void doStop() throws IOException {
+        NamedExecutors.terminate(timerExecutor);
+        timerExecutor = null;
+        waitExecutor.shutdownNow();
+        waitExecutor = null;
+        CompletableFuture<QueueMessage> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.complete(null);
+        }
+        NamedExecutors.terminate(warmupExecutor);
+        warmupExecutor = null;
+        NamedExecutors.terminate(reclaimExecutor);
+        reclaimExecutor = null;
+        NamedExecutors.terminate(standbyExecutor);
+        standbyExecutor = null;
+        closeStandby();
+        flusher.close();
+        logger.info("flush stats {}", flusher);
         for (MMapQueueMessageSegment segment : segments) {
             segment.close();
         }
         segments = null;
+        queuedSegments.clear();
+        timerWheel = null;
+        manifest.close();
+        manifest = null;
         mmapFileFactory = null;
     }
 
@@ -171,120 +344,229 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
     protected void doClose() throws IOException {
     }
 
+    /**
+     * Transaction not committed or rolled back until it's lease deadline is rolled back,
+     * lease is extended by each transaction operation.
+     */
     @Override
     public QueueTransaction transaction(UUID id) {
-        return transactionMap.computeIfAbsent(id, MMapMemoryQueueTransaction::new);
+        return transactionMap.computeIfAbsent(id, transactionId -> {
+            MMapMemoryQueueTransaction transaction = new MMapMemoryQueueTransaction(transactionId);
+            if (transactionTimeout > 0) {
+                timerWheel.add(transaction);
+            }
+            return transaction;
+        });
     }
 
-    @Override
-    public QueueMessage get(UUID uuid) throws IOException {
-        final ImmutableList<MMapQueueMessageSegment> current = this.segments;
-        final int size = current.size();
-        for (int i = 0; i < size; i++) {
-            final MMapQueueMessageSegment segment = current.get(i);
-            if (segment.acquire() > 0) {
-                try {
-                    QueueMessage queueMessage = segment.get(uuid);
-                    if (queueMessage != null) {
-                        return queueMessage;
-                    }
-                } finally {
-                    segment.release();
-                }
+    /**
+     * @return transaction not committed, rolled back or expired, null if there is no such transaction
+     */
+    QueueTransaction activeTransaction(UUID id) {
+        return transactionMap.get(id);
+    }
+
+    /**
+     * @return false if queue definitely does not contain message, checked by segment filters
+     */
+    boolean mightContain(UUID uuid) {
+        for (MMapQueueMessageSegment segment : segments) {
+            if (segment.mightContain(uuid)) {
+                return true;
             }
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * @return lease deadline of message locked out of transaction, 0 if lock is held until unlock
+     */
+    private long leaseDeadline() {
+        return lockTimeout > 0 ? System.currentTimeMillis() + lockTimeout : 0;
+    }
+
+    @Override
+    public QueueMessage get(UUID uuid) throws IOException {
+        return find(uuid, MMapQueueMessageSegment::get);
     }
 
     @Override
     public QueueMessage lock(UUID uuid) throws IOException {
-        final ImmutableList<MMapQueueMessageSegment> current = this.segments;
-        final int size = current.size();
-        for (int i = 0; i < size; i++) {
-            final MMapQueueMessageSegment segment = current.get(i);
+        final long leaseDeadline = leaseDeadline();
+        return find(uuid, (segment, id) -> segment.lock(id, leaseDeadline));
+    }
+
+    @Override
+    public QueueMessage peek() throws IOException {
+        for (Map.Entry<Long, MMapQueueMessageSegment> entry : queuedSegments.entrySet()) {
+            final MMapQueueMessageSegment segment = entry.getValue();
             if (segment.acquire() > 0) {
                 try {
-                    QueueMessage queueMessage = segment.lock(uuid);
+                    QueueMessage queueMessage = segment.peek();
                     if (queueMessage != null) {
                         return queueMessage;
                     }
                 } finally {
                     segment.release();
                 }
+                updateQueued(entry.getKey(), segment);
+            } else {
+                queuedSegments.remove(entry.getKey(), segment);
             }
         }
         return null;
     }
 
     @Override
-    public QueueMessage peek() throws IOException {
-        final ImmutableList<MMapQueueMessageSegment> current = this.segments;
-        final int size = current.size();
-        for (int i = 0; i < size; i++) {
-            final MMapQueueMessageSegment segment = current.get(i);
+    public QueueMessage lockAndPop() throws IOException {
+        final long leaseDeadline = leaseDeadline();
+        for (Map.Entry<Long, MMapQueueMessageSegment> entry : queuedSegments.entrySet()) {
+            final MMapQueueMessageSegment segment = entry.getValue();
             if (segment.acquire() > 0) {
                 try {
-                    QueueMessage queueMessage = segment.peek();
+                    QueueMessage queueMessage = segment.lockAndPop(leaseDeadline);
                     if (queueMessage != null) {
+                        counters.addPopped(1);
                         return queueMessage;
                     }
                 } finally {
                     segment.release();
                 }
+                updateQueued(entry.getKey(), segment);
+            } else {
+                queuedSegments.remove(entry.getKey(), segment);
             }
         }
         return null;
     }
 
     @Override
-    public QueueMessage lockAndPop() throws IOException {
-        final ImmutableList<MMapQueueMessageSegment> current = this.segments;
-        final int size = current.size();
-        for (int i = 0; i < size; i++) {
-            final MMapQueueMessageSegment segment = current.get(i);
+    public ImmutableList<QueueMessage> lockAndPop(int size) throws IOException {
+        final ImmutableList.Builder<QueueMessage> builder = ImmutableList.builder();
+        final long leaseDeadline = leaseDeadline();
+        int count = 0;
+        for (Map.Entry<Long, MMapQueueMessageSegment> entry : queuedSegments.entrySet()) {
+            final MMapQueueMessageSegment segment = entry.getValue();
             if (segment.acquire() > 0) {
                 try {
-                    QueueMessage queueMessage = segment.lockAndPop();
-                    if (queueMessage != null) {
-                        return queueMessage;
+                    QueueMessage queueMessage;
+                    while (count < size && (queueMessage = segment.lockAndPop(leaseDeadline)) != null) {
+                        builder.add(queueMessage);
+                        count++;
                     }
                 } finally {
                     segment.release();
                 }
+                if (count == size) {
+                    break;
+                }
+                updateQueued(entry.getKey(), segment);
+            } else {
+                queuedSegments.remove(entry.getKey(), segment);
             }
         }
-        return null;
+        counters.addPopped(count);
+        return builder.build();
     }
 
     @Override
-    public QueueMessage unlockAndDelete(UUID uuid) throws IOException {
-        final ImmutableList<MMapQueueMessageSegment> current = this.segments;
-        final int size = current.size();
-        for (int i = 0; i < size; i++) {
-            final MMapQueueMessageSegment segment = current.get(i);
-            if (segment.acquire() > 0) {
-                try {
-                    QueueMessage queueMessage = segment.unlockAndDelete(uuid);
-                    if (queueMessage != null) {
-                        return queueMessage;
+    public CompletableFuture<QueueMessage> lockAndPop(long timeout, TimeUnit unit) throws IOException {
+        final QueueMessage queueMessage = lockAndPop();
+        if (queueMessage != null || timeout <= 0) {
+            return CompletableFuture.completedFuture(queueMessage);
+        }
+        final CompletableFuture<QueueMessage> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        final ScheduledFuture<?> timeoutFuture = waitExecutor.schedule(() -> waiter.complete(null), timeout, unit);
+        waiter.whenComplete((message, error) -> {
+            timeoutFuture.cancel(false);
+            // done empty by timeout or by caller which is gone, waiters completed with message are already polled
+            if (message == null) {
+                waiters.remove(waiter);
+            }
+        });
+        // message may be queued after pop and before waiter is added
+        notifyWaiters();
+        return waiter;
+    }
+
+    /**
+     * Hand queued messages to parked pop requests, called after messages became queued.
+     * Pusher and waiter both check the other side after publishing own state, so wakeup is not lost.
+     */
+    private void notifyWaiters() {
+        CompletableFuture<QueueMessage> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.isDone()) {
+                continue;
+            }
+            try {
+                final QueueMessage queueMessage = lockAndPop();
+                if (queueMessage == null) {
+                    waiters.offerFirst(waiter);
+                    // concurrent push may have seen no waiters while this one was polled
+                    if (peek() == null) {
+                        return;
+                    }
+                } else if (!waiter.complete(queueMessage)) {
+                    // waiter is timed out, return message to queue for next waiter
+                    queueMessage.release();
+                    QueueMessage rolledBack = rollback(queueMessage.getUuid());
+                    if (rolledBack != null) {
+                        rolledBack.release();
                     }
-                } finally {
-                    segment.release();
                 }
+            } catch (IOException e) {
+                logger.error("error notify waiter", e);
+                waiter.completeExceptionally(e);
             }
         }
-        return null;
+    }
+
+    @Override
+    public QueueMessage unlockAndDelete(UUID uuid) throws IOException {
+        return find(uuid, MMapQueueMessageSegment::unlockAndDelete);
     }
 
     @Override
     public QueueMessage unlockAndRollback(UUID uuid) throws IOException {
+        final QueueMessage queueMessage = rollback(uuid);
+        if (queueMessage != null) {
+            notifyWaiters();
+        }
+        return queueMessage;
+    }
+
+    private QueueMessage rollback(UUID uuid) throws IOException {
+        return find(uuid, MMapQueueMessageSegment::unlockAndRollback);
+    }
+
+    /**
+     * Apply operation to segments which may contain message, until it returns message.
+     * Compaction moves live messages between segments, so miss concurrent with compaction is retried after it.
+     */
+    private QueueMessage find(UUID uuid, SegmentOperation operation) throws IOException {
+        final long stamp = compactionLock.tryOptimisticRead();
+        QueueMessage queueMessage = findInSegments(uuid, operation);
+        if (queueMessage == null && !compactionLock.validate(stamp)) {
+            final long readStamp = compactionLock.readLock();
+            try {
+                queueMessage = findInSegments(uuid, operation);
+            } finally {
+                compactionLock.unlockRead(readStamp);
+            }
+        }
+        return queueMessage;
+    }
+
+    private QueueMessage findInSegments(UUID uuid, SegmentOperation operation) throws IOException {
         final ImmutableList<MMapQueueMessageSegment> current = this.segments;
         final int size = current.size();
         for (int i = 0; i < size; i++) {
             final MMapQueueMessageSegment segment = current.get(i);
-            if (segment.acquire() > 0) {
+            if (segment.mightContain(uuid) && segment.acquire() > 0) {
                 try {
-                    QueueMessage queueMessage = segment.unlockAndRollback(uuid);
+                    QueueMessage queueMessage = operation.apply(segment, uuid);
                     if (queueMessage != null) {
                         return queueMessage;
                     }
@@ -298,11 +580,40 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
 
     @Override
     public boolean push(QueueMessage queueMessage) throws IOException {
+        final boolean pushed;
         if (queueMessage.getUuid() == null) {
-            return pushNew(queueMessage);
+            pushed = pushNew(queueMessage);
         } else {
-            return pushExist(queueMessage);
+            pushed = pushExist(queueMessage);
+        }
+        if (pushed) {
+            counters.addPushed(1);
+        }
+        flusher.sync();
+        notifyWaiters();
+        return pushed;
+    }
+
+    @Override
+    public boolean push(List<QueueMessage> queueMessages) throws IOException {
+        // messages with uuid are checked for duplicates one by one, runs of new messages are written in batches
+        final List<QueueMessage> batch = new ArrayList<>(queueMessages.size());
+        for (QueueMessage queueMessage : queueMessages) {
+            if (queueMessage.getUuid() == null) {
+                queueMessage.setUuid(UUIDs.generateRandom());
+                batch.add(queueMessage);
+            } else {
+                pushNew(batch);
+                batch.clear();
+                if (pushExist(queueMessage)) {
+                    counters.addPushed(1);
+                }
+            }
         }
+        pushNew(batch);
+        flusher.sync();
+        notifyWaiters();
+        return true;
     }
 
     private boolean pushExist(QueueMessage queueMessage) throws IOException {
@@ -322,8 +633,13 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
                         if (pos >= 0) {
                             if (segment.writeLock(pos)) {
                                 segment.writeMessage(queueMessage, pos);
+                                if (i == size - 1) {
+                                    checkStandby(segment);
+                                }
                                 return true;
                             } else {
+                                // reservation of duplicate is returned
+                                segment.getMessageMetaSegment().releaseSize(1);
                                 throw new QueueMessageUuidDuplicateException(uuid);
                             }
                         }
@@ -351,8 +667,10 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
                         if (pos >= 0) {
                             if (segment.writeLock(pos)) {
                                 segment.writeMessage(queueMessage, pos);
+                                checkStandby(segment);
                                 return true;
                             } else {
+                                segment.getMessageMetaSegment().releaseSize(1);
                                 throw new QueueMessageUuidDuplicateException(uuid);
                             }
                         }
@@ -366,8 +684,85 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         }
     }
 
+    private void pushNew(List<QueueMessage> queueMessages) throws IOException {
+        final int size = queueMessages.size();
+        int from = 0;
+        MMapQueueMessageSegment prev = null;
+        while (from < size) {
+            ImmutableList<MMapQueueMessageSegment> current = this.segments;
+            if (!current.isEmpty()) {
+                MMapQueueMessageSegment segment = current.get(current.size() - 1);
+                if (prev != segment && segment.acquire() > 0) {
+                    try {
+                        int written = segment.writeMessages(queueMessages, from);
+                        // counted per segment, so messages written before failed batch are counted
+                        counters.addPushed(written);
+                        from += written;
+                        checkStandby(segment);
+                    } finally {
+                        segment.release();
+                    }
+                    if (from == size) {
+                        return;
+                    }
+                }
+                prev = segment;
+            }
+            addSegment(current);
+        }
+    }
+
+    /**
+     * @return count of messages ready to pop
+     */
     @Override
     public long size() {
+        return counters.queued();
+    }
+
+    /**
+     * Counters are maintained on status transitions, so stats do not scan segments.
+     */
+    @Override
+    public QueueStats stats() {
+        final QueueMessageCounters counters = this.counters;
+        final QueueStats stats = new QueueStats();
+        stats.setQueue(queue);
+        stats.setSize(counters.queued());
+        stats.setLockedSize(counters.locked());
+        stats.setDelayedSize(counters.delayed());
+        stats.setDeletedSize(counters.deleted());
+        stats.setBytes(counters.bytes());
+        stats.setPushCount(counters.pushed());
+        stats.setPopCount(counters.popped());
+        stats.setPushRate(counters.pushRate());
+        stats.setPopRate(counters.popRate());
+        final long headQueuedAt = headQueuedAt();
+        stats.setOldestAge(headQueuedAt > 0 ? Math.max(0, System.currentTimeMillis() - headQueuedAt) : 0);
+        final MMapQueueFlusher flusher = this.flusher;
+        if (flusher != null) {
+            stats.setFlushCount(flusher.getFlushCount());
+            stats.setFlushBatchMax(flusher.getFlushBatchMax());
+            stats.setFlushWaitCount(flusher.getWaitCount());
+            stats.setFlushWaitNanos(flusher.getWaitNanosTotal());
+            stats.setFlushWaitMaxNanos(flusher.getWaitNanosMax());
+        }
+        return stats;
+    }
+
+    /**
+     * @return time in millis when message at queue head was queued, 0 if queue is empty or head segment is not loaded
+     */
+    private long headQueuedAt() {
+        for (MMapQueueMessageSegment segment : queuedSegments.values()) {
+            if (segment.queuedSize() > 0 && segment.acquire() > 0) {
+                try {
+                    return segment.headQueuedAt();
+                } finally {
+                    segment.release();
+                }
+            }
+        }
         return 0;
     }
 
@@ -380,6 +775,32 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         return segments.size();
     }
 
+    public MMapQueueFlusher flusher() {
+        return flusher;
+    }
+
+    /**
+     * @return count of pending timers of delayed, expiring and leased messages and of transactions
+     */
+    public long timersSize() {
+        return timerWheel.size();
+    }
+
+    /**
+     * Only segments written since their last flush are forced, cold and full segments are skipped.
+     */
+    private void flushSegments() throws IOException {
+        for (MMapQueueMessageSegment segment : segments) {
+            if (segment.isDirty() && segment.acquire() > 0) {
+                try {
+                    segment.flush();
+                } finally {
+                    segment.release();
+                }
+            }
+        }
+    }
+
     public void garbageCollect() throws IOException {
         segmentsLock.lock();
         try {
@@ -398,29 +819,369 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
             this.segments = cleanBuilder.build();
 
             for (MMapQueueMessageSegment segment : garbageBuilder.build()) {
+                manifest.append(MMapQueueSegmentRecord.remove(segment));
+                segment.setCounters(QueueMessageCounters.NONE);
                 segment.delete();
             }
+            checkSnapshot();
+
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    /**
+     * Fire expired timers, delivered and rolled back messages are handed to parked pop requests.
+     */
+    private void advanceTimers() {
+        final long now = System.currentTimeMillis();
+        counters.sample(now);
+        try {
+            timerWheel.advance(now, timeout -> {
+                long deadline = timeout.timeout(now);
+                if (deadline > 0) {
+                    timeout.deadline(deadline);
+                    timerWheel.add(timeout);
+                }
+            });
+            notifyWaiters();
+        } catch (RuntimeException e) {
+            logger.error("error advance timers", e);
+        }
+    }
 
+    private void reclaim() {
+        try {
+            garbageCollect();
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.error("error reclaim segments", e);
+        }
+    }
+
+    /**
+     * Copy live messages of sparse segments to tail segment and delete sparse segments,
+     * so few messages locked for a long time or not consumed do not pin whole segment files.
+     * Moved messages keep uuid, lock status and timers, queued messages are moved to the end of queue
+     * and expired queued messages are dropped.
+     */
+    public void compact() throws IOException {
+        if (segmentCompactThreshold <= 0) {
+            return;
+        }
+        segmentsLock.lock();
+        try {
+            final ImmutableList<MMapQueueMessageSegment> current = this.segments;
+            // tail segment accepts new messages
+            for (int i = 0; i < current.size() - 1; i++) {
+                final MMapQueueMessageSegment segment = current.get(i);
+                if (segment.isFull() && segment.liveSize() > 0 && segment.liveSize() <= segmentCompactThreshold) {
+                    compact(segment);
+                }
+            }
+            checkSnapshot();
         } finally {
             segmentsLock.unlock();
         }
     }
 
+    private void compact(MMapQueueMessageSegment segment) throws IOException {
+        final List<QueueMessageMeta> live;
+        final long stamp = compactionLock.writeLock();
+        try {
+            // fails if segment is acquired by reader or held by transaction
+            if (!segment.releaseGarbage()) {
+                return;
+            }
+            final List<QueueMessage> messages;
+            try {
+                live = segment.readLive();
+                messages = new ArrayList<>(live.size());
+                for (QueueMessageMeta meta : live) {
+                    messages.add(segment.readMessage(meta));
+                }
+            } catch (IOException | RuntimeException e) {
+                segment.cancelGarbage();
+                throw e;
+            }
+            try {
+                final long now = System.currentTimeMillis();
+                final List<QueueMessage> moved = new ArrayList<>(messages.size());
+                final List<QueueMessageMeta> movedMeta = new ArrayList<>(messages.size());
+                for (int i = 0; i < messages.size(); i++) {
+                    final QueueMessageMeta meta = live.get(i);
+                    if (meta.getStatus() == QueueMessageStatus.QUEUED && meta.isExpired(now)) {
+                        continue;
+                    }
+                    moved.add(messages.get(i));
+                    movedMeta.add(meta);
+                }
+                if (!moveMessages(moved, movedMeta)) {
+                    segment.cancelGarbage();
+                    logger.warn("cancel compaction, message with same uuid is pushed to tail segment");
+                    return;
+                }
+            } catch (IOException | RuntimeException e) {
+                segment.cancelGarbage();
+                throw e;
+            } finally {
+                for (QueueMessage message : messages) {
+                    message.release();
+                }
+            }
+            try {
+                // moved messages must be on disk before segment holding them is removed
+                flusher.force();
+            } catch (IOException e) {
+                segment.cancelGarbage();
+                throw e;
+            }
+            ImmutableList.Builder<MMapQueueMessageSegment> builder = ImmutableList.builder();
+            for (MMapQueueMessageSegment s : this.segments) {
+                if (s != segment) {
+                    builder.add(s);
+                }
+            }
+            this.segments = builder.build();
+            manifest.append(MMapQueueSegmentRecord.remove(segment));
+        } finally {
+            compactionLock.unlockWrite(stamp);
+        }
+        queuedSegments.values().remove(segment);
+        segment.setCounters(QueueMessageCounters.NONE);
+        segment.delete();
+        logger.info("compact segment, moved {} messages", live.size());
+        notifyWaiters();
+    }
+
+    /**
+     * Write messages moved by compaction to tail segments, should be called under segments lock.
+     * Slots for all messages are write locked before any message is written, so if message with same uuid
+     * is pushed while compacted one is not visible, claimed slots are deleted and nothing is moved.
+     *
+     * @return false if message with same uuid exists in tail segment
+     */
+    private boolean moveMessages(List<QueueMessage> messages, List<QueueMessageMeta> metas) throws IOException {
+        final List<MovedSlot> slots = new ArrayList<>(messages.size());
+        int written = 0;
+        try {
+            for (QueueMessage message : messages) {
+                MovedSlot slot = claimSlot(message.getUuid());
+                if (slot == null) {
+                    return false;
+                }
+                slots.add(slot);
+            }
+            final long leaseDeadline = leaseDeadline();
+            for (; written < slots.size(); written++) {
+                MovedSlot slot = slots.get(written);
+                slot.segment.moveMessage(messages.get(written), metas.get(written), slot.pos, leaseDeadline);
+                checkStandby(slot.segment);
+            }
+            return true;
+        } finally {
+            for (int i = 0; i < slots.size(); i++) {
+                MovedSlot slot = slots.get(i);
+                if (i >= written) {
+                    slot.segment.markUnlockAndDelete(slot.pos);
+                }
+                slot.segment.release();
+            }
+        }
+    }
+
+    /**
+     * @return write locked slot in tail segment, acquired until message is written, or null if uuid exists
+     */
+    private MovedSlot claimSlot(UUID uuid) throws IOException {
+        while (true) {
+            final ImmutableList<MMapQueueMessageSegment> current = this.segments;
+            final MMapQueueMessageSegment segment = current.get(current.size() - 1);
+            if (segment.acquire() > 0) {
+                boolean claimed = false;
+                try {
+                    int pos = segment.insert(uuid);
+                    if (pos >= 0) {
+                        if (segment.writeLock(pos)) {
+                            claimed = true;
+                            return new MovedSlot(segment, pos);
+                        }
+                        // reservation of duplicate is returned
+                        segment.getMessageMetaSegment().releaseSize(1);
+                        return null;
+                    }
+                } finally {
+                    if (!claimed) {
+                        segment.release();
+                    }
+                }
+            }
+            addSegment(current);
+        }
+    }
+
+    private static class MovedSlot {
+        private final MMapQueueMessageSegment segment;
+        private final int pos;
+
+        private MovedSlot(MMapQueueMessageSegment segment, int pos) {
+            this.segment = segment;
+            this.pos = pos;
+        }
+    }
+
     private void addSegment(ImmutableList<MMapQueueMessageSegment> current) throws IOException {
         segmentsLock.lock();
         try {
             if (this.segments == current) {
+                MMapQueueMessageSegment segment = takeStandby();
+                boolean persisted = segment != null && standbyPersisted;
+                standbyPersisted = false;
+                if (segment == null) {
+                    segment = createSegment();
+                }
                 this.segments = ImmutableList.<MMapQueueMessageSegment>builder()
                     .addAll(current)
-                    .add(createSegment())
+                    .add(register(segment))
                     .build();
-                writeState();
+                if (!persisted) {
+                    manifest.append(MMapQueueSegmentRecord.add(segment));
+                }
+                checkSnapshot();
             }
         } finally {
             segmentsLock.unlock();
         }
     }
 
+    /**
+     * Start creation of standby segment, if tail segment is filled over standby ratio.
+     */
+    private void checkStandby(MMapQueueMessageSegment tail) {
+        if (segmentStandbyThreshold > 0
+            && standby.get() == null
+            && tail.getMessageMetaSegment().size() >= segmentStandbyThreshold) {
+            prepareStandby();
+        }
+    }
+
+    private void prepareStandby() {
+        final CompletableFuture<MMapQueueMessageSegment> future = new CompletableFuture<>();
+        if (!standby.compareAndSet(null, future)) {
+            return;
+        }
+        final ExecutorService executor = standbyExecutor;
+        try {
+            executor.execute(() -> {
+                try {
+                    MMapQueueMessageSegment segment = createSegment();
+                    segment.warmup();
+                    future.complete(segment);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("error create standby segment", e);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                persistStandby(future);
+            });
+        } catch (RuntimeException e) {
+            // queue is stopped
+            standby.compareAndSet(future, null);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Append standby segment to manifest ahead of roll over, so roll over does not write manifest under segments lock.
+     */
+    private void persistStandby(CompletableFuture<MMapQueueMessageSegment> future) {
+        segmentsLock.lock();
+        try {
+            if (standby.get() == future) {
+                manifest.append(MMapQueueSegmentRecord.add(future.join()));
+                standbyPersisted = true;
+            }
+        } catch (IOException e) {
+            logger.error("error append standby segment to manifest", e);
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    /**
+     * Does not wait for creation in progress: standby task takes segments lock to persist state,
+     * so waiting for it under segments lock may deadlock.
+     *
+     * @return created standby segment, null if there is no standby segment or it is not created yet
+     */
+    private MMapQueueMessageSegment takeStandby() {
+        final CompletableFuture<MMapQueueMessageSegment> future = standby.get();
+        if (future == null || !future.isDone() || !standby.compareAndSet(future, null)) {
+            return null;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Unused standby segment is removed from manifest on stop, so only crash leaves it as empty tail segment.
+     */
+    private void closeStandby() throws IOException {
+        segmentsLock.lock();
+        try {
+            final CompletableFuture<MMapQueueMessageSegment> future = standby.getAndSet(null);
+            if (standbyPersisted) {
+                manifest.append(MMapQueueSegmentRecord.remove(future.join()));
+                standbyPersisted = false;
+            }
+            if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+                future.join().delete();
+            }
+        } finally {
+            segmentsLock.unlock();
+        }
+    }
+
+    private MMapQueueMessageSegment register(MMapQueueMessageSegment segment) {
+        final long id = segmentSequence.incrementAndGet();
+        final TimingWheel<QueueTimeout> wheel = timerWheel;
+        segment.setCounters(counters);
+        segment.getMessageMetaSegment().setTimerListener(new QueueMessageTimerListener() {
+            @Override
+            public void schedule(int pos, long deadline, int lockStamp) {
+                wheel.add(new MessageTimeout(segment, pos, lockStamp, deadline));
+            }
+
+            @Override
+            public Runnable lease(int pos, long deadline, int lockStamp) {
+                final MessageTimeout timeout = new MessageTimeout(segment, pos, lockStamp, deadline);
+                wheel.add(timeout);
+                return () -> wheel.cancel(timeout);
+            }
+        });
+        segment.getMessageMetaSegment().addQueuedListener(meta -> updateQueued(id, segment));
+        updateQueued(id, segment);
+        return segment;
+    }
+
+    /**
+     * Sync segment presence in queued index with it's queued size.
+     * Stale presence of empty segment is allowed and is cleaned up on pop, stale absence is not.
+     */
+    private void updateQueued(long id, MMapQueueMessageSegment segment) {
+        if (segment.queuedSize() > 0) {
+            queuedSegments.put(id, segment);
+        } else {
+            queuedSegments.remove(id, segment);
+            if (segment.queuedSize() > 0) {
+                queuedSegments.put(id, segment);
+            }
+        }
+    }
+
     private MMapQueueMessageAppendSegment createAppendSegment() throws IOException {
         logger.info("create new data segment");
         long start = System.currentTimeMillis();
@@ -437,12 +1198,16 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
     private MMapQueueMessageMetaSegment createMetaSegment() throws IOException {
         logger.info("create new meta segment");
         long start = System.currentTimeMillis();
-        MMapQueueMessageMetaSegment meta = createMetaSegment(mmapFileFactory.createFile("meta"));
+        MMapQueueMessageMetaSegment meta = createMetaSegment(mmapFileFactory.createFile("meta", metaFileSize()));
         long end = System.currentTimeMillis();
         logger.info("create new meta segment at {}ms", end - start);
         return meta;
     }
 
+    private long metaFileSize() {
+        return MMapQueueMessageMetaSegment.fileSize(segmentMaxSize, segmentLoadFactor);
+    }
+
     private MMapQueueMessageMetaSegment createMetaSegment(MemoryMappedFile file) throws IOException {
         return new MMapQueueMessageMetaSegment(
             file,
@@ -456,41 +1221,144 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         long start = System.currentTimeMillis();
         MMapQueueMessageSegment segment = new MMapQueueMessageSegment(
             createAppendSegment(),
-            createMetaSegment()
+            createMetaSegment(),
+            segmentAllocator,
+            segmentZeroCopyMinSize
         );
         long end = System.currentTimeMillis();
         logger.info("create new segment done at {}ms", end - start);
         return segment;
     }
 
+    private interface SegmentOperation {
+        QueueMessage apply(MMapQueueMessageSegment segment, UUID uuid) throws IOException;
+    }
+
+    private static abstract class QueueTimeout extends TimingWheel.Timeout {
+
+        private QueueTimeout(long deadline) {
+            super(deadline);
+        }
+
+        /**
+         * @return next deadline, 0 if timeout is done
+         */
+        protected abstract long timeout(long now);
+    }
+
+    private class MessageTimeout extends QueueTimeout {
+        private final MMapQueueMessageSegment segment;
+        private final int pos;
+        private final int lockStamp;
+
+        private MessageTimeout(MMapQueueMessageSegment segment, int pos, int lockStamp, long deadline) {
+            super(deadline);
+            this.segment = segment;
+            this.pos = pos;
+            this.lockStamp = lockStamp;
+        }
+
+        @Override
+        protected long timeout(long now) {
+            // timers of deleted segment are dropped, compaction schedules timers of moved messages
+            if (segment.acquire() > 0) {
+                try {
+                    return segment.timeout(pos, now, lockStamp);
+                } catch (IOException e) {
+                    logger.error("error fire timer of message", e);
+                } finally {
+                    segment.release();
+                }
+            }
+            return 0;
+        }
+    }
+
     private static enum TransactionStatus {INIT, BEGIN, COMMIT, ROLLBACK}
 
     private static enum MessageStatus {PUSH, POP, DELETE}
 
     private static class QueueMessageTransaction {
+        private final UUID uuid;
+        private final QueueMessage message;
+        private final MessageStatus status;
+        private final MMapQueueMessageSegment segment;
         // only push
-        private QueueMessage message;
-        private MessageStatus status;
-        private MMapQueueMessageSegment segment;
-        // only push
-        private int segmentPos;
+        private final int segmentPos;
+
+        private QueueMessageTransaction(QueueMessage message, MessageStatus status, MMapQueueMessageSegment segment, int segmentPos) {
+            this.uuid = message.getUuid();
+            this.message = message;
+            this.status = status;
+            this.segment = segment;
+            this.segmentPos = segmentPos;
+        }
     }
 
-    private class MMapMemoryQueueTransaction implements QueueTransaction {
+    /**
+     * Message of transaction is reserved or locked by it, so it's not added to transaction twice
+     * and messages are held in list instead of map.
+     */
+    private class MMapMemoryQueueTransaction extends QueueTimeout implements QueueTransaction {
 
         private final UUID id;
-        private final ConcurrentHashMap<UUID, QueueMessageTransaction> messageTransactionMap;
+        private final ArrayList<QueueMessageTransaction> messageTransactions;
 
         private AtomicReference<TransactionStatus> status;
+        private volatile long leaseDeadline;
 
         public MMapMemoryQueueTransaction(UUID id) {
+            super(System.currentTimeMillis() + transactionTimeout);
             this.id = id;
-            this.messageTransactionMap = new ConcurrentHashMap<>();
+            this.messageTransactions = new ArrayList<>();
             this.status = new AtomicReference<>(TransactionStatus.BEGIN);
+            this.leaseDeadline = deadline();
         }
 
-        private QueueMessageTransaction messageTransaction(UUID uuid) {
-            return messageTransactionMap.computeIfAbsent(uuid, uuidNew -> new QueueMessageTransaction());
+        /**
+         * Add message locked by transaction and hold its segment until commit or rollback, so it's not reclaimed
+         * or compacted. Should be called while segment is acquired. Status is checked under the same lock
+         * as completion takes messages, so if transaction is completed concurrently message is unlocked
+         * instead of being left locked.
+         */
+        private void add(QueueMessageTransaction messageTransaction) throws IOException {
+            synchronized (messageTransactions) {
+                if (status.get() == TransactionStatus.BEGIN) {
+                    messageTransaction.segment.acquire();
+                    messageTransactions.add(messageTransaction);
+                    return;
+                }
+            }
+            if (messageTransaction.status == MessageStatus.PUSH) {
+                messageTransaction.segment.markUnlockAndDelete(messageTransaction.segmentPos);
+            } else {
+                messageTransaction.segment.markUnlockAndRollback(messageTransaction.uuid);
+            }
+            assertStatus(TransactionStatus.BEGIN);
+        }
+
+        private void extendLease() {
+            if (transactionTimeout > 0) {
+                leaseDeadline = System.currentTimeMillis() + transactionTimeout;
+            }
+        }
+
+        @Override
+        protected long timeout(long now) {
+            if (status.get() != TransactionStatus.BEGIN) {
+                return 0;
+            }
+            if (leaseDeadline > now) {
+                return leaseDeadline;
+            }
+            logger.warn("rollback transaction {}, lease is expired", id);
+            try {
+                rollback();
+            } catch (IOException e) {
+                // committed or rolled back concurrently
+                logger.debug("error rollback transaction {}", id, e);
+            }
+            return 0;
         }
 
         @Override
@@ -501,6 +1369,7 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         @Override
         public void push(QueueMessage queueMessage) throws IOException {
             assertStatus(TransactionStatus.BEGIN);
+            extendLease();
             // optimized insert
             if (queueMessage.getUuid() == null) {
                 insertNew(queueMessage);
@@ -522,13 +1391,11 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
                             int pos = segment.insert(uuid);
                             if (pos >= 0) {
                                 if (segment.writeLock(pos)) {
-                                    QueueMessageTransaction messageTransaction = messageTransaction(uuid);
-                                    messageTransaction.message = queueMessage;
-                                    messageTransaction.status = MessageStatus.PUSH;
-                                    messageTransaction.segment = segment;
-                                    messageTransaction.segmentPos = pos;
+                                    add(new QueueMessageTransaction(queueMessage, MessageStatus.PUSH, segment, pos));
+                                    checkStandby(segment);
                                     return;
                                 } else {
+                                    segment.getMessageMetaSegment().releaseSize(1);
                                     throw new QueueMessageUuidDuplicateException(uuid);
                                 }
                             }
@@ -558,13 +1425,10 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
                             int pos = segment.insert(uuid);
                             if (pos >= 0) {
                                 if (segment.writeLock(pos)) {
-                                    QueueMessageTransaction messageTransaction = messageTransaction(uuid);
-                                    messageTransaction.message = queueMessage;
-                                    messageTransaction.status = MessageStatus.PUSH;
-                                    messageTransaction.segment = segment;
-                                    messageTransaction.segmentPos = pos;
+                                    add(new QueueMessageTransaction(queueMessage, MessageStatus.PUSH, segment, pos));
                                     return;
                                 } else {
+                                    segment.getMessageMetaSegment().releaseSize(1);
                                     throw new QueueMessageUuidDuplicateException(uuid);
                                 }
                             }
@@ -581,23 +1445,22 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         @Override
         public QueueMessage pop() throws IOException {
             assertStatus(TransactionStatus.BEGIN);
-            final ImmutableList<MMapQueueMessageSegment> current = segments;
-            final int size = current.size();
-            for (int i = 0; i < size; i++) {
-                final MMapQueueMessageSegment segment = current.get(i);
+            extendLease();
+            for (Map.Entry<Long, MMapQueueMessageSegment> entry : queuedSegments.entrySet()) {
+                final MMapQueueMessageSegment segment = entry.getValue();
                 if (segment.acquire() > 0) {
                     try {
                         QueueMessage queueMessage = segment.lockAndPop();
                         if (queueMessage != null) {
-                            QueueMessageTransaction messageTransaction = messageTransaction(queueMessage.getUuid());
-                            messageTransaction.message = queueMessage;
-                            messageTransaction.status = MessageStatus.POP;
-                            messageTransaction.segment = segment;
+                            add(new QueueMessageTransaction(queueMessage, MessageStatus.POP, segment, -1));
                             return queueMessage;
                         }
                     } finally {
                         segment.release();
                     }
+                    updateQueued(entry.getKey(), segment);
+                } else {
+                    queuedSegments.remove(entry.getKey(), segment);
                 }
             }
             return null;
@@ -606,67 +1469,87 @@ public class MMapTransactionalQueueService extends AbstractQueueService implemen
         @Override
         public QueueMessage delete(UUID uuid) throws IOException {
             assertStatus(TransactionStatus.BEGIN);
-            final ImmutableList<MMapQueueMessageSegment> current = segments;
-            final int size = current.size();
-            for (int i = 0; i < size; i++) {
-                final MMapQueueMessageSegment segment = current.get(i);
-                if (segment.acquire() > 0) {
-                    try {
-                        QueueMessage queueMessage = segment.lock(uuid);
-                        if (queueMessage != null) {
-                            QueueMessageTransaction messageTransaction = messageTransaction(queueMessage.getUuid());
-                            messageTransaction.message = queueMessage;
-                            messageTransaction.status = MessageStatus.DELETE;
-                            messageTransaction.segment = segment;
-                            return queueMessage;
-                        }
-                    } finally {
-                        segment.release();
-                    }
+            extendLease();
+            return find(uuid, (segment, id) -> {
+                QueueMessage queueMessage = segment.lock(id);
+                if (queueMessage != null) {
+                    add(new QueueMessageTransaction(queueMessage, MessageStatus.DELETE, segment, -1));
                 }
-            }
-            return null;
+                return queueMessage;
+            });
         }
 
         @Override
         public void commit() throws IOException {
             updateStatus(TransactionStatus.BEGIN, TransactionStatus.COMMIT);
-            for (Map.Entry<UUID, QueueMessageTransaction> entry : messageTransactionMap.entrySet()) {
-                UUID uuid = entry.getKey();
-                QueueMessageTransaction messageTransaction = entry.getValue();
-                switch (messageTransaction.status) {
-                    case PUSH:
-                        messageTransaction.segment.writeMessage(
-                            messageTransaction.message,
-                            messageTransaction.segmentPos
-                        );
-                        break;
-                    case DELETE:
-                    case POP:
-                        messageTransaction.segment.markUnlockAndDelete(uuid);
-                        break;
+            for (QueueMessageTransaction messageTransaction : messageTransactions()) {
+                try {
+                    switch (messageTransaction.status) {
+                        case PUSH:
+                            messageTransaction.segment.writeMessage(
+                                messageTransaction.message,
+                                messageTransaction.segmentPos
+                            );
+                            counters.addPushed(1);
+                            break;
+                        case DELETE:
+                            messageTransaction.segment.markUnlockAndDelete(messageTransaction.uuid);
+                            break;
+                        case POP:
+                            messageTransaction.segment.markUnlockAndDelete(messageTransaction.uuid);
+                            counters.addPopped(1);
+                            break;
+                    }
+                } finally {
+                    messageTransaction.segment.release();
                 }
             }
-            transactionMap.remove(id);
+            transactionMap.remove(id, this);
+            cancelLease();
+            flusher.sync();
+            notifyWaiters();
         }
 
         @Override
         public void rollback() throws IOException {
             updateStatus(TransactionStatus.BEGIN, TransactionStatus.ROLLBACK);
-            for (Map.Entry<UUID, QueueMessageTransaction> entry : messageTransactionMap.entrySet()) {
-                UUID uuid = entry.getKey();
-                QueueMessageTransaction messageTransaction = entry.getValue();
-                switch (messageTransaction.status) {
-                    case PUSH:
-                        messageTransaction.segment.markUnlockAndDelete(messageTransaction.segmentPos);
-                        break;
-                    case POP:
-                    case DELETE:
-                        messageTransaction.segment.markUnlockAndRollback(uuid);
-                        break;
-                }
-            }
-            transactionMap.remove(id);
+            for (QueueMessageTransaction messageTransaction : messageTransactions()) {
+                try {
+                    switch (messageTransaction.status) {
+                        case PUSH:
+                            messageTransaction.segment.markUnlockAndDelete(messageTransaction.segmentPos);
+                            break;
+                        case POP:
+                        case DELETE:
+                            messageTransaction.segment.markUnlockAndRollback(messageTransaction.uuid);
+                            break;
+                    }
+                } finally {
+                    messageTransaction.segment.release();
+                }
+            }
+            transactionMap.remove(id, this);
+            cancelLease();
+            notifyWaiters();
+        }
+
+        private void cancelLease() {
+            final TimingWheel<QueueTimeout> wheel = timerWheel;
+            if (wheel != null) {
+                wheel.cancel(this);
+            }
+        }
+
+        /**
+         * Take messages of completed transaction, it's lease timer is cancelled after.
+         */
+        private List<QueueMessageTransaction> messageTransactions() {
+            synchronized (messageTransactions) {
+                List<QueueMessageTransaction> list = new ArrayList<>(messageTransactions);
+                messageTransactions.clear();
+                messageTransactions.trimToSize();
+                return list;
+            }
         }
 
         private void updateStatus(TransactionStatus expected, TransactionStatus update) throws IOException {
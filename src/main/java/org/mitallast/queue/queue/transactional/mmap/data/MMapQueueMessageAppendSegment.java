@@ -4,6 +4,7 @@ import io.netty.buffer.ByteBuf;
 import org.mitallast.queue.common.mmap.MemoryMappedFile;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class MMapQueueMessageAppendSegment implements QueueMessageAppendSegment {
@@ -20,11 +21,23 @@ public class MMapQueueMessageAppendSegment implements QueueMessageAppendSegment
         return mappedFile;
     }
 
+    /**
+     * @return bytes of appended data, including data reserved by append in progress
+     */
+    public long size() {
+        return messageWriteOffset.get();
+    }
+
     @Override
     public void read(ByteBuf buffer, long offset, int length) throws IOException {
         mappedFile.getBytes(offset, buffer, length);
     }
 
+    @Override
+    public ByteBuf slice(long offset, int length) throws IOException {
+        return mappedFile.slice(offset, length);
+    }
+
     @Override
     public long append(ByteBuf buffer) throws IOException {
         long offset = messageWriteOffset.getAndAdd(buffer.readableBytes());
@@ -32,6 +45,27 @@ public class MMapQueueMessageAppendSegment implements QueueMessageAppendSegment
         return offset;
     }
 
+    @Override
+    public long append(List<ByteBuf> buffers) throws IOException {
+        long length = 0;
+        for (ByteBuf buffer : buffers) {
+            length += buffer.readableBytes();
+        }
+        final long offset = messageWriteOffset.getAndAdd(length);
+        long position = offset;
+        for (ByteBuf buffer : buffers) {
+            int bufferLength = buffer.readableBytes();
+            mappedFile.putBytes(position, buffer, bufferLength);
+            position += bufferLength;
+        }
+        return offset;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mappedFile.flush();
+    }
+
     @Override
     public void close() throws IOException {
         mappedFile.flush();
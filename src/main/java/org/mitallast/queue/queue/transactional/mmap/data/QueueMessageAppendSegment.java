@@ -3,13 +3,27 @@ package org.mitallast.queue.queue.transactional.mmap.data;
 import io.netty.buffer.ByteBuf;
 
 import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
+import java.util.List;
 
-public interface QueueMessageAppendSegment extends Closeable {
+public interface QueueMessageAppendSegment extends Closeable, Flushable {
 
     void read(ByteBuf buffer, long offset, int length) throws IOException;
 
+    /**
+     * Read without copy, returned buffer must be released.
+     */
+    ByteBuf slice(long offset, int length) throws IOException;
+
     long append(ByteBuf buffer) throws IOException;
 
+    /**
+     * Append buffers one after another with single offset reservation.
+     *
+     * @return offset of first buffer
+     */
+    long append(List<ByteBuf> buffers) throws IOException;
+
     void delete() throws IOException;
 }
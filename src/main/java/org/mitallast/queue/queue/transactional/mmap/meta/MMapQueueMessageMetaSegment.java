@@ -4,15 +4,29 @@ import gnu.trove.impl.HashFunctions;
 import gnu.trove.impl.PrimeFinder;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import org.mitallast.queue.common.collection.UUIDBloomFilter;
+import org.mitallast.queue.common.event.EventListener;
+import org.mitallast.queue.common.event.EventObserver;
 import org.mitallast.queue.common.mmap.MemoryMappedFile;
 import org.mitallast.queue.queue.QueueMessageStatus;
 import org.mitallast.queue.queue.QueueMessageType;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32;
 
+import static org.mitallast.queue.queue.QueueMessageStatus.DELAYED;
 import static org.mitallast.queue.queue.QueueMessageStatus.DELETED;
 import static org.mitallast.queue.queue.QueueMessageStatus.INIT;
 import static org.mitallast.queue.queue.QueueMessageStatus.LOCKED;
@@ -28,8 +42,12 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
     private final static int MESSAGE_META_SIZE = LONG_SIZE * 8;
     private final static int MESSAGE_META_SIZE_WITHOUT_UUID = MESSAGE_META_SIZE - LONG_SIZE * 2;
     private final static int MESSAGE_META_SIZE_WITHOUT_UUID_STATUS = MESSAGE_META_SIZE_WITHOUT_UUID - INT_SIZE;
+    // uuid, status, offset, length, type, deliver at and expire at, rest of entry is not used
+    private final static int MESSAGE_META_TIMERS_END = LONG_SIZE * 2 + INT_SIZE + LONG_SIZE + INT_SIZE * 2 + LONG_SIZE * 2;
     private final static int MESSAGE_COUNT_OFFSET = 0;
     private final static int MESSAGE_META_OFFSET = MESSAGE_COUNT_OFFSET + INT_SIZE;
+    private final static int SUMMARY_MAGIC = 0x4d455434;
+    private final static int ORDER_TIME_BLOCK = 1024;
 
     private final static ThreadLocal<ByteBuf> localBuffer = new ThreadLocal<ByteBuf>() {
         @Override
@@ -39,83 +57,514 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
     };
 
     private final MemoryMappedFile mappedFile;
+    private final File summaryFile;
     private final int size;
-    private final AtomicReferenceArray<UUID> uuidMap;
-    private final AtomicReferenceArray<QueueMessageStatus> statusMap;
     private final AtomicInteger sizeCounter;
+    private final AtomicInteger queuedCounter;
+    private final AtomicInteger deletedCounter;
+    private final AtomicInteger delayedCounter;
+    private final EventObserver<MMapQueueMessageMetaSegment> queuedObserver;
     private final int maxSize;
+    // counters are restored from summary of clean closed segment, so it's not required to load segment to read them
+    private final boolean summary;
+    private volatile QueueMessageTimerListener timerListener = QueueMessageTimerListener.NONE;
+    private volatile QueueMessageCounters counters = QueueMessageCounters.NONE;
+
+    // restored from summary of clean closed segment, so lookup by uuid does not load segment
+    private final UUIDBloomFilter uuidFilter;
+    /**
+     * Range of data offsets of messages written to segment, including deleted, -1 if segment has no messages.
+     */
+    private final AtomicLong minOffset = new AtomicLong(-1);
+    private final AtomicLong maxOffset = new AtomicLong(-1);
+
+    // in-memory tables are built on first access, see load()
+    private volatile boolean loaded;
+    // meta was written since last flush
+    private volatile boolean dirty;
+    // lease timers of locked messages, cancelled on unlock so timers live only while lock is held
+    private final ConcurrentHashMap<Integer, Lease> leases = new ConcurrentHashMap<>();
+    private QueueMessageMetaSlotTable slots;
+
+    /**
+     * FIFO order of queued messages: append-order ring of slot positions (pos + 1, 0 is not published yet).
+     * Each slot is appended once, when it becomes QUEUED for the first time, so capacity is bounded by maxSize.
+     * Reverse index from slot to ring entry is kept off-heap in slot table, see {@link QueueMessageMetaSlotTable#order(int)}.
+     */
+    private AtomicIntegerArray order;
+    /**
+     * Time of first enqueue to each block of ring entries, so age of queue head is tracked with block granularity.
+     */
+    private AtomicLongArray orderTimes;
+    private final AtomicInteger orderTail;
+    /**
+     * Head cursor, packed as [version:32][index:32]. Every entry before index is not QUEUED.
+     * Version is incremented on each rollback, so pop can not move head over message returned to queue concurrently.
+     */
+    private final AtomicLong orderHead;
 
     public MMapQueueMessageMetaSegment(MemoryMappedFile mappedFile, int maxSize, float loadFactor) throws IOException {
         this.mappedFile = mappedFile;
+        this.summaryFile = new File(mappedFile.getFile().getPath() + ".summary");
         this.sizeCounter = new AtomicInteger();
+        this.queuedCounter = new AtomicInteger();
+        this.deletedCounter = new AtomicInteger();
+        this.delayedCounter = new AtomicInteger();
+        this.queuedObserver = EventObserver.create();
         this.maxSize = maxSize;
-        int ceil = HashFunctions.fastCeil(maxSize / loadFactor);
-        size = PrimeFinder.nextPrime(ceil);
-        uuidMap = new AtomicReferenceArray<>(size);
-        statusMap = new AtomicReferenceArray<>(size);
-        init();
+        size = tableSize(maxSize, loadFactor);
+        orderTail = new AtomicInteger();
+        orderHead = new AtomicLong();
+        uuidFilter = new UUIDBloomFilter(maxSize);
+        summary = mappedFile.isEmpty() || readSummary();
     }
 
     public MemoryMappedFile getMappedFile() {
         return mappedFile;
     }
 
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Listener should be set before segment is loaded, timers of loaded messages are scheduled on load.
+     */
+    public void setTimerListener(QueueMessageTimerListener timerListener) {
+        this.timerListener = timerListener;
+    }
+
+    /**
+     * Move segment counts to queue counters, should be called while segment is not accessed:
+     * before segment is added to queue and after it's removed.
+     */
+    public synchronized void setCounters(QueueMessageCounters counters) {
+        loadCounters();
+        final QueueMessageCounters previous = this.counters;
+        this.counters = counters;
+        previous.addSize(-sizeCounter.get());
+        previous.addQueued(-queuedCounter.get());
+        previous.addDelayed(-delayedCounter.get());
+        previous.addDeleted(-deletedCounter.get());
+        counters.addSize(sizeCounter.get());
+        counters.addQueued(queuedCounter.get());
+        counters.addDelayed(delayedCounter.get());
+        counters.addDeleted(deletedCounter.get());
+    }
+
+    /**
+     * Build in-memory tables from mapped file, called on first access or by warm-up.
+     */
+    public void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            slots = new QueueMessageMetaSlotTable(size);
+            order = new AtomicIntegerArray(maxSize);
+            orderTimes = new AtomicLongArray((maxSize + ORDER_TIME_BLOCK - 1) / ORDER_TIME_BLOCK);
+            init();
+            loaded = true;
+        }
+        queuedObserver.triggerEvent(this);
+    }
+
+    /**
+     * Summary is valid only until segment is modified, so it's deleted after read and written again on close.
+     * Summary holds counters, data offset range and uuid bloom filter, followed by CRC32 of them.
+     */
+    private boolean readSummary() throws IOException {
+        if (!summaryFile.exists()) {
+            return false;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(summaryFile.toPath());
+            if (bytes.length < LONG_SIZE) {
+                return false;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - LONG_SIZE);
+            if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - LONG_SIZE, LONG_SIZE).getLong()) {
+                return false;
+            }
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - LONG_SIZE));
+            if (input.readInt() != SUMMARY_MAGIC) {
+                return false;
+            }
+            int summarySize = input.readInt();
+            int summaryQueued = input.readInt();
+            int summaryDeleted = input.readInt();
+            int summaryDelayed = input.readInt();
+            long summaryMinOffset = input.readLong();
+            long summaryMaxOffset = input.readLong();
+            // segment of other max size is loaded
+            if (!uuidFilter.readFrom(input)) {
+                return false;
+            }
+            sizeCounter.set(summarySize);
+            queuedCounter.set(summaryQueued);
+            deletedCounter.set(summaryDeleted);
+            delayedCounter.set(summaryDelayed);
+            minOffset.set(summaryMinOffset);
+            maxOffset.set(summaryMaxOffset);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            if (!summaryFile.delete()) {
+                throw new IOException("Error delete file " + summaryFile);
+            }
+        }
+    }
+
+    private void writeSummary(int summarySize, int summaryQueued, int summaryDeleted, int summaryDelayed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(SUMMARY_MAGIC);
+        output.writeInt(summarySize);
+        output.writeInt(summaryQueued);
+        output.writeInt(summaryDeleted);
+        output.writeInt(summaryDelayed);
+        output.writeLong(minOffset.get());
+        output.writeLong(maxOffset.get());
+        uuidFilter.writeTo(output);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeLong(crc.getValue());
+        try (FileOutputStream file = new FileOutputStream(summaryFile)) {
+            bytes.writeTo(file);
+        }
+    }
+
     private void init() throws IOException {
-        if (mappedFile.isEmpty()) return;
+        if (mappedFile.isEmpty()) {
+            initCounters(0, 0, 0, 0);
+            return;
+        }
+        final long now = System.currentTimeMillis();
         ByteBuf buffer = localBuffer.get();
+        // queued messages ordered by data offset, packed as offset * size + pos
+        long[] queued = new long[maxSize];
+        int queuedCount = 0;
+        int initSize = 0;
+        int initDeleted = 0;
+        int initDelayed = 0;
         for (int pos = 0; pos < size; pos++) {
             long metaOffset = getMetaOffset(pos);
             buffer.clear();
-            mappedFile.getBytes(metaOffset, buffer, LONG_SIZE * 2 + INT_SIZE);
+            mappedFile.getBytes(metaOffset, buffer, MESSAGE_META_TIMERS_END);
             long most = buffer.readLong();
             long least = buffer.readLong();
             if (most == 0 && least == 0) {
                 continue;
             }
-            uuidMap.set(pos, new UUID(most, least));
-            statusMap.set(pos, QueueMessageStatus.values()[buffer.readInt()]);
-            sizeCounter.incrementAndGet();
+            QueueMessageStatus status = QueueMessageStatus.values()[buffer.readInt()];
+            long offset = buffer.readLong();
+            buffer.skipBytes(INT_SIZE * 2); // length and type
+            long deliverAt = buffer.readLong();
+            long expireAt = buffer.readLong();
+            updateOffsetRange(offset);
+            if (status == QUEUED && deliverAt > now) {
+                status = DELAYED;
+                initDelayed++;
+                timerListener.schedule(pos, deliverAt, 0);
+            } else if (status == QUEUED && expireAt > 0) {
+                timerListener.schedule(pos, expireAt, 0);
+            }
+            UUID uuid = new UUID(most, least);
+            slots.load(pos, uuid, status);
+            uuidFilter.put(uuid);
+            initSize++;
+            if (status == DELETED) {
+                initDeleted++;
+            }
+            if (status == QUEUED && queuedCount < maxSize) {
+                queued[queuedCount++] = offset * size + pos;
+            }
+        }
+        Arrays.sort(queued, 0, queuedCount);
+        for (int i = 0; i < queuedCount; i++) {
+            int pos = (int) (queued[i] % size);
+            slots.setOrder(pos, i + 1);
+            order.set(i, pos + 1);
         }
+        orderTail.set(queuedCount);
+        for (int block = 0; block * ORDER_TIME_BLOCK < queuedCount; block++) {
+            orderTimes.set(block, now);
+        }
+        initCounters(initSize, queuedCount, initDeleted, initDelayed);
+    }
+
+    /**
+     * Replace counters restored from summary with counters of loaded segment.
+     */
+    private void initCounters(int initSize, int initQueued, int initDeleted, int initDelayed) {
+        final QueueMessageCounters counters = this.counters;
+        counters.addSize(initSize - sizeCounter.getAndSet(initSize));
+        counters.addQueued(initQueued - queuedCounter.getAndSet(initQueued));
+        counters.addDeleted(initDeleted - deletedCounter.getAndSet(initDeleted));
+        counters.addDelayed(initDelayed - delayedCounter.getAndSet(initDelayed));
+    }
+
+    /**
+     * Listener is triggered when segment may become empty or non empty: queued size reaches 0 or 1.
+     */
+    public void addQueuedListener(EventListener<MMapQueueMessageMetaSegment> listener) {
+        queuedObserver.addListener(listener);
     }
 
-    private boolean incrementSize() {
+    private void incrementQueued() {
+        counters.addQueued(1);
+        if (queuedCounter.incrementAndGet() <= 1) {
+            queuedObserver.triggerEvent(this);
+        }
+    }
+
+    private void decrementQueued() {
+        counters.addQueued(-1);
+        if (queuedCounter.decrementAndGet() <= 1) {
+            queuedObserver.triggerEvent(this);
+        }
+    }
+
+    /**
+     * @return reserved count, up to requested count
+     */
+    private int incrementSize(int count) {
         while (true) {
             int currentSize = sizeCounter.get();
-            if (currentSize < maxSize) {
-                if (sizeCounter.compareAndSet(currentSize, currentSize + 1)) {
-                    return true;
-                }
-            } else {
-                return false;
+            int reserved = Math.min(count, maxSize - currentSize);
+            if (reserved <= 0) {
+                return 0;
+            }
+            if (sizeCounter.compareAndSet(currentSize, currentSize + reserved)) {
+                counters.addSize(reserved);
+                return reserved;
             }
         }
     }
 
+    /**
+     * Return size reserved by insert for uuid which is not written: not inserted or duplicate of existing message.
+     */
+    public void releaseSize(int count) {
+        if (count > 0) {
+            sizeCounter.addAndGet(-count);
+            counters.addSize(-count);
+        }
+    }
+
     @Override
     public QueueMessageMeta peek() throws IOException {
-        for (int index = 0; index < size; index++) {
-            if (statusMap.get(index) == QUEUED) {
-                return readMeta(index);
+        load();
+        while (true) {
+            int pos = nextQueued(false);
+            if (pos < 0) {
+                return null;
+            }
+            QueueMessageMeta meta = readMeta(pos);
+            if (meta == null || !meta.isExpired(System.currentTimeMillis())) {
+                return meta;
             }
+            expire(pos);
         }
-        return null;
     }
 
     @Override
     public QueueMessageMeta lockAndPop() throws IOException {
-        for (int index = 0; index < size; index++) {
-            if (setStatusLocked(index)) {
-                return readMeta(index);
+        return lockAndPop(0);
+    }
+
+    /**
+     * Expired messages are dropped on pop, if they are queued again after expire timer is fired.
+     *
+     * @param leaseDeadline time in millis when lock is rolled back, 0 to hold lock until unlock
+     */
+    public QueueMessageMeta lockAndPop(long leaseDeadline) throws IOException {
+        load();
+        while (true) {
+            int pos = nextQueued(true);
+            if (pos < 0) {
+                return null;
+            }
+            QueueMessageMeta meta = readMeta(pos);
+            if (!meta.isExpired(System.currentTimeMillis())) {
+                lease(pos, leaseDeadline);
+                return meta;
+            }
+            if (setStatusDeleted(pos)) {
+                writeMetaRaw(readMeta(pos), pos);
             }
         }
-        return null;
+    }
+
+    private void lease(int pos, long leaseDeadline) {
+        if (leaseDeadline > 0) {
+            final int lockStamp = slots.lockStamp(pos);
+            final Lease lease = new Lease(lockStamp, timerListener.lease(pos, leaseDeadline, lockStamp));
+            final Lease prev = leases.put(pos, lease);
+            if (prev != null) {
+                // lock of previous lease is ended
+                prev.cancel.run();
+            }
+        }
+    }
+
+    /**
+     * Cancel lease timer of ended lock, lease of slot locked again since has other stamp and is kept.
+     */
+    private void releaseLease(int pos, int lockStamp) {
+        if (leases.isEmpty()) {
+            return;
+        }
+        final Lease lease = leases.get(pos);
+        if (lease != null && lease.lockStamp == lockStamp && leases.remove(pos, lease)) {
+            lease.cancel.run();
+        }
+    }
+
+    /**
+     * Fire timer of message: queue delayed message at it's delivery time, drop queued message at it's expire time,
+     * roll back lock at it's lease deadline, if message is not unlocked and locked again since lease.
+     *
+     * @param lockStamp stamp of leased lock, 0 for delivery and expire timers
+     * @return next timer deadline of message, 0 if message has no more timers
+     */
+    public long timeout(int pos, long now, int lockStamp) throws IOException {
+        load();
+        final QueueMessageStatus status = slots.status(pos);
+        if (lockStamp != 0) {
+            if (status == LOCKED && setStatusQueued(pos, lockStamp)) {
+                writeMetaRaw(readMeta(pos), pos);
+            }
+            // lease of lock ended concurrently with it's lease
+            releaseLease(pos, lockStamp);
+            return 0;
+        }
+        if (status == DELAYED) {
+            final QueueMessageMeta meta = readMeta(pos);
+            if (meta.getDeliverAt() > now) {
+                return meta.getDeliverAt();
+            }
+            if (slots.compareAndSetStatus(pos, DELAYED, LOCKED)) {
+                addDelayed(-1);
+                enqueue(pos);
+                return meta.getExpireAt();
+            }
+        } else if (status == QUEUED) {
+            final QueueMessageMeta meta = readMeta(pos);
+            if (meta.getExpireAt() > now) {
+                return meta.getExpireAt();
+            }
+            if (meta.getExpireAt() > 0) {
+                expire(pos);
+            }
+        }
+        return 0;
+    }
+
+    private void expire(int pos) throws IOException {
+        if (setStatusLocked(pos) && setStatusDeleted(pos)) {
+            writeMetaRaw(readMeta(pos), pos);
+        }
+    }
+
+    /**
+     * Scan ring from head cursor for first QUEUED message, moving head over all not queued published entries.
+     *
+     * @param lock lock found message
+     * @return slot position, or -1 if no queued messages found
+     */
+    private int nextQueued(boolean lock) {
+        final long head = orderHead.get();
+        final int tail = orderTail.get();
+        int newHead = headIndex(head);
+        boolean advance = true;
+        for (int index = newHead; index < tail; index++) {
+            int entry = order.get(index);
+            if (entry == 0) {
+                // reserved, but not published yet
+                advance = false;
+                continue;
+            }
+            int pos = entry - 1;
+            if (lock ? setStatusLocked(pos) : slots.status(pos) == QUEUED) {
+                if (lock && advance) {
+                    newHead = index + 1;
+                }
+                moveHead(head, newHead);
+                return pos;
+            }
+            if (advance && slots.status(pos) != QUEUED) {
+                newHead = index + 1;
+            }
+        }
+        moveHead(head, newHead);
+        return -1;
+    }
+
+    private void moveHead(long expected, int index) {
+        if (headIndex(expected) < index) {
+            orderHead.compareAndSet(expected, head(headVersion(expected), index));
+        }
+    }
+
+    private void rewindHead(int index) {
+        while (true) {
+            long current = orderHead.get();
+            long update = head(headVersion(current) + 1, Math.min(headIndex(current), index));
+            if (orderHead.compareAndSet(current, update)) {
+                return;
+            }
+        }
+    }
+
+    private void addDelayed(int count) {
+        delayedCounter.addAndGet(count);
+        counters.addDelayed(count);
+    }
+
+    private void enqueue(int pos) {
+        int index = orderTail.getAndIncrement();
+        int block = index / ORDER_TIME_BLOCK;
+        if (orderTimes.get(block) == 0) {
+            orderTimes.compareAndSet(block, 0, System.currentTimeMillis());
+        }
+        slots.setOrder(pos, index + 1);
+        slots.setStatus(pos, QUEUED);
+        order.set(index, pos + 1);
+        incrementQueued();
+    }
+
+    private static long head(int version, int index) {
+        return ((long) version << 32) | (index & 0xffffffffL);
+    }
+
+    private static int headVersion(long head) {
+        return (int) (head >>> 32);
+    }
+
+    private static int headIndex(long head) {
+        return (int) head;
     }
 
     @Override
     public QueueMessageMeta lock(UUID uuid) throws IOException {
+        return lock(uuid, 0);
+    }
+
+    /**
+     * @param leaseDeadline time in millis when lock is rolled back, 0 to hold lock until unlock
+     */
+    public QueueMessageMeta lock(UUID uuid, long leaseDeadline) throws IOException {
+        load();
         final int index = index(uuid);
         if (index >= 0) {
             if (setStatusLocked(index)) {
+                lease(index, leaseDeadline);
                 return readMeta(index);
             }
         }
@@ -124,6 +573,7 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     @Override
     public QueueMessageMeta unlockAndDelete(UUID uuid) throws IOException {
+        load();
         final int pos = index(uuid);
         if (pos >= 0) {
             boolean deleted = setStatusDeleted(pos);
@@ -138,6 +588,7 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     @Override
     public QueueMessageMeta unlockAndDelete(int pos) throws IOException {
+        load();
         boolean deleted = setStatusDeleted(pos);
         QueueMessageMeta meta = readMeta(pos);
         if (deleted) {
@@ -148,6 +599,7 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     @Override
     public QueueMessageMeta unlockAndQueue(int pos) throws IOException {
+        load();
         if (pos >= 0) {
             boolean queued = setStatusQueued(pos);
             QueueMessageMeta meta = readMeta(pos);
@@ -161,6 +613,7 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     @Override
     public QueueMessageMeta unlockAndQueue(UUID uuid) throws IOException {
+        load();
         final int pos = index(uuid);
         if (pos >= 0) {
             boolean queued = setStatusQueued(pos);
@@ -175,9 +628,9 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     private boolean setStatusInit(int index) {
         while (true) {
-            QueueMessageStatus current = statusMap.get(index);
-            if (current == null) {
-                if (statusMap.compareAndSet(index, null, QueueMessageStatus.INIT)) {
+            QueueMessageStatus current = slots.status(index);
+            if (current == null && slots.contains(index)) {
+                if (slots.compareAndSetStatus(index, null, QueueMessageStatus.INIT)) {
                     return true;
                 }
             } else {
@@ -188,9 +641,11 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     private boolean setStatusLocked(int index) {
         while (true) {
-            QueueMessageStatus current = statusMap.get(index);
+            QueueMessageStatus current = slots.status(index);
             if (current == QUEUED) {
-                if (statusMap.compareAndSet(index, current, QueueMessageStatus.LOCKED)) {
+                // lock stamp is incremented by the same CAS, so lease timer does not unlock message locked again
+                if (slots.compareAndLock(index, current, QueueMessageStatus.LOCKED)) {
+                    decrementQueued();
                     return true;
                 }
             } else {
@@ -201,9 +656,18 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     private boolean setStatusDeleted(int index) {
         while (true) {
-            QueueMessageStatus current = statusMap.get(index);
-            if (current == QueueMessageStatus.LOCKED || current == QueueMessageStatus.INIT) {
-                if (statusMap.compareAndSet(index, current, DELETED)) {
+            QueueMessageStatus current = slots.status(index);
+            if (current == QueueMessageStatus.LOCKED || current == QueueMessageStatus.INIT || current == DELAYED) {
+                final int lockStamp = current == QueueMessageStatus.LOCKED ? slots.lockStamp(index) : 0;
+                if (slots.compareAndSetStatus(index, current, lockStamp, DELETED)) {
+                    deletedCounter.incrementAndGet();
+                    counters.addDeleted(1);
+                    if (current == DELAYED) {
+                        addDelayed(-1);
+                    }
+                    if (lockStamp != 0) {
+                        releaseLease(index, lockStamp);
+                    }
                     return true;
                 }
             } else {
@@ -213,10 +677,38 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
     }
 
     private boolean setStatusQueued(int index) {
+        return setStatusQueued(index, 0);
+    }
+
+    /**
+     * @param lockStamp stamp of lock to roll back, status is changed only if slot is not locked again since,
+     *                  0 to roll back any lock
+     */
+    private boolean setStatusQueued(int index, int lockStamp) {
         while (true) {
-            QueueMessageStatus current = statusMap.get(index);
-            if (current == null || current == QueueMessageStatus.LOCKED) {
-                if (statusMap.compareAndSet(index, current, QUEUED)) {
+            QueueMessageStatus current = slots.status(index);
+            if (current == null && !slots.contains(index)) {
+                return false;
+            } else if (lockStamp != 0 && (current != QueueMessageStatus.LOCKED || slots.lockStamp(index) != lockStamp)) {
+                // unlocked or locked again since lock of stamp
+                return false;
+            } else if (current == null || current == QueueMessageStatus.LOCKED) {
+                // stamp of ended lock, so it's lease is cancelled
+                final int stamp = lockStamp == 0 && current == QueueMessageStatus.LOCKED ? slots.lockStamp(index) : lockStamp;
+                if (slots.order(index) == 0) {
+                    if (slots.compareAndSetStatus(index, current, stamp, LOCKED)) {
+                        enqueue(index);
+                        if (stamp != 0) {
+                            releaseLease(index, stamp);
+                        }
+                        return true;
+                    }
+                } else if (slots.compareAndSetStatus(index, current, stamp, QUEUED)) {
+                    rewindHead(slots.order(index) - 1);
+                    incrementQueued();
+                    if (stamp != 0) {
+                        releaseLease(index, stamp);
+                    }
                     return true;
                 }
             } else {
@@ -227,15 +719,37 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     @Override
     public int insert(UUID uuid) throws IOException {
+        load();
         int pos = -1;
-        if (incrementSize()) {
+        if (incrementSize(1) > 0) {
             pos = insertKey(uuid);
+            if (pos >= 0) {
+                uuidFilter.put(uuid);
+            } else {
+                releaseSize(1);
+            }
         }
         return pos;
     }
 
+    @Override
+    public int insert(UUID[] uuids, int offset, int length, int[] positions) throws IOException {
+        load();
+        final int reserved = incrementSize(length);
+        for (int i = 0; i < reserved; i++) {
+            final UUID uuid = uuids[offset + i];
+            final int pos = insertKey(uuid);
+            if (pos >= 0) {
+                uuidFilter.put(uuid);
+            }
+            positions[i] = pos;
+        }
+        return reserved;
+    }
+
     @Override
     public boolean writeLock(int pos) throws IOException {
+        load();
         return setStatusInit(pos);
     }
 
@@ -243,26 +757,57 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
      * @return -1 if null, pos if equals, else -2 if not equals
      */
     private int comparePosition(UUID uuid, int pos) {
-        UUID actual = uuidMap.get(pos);
-        if (actual == null) return -1;
-        return uuid.equals(actual) ? pos : -2;
+        return slots.compare(pos, uuid);
     }
 
     private boolean lockPosition(UUID uuid, int pos) {
-        while (true) {
-            UUID actual = uuidMap.get(pos);
-            if (actual == null) {
-                if (uuidMap.compareAndSet(pos, null, uuid)) {
-                    return true;
-                }
-            } else {
-                return actual.equals(uuid);
+        return slots.claim(pos, uuid);
+    }
+
+    /**
+     * Answered from filter restored from summary, so not loaded segment is not loaded by lookup.
+     */
+    @Override
+    public boolean mightContain(UUID uuid) {
+        // without summary filter is built by load
+        loadCounters();
+        return uuidFilter.mightContain(uuid);
+    }
+
+    /**
+     * @return min data offset of messages written to segment, including deleted, -1 if segment has no messages
+     */
+    public long minOffset() {
+        loadCounters();
+        return minOffset.get();
+    }
+
+    /**
+     * @return max data offset of messages written to segment, including deleted, -1 if segment has no messages
+     */
+    public long maxOffset() {
+        loadCounters();
+        return maxOffset.get();
+    }
+
+    private void updateOffsetRange(long offset) {
+        // data is appended, so max is updated by each write, min only by first
+        long current;
+        while (offset > (current = maxOffset.get())) {
+            if (maxOffset.compareAndSet(current, offset)) {
+                break;
+            }
+        }
+        while ((current = minOffset.get()) == -1 || offset < current) {
+            if (minOffset.compareAndSet(current, offset)) {
+                break;
             }
         }
     }
 
     @Override
     public QueueMessageMeta readMeta(UUID uuid) throws IOException {
+        load();
         final int index = index(uuid);
         if (index >= 0) {
             return readMeta(index);
@@ -272,14 +817,12 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
     @Override
     public QueueMessageMeta readMeta(int pos) throws IOException {
-        UUID uuid = uuidMap.get(pos);
-        if (uuid == null) {
-            return null;
-        }
-        QueueMessageStatus status = statusMap.get(pos);
+        load();
+        QueueMessageStatus status = slots.status(pos);
         if (status == null || status == INIT) {
             return null;
         }
+        UUID uuid = slots.uuid(pos);
         long metaOffset = getMetaOffset(pos) + LONG_SIZE * 2 + INT_SIZE; // skip UUID and status
 
         ByteBuf buffer = localBuffer.get();
@@ -288,39 +831,144 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
         long offset = buffer.readLong();
         int length = buffer.readInt();
         int type = buffer.readInt();
-        return new QueueMessageMeta(uuid, status, offset, length, QueueMessageType.values()[type]);
+        long deliverAt = buffer.readLong();
+        long expireAt = buffer.readLong();
+        return new QueueMessageMeta(uuid, status, offset, length, QueueMessageType.values()[type], deliverAt, expireAt);
     }
 
+    /**
+     * Message with delivery time in future is written delayed, it's queued by timer.
+     */
     @Override
     public boolean writeMeta(QueueMessageMeta meta, int pos) throws IOException {
-        if (statusMap.compareAndSet(pos, INIT, LOCKED)) {
+        load();
+        if (meta.getDeliverAt() > 0 && meta.getDeliverAt() > System.currentTimeMillis()) {
+            if (slots.compareAndSetStatus(pos, INIT, DELAYED)) {
+                updateOffsetRange(meta.getOffset());
+                writeMetaRaw(meta, pos);
+                addDelayed(1);
+                timerListener.schedule(pos, meta.getDeliverAt(), 0);
+                return true;
+            }
+            return false;
+        }
+        if (slots.compareAndSetStatus(pos, INIT, LOCKED)) {
+            updateOffsetRange(meta.getOffset());
+            writeMetaRaw(meta, pos);
+            enqueue(pos);
+            if (meta.getExpireAt() > 0) {
+                timerListener.schedule(pos, meta.getExpireAt(), 0);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write meta of message moved from another segment, message stays locked until unlock or lease deadline.
+     * Lock status is not persisted, so message is queued after restart.
+     *
+     * @param leaseDeadline time in millis when lock is rolled back, 0 to hold lock until unlock
+     */
+    public boolean writeMetaLocked(QueueMessageMeta meta, int pos, long leaseDeadline) throws IOException {
+        load();
+        if (slots.compareAndLock(pos, INIT, LOCKED)) {
+            updateOffsetRange(meta.getOffset());
             writeMetaRaw(meta, pos);
-            statusMap.set(pos, QUEUED);
+            lease(pos, leaseDeadline);
             return true;
         }
         return false;
     }
 
+    /**
+     * @return meta of queued, locked and delayed messages, ordered by data offset
+     */
+    public List<QueueMessageMeta> readLive() throws IOException {
+        load();
+        List<QueueMessageMeta> live = new ArrayList<>(liveSize());
+        for (int pos = 0; pos < size; pos++) {
+            QueueMessageStatus status = slots.status(pos);
+            if (status == QUEUED || status == LOCKED || status == DELAYED) {
+                live.add(readMeta(pos));
+            }
+        }
+        live.sort(Comparator.comparingLong(QueueMessageMeta::getOffset));
+        return live;
+    }
+
     @Override
     public boolean isGarbage() throws IOException {
-        int deleted = 0;
-        for (int i = 0; i < size; i++) {
-            QueueMessageStatus status = statusMap.get(i);
-            if (status != null) {
-                if (DELETED != status) {
-                    return false;
-                }
-                deleted++;
-            }
+        return isFull() && deletedSize() == maxSize;
+    }
+
+    /**
+     * @return true if all slots are reserved, segment does not accept new messages
+     */
+    public boolean isFull() {
+        return size() >= maxSize;
+    }
+
+    public int deletedSize() {
+        loadCounters();
+        return deletedCounter.get();
+    }
+
+    /**
+     * @return count of messages waiting for delivery time
+     */
+    public int delayedSize() {
+        loadCounters();
+        return delayedCounter.get();
+    }
+
+    /**
+     * @return count of messages not deleted, including not committed
+     */
+    public int liveSize() {
+        return size() - deletedSize();
+    }
+
+    /**
+     * Messages restored on load are queued at load time, message returned to queue keeps time of first enqueue.
+     *
+     * @return time in millis when message at queue head was queued, with block granularity of queue order,
+     * 0 if segment is not loaded or has no queued messages
+     */
+    public long headQueuedAt() {
+        if (!loaded) {
+            return 0;
         }
-        return deleted == maxSize;
+        final int pos = nextQueued(false);
+        if (pos < 0) {
+            return 0;
+        }
+        final int index = slots.order(pos) - 1;
+        return index < 0 ? 0 : orderTimes.get(index / ORDER_TIME_BLOCK);
     }
 
     @Override
     public int size() {
+        loadCounters();
         return sizeCounter.get();
     }
 
+    @Override
+    public int queuedSize() {
+        loadCounters();
+        return Math.max(0, queuedCounter.get());
+    }
+
+    private void loadCounters() {
+        if (!summary && !loaded) {
+            try {
+                load();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     private void writeMetaRaw(QueueMessageMeta messageMeta, int pos) throws IOException {
         long offset = getMetaOffset(pos);
         ByteBuf buffer = localBuffer.get();
@@ -330,7 +978,8 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
 
         switch (messageMeta.getStatus()) {
             case LOCKED:
-                // do not write lock status
+            case DELAYED:
+                // do not write lock status, delayed status is restored by delivery time
                 buffer.writeInt(QUEUED.ordinal());
                 break;
             case INIT:
@@ -345,8 +994,13 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
         buffer.writeLong(messageMeta.getOffset());
         buffer.writeInt(messageMeta.getLength());
         buffer.writeInt(messageMeta.getType().ordinal());
+        buffer.writeLong(messageMeta.getDeliverAt());
+        buffer.writeLong(messageMeta.getExpireAt());
         buffer.resetReaderIndex();
         mappedFile.putBytes(offset, buffer);
+        if (!dirty) {
+            dirty = true;
+        }
     }
 
     private int index(final UUID uuid) {
@@ -399,18 +1053,90 @@ public class MMapQueueMessageMetaSegment implements QueueMessageMetaSegment {
         return -1;
     }
 
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void clearDirty() {
+        dirty = false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mappedFile.flush();
+    }
+
     @Override
     public void close() throws IOException {
+        cancelLeases();
         mappedFile.flush();
         mappedFile.close();
+        if (loaded) {
+            // lock status is not persisted, so locked messages are queued after restart
+            int queued = 0;
+            for (int pos = 0; pos < size; pos++) {
+                QueueMessageStatus status = slots.status(pos);
+                if (status == QUEUED || status == LOCKED) {
+                    queued++;
+                }
+            }
+            writeSummary(sizeCounter.get(), queued, deletedCounter.get(), delayedCounter.get());
+        } else if (summary) {
+            writeSummary(sizeCounter.get(), queuedCounter.get(), deletedCounter.get(), delayedCounter.get());
+        }
+        synchronized (this) {
+            if (loaded) {
+                slots.close();
+            }
+        }
     }
 
     @Override
     public void delete() throws IOException {
+        cancelLeases();
         mappedFile.delete();
+        if (summaryFile.exists() && !summaryFile.delete()) {
+            throw new IOException("Error delete file " + summaryFile);
+        }
+        synchronized (this) {
+            if (loaded) {
+                slots.close();
+            }
+        }
+    }
+
+    /**
+     * Timers of closed segment are dropped, so they do not hold it until lease deadline.
+     */
+    private void cancelLeases() {
+        for (Lease lease : leases.values()) {
+            lease.cancel.run();
+        }
+        leases.clear();
+    }
+
+    private static int tableSize(int maxSize, float loadFactor) {
+        return PrimeFinder.nextPrime(HashFunctions.fastCeil(maxSize / loadFactor));
+    }
+
+    /**
+     * @return size of meta file for segment of max size, file is not written after it
+     */
+    public static long fileSize(int maxSize, float loadFactor) {
+        return getMetaOffset(tableSize(maxSize, loadFactor));
     }
 
     private static long getMetaOffset(int pos) {
-        return MESSAGE_META_OFFSET + MESSAGE_META_SIZE * pos;
+        return MESSAGE_META_OFFSET + (long) MESSAGE_META_SIZE * pos;
+    }
+
+    private static class Lease {
+        private final int lockStamp;
+        private final Runnable cancel;
+
+        private Lease(int lockStamp, Runnable cancel) {
+            this.lockStamp = lockStamp;
+            this.cancel = cancel;
+        }
     }
 }
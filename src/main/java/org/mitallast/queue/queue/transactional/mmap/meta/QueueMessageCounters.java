@@ -0,0 +1,145 @@
+package org.mitallast.queue.queue.transactional.mmap.meta;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queue wide message counters, updated by segments on status transitions and by queue on push and pop.
+ * Counters are striped, so concurrent pushers and consumers do not contend on single cache line,
+ * sums are read only by stats.
+ */
+public class QueueMessageCounters {
+
+    /**
+     * Counters of segment not registered in queue.
+     */
+    public final static QueueMessageCounters NONE = new QueueMessageCounters();
+
+    private final static long RATE_INTERVAL = 1000;
+
+    private final LongAdder size = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder popped = new LongAdder();
+
+    // rate sample, written by single timer thread
+    private long sampleTime = System.currentTimeMillis();
+    private long samplePushed;
+    private long samplePopped;
+    private volatile double pushRate;
+    private volatile double popRate;
+
+    public void addSize(int count) {
+        size.add(count);
+    }
+
+    public void addQueued(int count) {
+        queued.add(count);
+    }
+
+    public void addDelayed(int count) {
+        delayed.add(count);
+    }
+
+    public void addDeleted(int count) {
+        deleted.add(count);
+    }
+
+    public void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    public void addPushed(int count) {
+        pushed.add(count);
+    }
+
+    public void addPopped(int count) {
+        popped.add(count);
+    }
+
+    /**
+     * @return count of messages ready to pop
+     */
+    public long queued() {
+        return Math.max(0, queued.sum());
+    }
+
+    /**
+     * @return count of messages waiting for delivery time
+     */
+    public long delayed() {
+        return Math.max(0, delayed.sum());
+    }
+
+    public long deleted() {
+        return Math.max(0, deleted.sum());
+    }
+
+    /**
+     * @return count of locked messages, including messages being written
+     */
+    public long locked() {
+        return Math.max(0, size.sum() - queued.sum() - delayed.sum() - deleted.sum());
+    }
+
+    /**
+     * @return bytes of message data files
+     */
+    public long bytes() {
+        return bytes.sum();
+    }
+
+    public long pushed() {
+        return pushed.sum();
+    }
+
+    public long popped() {
+        return popped.sum();
+    }
+
+    /**
+     * @return pushed messages per second of last rate interval
+     */
+    public double pushRate() {
+        return pushRate;
+    }
+
+    /**
+     * @return popped messages per second of last rate interval
+     */
+    public double popRate() {
+        return popRate;
+    }
+
+    /**
+     * Update rates once per rate interval, should be called periodically by single thread.
+     */
+    public void sample(long now) {
+        final long elapsed = now - sampleTime;
+        if (elapsed < RATE_INTERVAL) {
+            return;
+        }
+        final long currentPushed = pushed.sum();
+        final long currentPopped = popped.sum();
+        pushRate = (currentPushed - samplePushed) * 1000.0 / elapsed;
+        popRate = (currentPopped - samplePopped) * 1000.0 / elapsed;
+        sampleTime = now;
+        samplePushed = currentPushed;
+        samplePopped = currentPopped;
+    }
+
+    @Override
+    public String toString() {
+        return "QueueMessageCounters{" +
+            "queued=" + queued() +
+            ", locked=" + locked() +
+            ", delayed=" + delayed() +
+            ", deleted=" + deleted() +
+            ", bytes=" + bytes() +
+            ", pushRate=" + pushRate +
+            ", popRate=" + popRate +
+            '}';
+    }
+}
@@ -12,13 +12,25 @@ public class QueueMessageMeta {
     private final int length;
     private final QueueMessageType type;
     private final QueueMessageStatus status;
+    private final long deliverAt;
+    private final long expireAt;
 
     public QueueMessageMeta(UUID uuid, QueueMessageStatus status, long offset, int length, QueueMessageType type) {
+        this(uuid, status, offset, length, type, 0, 0);
+    }
+
+    /**
+     * @param deliverAt time in millis when message is queued, 0 to queue on write
+     * @param expireAt  time in millis when queued message is dropped, 0 if message does not expire
+     */
+    public QueueMessageMeta(UUID uuid, QueueMessageStatus status, long offset, int length, QueueMessageType type, long deliverAt, long expireAt) {
         this.uuid = uuid;
         this.status = status;
         this.offset = offset;
         this.length = length;
         this.type = type;
+        this.deliverAt = deliverAt;
+        this.expireAt = expireAt;
     }
 
     public UUID getUuid() {
@@ -41,6 +53,18 @@ public class QueueMessageMeta {
         return type;
     }
 
+    public long getDeliverAt() {
+        return deliverAt;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expireAt > 0 && expireAt <= now;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -73,6 +97,8 @@ public class QueueMessageMeta {
                 ", offset=" + offset +
                 ", length=" + length +
                 ", type=" + type +
+                ", deliverAt=" + deliverAt +
+                ", expireAt=" + expireAt +
                 '}';
     }
 }
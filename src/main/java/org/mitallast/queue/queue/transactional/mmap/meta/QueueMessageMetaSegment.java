@@ -1,10 +1,11 @@
 package org.mitallast.queue.queue.transactional.mmap.meta;
 
 import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
 import java.util.UUID;
 
-public interface QueueMessageMetaSegment extends Closeable {
+public interface QueueMessageMetaSegment extends Closeable, Flushable {
 
     QueueMessageMeta peek() throws IOException;
 
@@ -22,10 +23,20 @@ public interface QueueMessageMetaSegment extends Closeable {
 
     int insert(UUID uuid) throws IOException;
 
+    /**
+     * Insert uuids with single size reservation, stops when segment is full.
+     *
+     * @param positions slot positions of inserted uuids, -1 if uuid is not inserted
+     * @return count of reserved uuids from offset
+     */
+    int insert(UUID[] uuids, int offset, int length, int[] positions) throws IOException;
+
     boolean writeLock(int pos) throws IOException;
 
     boolean writeMeta(QueueMessageMeta meta, int pos) throws IOException;
 
+    boolean mightContain(UUID uuid);
+
     QueueMessageMeta readMeta(UUID uuid) throws IOException;
 
     QueueMessageMeta readMeta(int pos) throws IOException;
@@ -34,5 +45,7 @@ public interface QueueMessageMetaSegment extends Closeable {
 
     int size();
 
+    int queuedSize();
+
     void delete() throws IOException;
 }
@@ -0,0 +1,223 @@
+package org.mitallast.queue.queue.transactional.mmap.meta;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.mitallast.queue.queue.QueueMessageStatus;
+
+import java.io.Closeable;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Open addressing slot table of message uuid and status without per slot objects.
+ * <p>
+ * UUID and queue order index are stored off-heap, 20 bytes per slot,
+ * status is an int word per slot packed as [lock stamp:24][status:8].
+ * Slot is claimed by CAS of status byte EMPTY -> RESERVED, then uuid is written and published by NONE status,
+ * so readers never see partially written uuid. Lock stamp is changed by the same CAS as status,
+ * so status change can be conditioned on lock stamp without a lock.
+ */
+public class QueueMessageMetaSlotTable implements Closeable {
+
+    private final static int EMPTY = 0;
+    private final static int RESERVED = 1;
+    private final static int NONE = 2;
+    private final static int STATUS_OFFSET = 3;
+    // uuid as two longs, ring index + 1 of queue order
+    private final static int SLOT_SIZE = 20;
+    private final static int ORDER_OFFSET = 16;
+    private final static int CODE_MASK = 0xff;
+    private final static int STAMP_SHIFT = 8;
+    private final static int STAMP_MASK = 0xffffff;
+    private final static QueueMessageStatus[] statuses = QueueMessageStatus.values();
+
+    private final int size;
+    private final ByteBuf slotTable;
+    private final AtomicIntegerArray statusTable;
+
+    public QueueMessageMetaSlotTable(int size) {
+        this.size = size;
+        this.slotTable = Unpooled.directBuffer(size * SLOT_SIZE, size * SLOT_SIZE);
+        this.slotTable.setZero(0, size * SLOT_SIZE);
+        this.statusTable = new AtomicIntegerArray(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if slot is claimed by this uuid or already contains it
+     */
+    public boolean claim(int pos, UUID uuid) {
+        while (true) {
+            int code = code(pos);
+            if (code == EMPTY) {
+                if (casCode(pos, EMPTY, 0, RESERVED)) {
+                    slotTable.setLong(pos * SLOT_SIZE, uuid.getMostSignificantBits());
+                    slotTable.setLong(pos * SLOT_SIZE + 8, uuid.getLeastSignificantBits());
+                    setCode(pos, NONE);
+                    return true;
+                }
+            } else if (code != RESERVED) {
+                return equals(pos, uuid);
+            }
+        }
+    }
+
+    /**
+     * @return -1 if empty, pos if equals, else -2 if not equals
+     */
+    public int compare(int pos, UUID uuid) {
+        while (true) {
+            int code = code(pos);
+            if (code == EMPTY) {
+                return -1;
+            } else if (code != RESERVED) {
+                return equals(pos, uuid) ? pos : -2;
+            }
+        }
+    }
+
+    private boolean equals(int pos, UUID uuid) {
+        return slotTable.getLong(pos * SLOT_SIZE) == uuid.getMostSignificantBits()
+            && slotTable.getLong(pos * SLOT_SIZE + 8) == uuid.getLeastSignificantBits();
+    }
+
+    public boolean contains(int pos) {
+        return code(pos) >= NONE;
+    }
+
+    public UUID uuid(int pos) {
+        int code = code(pos);
+        if (code == EMPTY || code == RESERVED) {
+            return null;
+        }
+        return new UUID(slotTable.getLong(pos * SLOT_SIZE), slotTable.getLong(pos * SLOT_SIZE + 8));
+    }
+
+    /**
+     * Load slot state, not thread safe, used only on segment init
+     */
+    public void load(int pos, UUID uuid, QueueMessageStatus status) {
+        slotTable.setLong(pos * SLOT_SIZE, uuid.getMostSignificantBits());
+        slotTable.setLong(pos * SLOT_SIZE + 8, uuid.getLeastSignificantBits());
+        setCode(pos, code(status));
+    }
+
+    /**
+     * @return ring index + 1 of slot in queue order, 0 if slot is not in the ring
+     */
+    public int order(int pos) {
+        return slotTable.getInt(pos * SLOT_SIZE + ORDER_OFFSET);
+    }
+
+    public void setOrder(int pos, int order) {
+        slotTable.setInt(pos * SLOT_SIZE + ORDER_OFFSET, order);
+    }
+
+    /**
+     * @return status of slot, or null if slot is empty or has no status yet
+     */
+    public QueueMessageStatus status(int pos) {
+        int code = code(pos);
+        if (code < STATUS_OFFSET) {
+            return null;
+        }
+        return statuses[code - STATUS_OFFSET];
+    }
+
+    /**
+     * @param expect null for slot with uuid, but without status
+     */
+    public boolean compareAndSetStatus(int pos, QueueMessageStatus expect, QueueMessageStatus update) {
+        return casCode(pos, code(expect), 0, code(update));
+    }
+
+    /**
+     * Change status only if slot is not locked again since lock with expected stamp.
+     *
+     * @param expectStamp stamp of lock, 0 matches any stamp
+     */
+    public boolean compareAndSetStatus(int pos, QueueMessageStatus expect, int expectStamp, QueueMessageStatus update) {
+        return casCode(pos, code(expect), expectStamp, code(update));
+    }
+
+    /**
+     * Change status and increment lock stamp of slot, 0 is never used as stamp.
+     */
+    public boolean compareAndLock(int pos, QueueMessageStatus expect, QueueMessageStatus update) {
+        final int expectCode = code(expect);
+        final int updateCode = code(update);
+        while (true) {
+            int current = statusTable.get(pos);
+            if ((current & CODE_MASK) != expectCode) {
+                return false;
+            }
+            int stamp = ((current >>> STAMP_SHIFT) + 1) & STAMP_MASK;
+            if (stamp == 0) {
+                stamp = 1;
+            }
+            if (statusTable.compareAndSet(pos, current, (stamp << STAMP_SHIFT) | updateCode)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return stamp of last lock of slot, 0 if slot was never locked
+     */
+    public int lockStamp(int pos) {
+        return statusTable.get(pos) >>> STAMP_SHIFT;
+    }
+
+    public void setStatus(int pos, QueueMessageStatus status) {
+        setCode(pos, code(status));
+    }
+
+    private static int code(QueueMessageStatus status) {
+        return status == null ? NONE : STATUS_OFFSET + status.ordinal();
+    }
+
+    private int code(int pos) {
+        return statusTable.get(pos) & CODE_MASK;
+    }
+
+    /**
+     * @param expectStamp 0 matches any stamp
+     */
+    private boolean casCode(int pos, int expect, int expectStamp, int update) {
+        while (true) {
+            int current = statusTable.get(pos);
+            if ((current & CODE_MASK) != expect) {
+                return false;
+            }
+            if (expectStamp != 0 && (current >>> STAMP_SHIFT) != expectStamp) {
+                return false;
+            }
+            int next = (current & ~CODE_MASK) | update;
+            if (statusTable.compareAndSet(pos, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    private void setCode(int pos, int update) {
+        while (true) {
+            int current = statusTable.get(pos);
+            int next = (current & ~CODE_MASK) | update;
+            if (statusTable.compareAndSet(pos, current, next)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (slotTable) {
+            if (slotTable.refCnt() > 0) {
+                slotTable.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.mitallast.queue.queue.transactional.mmap.meta;
+
+/**
+ * Receives timers of delayed, expiring and leased messages of meta segment, timer is fired by
+ * {@link MMapQueueMessageMetaSegment#timeout(int, long, int)}.
+ */
+public interface QueueMessageTimerListener {
+
+    public static QueueMessageTimerListener NONE = (pos, deadline, lockStamp) -> {
+    };
+
+    /**
+     * @param lockStamp stamp of leased lock, 0 for delivery and expire timers
+     */
+    void schedule(int pos, long deadline, int lockStamp);
+
+    /**
+     * Lease timer of locked message, it is cancelled when lock is ended before deadline.
+     *
+     * @return cancel of timer
+     */
+    default Runnable lease(int pos, long deadline, int lockStamp) {
+        schedule(pos, deadline, lockStamp);
+        return () -> {
+        };
+    }
+}
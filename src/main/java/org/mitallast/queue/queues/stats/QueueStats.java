@@ -3,13 +3,34 @@ package org.mitallast.queue.queues.stats;
 import org.mitallast.queue.common.stream.StreamInput;
 import org.mitallast.queue.common.stream.StreamOutput;
 import org.mitallast.queue.common.stream.Streamable;
+import org.mitallast.queue.common.xstream.ToXStream;
+import org.mitallast.queue.common.xstream.XStreamBuilder;
 import org.mitallast.queue.queue.Queue;
 
 import java.io.IOException;
 
-public class QueueStats implements Streamable {
+public class QueueStats implements ToXStream, Streamable {
     private Queue queue;
+    // messages ready to pop
     private long size;
+    private long lockedSize;
+    private long delayedSize;
+    private long deletedSize;
+    // bytes of message data files
+    private long bytes;
+    private long pushCount;
+    private long popCount;
+    // messages per second
+    private double pushRate;
+    private double popRate;
+    // millis since message at queue head was queued
+    private long oldestAge;
+    // group commit: forces of segments, max syncs served by one force, syncs and their wait time
+    private long flushCount;
+    private long flushBatchMax;
+    private long flushWaitCount;
+    private long flushWaitNanos;
+    private long flushWaitMaxNanos;
 
     public Queue getQueue() {
         return queue;
@@ -27,14 +48,181 @@ public class QueueStats implements Streamable {
         this.size = size;
     }
 
+    public long getLockedSize() {
+        return lockedSize;
+    }
+
+    public void setLockedSize(long lockedSize) {
+        this.lockedSize = lockedSize;
+    }
+
+    public long getDelayedSize() {
+        return delayedSize;
+    }
+
+    public void setDelayedSize(long delayedSize) {
+        this.delayedSize = delayedSize;
+    }
+
+    public long getDeletedSize() {
+        return deletedSize;
+    }
+
+    public void setDeletedSize(long deletedSize) {
+        this.deletedSize = deletedSize;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getPushCount() {
+        return pushCount;
+    }
+
+    public void setPushCount(long pushCount) {
+        this.pushCount = pushCount;
+    }
+
+    public long getPopCount() {
+        return popCount;
+    }
+
+    public void setPopCount(long popCount) {
+        this.popCount = popCount;
+    }
+
+    public double getPushRate() {
+        return pushRate;
+    }
+
+    public void setPushRate(double pushRate) {
+        this.pushRate = pushRate;
+    }
+
+    public double getPopRate() {
+        return popRate;
+    }
+
+    public void setPopRate(double popRate) {
+        this.popRate = popRate;
+    }
+
+    public long getOldestAge() {
+        return oldestAge;
+    }
+
+    public void setOldestAge(long oldestAge) {
+        this.oldestAge = oldestAge;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    public void setFlushCount(long flushCount) {
+        this.flushCount = flushCount;
+    }
+
+    public long getFlushBatchMax() {
+        return flushBatchMax;
+    }
+
+    public void setFlushBatchMax(long flushBatchMax) {
+        this.flushBatchMax = flushBatchMax;
+    }
+
+    public long getFlushWaitCount() {
+        return flushWaitCount;
+    }
+
+    public void setFlushWaitCount(long flushWaitCount) {
+        this.flushWaitCount = flushWaitCount;
+    }
+
+    public long getFlushWaitNanos() {
+        return flushWaitNanos;
+    }
+
+    public void setFlushWaitNanos(long flushWaitNanos) {
+        this.flushWaitNanos = flushWaitNanos;
+    }
+
+    public long getFlushWaitMaxNanos() {
+        return flushWaitMaxNanos;
+    }
+
+    public void setFlushWaitMaxNanos(long flushWaitMaxNanos) {
+        this.flushWaitMaxNanos = flushWaitMaxNanos;
+    }
+
+    @Override
+    public void toXStream(XStreamBuilder builder) throws IOException {
+        builder.writeStartObject();
+        if (queue != null) {
+            builder.writeStringField("name", queue.getName());
+        }
+        builder.writeNumberField("size", size);
+        builder.writeNumberField("locked", lockedSize);
+        builder.writeNumberField("delayed", delayedSize);
+        builder.writeNumberField("deleted", deletedSize);
+        builder.writeNumberField("bytes", bytes);
+        builder.writeNumberField("push_count", pushCount);
+        builder.writeNumberField("pop_count", popCount);
+        builder.writeNumberField("push_rate", pushRate);
+        builder.writeNumberField("pop_rate", popRate);
+        builder.writeNumberField("oldest_age", oldestAge);
+        builder.writeNumberField("flush_count", flushCount);
+        builder.writeNumberField("flush_batch_max", flushBatchMax);
+        builder.writeNumberField("flush_wait_count", flushWaitCount);
+        builder.writeNumberField("flush_wait_nanos", flushWaitNanos);
+        builder.writeNumberField("flush_wait_max_nanos", flushWaitMaxNanos);
+        builder.writeEndObject();
+    }
+
     @Override
     public void readFrom(StreamInput stream) throws IOException {
+        String name = stream.readTextOrNull();
+        queue = name != null ? new Queue(name) : null;
+        size = stream.readLong();
+        lockedSize = stream.readLong();
+        delayedSize = stream.readLong();
+        deletedSize = stream.readLong();
+        bytes = stream.readLong();
+        pushCount = stream.readLong();
+        popCount = stream.readLong();
+        pushRate = stream.readDouble();
+        popRate = stream.readDouble();
+        oldestAge = stream.readLong();
+        flushCount = stream.readLong();
+        flushBatchMax = stream.readLong();
+        flushWaitCount = stream.readLong();
+        flushWaitNanos = stream.readLong();
+        flushWaitMaxNanos = stream.readLong();
     }
 
     @Override
     public void writeTo(StreamOutput stream) throws IOException {
         stream.writeTextOrNull(queue != null ? queue.getName() : null);
         stream.writeLong(size);
+        stream.writeLong(lockedSize);
+        stream.writeLong(delayedSize);
+        stream.writeLong(deletedSize);
+        stream.writeLong(bytes);
+        stream.writeLong(pushCount);
+        stream.writeLong(popCount);
+        stream.writeDouble(pushRate);
+        stream.writeDouble(popRate);
+        stream.writeLong(oldestAge);
+        stream.writeLong(flushCount);
+        stream.writeLong(flushBatchMax);
+        stream.writeLong(flushWaitCount);
+        stream.writeLong(flushWaitNanos);
+        stream.writeLong(flushWaitMaxNanos);
     }
 
     @Override
@@ -51,6 +239,48 @@ public class QueueStats implements Streamable {
         if (size != stats.size) {
             return false;
         }
+        if (lockedSize != stats.lockedSize) {
+            return false;
+        }
+        if (delayedSize != stats.delayedSize) {
+            return false;
+        }
+        if (deletedSize != stats.deletedSize) {
+            return false;
+        }
+        if (bytes != stats.bytes) {
+            return false;
+        }
+        if (pushCount != stats.pushCount) {
+            return false;
+        }
+        if (popCount != stats.popCount) {
+            return false;
+        }
+        if (Double.compare(stats.pushRate, pushRate) != 0) {
+            return false;
+        }
+        if (Double.compare(stats.popRate, popRate) != 0) {
+            return false;
+        }
+        if (oldestAge != stats.oldestAge) {
+            return false;
+        }
+        if (flushCount != stats.flushCount) {
+            return false;
+        }
+        if (flushBatchMax != stats.flushBatchMax) {
+            return false;
+        }
+        if (flushWaitCount != stats.flushWaitCount) {
+            return false;
+        }
+        if (flushWaitNanos != stats.flushWaitNanos) {
+            return false;
+        }
+        if (flushWaitMaxNanos != stats.flushWaitMaxNanos) {
+            return false;
+        }
         if (queue != null ? !queue.equals(stats.queue) : stats.queue != null) {
             return false;
         }
@@ -62,6 +292,22 @@ public class QueueStats implements Streamable {
     public int hashCode() {
         int result = queue != null ? queue.hashCode() : 0;
         result = 31 * result + (int) (size ^ (size >>> 32));
+        result = 31 * result + (int) (lockedSize ^ (lockedSize >>> 32));
+        result = 31 * result + (int) (delayedSize ^ (delayedSize >>> 32));
+        result = 31 * result + (int) (deletedSize ^ (deletedSize >>> 32));
+        result = 31 * result + (int) (bytes ^ (bytes >>> 32));
+        result = 31 * result + (int) (pushCount ^ (pushCount >>> 32));
+        result = 31 * result + (int) (popCount ^ (popCount >>> 32));
+        long temp = Double.doubleToLongBits(pushRate);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(popRate);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + (int) (oldestAge ^ (oldestAge >>> 32));
+        result = 31 * result + (int) (flushCount ^ (flushCount >>> 32));
+        result = 31 * result + (int) (flushBatchMax ^ (flushBatchMax >>> 32));
+        result = 31 * result + (int) (flushWaitCount ^ (flushWaitCount >>> 32));
+        result = 31 * result + (int) (flushWaitNanos ^ (flushWaitNanos >>> 32));
+        result = 31 * result + (int) (flushWaitMaxNanos ^ (flushWaitMaxNanos >>> 32));
         return result;
     }
 
@@ -70,6 +316,20 @@ public class QueueStats implements Streamable {
         return "QueueStats{" +
             "queue=" + queue +
             ", size=" + size +
+            ", lockedSize=" + lockedSize +
+            ", delayedSize=" + delayedSize +
+            ", deletedSize=" + deletedSize +
+            ", bytes=" + bytes +
+            ", pushCount=" + pushCount +
+            ", popCount=" + popCount +
+            ", pushRate=" + pushRate +
+            ", popRate=" + popRate +
+            ", oldestAge=" + oldestAge +
+            ", flushCount=" + flushCount +
+            ", flushBatchMax=" + flushBatchMax +
+            ", flushWaitCount=" + flushWaitCount +
+            ", flushWaitNanos=" + flushWaitNanos +
+            ", flushWaitMaxNanos=" + flushWaitMaxNanos +
             '}';
     }
 }
@@ -1,15 +1,18 @@
 package org.mitallast.queue.queues.transactional;
 
 import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import org.mitallast.queue.common.component.AbstractLifecycleComponent;
+import org.mitallast.queue.common.manifest.Manifest;
 import org.mitallast.queue.common.settings.ImmutableSettings;
 import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.stream.StreamService;
 import org.mitallast.queue.queue.Queue;
 import org.mitallast.queue.queue.transactional.TransactionalQueueService;
+import org.mitallast.queue.queue.transactional.mmap.MMapPartitionedQueueService;
 import org.mitallast.queue.queue.transactional.mmap.MMapTransactionalQueueService;
 import org.mitallast.queue.queues.QueueAlreadyExistsException;
 import org.mitallast.queue.queues.QueueMissingException;
@@ -18,32 +21,40 @@ import org.mitallast.queue.queues.stats.QueuesStats;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class InternalTransactionalQueuesService extends AbstractLifecycleComponent implements TransactionalQueuesService {
 
-    private final static String stateFileName = "queues.json";
+    private final static String legacyStateFileName = "queues.json";
+    private final static String manifestFileName = "queues.manifest";
     private final Map<String, TransactionalQueueService> queues = new HashMap<>();
+    private final StreamService streamService;
+    private final int manifestSnapshotRecords;
+    private Manifest<QueueRecord> manifest;
 
     @Inject
-    public InternalTransactionalQueuesService(Settings settings) {
+    public InternalTransactionalQueuesService(Settings settings, StreamService streamService) {
         super(settings, TransactionalQueuesService.class);
+        this.streamService = streamService;
+        this.manifestSnapshotRecords = componentSettings.getAsInt("manifest_snapshot_records", 1024);
     }
 
     @Override
     protected void doStart() throws IOException {
-        if (queues.isEmpty()) {
+        if (manifest == null) {
+            manifest = new Manifest<>(streamService, new File(settings.get("work_dir"), manifestFileName), QueueRecord::new);
             loadState();
         } else {
             for (TransactionalQueueService queueService : queues.values()) {
                 queueService.start();
             }
         }
-        flushState();
     }
 
     @Override
@@ -51,16 +62,18 @@ public class InternalTransactionalQueuesService extends AbstractLifecycleCompone
         for (TransactionalQueueService queueService : queues.values()) {
             queueService.stop();
         }
-        flushState();
     }
 
     @Override
-    protected void doClose() throws IOException {
-        flushState();
+    protected synchronized void doClose() throws IOException {
         for (TransactionalQueueService queueService : queues.values()) {
             queueService.close();
         }
         queues.clear();
+        if (manifest != null) {
+            manifest.close();
+            manifest = null;
+        }
     }
 
     @Override
@@ -85,11 +98,21 @@ public class InternalTransactionalQueuesService extends AbstractLifecycleCompone
         if (queues.containsKey(queue.getName())) {
             throw new QueueAlreadyExistsException(queue.getName());
         }
+        final TransactionalQueueService queueService = openQueue(queue, queueSettings);
+        manifest.append(QueueRecord.create(queue.getName(), queueSettings));
+        checkSnapshot();
+        return queueService;
+    }
 
-        final TransactionalQueueService queueService = new MMapTransactionalQueueService(settings, queueSettings, queue);
+    /**
+     * Queue with partitions setting greater than 1 is split to independent partitions.
+     */
+    private TransactionalQueueService openQueue(Queue queue, Settings queueSettings) throws IOException {
+        final TransactionalQueueService queueService = queueSettings.getAsInt("partitions", 1) > 1
+            ? new MMapPartitionedQueueService(settings, queueSettings, queue, streamService)
+            : new MMapTransactionalQueueService(settings, queueSettings, queue, streamService);
         queueService.start();
         queues.put(queueService.queue().getName(), queueService);
-        flushState();
         return queueService;
     }
 
@@ -103,8 +126,9 @@ public class InternalTransactionalQueuesService extends AbstractLifecycleCompone
         }
         queueService.delete();
         queues.remove(queue.getName());
+        manifest.append(QueueRecord.delete(queue.getName()));
+        checkSnapshot();
         logger.info("queue deleted");
-        flushState();
     }
 
     @Override
@@ -126,87 +150,100 @@ public class InternalTransactionalQueuesService extends AbstractLifecycleCompone
         return queueService.stats();
     }
 
+    /**
+     * Replays queues manifest, migrates json state file written by previous versions.
+     */
     private synchronized void loadState() throws IOException {
-        File stateFile = getStateFile();
-        if (stateFile.exists()) {
-            try (FileInputStream inputStream = new FileInputStream(stateFile)) {
-                JsonFactory factory = new JsonFactory();
-                JsonParser parser = factory.createParser(inputStream);
-                assertEquals(JsonToken.START_OBJECT, parser.nextToken());
-                assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
-                assertEquals("queues", parser.getCurrentName());
-                assertEquals(JsonToken.START_ARRAY, parser.nextToken());
-
-                JsonToken token;
-                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
-                    assertEquals(JsonToken.START_OBJECT, token);
-                    String queue = null;
-                    ImmutableSettings.Builder builder = ImmutableSettings.builder();
-                    while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
-                        assertEquals(JsonToken.FIELD_NAME, token);
-                        switch (parser.getCurrentName()) {
-                            case "queue":
-                                assertEquals(JsonToken.VALUE_STRING, parser.nextToken());
-                                queue = parser.getText();
-                                break;
-                            case "settings":
-                                assertEquals(JsonToken.START_OBJECT, parser.nextToken());
-                                String currentFieldName;
-                                String currentFieldValue;
-                                while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
-                                    assertEquals(JsonToken.FIELD_NAME, token);
-                                    currentFieldName = parser.getCurrentName();
-                                    assertEquals(JsonToken.VALUE_STRING, parser.nextToken());
-                                    currentFieldValue = parser.getText();
-                                    builder.put(currentFieldName, currentFieldValue);
-                                }
-                                break;
-                        }
-                    }
-                    if (queue == null) {
-                        throw new IOException("Queue name cannot be null");
-                    }
-                    createQueue(queue, builder.build());
-                }
-                assertEquals(JsonToken.END_OBJECT, parser.nextToken());
-                parser.close();
+        ImmutableList<QueueRecord> records = manifest.open();
+        File legacyStateFile = new File(settings.get("work_dir"), legacyStateFileName);
+        if (records.isEmpty() && legacyStateFile.exists()) {
+            records = loadLegacyState(legacyStateFile);
+            manifest.snapshot(records);
+            if (!legacyStateFile.delete()) {
+                throw new IOException("Error delete file " + legacyStateFile);
             }
         }
-    }
 
-    private synchronized void flushState() throws IOException {
-        logger.info("flush state {}", queues.keySet());
-        File outputFile = getStateFile();
-        if (!outputFile.exists()) {
-            if (!outputFile.createNewFile()) {
-                throw new IOException("Error create file " + outputFile);
+        Map<String, QueueRecord> live = new LinkedHashMap<>();
+        for (QueueRecord record : records) {
+            switch (record.getType()) {
+                case CREATE:
+                    live.put(record.getQueue(), record);
+                    break;
+                case DELETE:
+                    live.remove(record.getQueue());
+                    break;
             }
         }
-        try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+        if (manifest.appended() != live.size()) {
+            manifest.snapshot(live.values());
+        }
+        for (QueueRecord record : live.values()) {
+            logger.info("open queue {}, {}", record.getQueue(), record.getSettings());
+            openQueue(new Queue(record.getQueue()), record.getSettings());
+        }
+    }
+
+    private ImmutableList<QueueRecord> loadLegacyState(File stateFile) throws IOException {
+        logger.info("migrate state {} to manifest", stateFile);
+        ImmutableList.Builder<QueueRecord> records = ImmutableList.builder();
+        try (FileInputStream inputStream = new FileInputStream(stateFile)) {
             JsonFactory factory = new JsonFactory();
-            JsonGenerator generator = factory.createGenerator(outputStream);
-            generator.writeStartObject();
-            generator.writeFieldName("queues");
-            generator.writeStartArray();
-            for (TransactionalQueueService queueService : queues.values()) {
-                generator.writeStartObject();
-                generator.writeStringField("queue", queueService.queue().getName());
-                generator.writeFieldName("settings");
-                generator.writeStartObject();
-                for (Map.Entry<String, String> settingsEntry : queueService.queueSettings().getAsMap().entrySet()) {
-                    generator.writeStringField(settingsEntry.getKey(), settingsEntry.getValue());
+            JsonParser parser = factory.createParser(inputStream);
+            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+            assertEquals(JsonToken.FIELD_NAME, parser.nextToken());
+            assertEquals("queues", parser.getCurrentName());
+            assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                assertEquals(JsonToken.START_OBJECT, token);
+                String queue = null;
+                ImmutableSettings.Builder builder = ImmutableSettings.builder();
+                while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+                    assertEquals(JsonToken.FIELD_NAME, token);
+                    switch (parser.getCurrentName()) {
+                        case "queue":
+                            assertEquals(JsonToken.VALUE_STRING, parser.nextToken());
+                            queue = parser.getText();
+                            break;
+                        case "settings":
+                            assertEquals(JsonToken.START_OBJECT, parser.nextToken());
+                            String currentFieldName;
+                            String currentFieldValue;
+                            while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+                                assertEquals(JsonToken.FIELD_NAME, token);
+                                currentFieldName = parser.getCurrentName();
+                                assertEquals(JsonToken.VALUE_STRING, parser.nextToken());
+                                currentFieldValue = parser.getText();
+                                builder.put(currentFieldName, currentFieldValue);
+                            }
+                            break;
+                    }
                 }
-                generator.writeEndObject();
-                generator.writeEndObject();
+                if (queue == null) {
+                    throw new IOException("Queue name cannot be null");
+                }
+                records.add(QueueRecord.create(queue, builder.build()));
             }
-            generator.writeEndArray();
-            generator.writeEndObject();
-            generator.close();
+            assertEquals(JsonToken.END_OBJECT, parser.nextToken());
+            parser.close();
         }
+        return records.build();
     }
 
-    private File getStateFile() {
-        return new File(settings.get("work_dir"), stateFileName);
+    /**
+     * Replaces manifest with snapshot of live queues, when it grows over snapshot threshold.
+     */
+    private void checkSnapshot() throws IOException {
+        if (manifest.appended() < manifestSnapshotRecords) {
+            return;
+        }
+        List<QueueRecord> records = new ArrayList<>(queues.size());
+        for (TransactionalQueueService queueService : queues.values()) {
+            records.add(QueueRecord.create(queueService.queue().getName(), queueService.queueSettings()));
+        }
+        manifest.snapshot(records);
     }
 
     private <T> void assertEquals(T expected, T actual) {
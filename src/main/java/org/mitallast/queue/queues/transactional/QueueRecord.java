@@ -0,0 +1,73 @@
+package org.mitallast.queue.queues.transactional;
+
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.stream.Streamable;
+
+import java.io.IOException;
+
+/**
+ * Queues manifest record.
+ */
+public class QueueRecord implements Streamable {
+
+    public enum Type {CREATE, DELETE}
+
+    private Type type;
+    private String queue;
+    private Settings settings;
+
+    public QueueRecord() {
+    }
+
+    private QueueRecord(Type type, String queue, Settings settings) {
+        this.type = type;
+        this.queue = queue;
+        this.settings = settings;
+    }
+
+    public static QueueRecord create(String queue, Settings settings) {
+        return new QueueRecord(Type.CREATE, queue, settings);
+    }
+
+    public static QueueRecord delete(String queue) {
+        return new QueueRecord(Type.DELETE, queue, ImmutableSettings.EMPTY);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public void readFrom(StreamInput stream) throws IOException {
+        type = stream.readEnum(Type.class);
+        queue = stream.readText();
+        settings = stream.readSettings();
+    }
+
+    @Override
+    public void writeTo(StreamOutput stream) throws IOException {
+        stream.writeEnum(type);
+        stream.writeText(queue);
+        stream.writeSettings(settings);
+    }
+
+    @Override
+    public String toString() {
+        return "QueueRecord{" +
+            "type=" + type +
+            ", queue='" + queue + '\'' +
+            ", settings=" + settings +
+            '}';
+    }
+}
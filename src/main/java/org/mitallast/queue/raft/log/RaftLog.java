@@ -3,6 +3,7 @@ package org.mitallast.queue.raft.log;
 import org.mitallast.queue.raft.log.entry.RaftLogEntry;
 
 import java.io.IOException;
+import java.util.List;
 
 public interface RaftLog {
 
@@ -14,6 +15,13 @@ public interface RaftLog {
 
     long appendEntry(RaftLogEntry entry) throws IOException;
 
+    /**
+     * Append batch of entries with consecutive indexes starting from next index.
+     *
+     * @return index of last appended entry
+     */
+    long appendEntries(List<? extends RaftLogEntry> entries) throws IOException;
+
     <T extends RaftLogEntry> T getEntry(long index) throws IOException;
 
     boolean containsIndex(long index);
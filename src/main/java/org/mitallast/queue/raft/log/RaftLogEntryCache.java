@@ -0,0 +1,100 @@
+package org.mitallast.queue.raft.log;
+
+import org.mitallast.queue.raft.log.entry.RaftLogEntry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of decoded log entries keyed by index, evicts least recently used entries.
+ * Cache is bounded by count of entries and by total serialized size of cached entries.
+ * Not thread safe, should be accessed from raft execution context only.
+ */
+public class RaftLogEntryCache {
+    private final int maxEntries;
+    private final long maxSize;
+    private final LinkedHashMap<Long, CachedEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    public RaftLogEntryCache(int maxEntries, long maxSize) {
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return count of cached entries
+     */
+    public int length() {
+        return entries.size();
+    }
+
+    /**
+     * @return serialized size in bytes of cached entries
+     */
+    public long size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends RaftLogEntry> T get(long index) {
+        CachedEntry cached = entries.get(index);
+        return cached != null ? (T) cached.entry : null;
+    }
+
+    /**
+     * @param length size in bytes of serialized entry
+     */
+    public void put(RaftLogEntry entry, int length) {
+        if (length > maxSize || maxEntries <= 0) {
+            return;
+        }
+        CachedEntry prev = entries.put(entry.index(), new CachedEntry(entry, length));
+        if (prev != null) {
+            size -= prev.length;
+        }
+        size += length;
+
+        Iterator<CachedEntry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries || size > maxSize) {
+            size -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    public void invalidate(long index) {
+        CachedEntry prev = entries.remove(index);
+        if (prev != null) {
+            size -= prev.length;
+        }
+    }
+
+    /**
+     * Invalidate all entries after index.
+     */
+    public void truncate(long index) {
+        Iterator<Map.Entry<Long, CachedEntry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, CachedEntry> entry = iterator.next();
+            if (entry.getKey() > index) {
+                size -= entry.getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private static class CachedEntry {
+        private final RaftLogEntry entry;
+        private final int length;
+
+        private CachedEntry(RaftLogEntry entry, int length) {
+            this.entry = entry;
+            this.length = length;
+        }
+    }
+}
@@ -3,25 +3,36 @@ package org.mitallast.queue.raft.log;
 import com.google.inject.Inject;
 import org.mitallast.queue.common.component.AbstractComponent;
 import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.unit.ByteSizeUnit;
+import org.mitallast.queue.common.unit.ByteSizeValue;
 import org.mitallast.queue.log.Log;
 import org.mitallast.queue.log.LogService;
 import org.mitallast.queue.log.SegmentManager;
 import org.mitallast.queue.raft.log.entry.RaftLogEntry;
 
 import java.io.IOException;
+import java.util.List;
 
+/**
+ * Raft log over segment log. Recently appended and read entries are kept decoded in entry cache,
+ * so leader replicating same entries to several followers and applying them decodes each entry once.
+ */
 public class SegmentRaftLog extends AbstractComponent implements RaftLog {
     private final Log log;
+    private final RaftLogEntryCache entryCache;
 
     @Inject
     public SegmentRaftLog(Settings settings, LogService logService) throws IOException {
-        super(settings);
-        this.log = logService.log("raft");
+        this(settings, logService.log("raft"));
     }
 
     public SegmentRaftLog(Settings settings, Log log) {
         super(settings);
         this.log = log;
+        this.entryCache = new RaftLogEntryCache(
+            componentSettings.getAsInt("entry_cache.max_entries", 4096),
+            componentSettings.getAsBytesSize("entry_cache.max_size", new ByteSizeValue(16, ByteSizeUnit.MB)).bytes()
+        );
     }
 
     public SegmentManager segmentManager() {
@@ -40,12 +51,33 @@ public class SegmentRaftLog extends AbstractComponent implements RaftLog {
         return log.lastIndex();
     }
 
+    public RaftLogEntryCache entryCache() {
+        return entryCache;
+    }
+
     public long appendEntry(RaftLogEntry entry) throws IOException {
-        return log.appendEntry(entry);
+        long index = log.appendEntry(entry);
+        entryCache.put(entry, log.entryLength(index));
+        return index;
+    }
+
+    public long appendEntries(List<? extends RaftLogEntry> entries) throws IOException {
+        long index = log.appendEntries(entries);
+        for (RaftLogEntry entry : entries) {
+            entryCache.put(entry, log.entryLength(entry.index()));
+        }
+        return index;
     }
 
     public <T extends RaftLogEntry> T getEntry(long index) throws IOException {
-        return log.getEntry(index);
+        T entry = entryCache.get(index);
+        if (entry == null) {
+            entry = log.getEntry(index);
+            if (entry != null) {
+                entryCache.put(entry, log.entryLength(index));
+            }
+        }
+        return entry;
     }
 
     public boolean containsIndex(long index) {
@@ -62,6 +94,7 @@ public class SegmentRaftLog extends AbstractComponent implements RaftLog {
 
     public void truncate(long index) throws IOException {
         log.truncate(index);
+        entryCache.truncate(index);
     }
 
     public void flush() throws IOException {
@@ -69,6 +102,7 @@ public class SegmentRaftLog extends AbstractComponent implements RaftLog {
     }
 
     public void delete() throws IOException {
+        entryCache.clear();
         log.delete();
     }
 }
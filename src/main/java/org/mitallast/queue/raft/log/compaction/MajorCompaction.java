@@ -7,6 +7,7 @@ import org.mitallast.queue.common.settings.Settings;
 import org.mitallast.queue.log.Segment;
 import org.mitallast.queue.log.SegmentDescriptor;
 import org.mitallast.queue.log.SegmentManager;
+import org.mitallast.queue.raft.log.RaftLogEntryCache;
 import org.mitallast.queue.raft.log.SegmentRaftLog;
 import org.mitallast.queue.raft.log.entry.EntryFilter;
 import org.mitallast.queue.raft.log.entry.RaftLogEntry;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 public class MajorCompaction extends Compaction {
     private final EntryFilter filter;
     private final SegmentManager segmentManager;
+    private final RaftLogEntryCache entryCache;
     private final ExecutionContext executionContext;
 
     @Inject
@@ -35,6 +37,7 @@ public class MajorCompaction extends Compaction {
         this.filter = filter;
         this.executionContext = executionContext;
         this.segmentManager = raftLog.segmentManager();
+        this.entryCache = raftLog.entryCache();
     }
 
     @Override
@@ -105,13 +108,17 @@ public class MajorCompaction extends Compaction {
 
     private CompletableFuture<Segment> compactSegment(Segment segment, long index, Segment compactSegment, CompletableFuture<Segment> future) {
         try {
-            RaftLogEntry entry = segment.getEntry(index);
+            RaftLogEntry entry = entryCache.get(index);
+            if (entry == null) {
+                entry = segment.getEntry(index);
+            }
             if (entry != null) {
                 if (filter.accept(entry, this)) {
                     compactSegment.appendEntry(entry);
                 } else {
                     logger.info("Filtered {} from segment {}", entry, segment.descriptor().id());
                     compactSegment.skip(1);
+                    entryCache.invalidate(index);
                 }
 
                 if (index == segment.lastIndex()) {
@@ -141,7 +148,10 @@ public class MajorCompaction extends Compaction {
 
     private CompletableFuture<Boolean> shouldCompactSegment(Segment segment, long index, CompletableFuture<Boolean> future) {
         try {
-            RaftLogEntry entry = segment.getEntry(index);
+            RaftLogEntry entry = entryCache.get(index);
+            if (entry == null) {
+                entry = segment.getEntry(index);
+            }
             if (entry != null) {
                 if (!filter.accept(entry, this)) {
                     future.complete(true);
@@ -8,6 +8,7 @@ import org.mitallast.queue.log.Segment;
 import org.mitallast.queue.log.SegmentDescriptor;
 import org.mitallast.queue.log.SegmentDescriptorService;
 import org.mitallast.queue.log.SegmentManager;
+import org.mitallast.queue.raft.log.RaftLogEntryCache;
 import org.mitallast.queue.raft.log.SegmentRaftLog;
 import org.mitallast.queue.raft.log.entry.EntryFilter;
 import org.mitallast.queue.raft.log.entry.RaftLogEntry;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 public class MinorCompaction extends Compaction {
     private final EntryFilter filter;
     private final SegmentManager segmentManager;
+    private final RaftLogEntryCache entryCache;
     private final SegmentDescriptorService descriptorService;
     private final ExecutionContext executionContext;
 
@@ -36,6 +38,7 @@ public class MinorCompaction extends Compaction {
         this.filter = filter;
         this.executionContext = executionContext;
         this.segmentManager = raftLog.segmentManager();
+        this.entryCache = raftLog.entryCache();
         this.descriptorService = raftLog.segmentManager().descriptorService();
     }
 
@@ -170,13 +173,17 @@ public class MinorCompaction extends Compaction {
         // Read the entry from the segment. If the entry is null or filtered out of the log, skip the entry, otherwise
         // append it to the compact segment.
         try {
-            RaftLogEntry entry = segment.getEntry(index);
+            RaftLogEntry entry = entryCache.get(index);
+            if (entry == null) {
+                entry = segment.getEntry(index);
+            }
             if (entry != null) {
                 if (filter.accept(entry, this)) {
                     compactSegment.appendEntry(entry);
                 } else {
                     logger.info("Filtered {} from segment {}", entry, segment.descriptor().id());
                     compactSegment.skip(1);
+                    entryCache.invalidate(index);
                 }
 
                 if (index == segment.lastIndex()) {
@@ -26,6 +26,8 @@ import org.mitallast.queue.raft.util.ExecutionContext;
 import org.mitallast.queue.transport.TransportService;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -130,14 +132,20 @@ public class PassiveState extends AbstractState {
         // If the log contains entries after the request's previous log index
         // then remove those entries to be replaced by the request entries.
         if (!request.entries().isEmpty()) {
+            // Consecutive entries past the end of the log are appended to the log in batches.
+            List<RaftLogEntry> batch = new ArrayList<>(request.entries().size());
 
             // Iterate through request entries and append them to the log.
             for (RaftLogEntry entry : request.entries()) {
+                if (!batch.isEmpty() && batch.get(batch.size() - 1).index() + 1 == entry.index()) {
+                    batch.add(entry);
+                    continue;
+                }
+                appendBatch(batch);
                 // If the entry index is greater than the last log index, skip missing entries.
                 if (!context.getLog().containsIndex(entry.index())) {
                     context.getLog().skip(entry.index() - context.getLog().lastIndex() - 1);
-                    context.getLog().appendEntry(entry);
-                    logger.trace("appended {} to log at index {}", entry, entry.index());
+                    batch.add(entry);
                 } else {
                     // Compare the term of the received entry with the matching entry in the log.
                     RaftLogEntry match = context.getLog().getEntry(entry.index());
@@ -157,6 +165,7 @@ public class PassiveState extends AbstractState {
                     }
                 }
             }
+            appendBatch(batch);
         }
 
         // If we've made it this far, apply commits and send a successful response.
@@ -175,6 +184,14 @@ public class PassiveState extends AbstractState {
             .build();
     }
 
+    private void appendBatch(List<RaftLogEntry> batch) throws IOException {
+        if (!batch.isEmpty()) {
+            context.getLog().appendEntries(batch);
+            logger.trace("appended {} entries to log at index {}", batch.size(), batch.get(0).index());
+            batch.clear();
+        }
+    }
+
     private CompletableFuture<Void> applyCommits(long commitIndex) throws IOException {
         executionContext.checkThread();
         // Set the commit index, ensuring that the index cannot be decreased.
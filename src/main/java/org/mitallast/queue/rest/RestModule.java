@@ -10,6 +10,9 @@ import org.mitallast.queue.rest.action.queues.RestDeleteQueueAction;
 import org.mitallast.queue.rest.action.queues.RestQueuesStatsAction;
 import org.mitallast.queue.rest.action.raft.RestCreateResourceAction;
 import org.mitallast.queue.rest.action.raft.RestGetResourcesAction;
+import org.mitallast.queue.rest.action.stream.RestStreamCommitAction;
+import org.mitallast.queue.rest.action.stream.RestStreamPushAction;
+import org.mitallast.queue.rest.action.stream.RestStreamReadAction;
 import org.mitallast.queue.rest.transport.HttpServer;
 
 public class RestModule extends AbstractModule {
@@ -21,6 +24,7 @@ public class RestModule extends AbstractModule {
 
         bind(RestPopAction.class).asEagerSingleton();
         bind(RestPushAction.class).asEagerSingleton();
+        bind(RestBatchPushAction.class).asEagerSingleton();
         bind(RestPeekQueueAction.class).asEagerSingleton();
         bind(RestDeleteAction.class).asEagerSingleton();
         bind(RestGetAction.class).asEagerSingleton();
@@ -37,6 +41,10 @@ public class RestModule extends AbstractModule {
         bind(RestDeleteQueueAction.class).asEagerSingleton();
         bind(RestQueuesStatsAction.class).asEagerSingleton();
 
+        bind(RestStreamPushAction.class).asEagerSingleton();
+        bind(RestStreamReadAction.class).asEagerSingleton();
+        bind(RestStreamCommitAction.class).asEagerSingleton();
+
         bind(RestGetResourcesAction.class).asEagerSingleton();
         bind(RestCreateResourceAction.class).asEagerSingleton();
 
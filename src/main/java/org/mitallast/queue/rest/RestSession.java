@@ -1,7 +1,19 @@
 package org.mitallast.queue.rest;
 
+import io.netty.buffer.ByteBufAllocator;
+
 public interface RestSession {
 
+    /**
+     * @return allocator of session channel, for response content
+     */
+    ByteBufAllocator alloc();
+
+    /**
+     * Listener is called if session channel is closed before response is sent, replaces previous listener.
+     */
+    void onClose(Runnable listener);
+
     void sendResponse(RestResponse response);
 
     void sendResponse(Throwable response);
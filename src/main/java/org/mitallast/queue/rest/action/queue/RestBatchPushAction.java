@@ -0,0 +1,69 @@
+package org.mitallast.queue.rest.action.queue;
+
+import com.google.inject.Inject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.mitallast.queue.action.queue.push.BatchPushRequest;
+import org.mitallast.queue.action.queue.push.BatchPushResponse;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.xstream.XStreamBuilder;
+import org.mitallast.queue.common.xstream.XStreamParser;
+import org.mitallast.queue.rest.BaseRestHandler;
+import org.mitallast.queue.rest.RestController;
+import org.mitallast.queue.rest.RestRequest;
+import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.support.QueueMessageParser;
+import org.mitallast.queue.rest.response.ByteBufRestResponse;
+import org.mitallast.queue.transport.TransportService;
+
+import java.io.IOException;
+import java.util.UUID;
+
+public class RestBatchPushAction extends BaseRestHandler {
+    private final TransportService transportService;
+
+    @Inject
+    public RestBatchPushAction(Settings settings, RestController controller, TransportService transportService) {
+        super(settings);
+        this.transportService = transportService;
+        controller.registerHandler(HttpMethod.POST, "/{queue}/_bulk", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestSession session) {
+        BatchPushRequest.Builder builder = BatchPushRequest.builder()
+            .setQueue(request.param("queue").toString());
+
+        try (XStreamParser parser = createParser(request.content())) {
+            builder.setMessages(QueueMessageParser.parseList(parser));
+        } catch (IOException e) {
+            session.sendResponse(e);
+            return;
+        }
+
+        transportService.client().<BatchPushRequest, BatchPushResponse>send(builder.build())
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    ByteBuf buffer = Unpooled.buffer();
+                    try {
+                        try (XStreamBuilder xStreamBuilder = createBuilder(request, buffer)) {
+                            xStreamBuilder.writeStartObject();
+                            xStreamBuilder.writeArrayFieldStart("uuids");
+                            for (UUID uuid : response.messageUUIDs()) {
+                                xStreamBuilder.writeString(uuid.toString());
+                            }
+                            xStreamBuilder.writeEndArray();
+                            xStreamBuilder.writeEndObject();
+                        }
+                        session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.CREATED, buffer));
+                    } catch (IOException e) {
+                        session.sendResponse(e);
+                    }
+                } else {
+                    session.sendResponse(error);
+                }
+            });
+    }
+}
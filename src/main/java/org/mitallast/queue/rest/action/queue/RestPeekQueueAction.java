@@ -2,18 +2,16 @@ package org.mitallast.queue.rest.action.queue;
 
 import com.google.inject.Inject;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.mitallast.queue.action.queue.peek.PeekQueueRequest;
 import org.mitallast.queue.action.queue.peek.PeekQueueResponse;
 import org.mitallast.queue.common.settings.Settings;
-import org.mitallast.queue.common.xstream.XStreamBuilder;
-import org.mitallast.queue.queue.QueueMessage;
 import org.mitallast.queue.rest.BaseRestHandler;
 import org.mitallast.queue.rest.RestController;
 import org.mitallast.queue.rest.RestRequest;
 import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.support.QueueMessageWriter;
 import org.mitallast.queue.rest.response.ByteBufRestResponse;
 import org.mitallast.queue.rest.response.StatusRestResponse;
 import org.mitallast.queue.transport.TransportService;
@@ -43,12 +41,8 @@ public class RestPeekQueueAction extends BaseRestHandler {
                         session.sendResponse(new StatusRestResponse(HttpResponseStatus.NO_CONTENT));
                         return;
                     }
-                    QueueMessage queueMessage = response.message();
-                    ByteBuf buffer = Unpooled.buffer();
                     try {
-                        try (XStreamBuilder builder = createBuilder(request, buffer)) {
-                            queueMessage.toXStream(builder);
-                        }
+                        ByteBuf buffer = QueueMessageWriter.write(session.alloc(), request, response.message());
                         session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.OK, buffer));
                     } catch (IOException e) {
                         session.sendResponse(e);
@@ -2,53 +2,109 @@ package org.mitallast.queue.rest.action.queue;
 
 import com.google.inject.Inject;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import org.mitallast.queue.action.queue.pop.BatchPopRequest;
+import org.mitallast.queue.action.queue.pop.BatchPopResponse;
 import org.mitallast.queue.action.queue.pop.PopRequest;
 import org.mitallast.queue.action.queue.pop.PopResponse;
 import org.mitallast.queue.common.settings.Settings;
-import org.mitallast.queue.common.xstream.XStreamBuilder;
-import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.common.unit.TimeValue;
 import org.mitallast.queue.rest.BaseRestHandler;
 import org.mitallast.queue.rest.RestController;
 import org.mitallast.queue.rest.RestRequest;
 import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.support.QueueMessageWriter;
 import org.mitallast.queue.rest.response.ByteBufRestResponse;
 import org.mitallast.queue.rest.response.StatusRestResponse;
 import org.mitallast.queue.transport.TransportService;
 
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class RestPopAction extends BaseRestHandler {
     private final TransportService transportService;
+    // upper bound of ?wait, so parked requests do not pile up
+    private final long maxWait;
 
     @Inject
     public RestPopAction(Settings settings, RestController controller, TransportService transportService) {
         super(settings);
         this.transportService = transportService;
+        this.maxWait = componentSettings.getAsTime("pop.max_wait", TimeValue.timeValueSeconds(30)).millis();
         controller.registerHandler(HttpMethod.GET, "/{queue}/message", this);
     }
 
     @Override
     public void handleRequest(final RestRequest request, final RestSession session) {
-        PopRequest popRequest = PopRequest.builder()
-            .setQueue(request.param("queue").toString())
-            .build();
+        if (request.hasParam("size")) {
+            handleBatchRequest(request, session);
+            return;
+        }
+        final PopRequest popRequest;
+        try {
+            PopRequest.Builder builder = PopRequest.builder()
+                .setQueue(request.param("queue").toString());
+            if (request.hasParam("wait")) {
+                long wait = TimeValue.parseTimeValue(request.param("wait").toString(), null).millis();
+                builder.setTimeout(Math.min(wait, maxWait));
+            }
+            popRequest = builder.build();
+        } catch (IllegalArgumentException e) {
+            session.sendResponse(e);
+            return;
+        }
 
-        transportService.client().<PopRequest, PopResponse>send(popRequest)
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+        if (popRequest.timeout() > 0) {
+            session.onClose(() -> closed.complete(null));
+        }
+        final CompletableFuture<PopResponse> future = transportService.client().send(popRequest);
+        // client is gone, parked pop is completed empty so it does not lock message for nobody
+        closed.thenRun(() -> future.cancel(false));
+        future.whenComplete((response, error) -> {
+            if (error instanceof CancellationException) {
+                return;
+            }
+            if (error == null) {
+                if (response.message() == null) {
+                    session.sendResponse(new StatusRestResponse(HttpResponseStatus.NO_CONTENT));
+                    return;
+                }
+                try {
+                    ByteBuf buffer = QueueMessageWriter.write(session.alloc(), request, response.message());
+                    session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.OK, buffer));
+                } catch (IOException e) {
+                    session.sendResponse(e);
+                }
+            } else {
+                session.sendResponse(error);
+            }
+        });
+    }
+
+    private void handleBatchRequest(final RestRequest request, final RestSession session) {
+        final BatchPopRequest popRequest;
+        try {
+            popRequest = BatchPopRequest.builder()
+                .setQueue(request.param("queue").toString())
+                .setSize(Integer.parseInt(request.param("size").toString()))
+                .build();
+        } catch (NumberFormatException e) {
+            session.sendResponse(e);
+            return;
+        }
+
+        transportService.client().<BatchPopRequest, BatchPopResponse>send(popRequest)
             .whenComplete((response, error) -> {
                 if (error == null) {
-                    if (response.message() == null) {
+                    if (response.messages().isEmpty()) {
                         session.sendResponse(new StatusRestResponse(HttpResponseStatus.NO_CONTENT));
                         return;
                     }
-                    QueueMessage queueMessage = response.message();
-                    ByteBuf buffer = Unpooled.buffer();
                     try {
-                        try (XStreamBuilder builder = createBuilder(request, buffer)) {
-                            queueMessage.toXStream(builder);
-                        }
+                        ByteBuf buffer = QueueMessageWriter.writeArray(session.alloc(), request, response.messages());
                         session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.OK, buffer));
                     } catch (IOException e) {
                         session.sendResponse(e);
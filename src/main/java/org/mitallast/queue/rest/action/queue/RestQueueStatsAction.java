@@ -42,10 +42,7 @@ public class RestQueueStatsAction extends BaseRestHandler {
                     ByteBuf buffer = Unpooled.buffer();
                     try {
                         try (XStreamBuilder builder = createBuilder(request, buffer)) {
-                            builder.writeStartObject();
-                            builder.writeStringField("name", queueStats.getQueue().getName());
-                            builder.writeNumberField("size", queueStats.getSize());
-                            builder.writeEndObject();
+                            queueStats.toXStream(builder);
                         }
                         session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.OK, buffer));
                     } catch (IOException e) {
@@ -40,10 +40,7 @@ public class RestQueuesStatsAction extends BaseRestHandler {
                             builder.writeStartObject();
                             builder.writeArrayFieldStart("queues");
                             for (QueueStats queueStats : response.stats().getQueueStats()) {
-                                builder.writeStartObject();
-                                builder.writeStringField("name", queueStats.getQueue().getName());
-                                builder.writeNumberField("size", queueStats.getSize());
-                                builder.writeEndObject();
+                                queueStats.toXStream(builder);
                             }
                             builder.writeEndArray();
                         }
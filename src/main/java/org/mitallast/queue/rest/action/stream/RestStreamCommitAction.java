@@ -0,0 +1,52 @@
+package org.mitallast.queue.rest.action.stream;
+
+import com.google.inject.Inject;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.mitallast.queue.action.stream.commit.StreamCommitRequest;
+import org.mitallast.queue.action.stream.commit.StreamCommitResponse;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.rest.BaseRestHandler;
+import org.mitallast.queue.rest.RestController;
+import org.mitallast.queue.rest.RestRequest;
+import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.response.StatusRestResponse;
+import org.mitallast.queue.transport.TransportService;
+
+public class RestStreamCommitAction extends BaseRestHandler {
+    private final TransportService transportService;
+
+    @Inject
+    public RestStreamCommitAction(Settings settings, RestController controller, TransportService transportService) {
+        super(settings);
+        this.transportService = transportService;
+        controller.registerHandler(HttpMethod.PUT, "/_stream/{stream}/{group}/commit", this);
+        controller.registerHandler(HttpMethod.POST, "/_stream/{stream}/{group}/commit", this);
+    }
+
+    @Override
+    public void handleRequest(RestRequest request, RestSession session) {
+        final StreamCommitRequest commitRequest;
+        try {
+            StreamCommitRequest.Builder builder = StreamCommitRequest.builder()
+                .setStream(request.param("stream").toString())
+                .setGroup(request.param("group").toString());
+            if (request.hasParam("offset")) {
+                builder.setOffset(Long.parseLong(request.param("offset").toString()));
+            }
+            commitRequest = builder.build();
+        } catch (NumberFormatException e) {
+            session.sendResponse(e);
+            return;
+        }
+
+        transportService.client().<StreamCommitRequest, StreamCommitResponse>send(commitRequest)
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    session.sendResponse(new StatusRestResponse(HttpResponseStatus.ACCEPTED));
+                } else {
+                    session.sendResponse(error);
+                }
+            });
+    }
+}
@@ -0,0 +1,64 @@
+package org.mitallast.queue.rest.action.stream;
+
+import com.google.inject.Inject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.mitallast.queue.action.stream.push.StreamPushRequest;
+import org.mitallast.queue.action.stream.push.StreamPushResponse;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.xstream.XStreamBuilder;
+import org.mitallast.queue.common.xstream.XStreamParser;
+import org.mitallast.queue.rest.BaseRestHandler;
+import org.mitallast.queue.rest.RestController;
+import org.mitallast.queue.rest.RestRequest;
+import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.support.QueueMessageParser;
+import org.mitallast.queue.rest.response.ByteBufRestResponse;
+import org.mitallast.queue.transport.TransportService;
+
+import java.io.IOException;
+
+public class RestStreamPushAction extends BaseRestHandler {
+    private final TransportService transportService;
+
+    @Inject
+    public RestStreamPushAction(Settings settings, RestController controller, TransportService transportService) {
+        super(settings);
+        this.transportService = transportService;
+        controller.registerHandler(HttpMethod.POST, "/_stream/{stream}/_bulk", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestSession session) {
+        StreamPushRequest.Builder builder = StreamPushRequest.builder()
+            .setStream(request.param("stream").toString());
+
+        try (XStreamParser parser = createParser(request.content())) {
+            builder.setMessages(QueueMessageParser.parseList(parser));
+        } catch (IOException e) {
+            session.sendResponse(e);
+            return;
+        }
+
+        transportService.client().<StreamPushRequest, StreamPushResponse>send(builder.build())
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    ByteBuf buffer = Unpooled.buffer();
+                    try {
+                        try (XStreamBuilder xStreamBuilder = createBuilder(request, buffer)) {
+                            xStreamBuilder.writeStartObject();
+                            xStreamBuilder.writeNumberField("offset", response.offset());
+                            xStreamBuilder.writeEndObject();
+                        }
+                        session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.CREATED, buffer));
+                    } catch (IOException e) {
+                        session.sendResponse(e);
+                    }
+                } else {
+                    session.sendResponse(error);
+                }
+            });
+    }
+}
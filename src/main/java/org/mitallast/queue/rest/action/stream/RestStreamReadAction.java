@@ -0,0 +1,70 @@
+package org.mitallast.queue.rest.action.stream;
+
+import com.google.inject.Inject;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.mitallast.queue.action.stream.read.StreamReadRequest;
+import org.mitallast.queue.action.stream.read.StreamReadResponse;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.rest.BaseRestHandler;
+import org.mitallast.queue.rest.RestController;
+import org.mitallast.queue.rest.RestRequest;
+import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.support.QueueMessageWriter;
+import org.mitallast.queue.rest.response.ByteBufRestResponse;
+import org.mitallast.queue.transport.TransportService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads next batch of consumer group as {@code {"offset":N,"messages":[...]}},
+ * where offset is committed by group after batch is processed.
+ */
+public class RestStreamReadAction extends BaseRestHandler {
+    private final TransportService transportService;
+
+    @Inject
+    public RestStreamReadAction(Settings settings, RestController controller, TransportService transportService) {
+        super(settings);
+        this.transportService = transportService;
+        controller.registerHandler(HttpMethod.GET, "/_stream/{stream}/{group}", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestSession session) {
+        final StreamReadRequest readRequest;
+        try {
+            StreamReadRequest.Builder builder = StreamReadRequest.builder()
+                .setStream(request.param("stream").toString())
+                .setGroup(request.param("group").toString())
+                .setSize(request.hasParam("size") ? Integer.parseInt(request.param("size").toString()) : 1);
+            if (request.hasParam("bytes")) {
+                builder.setBytes(Long.parseLong(request.param("bytes").toString()));
+            }
+            readRequest = builder.build();
+        } catch (NumberFormatException e) {
+            session.sendResponse(e);
+            return;
+        }
+
+        transportService.client().<StreamReadRequest, StreamReadResponse>send(readRequest)
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    try {
+                        // messages are written as views of segment buffers, envelope is composed without copy
+                        ByteBuf messages = QueueMessageWriter.writeArray(session.alloc(), request, response.messages());
+                        ByteBuf prefix = Unpooled.copiedBuffer("{\"offset\":" + response.offset() + ",\"messages\":", StandardCharsets.US_ASCII);
+                        ByteBuf suffix = Unpooled.copiedBuffer("}", StandardCharsets.US_ASCII);
+                        session.sendResponse(new ByteBufRestResponse(HttpResponseStatus.OK, Unpooled.wrappedBuffer(prefix, messages, suffix)));
+                    } catch (IOException e) {
+                        session.sendResponse(e);
+                    }
+                } else {
+                    session.sendResponse(error);
+                }
+            });
+    }
+}
@@ -1,5 +1,6 @@
 package org.mitallast.queue.rest.action.support;
 
+import com.google.common.collect.ImmutableList;
 import org.mitallast.queue.common.UUIDs;
 import org.mitallast.queue.common.xstream.XStreamParser;
 import org.mitallast.queue.queue.QueueMessage;
@@ -10,7 +11,6 @@ import java.io.IOException;
 public class QueueMessageParser {
 
     public static void parse(QueueMessage queueMessage, XStreamParser parser) throws IOException {
-        String currentFieldName;
         XStreamParser.Token token;
 
         token = parser.nextToken();
@@ -20,6 +20,32 @@ public class QueueMessageParser {
         if (token != XStreamParser.Token.START_OBJECT) {
             throw new IllegalArgumentException("malformed, expected settings to start with 'object', actual [" + token + "]");
         }
+        parseObject(queueMessage, parser);
+    }
+
+    public static ImmutableList<QueueMessage> parseList(XStreamParser parser) throws IOException {
+        XStreamParser.Token token;
+
+        token = parser.nextToken();
+        if (token != XStreamParser.Token.START_ARRAY) {
+            throw new IllegalArgumentException("malformed, expected messages to start with 'array', actual [" + token + "]");
+        }
+
+        ImmutableList.Builder<QueueMessage> builder = ImmutableList.builder();
+        while ((token = parser.nextToken()) != XStreamParser.Token.END_ARRAY) {
+            if (token != XStreamParser.Token.START_OBJECT) {
+                throw new IllegalArgumentException("malformed, expected message to start with 'object', actual [" + token + "]");
+            }
+            QueueMessage queueMessage = new QueueMessage();
+            parseObject(queueMessage, parser);
+            builder.add(queueMessage);
+        }
+        return builder.build();
+    }
+
+    private static void parseObject(QueueMessage queueMessage, XStreamParser parser) throws IOException {
+        String currentFieldName;
+        XStreamParser.Token token;
 
         while ((token = parser.nextToken()) != XStreamParser.Token.END_OBJECT) {
             if (token == XStreamParser.Token.FIELD_NAME) {
@@ -43,10 +69,28 @@ public class QueueMessageParser {
                             throw new IllegalArgumentException("malformed, expected string value at field [" + currentFieldName + "]");
                         }
                         break;
+                    case "deliver_at":
+                        queueMessage.setDeliverAt(parseTime(parser, currentFieldName));
+                        break;
+                    case "ttl":
+                        queueMessage.setTtl(parseTime(parser, currentFieldName));
+                        break;
                     default:
                         throw new IllegalArgumentException("malformed, unexpected field [" + currentFieldName + "]");
                 }
             }
         }
     }
+
+    private static long parseTime(XStreamParser parser, String currentFieldName) throws IOException {
+        XStreamParser.Token token = parser.nextToken();
+        if (token != XStreamParser.Token.VALUE_NUMBER) {
+            throw new IllegalArgumentException("malformed, expected number value at field [" + currentFieldName + "]");
+        }
+        long value = parser.longValue();
+        if (value < 0) {
+            throw new IllegalArgumentException("malformed, expected not negative value at field [" + currentFieldName + "]");
+        }
+        return value;
+    }
 }
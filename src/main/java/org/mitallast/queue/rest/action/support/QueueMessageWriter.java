@@ -0,0 +1,154 @@
+package org.mitallast.queue.rest.action.support;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import org.mitallast.queue.common.UUIDs;
+import org.mitallast.queue.common.xstream.XStreamBuilder;
+import org.mitallast.queue.common.xstream.XStreamFactory;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageType;
+import org.mitallast.queue.rest.RestRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes queue messages as json response content and releases them.
+ * Json messages are added to content as views of message buffer, so messages read without copy
+ * from mapped pages are written to socket as is, and pages are released after write.
+ * Json markup between messages is written to buffers of channel allocator, released with content.
+ */
+public class QueueMessageWriter {
+
+    private final static byte[] UUID_PREFIX = "{\"uuid\":\"".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] MESSAGE_PREFIX = "\",\"message\":".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] DELIVER_AT_PREFIX = ",\"deliver_at\":".getBytes(StandardCharsets.US_ASCII);
+    private final static byte[] TTL_PREFIX = ",\"ttl\":".getBytes(StandardCharsets.US_ASCII);
+
+    public static ByteBuf write(ByteBufAllocator alloc, RestRequest request, QueueMessage queueMessage) throws IOException {
+        return write(alloc, request, Collections.singletonList(queueMessage), false);
+    }
+
+    public static ByteBuf writeArray(ByteBufAllocator alloc, RestRequest request, List<QueueMessage> queueMessages) throws IOException {
+        return write(alloc, request, queueMessages, true);
+    }
+
+    private static ByteBuf write(ByteBufAllocator alloc, RestRequest request, List<QueueMessage> queueMessages, boolean array) throws IOException {
+        try {
+            if (request.hasParam("pretty")) {
+                ByteBuf buffer = alloc.buffer();
+                try (XStreamBuilder builder = XStreamFactory.jsonStream().createGenerator(buffer)) {
+                    builder.usePrettyPrint();
+                    if (array) {
+                        builder.writeStartArray();
+                    }
+                    for (QueueMessage queueMessage : queueMessages) {
+                        queueMessage.toXStream(builder);
+                    }
+                    if (array) {
+                        builder.writeEndArray();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    buffer.release();
+                    throw e;
+                }
+                return buffer;
+            }
+
+            ContentWriter content = new ContentWriter(alloc, queueMessages.size() * 2 + 1);
+            try {
+                if (array) {
+                    content.text().writeByte('[');
+                }
+                for (int i = 0; i < queueMessages.size(); i++) {
+                    if (array && i > 0) {
+                        content.text().writeByte(',');
+                    }
+                    content.write(queueMessages.get(i));
+                }
+                if (array) {
+                    content.text().writeByte(']');
+                }
+            } catch (IOException | RuntimeException e) {
+                content.release();
+                throw e;
+            }
+            return content.build();
+        } finally {
+            for (QueueMessage queueMessage : queueMessages) {
+                queueMessage.release();
+            }
+        }
+    }
+
+    private static class ContentWriter {
+        private final ByteBufAllocator alloc;
+        private final CompositeByteBuf content;
+        private ByteBuf text;
+
+        private ContentWriter(ByteBufAllocator alloc, int maxComponents) {
+            this.alloc = alloc;
+            this.content = alloc.compositeBuffer(maxComponents);
+        }
+
+        private ByteBuf text() {
+            if (text == null) {
+                text = alloc.buffer(64);
+            }
+            return text;
+        }
+
+        private void write(QueueMessage queueMessage) throws IOException {
+            if (queueMessage.getMessageType() == QueueMessageType.JSON && queueMessage.getUuid() != null) {
+                ByteBuf text = text();
+                text.writeBytes(UUID_PREFIX);
+                UUIDs.writeTo(queueMessage.getUuid(), text);
+                text.writeBytes(MESSAGE_PREFIX);
+                flushText();
+                add(queueMessage.retainedSource());
+                // same fields as QueueMessage.toXStream
+                text = text();
+                if (queueMessage.getDeliverAt() > 0) {
+                    text.writeBytes(DELIVER_AT_PREFIX);
+                    text.writeBytes(Long.toString(queueMessage.getDeliverAt()).getBytes(StandardCharsets.US_ASCII));
+                }
+                if (queueMessage.getTtl() > 0) {
+                    text.writeBytes(TTL_PREFIX);
+                    text.writeBytes(Long.toString(queueMessage.getTtl()).getBytes(StandardCharsets.US_ASCII));
+                }
+                text.writeByte('}');
+            } else {
+                try (XStreamBuilder builder = XStreamFactory.jsonStream().createGenerator(text())) {
+                    queueMessage.toXStream(builder);
+                }
+            }
+        }
+
+        private void flushText() {
+            if (text != null) {
+                add(text);
+                text = null;
+            }
+        }
+
+        private void add(ByteBuf buffer) {
+            content.addComponent(buffer);
+            content.writerIndex(content.writerIndex() + buffer.readableBytes());
+        }
+
+        private ByteBuf build() {
+            flushText();
+            return content;
+        }
+
+        private void release() {
+            if (text != null) {
+                text.release();
+            }
+            content.release();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.mitallast.queue.rest.transport;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
@@ -19,14 +20,34 @@ public class HttpSession implements RestSession {
 
     private final ChannelHandlerContext ctx;
     private final FullHttpRequest httpRequest;
+    private final ChannelFutureListener closeListener;
+    private volatile Runnable onClose;
 
     public HttpSession(ChannelHandlerContext ctx, FullHttpRequest httpRequest) {
         this.ctx = ctx;
         this.httpRequest = httpRequest;
+        this.closeListener = future -> {
+            Runnable listener = onClose;
+            if (listener != null) {
+                listener.run();
+            }
+        };
+    }
+
+    @Override
+    public void onClose(Runnable listener) {
+        onClose = listener;
+        ctx.channel().closeFuture().addListener(closeListener);
+    }
+
+    @Override
+    public ByteBufAllocator alloc() {
+        return ctx.alloc();
     }
 
     @Override
     public void sendResponse(RestResponse response) {
+        removeCloseListener();
         ByteBuf buffer = response.getBuffer();
         DefaultFullHttpResponse httpResponse = new DefaultFullHttpResponse(
             HTTP_1_1, response.getResponseStatus(), buffer, false, true);
@@ -51,6 +72,7 @@ public class HttpSession implements RestSession {
 
     @Override
     public void sendResponse(Throwable response) {
+        removeCloseListener();
         ByteBuf buffer = Unpooled.buffer();
         try (ByteBufOutputStream outputStream = new ByteBufOutputStream(buffer)) {
             try (PrintWriter printWriter = new PrintWriter(outputStream)) {
@@ -66,4 +88,14 @@ public class HttpSession implements RestSession {
         httpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
         ctx.writeAndFlush(httpResponse).addListener(ChannelFutureListener.CLOSE);
     }
+
+    /**
+     * Keep-alive channel serves many sessions, so listener must not outlive response.
+     */
+    private void removeCloseListener() {
+        if (onClose != null) {
+            onClose = null;
+            ctx.channel().closeFuture().removeListener(closeListener);
+        }
+    }
 }
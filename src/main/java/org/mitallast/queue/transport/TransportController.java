@@ -32,11 +32,12 @@ public class TransportController<Request extends ActionRequest, Response extends
         EntryBuilder<Request> builder = requestFrame.message();
         Request actionRequest = builder.build();
         dispatchRequest(actionRequest).whenComplete((actionResponse, error) -> {
+            actionRequest.release();
             if (error == null) {
                 StreamableTransportFrame response = StreamableTransportFrame.of(
                     requestFrame.version(),
                     requestFrame.request(),
-                    actionResponse.toBuilder()
+                    actionResponse
                 );
                 channel.send(response);
             } else {
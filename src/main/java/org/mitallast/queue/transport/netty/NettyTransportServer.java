@@ -153,6 +153,7 @@ public class NettyTransportServer extends NettyServer implements TransportServer
             CompletableFuture<Response> future = Futures.future();
             worker.execute(() -> {
                 CompletableFuture<Response> actionResponse = transportController.dispatchRequest(request);
+                cancelOnCancel(future, actionResponse);
                 actionResponse.whenComplete((response, error) -> {
                     if (error != null) {
                         future.completeExceptionally(error);
@@ -172,6 +173,7 @@ public class NettyTransportServer extends NettyServer implements TransportServer
             CompletableFuture<Response> future = Futures.future();
             worker.execute(() -> {
                 CompletableFuture<Response> actionResponse = transportController.dispatchRequest(request);
+                cancelOnCancel(future, actionResponse);
                 actionResponse.whenComplete((response, error) -> {
                     if (error != null) {
                         future.completeExceptionally(error);
@@ -182,5 +184,16 @@ public class NettyTransportServer extends NettyServer implements TransportServer
             });
             return future;
         }
+
+        /**
+         * Cancel of local request is passed to action, so it can release resources parked for response.
+         */
+        private <Response> void cancelOnCancel(CompletableFuture<Response> future, CompletableFuture<Response> actionResponse) {
+            future.whenComplete((response, error) -> {
+                if (future.isCancelled()) {
+                    actionResponse.cancel(false);
+                }
+            });
+        }
     }
 }
@@ -2,15 +2,22 @@ package org.mitallast.queue.transport.netty.codec;
 
 import com.google.common.base.Preconditions;
 import org.mitallast.queue.Version;
+import org.mitallast.queue.action.ActionResponse;
 import org.mitallast.queue.common.stream.Streamable;
 
 public class StreamableTransportFrame extends TransportFrame {
     private final Streamable message;
+    private final ActionResponse response;
 
     protected StreamableTransportFrame(Version version, long request, Streamable message) {
+        this(version, request, message, null);
+    }
+
+    protected StreamableTransportFrame(Version version, long request, Streamable message, ActionResponse response) {
         super(version, request);
         Preconditions.checkNotNull(message);
         this.message = message;
+        this.response = response;
     }
 
     @SuppressWarnings("unchecked")
@@ -18,6 +25,15 @@ public class StreamableTransportFrame extends TransportFrame {
         return (T) message;
     }
 
+    /**
+     * Release buffers held by response, called by encoder after frame is written.
+     */
+    public void release() {
+        if (response != null) {
+            response.release();
+        }
+    }
+
     public static StreamableTransportFrame of(Streamable message) {
         return of(0, message);
     }
@@ -29,4 +45,8 @@ public class StreamableTransportFrame extends TransportFrame {
     public static StreamableTransportFrame of(Version version, long request, Streamable message) {
         return new StreamableTransportFrame(version, request, message);
     }
+
+    public static StreamableTransportFrame of(Version version, long request, ActionResponse response) {
+        return new StreamableTransportFrame(version, request, response.toBuilder(), response);
+    }
 }
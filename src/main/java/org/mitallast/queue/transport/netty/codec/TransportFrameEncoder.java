@@ -27,10 +27,13 @@ public class TransportFrameEncoder extends MessageToByteEncoder<TransportFrame>
             // skip size header
             int sizePos = out.writerIndex();
             out.writerIndex(out.writerIndex() + 4);
+            StreamableTransportFrame streamableFrame = (StreamableTransportFrame) frame;
+            Streamable message = streamableFrame.message();
             try (StreamOutput output = streamService.output(out)) {
-                Streamable message = ((StreamableTransportFrame) frame).message();
                 output.writeClass(message.getClass());
                 output.writeStreamable(message);
+            } finally {
+                streamableFrame.release();
             }
             int size = out.writerIndex() - sizePos - 4;
             out.setInt(sizePos, size);
@@ -0,0 +1,53 @@
+package org.mitallast.queue.action.queue.pop;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mitallast.queue.action.queue.push.PushRequest;
+import org.mitallast.queue.action.queue.push.PushResponse;
+import org.mitallast.queue.common.BaseQueueTest;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class PopActionTest extends BaseQueueTest {
+
+    @Test
+    public void testWait() throws Exception {
+        createQueue();
+        CompletableFuture<PopResponse> waiting = popWait();
+        QueueMessage message = push();
+        Assert.assertEquals(message.getUuid(), waiting.get(10, TimeUnit.SECONDS).message().getUuid());
+    }
+
+    @Test
+    public void testCancelWait() throws Exception {
+        createQueue();
+        CompletableFuture<PopResponse> waiting = popWait();
+        waiting.cancel(false);
+
+        // message is not locked by cancelled request
+        QueueMessage message = push();
+        PopResponse response = popWait().get(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(response.message());
+        Assert.assertEquals(message.getUuid(), response.message().getUuid());
+    }
+
+    private CompletableFuture<PopResponse> popWait() {
+        PopRequest request = PopRequest.builder()
+            .setQueue(queueName())
+            .setTimeout(TimeUnit.SECONDS.toMillis(10))
+            .build();
+        return localClient().send(request);
+    }
+
+    private QueueMessage push() throws Exception {
+        QueueMessage message = createMessage();
+        PushRequest request = PushRequest.builder()
+            .setQueue(queueName())
+            .setMessage(message)
+            .build();
+        localClient().<PushRequest, PushResponse>send(request).get();
+        return message;
+    }
+}
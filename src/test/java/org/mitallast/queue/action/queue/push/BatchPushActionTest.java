@@ -0,0 +1,69 @@
+package org.mitallast.queue.action.queue.push;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mitallast.queue.action.queue.pop.BatchPopRequest;
+import org.mitallast.queue.action.queue.pop.BatchPopResponse;
+import org.mitallast.queue.common.BaseQueueTest;
+import org.mitallast.queue.queue.QueueMessage;
+
+public class BatchPushActionTest extends BaseQueueTest {
+
+    private final static int batchSize = 100;
+
+    @Test
+    public void testPushAndPop() throws Exception {
+        createQueue();
+        ImmutableList<QueueMessage> messages = createMessages(batchSize);
+        send(messages);
+
+        BatchPopResponse response = localClient().<BatchPopRequest, BatchPopResponse>send(BatchPopRequest.builder()
+            .setQueue(queueName())
+            .setSize(batchSize * 2)
+            .build()).get();
+        Assert.assertEquals(messages, response.messages());
+    }
+
+    @Test
+    public void testSingleThread() throws Exception {
+        createQueue();
+        // warm up
+        send(max());
+
+        long start = System.currentTimeMillis();
+        send(max());
+        long end = System.currentTimeMillis();
+        printQps("send batch", max(), start, end);
+    }
+
+    @Test
+    public void testMultiThread() throws Exception {
+        createQueue();
+        // warm up
+        send(max());
+
+        long start = System.currentTimeMillis();
+        executeConcurrent(() -> send(max()));
+        long end = System.currentTimeMillis();
+        printQps("send batch", total(), start, end);
+    }
+
+    private void send(int max) throws Exception {
+        for (int i = 0; i < max; i += batchSize) {
+            send(createMessages(batchSize));
+        }
+    }
+
+    private void send(ImmutableList<QueueMessage> messages) throws Exception {
+        BatchPushRequest request = BatchPushRequest.builder()
+            .setQueue(queueName())
+            .setMessages(messages)
+            .build();
+        BatchPushResponse response = localClient().<BatchPushRequest, BatchPushResponse>send(request).get();
+        assert response.messageUUIDs().size() == messages.size();
+        for (int i = 0; i < messages.size(); i++) {
+            assert response.messageUUIDs().get(i).equals(messages.get(i).getUuid());
+        }
+    }
+}
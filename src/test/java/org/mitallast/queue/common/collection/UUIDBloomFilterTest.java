@@ -0,0 +1,81 @@
+package org.mitallast.queue.common.collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class UUIDBloomFilterTest extends BaseTest {
+
+    @Test
+    public void testMightContain() throws Exception {
+        UUIDBloomFilter filter = new UUIDBloomFilter(total());
+        List<UUID> uuids = new ArrayList<>(total());
+        for (int i = 0; i < total(); i++) {
+            UUID uuid = randomUUID();
+            uuids.add(uuid);
+            filter.put(uuid);
+        }
+        for (UUID uuid : uuids) {
+            Assert.assertTrue(filter.mightContain(uuid));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+        UUIDBloomFilter filter = new UUIDBloomFilter(total());
+        for (int i = 0; i < total(); i++) {
+            filter.put(randomUUID());
+        }
+        int falsePositive = 0;
+        for (int i = 0; i < total(); i++) {
+            if (filter.mightContain(randomUUID())) {
+                falsePositive++;
+            }
+        }
+        double fpp = falsePositive / (double) total();
+        logger.info("false positive rate {}", fpp);
+        Assert.assertTrue(fpp < UUIDBloomFilter.DEFAULT_FPP * 2);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        UUIDBloomFilter filter = new UUIDBloomFilter(total());
+        List<UUID> uuids = new ArrayList<>(total());
+        for (int i = 0; i < total(); i++) {
+            UUID uuid = randomUUID();
+            uuids.add(uuid);
+            filter.put(uuid);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+
+        UUIDBloomFilter read = new UUIDBloomFilter(total());
+        Assert.assertTrue(read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        for (UUID uuid : uuids) {
+            Assert.assertTrue(read.mightContain(uuid));
+        }
+
+        UUIDBloomFilter other = new UUIDBloomFilter(total() * 2);
+        Assert.assertFalse(other.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        UUIDBloomFilter filter = new UUIDBloomFilter(total());
+        executeConcurrent(() -> {
+            for (int i = 0; i < max(); i++) {
+                UUID uuid = randomUUID();
+                filter.put(uuid);
+                Assert.assertTrue(filter.mightContain(uuid));
+            }
+        });
+    }
+}
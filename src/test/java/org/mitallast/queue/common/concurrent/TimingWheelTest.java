@@ -0,0 +1,95 @@
+package org.mitallast.queue.common.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimingWheelTest extends BaseTest {
+
+    @Test
+    public void testExpire() throws Exception {
+        TimingWheel<TimingWheel.Timeout> wheel = new TimingWheel<>(10, 8, 0);
+        List<TimingWheel.Timeout> expired = new ArrayList<>();
+        wheel.add(new TimingWheel.Timeout(15));
+        wheel.add(new TimingWheel.Timeout(35));
+        Assert.assertEquals(2, wheel.size());
+
+        wheel.advance(10, expired::add);
+        Assert.assertTrue(expired.isEmpty());
+        wheel.advance(20, expired::add);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals(15, expired.get(0).deadline());
+        wheel.advance(100, expired::add);
+        Assert.assertEquals(2, expired.size());
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testExpireOverdue() throws Exception {
+        TimingWheel<TimingWheel.Timeout> wheel = new TimingWheel<>(10, 8, 1000);
+        List<TimingWheel.Timeout> expired = new ArrayList<>();
+        wheel.add(new TimingWheel.Timeout(500));
+        wheel.advance(1000, expired::add);
+        Assert.assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TimingWheel<TimingWheel.Timeout> wheel = new TimingWheel<>(1, 4, 0);
+        Random random = new Random(0);
+        List<TimingWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            TimingWheel.Timeout timeout = new TimingWheel.Timeout(random.nextInt(5000));
+            timeouts.add(timeout);
+            wheel.add(timeout);
+        }
+        // cancel before and after timeouts are placed to buckets
+        for (int i = 0; i < timeouts.size(); i += 4) {
+            wheel.cancel(timeouts.get(i));
+        }
+        wheel.advance(0, timeout -> Assert.fail());
+        for (int i = 2; i < timeouts.size(); i += 4) {
+            wheel.cancel(timeouts.get(i));
+        }
+        wheel.advance(0, timeout -> Assert.fail());
+        // cancelled timeouts are removed without waiting for deadline
+        Assert.assertEquals(timeouts.size() / 2, wheel.size());
+
+        List<TimingWheel.Timeout> expired = new ArrayList<>();
+        wheel.advance(5001, expired::add);
+        Assert.assertEquals(timeouts.size() / 2, expired.size());
+        for (int i = 1; i < timeouts.size(); i += 2) {
+            Assert.assertTrue(expired.contains(timeouts.get(i)));
+        }
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCascade() throws Exception {
+        TimingWheel<TimingWheel.Timeout> wheel = new TimingWheel<>(1, 4, 0);
+        Random random = new Random(0);
+        List<TimingWheel.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            TimingWheel.Timeout timeout = new TimingWheel.Timeout(random.nextInt(5000));
+            timeouts.add(timeout);
+            wheel.add(timeout);
+        }
+        List<TimingWheel.Timeout> expired = new ArrayList<>();
+        for (long now = 0; now <= 5000; now += random.nextInt(20)) {
+            final long time = now;
+            wheel.advance(now, timeout -> {
+                // not expired early and not later than advance interval
+                Assert.assertTrue(timeout.deadline() < time);
+                Assert.assertTrue(timeout.deadline() >= time - 20);
+                expired.add(timeout);
+            });
+        }
+        wheel.advance(5001, expired::add);
+        Assert.assertEquals(timeouts.size(), expired.size());
+        Assert.assertEquals(0, wheel.size());
+    }
+}
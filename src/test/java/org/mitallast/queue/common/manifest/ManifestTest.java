@@ -0,0 +1,195 @@
+package org.mitallast.queue.common.manifest;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.stream.InternalStreamService;
+import org.mitallast.queue.common.stream.StreamInput;
+import org.mitallast.queue.common.stream.StreamOutput;
+import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.common.stream.Streamable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class ManifestTest extends BaseTest {
+
+    private StreamService streamService;
+    private File file;
+    private Manifest<TestRecord> manifest;
+
+    @Before
+    public void setUp() throws Exception {
+        streamService = new InternalStreamService(ImmutableSettings.EMPTY);
+        file = new File(testFolder.newFolder(), "test.manifest");
+        manifest = new Manifest<>(streamService, file, TestRecord::new);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manifest.close();
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Assert.assertFalse(manifest.exists());
+        Assert.assertTrue(manifest.open().isEmpty());
+        Assert.assertTrue(manifest.exists());
+        Assert.assertTrue(reopen().isEmpty());
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        manifest.open();
+        for (long i = 0; i < 100; i++) {
+            manifest.append(new TestRecord(i));
+        }
+        Assert.assertEquals(100, manifest.appended());
+
+        ImmutableList<TestRecord> records = reopen();
+        Assert.assertEquals(100, records.size());
+        Assert.assertEquals(100, manifest.appended());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, records.get(i).value);
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        manifest.open();
+        for (long i = 0; i < 100; i++) {
+            manifest.append(new TestRecord(i));
+        }
+        manifest.snapshot(ImmutableList.of(new TestRecord(1), new TestRecord(2)));
+        Assert.assertEquals(0, manifest.appended());
+        manifest.append(new TestRecord(3));
+
+        ImmutableList<TestRecord> records = reopen();
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals(1, records.get(0).value);
+        Assert.assertEquals(2, records.get(1).value);
+        Assert.assertEquals(3, records.get(2).value);
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testTruncateTornRecord() throws Exception {
+        manifest.open();
+        manifest.append(new TestRecord(1));
+        manifest.append(new TestRecord(2));
+        manifest.close();
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 3);
+        }
+
+        ImmutableList<TestRecord> records = reopen();
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(1, records.get(0).value);
+
+        manifest.append(new TestRecord(3));
+        records = reopen();
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(3, records.get(1).value);
+    }
+
+    @Test
+    public void testTruncateCorruptedRecord() throws Exception {
+        manifest.open();
+        manifest.append(new TestRecord(1));
+        manifest.append(new TestRecord(2));
+        manifest.close();
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length - 1);
+            int last = raf.read();
+            raf.seek(length - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        ImmutableList<TestRecord> records = reopen();
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals(1, records.get(0).value);
+    }
+
+    @Test
+    public void testCorruptedRecordInTheMiddle() throws Exception {
+        manifest.open();
+        manifest.append(new TestRecord(1));
+        long offset = file.length();
+        manifest.append(new TestRecord(2));
+        manifest.append(new TestRecord(3));
+        manifest.close();
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // last byte of second record
+            raf.seek(offset + (length - offset) / 2 - 1);
+            int last = raf.read();
+            raf.seek(offset + (length - offset) / 2 - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        try {
+            reopen();
+            Assert.fail("corrupted record is not detected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("checksum mismatch"));
+        }
+        // records after corrupted one are not dropped
+        Assert.assertEquals(length, file.length());
+    }
+
+    @Test
+    public void testCorruptedLengthInTheMiddle() throws Exception {
+        manifest.open();
+        manifest.append(new TestRecord(1));
+        long offset = file.length();
+        manifest.append(new TestRecord(2));
+        manifest.close();
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.writeInt(-1);
+        }
+
+        try {
+            reopen();
+            Assert.fail("corrupted record is not detected");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("negative record length"));
+        }
+        Assert.assertEquals(length, file.length());
+    }
+
+    private ImmutableList<TestRecord> reopen() throws IOException {
+        manifest.close();
+        manifest = new Manifest<>(streamService, file, TestRecord::new);
+        return manifest.open();
+    }
+
+    public static class TestRecord implements Streamable {
+        private long value;
+
+        public TestRecord() {
+        }
+
+        public TestRecord(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public void readFrom(StreamInput stream) throws IOException {
+            value = stream.readLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput stream) throws IOException {
+            stream.writeLong(value);
+        }
+    }
+}
@@ -15,6 +15,8 @@ import java.util.Random;
 
 public class MemoryMappedFileTest extends BaseTest {
 
+    private final static int BENCHMARK_SIZE = MemoryMappedFile.DEFAULT_PAGE_SIZE * 16;
+
     private File file;
     private MemoryMappedFile mappedFile;
 
@@ -147,6 +149,87 @@ public class MemoryMappedFileTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testSlice() throws IOException {
+        byte[] bytesExpected = new byte[128];
+        byte[] bytesActual = new byte[bytesExpected.length];
+        new Random().nextBytes(bytesExpected);
+        mappedFile.putBytes(125, bytesExpected);
+
+        ByteBuf slice = mappedFile.slice(125, bytesExpected.length);
+        Assert.assertEquals(bytesExpected.length, slice.readableBytes());
+        slice.readBytes(bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+        Assert.assertTrue(slice.release());
+    }
+
+    @Test
+    public void testSliceOverPageSize() throws IOException {
+        byte[] bytesExpected = new byte[4096 * 3];
+        byte[] bytesActual = new byte[bytesExpected.length];
+        new Random().nextBytes(bytesExpected);
+        mappedFile.putBytes(125, bytesExpected);
+
+        ByteBuf slice = mappedFile.slice(125, bytesExpected.length);
+        Assert.assertEquals(bytesExpected.length, slice.readableBytes());
+        slice.readBytes(bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+        Assert.assertTrue(slice.release());
+    }
+
+    @Test
+    public void testSlicePinsPage() throws IOException {
+        byte[] bytesExpected = new byte[128];
+        byte[] bytesActual = new byte[bytesExpected.length];
+        new Random().nextBytes(bytesExpected);
+        mappedFile.putBytes(0, bytesExpected);
+
+        ByteBuf slice = mappedFile.slice(0, bytesExpected.length);
+        // load more pages than cache holds, page of slice must not be evicted
+        for (long offset = 4096; offset < 4096 * 100; offset += 4096) {
+            mappedFile.putLong(offset, offset);
+        }
+        slice.readBytes(bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+        Assert.assertTrue(slice.release());
+
+        mappedFile.getBytes(0, bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+    }
+
+    @Test
+    public void testSliceAfterDelete() throws IOException {
+        byte[] bytesExpected = new byte[4096 * 3];
+        byte[] bytesActual = new byte[bytesExpected.length];
+        new Random().nextBytes(bytesExpected);
+        mappedFile.putBytes(125, bytesExpected);
+
+        ByteBuf slice = mappedFile.slice(125, bytesExpected.length);
+        mappedFile.delete();
+        Assert.assertFalse(file.exists());
+        // pages of slice are unmapped only by release
+        slice.readBytes(bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+        Assert.assertTrue(slice.release());
+    }
+
+    @Test
+    public void testSingleMappingSliceAfterDelete() throws IOException {
+        mappedFile.close();
+        mappedFile = new MemoryMappedFile(file, 4096 * 4);
+        byte[] bytesExpected = new byte[4096 * 3];
+        byte[] bytesActual = new byte[bytesExpected.length];
+        new Random().nextBytes(bytesExpected);
+        mappedFile.putBytes(125, bytesExpected);
+
+        ByteBuf slice = mappedFile.slice(125, bytesExpected.length);
+        mappedFile.delete();
+        Assert.assertFalse(file.exists());
+        slice.readBytes(bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+        Assert.assertTrue(slice.release());
+    }
+
     @Test
     public void testPageConcurrent() throws Exception {
         executeConcurrent((thread, concurrency) -> {
@@ -170,4 +253,68 @@ public class MemoryMappedFileTest extends BaseTest {
         mappedFile.putLong(0, 0);
         Assert.assertFalse(mappedFile.isEmpty());
     }
+
+    @Test
+    public void testSingleMapping() throws Exception {
+        mappedFile.close();
+        mappedFile = new MemoryMappedFile(file, 655360 + 4096);
+        Assert.assertTrue(mappedFile.isSingleMapping());
+        Assert.assertTrue(mappedFile.isEmpty());
+
+        for (long offset = 4; offset < 655360; offset += 8) {
+            mappedFile.putLong(offset, offset);
+            Assert.assertEquals(offset, mappedFile.getLong(offset));
+        }
+        Assert.assertFalse(mappedFile.isEmpty());
+
+        byte[] bytesExpected = new byte[4096 * 3];
+        byte[] bytesActual = new byte[bytesExpected.length];
+        new Random().nextBytes(bytesExpected);
+        mappedFile.putBytes(125, bytesExpected);
+        mappedFile.getBytes(125, bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+
+        ByteBuf slice = mappedFile.slice(125, bytesExpected.length);
+        Assert.assertEquals(bytesExpected.length, slice.readableBytes());
+        slice.readBytes(bytesActual);
+        assert Arrays.equals(bytesExpected, bytesActual);
+        Assert.assertTrue(slice.release());
+
+        mappedFile.flush();
+        MemoryMappedFile reopenedMappedFile = new MemoryMappedFile(file, 4096, 10);
+        reopenedMappedFile.getBytes(125, bytesActual);
+        reopenedMappedFile.close();
+        assert Arrays.equals(bytesExpected, bytesActual);
+    }
+
+    @Test
+    public void testBenchmarkPaged() throws Exception {
+        mappedFile.close();
+        mappedFile = new MemoryMappedFile(file);
+        benchmark("paged");
+    }
+
+    @Test
+    public void testBenchmarkSingleMapping() throws Exception {
+        mappedFile.close();
+        mappedFile = new MemoryMappedFile(file, BENCHMARK_SIZE);
+        benchmark("single mapping");
+    }
+
+    private void benchmark(String mode) throws Exception {
+        for (long offset = 0; offset < BENCHMARK_SIZE; offset += 8) {
+            mappedFile.putLong(offset, offset);
+        }
+        long start = System.currentTimeMillis();
+        executeConcurrent(() -> {
+            Random random = new Random();
+            for (int i = 0; i < max(); i++) {
+                long offset = (long) random.nextInt(BENCHMARK_SIZE / 8) * 8;
+                assert mappedFile.getLong(offset) == offset;
+                mappedFile.putLong(offset, offset);
+            }
+        });
+        long end = System.currentTimeMillis();
+        printQps(mode + " get/put", total(), start, end);
+    }
 }
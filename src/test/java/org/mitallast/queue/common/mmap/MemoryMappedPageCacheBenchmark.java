@@ -0,0 +1,90 @@
+package org.mitallast.queue.common.mmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+
+import java.io.File;
+import java.util.Random;
+
+public class MemoryMappedPageCacheBenchmark extends BaseTest {
+
+    private final static int PAGE_SIZE = 4096;
+    private final static int MAX_PAGES = 64;
+
+    private File file;
+    private MemoryMappedFile mappedFile;
+    private int concurrency;
+
+    @Override
+    protected int max() {
+        return 100000;
+    }
+
+    @Override
+    protected int concurrency() {
+        return concurrency;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = testFolder.newFile();
+        mappedFile = new MemoryMappedFile(file, PAGE_SIZE, MAX_PAGES);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mappedFile.close();
+    }
+
+    @Test
+    public void testHit16() throws Exception {
+        benchmark(16, MAX_PAGES / 2);
+    }
+
+    @Test
+    public void testHit32() throws Exception {
+        benchmark(32, MAX_PAGES / 2);
+    }
+
+    @Test
+    public void testHit64() throws Exception {
+        benchmark(64, MAX_PAGES / 2);
+    }
+
+    @Test
+    public void testMiss16() throws Exception {
+        benchmark(16, MAX_PAGES * 4);
+    }
+
+    @Test
+    public void testMiss32() throws Exception {
+        benchmark(32, MAX_PAGES * 4);
+    }
+
+    @Test
+    public void testMiss64() throws Exception {
+        benchmark(64, MAX_PAGES * 4);
+    }
+
+    private void benchmark(int concurrency, int pages) throws Exception {
+        this.concurrency = concurrency;
+        // warm up pages
+        for (long page = 0; page < pages; page++) {
+            mappedFile.releasePage(mappedFile.getPage(page * PAGE_SIZE));
+        }
+        long start = System.currentTimeMillis();
+        executeConcurrent(() -> {
+            Random random = new Random();
+            for (int i = 0; i < max(); i++) {
+                long offset = (long) random.nextInt(pages) * PAGE_SIZE;
+                MemoryMappedPage page = mappedFile.getPage(offset);
+                page.getLong(offset);
+                mappedFile.releasePage(page);
+            }
+        });
+        long end = System.currentTimeMillis();
+        printQps("acquire/release threads " + concurrency + " pages " + pages, total(), start, end);
+    }
+}
@@ -1,9 +1,11 @@
 package org.mitallast.queue.log;
 
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mitallast.queue.common.BaseIntegrationTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
 import org.mitallast.queue.common.settings.Settings;
 import org.mitallast.queue.common.stream.InternalStreamService;
 import org.mitallast.queue.common.stream.StreamService;
@@ -11,6 +13,14 @@ import org.mitallast.queue.log.entry.LogEntry;
 import org.mitallast.queue.log.entry.TextLogEntry;
 import org.unitils.reflectionassert.ReflectionAssert;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
 public class LogTest extends BaseIntegrationTest {
 
     private LogService logService;
@@ -60,6 +70,151 @@ public class LogTest extends BaseIntegrationTest {
         ReflectionAssert.assertReflectionEquals(entry2, saved2);
     }
 
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        Settings settings = ImmutableSettings.builder()
+            .put(settings())
+            .put("log.max_entries_per_segment", 1000)
+            .build();
+        StreamService streamService = new InternalStreamService(settings);
+        new LogStreamService(streamService);
+        LogService logService = new LogService(settings, streamService);
+        logService.start();
+        try {
+            Log log = logService.log("concurrent log");
+            final int max = 100000;
+            List<LogEntry> entries = Arrays.asList(LogEntryGenerator.generate(max));
+            Future<Void> appender = submit(() -> {
+                for (int from = 0; from < max; from += 100) {
+                    log.appendEntries(entries.subList(from, from + 100));
+                }
+                return null;
+            });
+
+            executeConcurrent(() -> {
+                while (!appender.isDone()) {
+                    long lastIndex = log.lastIndex();
+                    if (lastIndex > 0) {
+                        long index = 1 + random.nextInt((int) lastIndex);
+                        ReflectionAssert.assertReflectionEquals(entries.get((int) index - 1), log.getEntry(index));
+                    }
+                }
+            });
+            appender.get();
+            Assert.assertEquals(max, log.lastIndex());
+        } finally {
+            logService.stop();
+            logService.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersWithCompaction() throws Exception {
+        Settings settings = ImmutableSettings.builder()
+            .put(settings())
+            .put("log.max_entries_per_segment", 1000)
+            .build();
+        StreamService streamService = new InternalStreamService(settings);
+        new LogStreamService(streamService);
+        LogService logService = new LogService(settings, streamService);
+        logService.start();
+        try {
+            Log log = logService.log("compacted log");
+            final int max = 5000;
+            List<LogEntry> entries = Arrays.asList(LogEntryGenerator.generate(max));
+            log.appendEntries(entries);
+
+            // rewrite segments to next version and replace them, as compaction does
+            SegmentManager segmentManager = log.segmentManager();
+            Future<Void> compactor = submit(() -> {
+                for (int round = 0; round < 10; round++) {
+                    for (Segment segment : segmentManager.segments()) {
+                        Segment compactSegment = segmentManager.createSegment(segment.descriptor().nextVersion());
+                        for (long index = segment.firstIndex(); index <= segment.lastIndex(); index++) {
+                            compactSegment.appendEntry(segment.getEntry(index));
+                        }
+                        segmentManager.replace(compactSegment);
+                    }
+                }
+                return null;
+            });
+
+            executeConcurrent(() -> {
+                while (!compactor.isDone()) {
+                    long index = 1 + random.nextInt(max);
+                    ReflectionAssert.assertReflectionEquals(entries.get((int) index - 1), log.getEntry(index));
+                    Assert.assertTrue(log.entryLength(index) > 0);
+                }
+            });
+            compactor.get();
+            Assert.assertEquals(max, log.lastIndex());
+        } finally {
+            logService.stop();
+            logService.close();
+        }
+    }
+
+    @Test
+    public void testAppendPreallocated() throws Exception {
+        Settings settings = ImmutableSettings.builder()
+            .put(settings())
+            .put("log.max_entries_per_segment", 1000)
+            .put("log.preallocate_threshold", 0.1)
+            .build();
+        StreamService streamService = new InternalStreamService(settings);
+        new LogStreamService(streamService);
+        LogService logService = new LogService(settings, streamService);
+        logService.start();
+        try {
+            Log log = logService.log("preallocated log");
+            LogEntry[] entries = LogEntryGenerator.generate(10000);
+            for (LogEntry entry : entries) {
+                log.appendEntry(entry);
+            }
+            Assert.assertEquals(entries.length, log.lastIndex());
+            for (LogEntry entry : entries) {
+                ReflectionAssert.assertReflectionEquals(entry, log.getEntry(entry.index()));
+            }
+        } finally {
+            logService.stop();
+            logService.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testAppendPreallocateSlow() throws Exception {
+        // preparation of next segment lasts far longer than test timeout, so roll should not wait for it
+        Settings settings = ImmutableSettings.builder()
+            .put(settings())
+            .put("log.max_entries_per_segment", 1000)
+            .put("log.preallocate_threshold", 0.1)
+            .put("log.preallocate.chunk_size", "4kb")
+            .put("log.preallocate.chunk_interval", "10s")
+            .build();
+        StreamService streamService = new InternalStreamService(settings);
+        new LogStreamService(streamService);
+        LogService logService = new LogService(settings, streamService);
+        logService.start();
+        try {
+            Log log = logService.log("preallocate slow log");
+            LogEntry[] entries = LogEntryGenerator.generate(3000);
+            for (LogEntry entry : entries) {
+                log.appendEntry(entry);
+            }
+            Assert.assertEquals(entries.length, log.lastIndex());
+            for (LogEntry entry : entries) {
+                ReflectionAssert.assertReflectionEquals(entry, log.getEntry(entry.index()));
+            }
+        } finally {
+            logService.stop();
+            logService.close();
+        }
+        // abandoned preparations delete their files
+        try (Stream<Path> files = Files.walk(Paths.get(settings.get("work_dir")))) {
+            Assert.assertFalse(files.anyMatch(path -> path.toString().endsWith(".prepared")));
+        }
+    }
+
     @Test
     public void bench() throws Exception {
         LogEntry[] entries = LogEntryGenerator.generate(max());
@@ -10,6 +10,9 @@ import org.mitallast.queue.common.stream.StreamService;
 import org.mitallast.queue.common.unit.ByteSizeUnit;
 import org.mitallast.queue.log.entry.LogEntry;
 
+import java.util.Arrays;
+import java.util.List;
+
 
 public class SegmentBenchmark extends BaseTest {
     private StreamService streamService;
@@ -17,6 +20,8 @@ public class SegmentBenchmark extends BaseTest {
     private Segment segment;
     private SegmentIndex segmentIndex;
 
+    private final static int[] batchSizes = {1, 16, 256};
+
     @Override
     protected int max() {
         return 1000000;
@@ -55,4 +60,20 @@ public class SegmentBenchmark extends BaseTest {
         long end = System.currentTimeMillis();
         printQps("append", max(), start, end);
     }
+
+    @Test
+    public void testAppendEntries() throws Exception {
+        List<LogEntry> entries = Arrays.asList(LogEntryGenerator.generate(max()));
+        for (int batchSize : batchSizes) {
+            try (SegmentIndex batchIndex = new SegmentIndex(testFolder.newFile(), (int) descriptor.maxEntries());
+                 Segment batchSegment = new Segment(testFolder.newFile(), descriptor, batchIndex, streamService)) {
+                long start = System.nanoTime();
+                for (int from = 0; from < entries.size(); from += batchSize) {
+                    batchSegment.appendEntries(entries.subList(from, Math.min(from + batchSize, entries.size())), 0);
+                }
+                long end = System.nanoTime();
+                logger.info("append batch {}: {} ns per entry", batchSize, (end - start) / entries.size());
+            }
+        }
+    }
 }
@@ -9,6 +9,7 @@ public class SegmentIndexBenchmark extends BaseTest {
 
     private SegmentIndex emptySegmentIndex;
     private SegmentIndex fullSegmentIndex;
+    private SegmentIndex sparseSegmentIndex;
 
     @Override
     protected int max() {
@@ -23,6 +24,12 @@ public class SegmentIndexBenchmark extends BaseTest {
         for (int i = 0; i < max(); i++) {
             fullSegmentIndex.index(i, i * 100l, 100, MessageStatus.QUEUED);
         }
+
+        // compacted segment, every second offset is removed
+        sparseSegmentIndex = new SegmentIndex(testFolder.newFile(), max());
+        for (int i = 0; i < max(); i++) {
+            sparseSegmentIndex.index(i * 2, i * 100l, 100, MessageStatus.QUEUED);
+        }
     }
 
     @After
@@ -35,6 +42,10 @@ public class SegmentIndexBenchmark extends BaseTest {
             fullSegmentIndex.close();
             fullSegmentIndex = null;
         }
+        if (sparseSegmentIndex != null) {
+            sparseSegmentIndex.close();
+            sparseSegmentIndex = null;
+        }
     }
 
     @Test
@@ -76,4 +87,26 @@ public class SegmentIndexBenchmark extends BaseTest {
         long end = System.currentTimeMillis();
         printQps("length", max(), start, end);
     }
+
+    @Test
+    public void benchPositionSparse() throws Exception {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < max(); i++) {
+            sparseSegmentIndex.position(i * 2);
+        }
+        long end = System.currentTimeMillis();
+        printQps("position sparse", max(), start, end);
+    }
+
+    @Test
+    public void benchTruncate() throws Exception {
+        int truncates = 1000;
+        int step = max() / truncates;
+        long start = System.currentTimeMillis();
+        for (int i = max() - step; i >= 0; i -= step) {
+            fullSegmentIndex.truncate(i);
+        }
+        long end = System.currentTimeMillis();
+        printQps("truncate " + step + " entries", truncates, start, end);
+    }
 }
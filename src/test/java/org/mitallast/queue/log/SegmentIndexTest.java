@@ -104,6 +104,16 @@ public class SegmentIndexTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testReopenEmpty() throws Exception {
+        segmentIndex.flush();
+        try (SegmentIndex reopenSegmentIndex = new SegmentIndex(segmentIndex.file(), max())) {
+            Assert.assertEquals(0, reopenSegmentIndex.size());
+            Assert.assertEquals(-1, reopenSegmentIndex.firstOffset());
+            Assert.assertEquals(-1, reopenSegmentIndex.lastOffset());
+        }
+    }
+
     @Test
     public void testTruncate() throws Exception {
         LogEntry[] entries = generate(max() / 2);
@@ -121,6 +131,80 @@ public class SegmentIndexTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testSearchSparse() throws Exception {
+        LogEntry[] entries = generateSparse(max() / 2);
+        for (LogEntry entry : entries) {
+            segmentIndex.index(entry.offset, entry.position, entry.length, MessageStatus.QUEUED);
+        }
+        Assert.assertFalse(segmentIndex.isDense());
+        for (int i = 0; i < entries.length; i++) {
+            LogEntry entry = entries[i];
+            Assert.assertEquals(entry.toString(), i * SegmentIndex.ENTRY_SIZE, segmentIndex.search(entry.offset));
+            Assert.assertEquals(entry.toString(), entry.position, segmentIndex.position(entry.offset));
+            Assert.assertFalse(entry.toString(), segmentIndex.contains(entry.offset + 1));
+        }
+    }
+
+    @Test
+    public void testTruncateRange() throws Exception {
+        LogEntry[] entries = generate(max() / 2);
+        for (LogEntry entry : entries) {
+            segmentIndex.index(entry.offset, entry.position, entry.length, MessageStatus.QUEUED);
+        }
+        Assert.assertTrue(segmentIndex.isDense());
+
+        int truncated = entries.length / 3;
+        segmentIndex.truncate(entries[truncated].offset);
+        Assert.assertTrue(segmentIndex.isDense());
+        Assert.assertEquals(truncated + 1, segmentIndex.size());
+        Assert.assertEquals(entries[truncated].offset, segmentIndex.lastOffset());
+        Assert.assertEquals(entries[truncated].position + entries[truncated].length, segmentIndex.nextPosition());
+        for (int i = 0; i < entries.length; i++) {
+            Assert.assertEquals(entries[i].toString(), i <= truncated, segmentIndex.contains(entries[i].offset));
+        }
+
+        segmentIndex.index(entries[truncated + 1].offset, entries[truncated + 1].position, entries[truncated + 1].length, MessageStatus.QUEUED);
+        segmentIndex.flush();
+        try (SegmentIndex reopenSegmentIndex = new SegmentIndex(segmentIndex.file(), max())) {
+            Assert.assertEquals(truncated + 2, reopenSegmentIndex.size());
+            Assert.assertEquals(entries[truncated + 1].offset, reopenSegmentIndex.lastOffset());
+            Assert.assertTrue(reopenSegmentIndex.isDense());
+        }
+    }
+
+    @Test
+    public void testTruncateSparse() throws Exception {
+        LogEntry[] entries = generateSparse(max() / 2);
+        for (LogEntry entry : entries) {
+            segmentIndex.index(entry.offset, entry.position, entry.length, MessageStatus.QUEUED);
+        }
+
+        int truncated = entries.length / 3;
+        // truncate to offset between entries
+        segmentIndex.truncate(entries[truncated].offset + 1);
+        Assert.assertEquals(truncated + 1, segmentIndex.size());
+        Assert.assertEquals(entries[truncated].position + entries[truncated].length, segmentIndex.nextPosition());
+        for (int i = 0; i < entries.length; i++) {
+            Assert.assertEquals(entries[i].toString(), i <= truncated, segmentIndex.contains(entries[i].offset));
+        }
+
+        segmentIndex.truncate(-1);
+        Assert.assertEquals(0, segmentIndex.size());
+        Assert.assertFalse(segmentIndex.contains(entries[0].offset));
+    }
+
+    private LogEntry[] generateSparse(int max) {
+        LogEntry[] entries = new LogEntry[max];
+        long position = 0;
+        for (int i = 0; i < max; i++) {
+            int length = random.nextInt(1000) + 1;
+            entries[i] = new LogEntry(i * 2, position, length);
+            position += length;
+        }
+        return entries;
+    }
+
     private LogEntry[] generate() {
         return generate(max());
     }
@@ -14,6 +14,8 @@ import org.mitallast.queue.log.entry.TextLogEntry;
 import org.unitils.reflectionassert.ReflectionAssert;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 public class SegmentTest extends BaseTest {
     private StreamService streamService;
@@ -62,6 +64,37 @@ public class SegmentTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testAppendEntries() throws Exception {
+        List<LogEntry> entries = Arrays.asList(generate((int) segment.descriptor().maxEntries()));
+        for (int from = 0; from < entries.size(); from += 16) {
+            int count = Math.min(16, entries.size() - from);
+            Assert.assertEquals(count, segment.appendEntries(entries.subList(from, from + count), 0));
+            Assert.assertEquals(segment.size(), segmentIndex.nextPosition());
+            Assert.assertEquals(from + count, segment.lastIndex());
+        }
+        Assert.assertTrue(segment.isFull());
+
+        for (LogEntry entry : entries) {
+            LogEntry actual = segment.getEntry(entry.index());
+            Assert.assertNotNull(actual);
+            ReflectionAssert.assertReflectionEquals(entry, actual);
+        }
+    }
+
+    @Test
+    public void testAppendEntriesFull() throws Exception {
+        List<LogEntry> entries = Arrays.asList(generate((int) segment.descriptor().maxEntries() + 10));
+        Assert.assertEquals(segment.descriptor().maxEntries(), segment.appendEntries(entries, 0));
+        Assert.assertEquals(0, segment.appendEntries(entries, (int) segment.descriptor().maxEntries()));
+        Assert.assertEquals(segment.descriptor().maxEntries(), segment.lastIndex());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAppendEntriesInconsistentIndex() throws Exception {
+        segment.appendEntries(Arrays.asList(generate(10)).subList(1, 10), 0);
+    }
+
     private LogEntry[] generate(int max) {
         LogEntry[] logEntries = new LogEntry[max];
         for (int i = 0; i < max; i++) {
@@ -0,0 +1,208 @@
+package org.mitallast.queue.log.group;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.stream.InternalStreamService;
+import org.mitallast.queue.common.stream.StreamService;
+import org.mitallast.queue.log.LogService;
+import org.mitallast.queue.log.LogStreamService;
+import org.mitallast.queue.log.entry.MessageLogEntry;
+import org.mitallast.queue.queue.QueueMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ConsumerGroupLogTest extends BaseTest {
+
+    private Settings settings;
+    private LogService logService;
+    private ConsumerGroupLogService groupLogService;
+    private ConsumerGroupLog log;
+
+    @Before
+    public void setUp() throws Exception {
+        settings = ImmutableSettings.builder()
+            .put("work_dir", testFolder.newFolder().getAbsolutePath())
+            .put("log.max_entries_per_segment", 100)
+            .build();
+        open();
+    }
+
+    private void open() throws Exception {
+        StreamService streamService = new InternalStreamService(settings);
+        new LogStreamService(streamService);
+        logService = new LogService(settings, streamService);
+        logService.start();
+        groupLogService = new ConsumerGroupLogService(settings, streamService, logService);
+        groupLogService.start();
+        log = groupLogService.log("test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        close();
+    }
+
+    private void close() throws Exception {
+        groupLogService.stop();
+        groupLogService.close();
+        logService.stop();
+        logService.close();
+    }
+
+    @Test
+    public void testReadEmpty() throws Exception {
+        Assert.assertTrue(log.read("group", 10, Long.MAX_VALUE).isEmpty());
+        Assert.assertEquals(1, log.readOffset("group"));
+    }
+
+    @Test
+    public void testGroupsReadIndependently() throws Exception {
+        ImmutableList<QueueMessage> messages = append(10);
+        Assert.assertEquals(10, log.log().lastIndex());
+
+        assertMessages(messages, read("group1", 100));
+        assertMessages(messages.subList(0, 5), read("group2", 5));
+        assertMessages(messages.subList(5, 10), read("group2", 5));
+        Assert.assertTrue(log.read("group1", 100, Long.MAX_VALUE).isEmpty());
+        Assert.assertEquals(11, log.readOffset("group1"));
+        Assert.assertEquals(11, log.readOffset("group2"));
+    }
+
+    @Test
+    public void testReadMaxBytes() throws Exception {
+        append(10);
+        int length = log.log().entryLength(1);
+
+        Assert.assertEquals(3, log.read("group", 100, length * 3 + length / 2).size());
+        // first entry is returned even if it is greater than max bytes
+        Assert.assertEquals(1, log.read("group", 100, 1).size());
+    }
+
+    @Test
+    public void testReadAcrossSegments() throws Exception {
+        List<QueueMessage> messages = new ArrayList<>();
+        // batches cross segment boundaries
+        for (int i = 0; i < 4; i++) {
+            messages.addAll(append(150));
+        }
+        List<QueueMessage> read = new ArrayList<>();
+        ImmutableList<MessageLogEntry> entries;
+        while (!(entries = log.read("group", 64, Long.MAX_VALUE)).isEmpty()) {
+            for (MessageLogEntry entry : entries) {
+                read.add(entry.message());
+            }
+        }
+        Assert.assertEquals(messages, read);
+    }
+
+    @Test
+    public void testCommitAndReopen() throws Exception {
+        // spans three segments
+        ImmutableList<QueueMessage> messages = append(250);
+
+        read("group1", 104);
+        log.commit("group1", 105);
+        read("group2", 250);
+        log.commit("group2", 251);
+        Assert.assertEquals(105, log.committedOffset("group1"));
+
+        close();
+        open();
+
+        Assert.assertEquals(250, log.log().lastIndex());
+        Assert.assertEquals(105, log.committedOffset("group1"));
+        Assert.assertEquals(251, log.committedOffset("group2"));
+        assertMessages(messages.subList(104, 250), read("group1", 1000));
+        Assert.assertTrue(log.read("group2", 100, Long.MAX_VALUE).isEmpty());
+        assertMessages(messages, read("group3", 1000));
+    }
+
+    @Test
+    public void testReadAfterClose() throws Exception {
+        ImmutableList<QueueMessage> messages = append(10);
+        List<QueueMessage> read = read("group", 100);
+
+        // read messages hold slices of segment buffer, segment is unmapped only after they are released
+        close();
+        assertMessages(messages, read);
+        for (QueueMessage message : read) {
+            message.release();
+        }
+        open();
+    }
+
+    @Test
+    public void testCommitMovesReadOffset() throws Exception {
+        ImmutableList<QueueMessage> messages = append(10);
+
+        log.commit("group", 8);
+        assertMessages(messages.subList(7, 10), read("group", 100));
+    }
+
+    @Test
+    public void testManifestSnapshot() throws Exception {
+        append(10);
+        for (int i = 0; i < 3000; i++) {
+            log.commit("group" + (i % 3), i % 11);
+        }
+        close();
+        open();
+        Assert.assertEquals(3, log.groups().size());
+        Assert.assertEquals(2997 % 11, log.committedOffset("group0"));
+        Assert.assertEquals(2998 % 11, log.committedOffset("group1"));
+        Assert.assertEquals(2999 % 11, log.committedOffset("group2"));
+    }
+
+    @Test
+    public void testConcurrentConsumersOfGroup() throws Exception {
+        final int max = max() / 10;
+        executeConcurrent(() -> log.append(createMessagesWithUuid(max)));
+
+        final Set<UUID> read = ConcurrentHashMap.newKeySet();
+        executeConcurrent(() -> {
+            ImmutableList<MessageLogEntry> entries;
+            while (!(entries = log.read("group", 100, Long.MAX_VALUE)).isEmpty()) {
+                for (MessageLogEntry entry : entries) {
+                    assert read.add(entry.message().getUuid()) : "duplicate " + entry.index();
+                    entry.message().release();
+                }
+            }
+        });
+        Assert.assertEquals(max * concurrency(), read.size());
+    }
+
+    /**
+     * @return copies of appended messages, append consumes message buffers
+     */
+    private ImmutableList<QueueMessage> append(int count) throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(count);
+        ImmutableList.Builder<QueueMessage> copies = ImmutableList.builder();
+        for (QueueMessage message : messages) {
+            copies.add(new QueueMessage(message.getUuid(), message.getMessage()));
+        }
+        log.append(messages);
+        return copies.build();
+    }
+
+    private List<QueueMessage> read(String group, int size) throws Exception {
+        List<QueueMessage> messages = new ArrayList<>();
+        for (MessageLogEntry entry : log.read(group, size, Long.MAX_VALUE)) {
+            messages.add(entry.message());
+        }
+        return messages;
+    }
+
+    private void assertMessages(List<QueueMessage> expected, List<QueueMessage> actual) {
+        Assert.assertEquals(expected, actual);
+    }
+}
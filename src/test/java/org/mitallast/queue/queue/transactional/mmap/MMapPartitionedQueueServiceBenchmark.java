@@ -0,0 +1,88 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.stream.InternalStreamService;
+import org.mitallast.queue.queue.Queue;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.transactional.TransactionalQueueService;
+
+public class MMapPartitionedQueueServiceBenchmark extends BaseTest {
+
+    private final static int[] threads = {1, 2, 4, 8, 16, 32};
+
+    private int concurrency = 1;
+
+    @Override
+    protected int concurrency() {
+        return concurrency;
+    }
+
+    @Override
+    protected int max() {
+        return 10000;
+    }
+
+    @Test
+    public void testSinglePartition() throws Exception {
+        for (int thread : threads) {
+            concurrency = thread;
+            benchmark(new MMapTransactionalQueueService(
+                ImmutableSettings.builder()
+                    .put("work_dir", testFolder.newFolder())
+                    .build(),
+                ImmutableSettings.EMPTY,
+                new Queue("test"),
+                new InternalStreamService(ImmutableSettings.EMPTY)
+            ), "single");
+        }
+    }
+
+    @Test
+    public void testPartitionPerThread() throws Exception {
+        for (int thread : threads) {
+            concurrency = thread;
+            benchmark(new MMapPartitionedQueueService(
+                ImmutableSettings.builder()
+                    .put("work_dir", testFolder.newFolder())
+                    .build(),
+                ImmutableSettings.builder()
+                    .put("partitions", thread)
+                    .build(),
+                new Queue("test"),
+                new InternalStreamService(ImmutableSettings.EMPTY)
+            ), "partitions=" + thread);
+        }
+    }
+
+    private void benchmark(TransactionalQueueService service, String name) throws Exception {
+        service.start();
+        try {
+            long start = System.currentTimeMillis();
+            executeConcurrent(() -> {
+                for (QueueMessage message : createMessages(max())) {
+                    service.push(message);
+                }
+            });
+            long end = System.currentTimeMillis();
+            printQps("push " + name + " threads=" + concurrency, total(), start, end);
+
+            start = System.currentTimeMillis();
+            executeConcurrent(() -> {
+                for (int i = 0; i < max(); i++) {
+                    QueueMessage message = service.lockAndPop();
+                    if (message == null) {
+                        break;
+                    }
+                    service.unlockAndDelete(message.getUuid());
+                }
+            });
+            end = System.currentTimeMillis();
+            printQps("pop " + name + " threads=" + concurrency, total(), start, end);
+        } finally {
+            service.stop();
+            service.close();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.stream.InternalStreamService;
+import org.mitallast.queue.queue.Queue;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.transactional.QueueTransaction;
+import org.mitallast.queue.queues.stats.QueueStats;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class MMapPartitionedQueueServiceTest extends BaseTest {
+
+    private final static int segmentsSize = 256;
+    private final static int partitions = 4;
+    private File folder;
+    private MMapPartitionedQueueService service;
+
+    @Before
+    public void setUp() throws Exception {
+        folder = testFolder.newFolder();
+        service = createService();
+    }
+
+    private MMapPartitionedQueueService createService() throws Exception {
+        MMapPartitionedQueueService service = new MMapPartitionedQueueService(
+            ImmutableSettings.builder()
+                .put("work_dir", folder)
+                .put("segment.max_size", segmentsSize)
+                .build(),
+            ImmutableSettings.builder()
+                .put("partitions", partitions)
+                .build(),
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
+        );
+        service.start();
+        return service;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (service != null) {
+            service.stop();
+            service.close();
+            service = null;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPartitions() throws Exception {
+        new MMapPartitionedQueueService(
+            ImmutableSettings.builder()
+                .put("work_dir", folder)
+                .build(),
+            ImmutableSettings.builder()
+                .put("partitions", 0)
+                .build(),
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
+        );
+    }
+
+    @Test
+    public void testPushAndGet() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(100);
+        for (QueueMessage message : messages) {
+            Assert.assertTrue(service.push(message));
+        }
+        Assert.assertEquals(messages.size(), service.size());
+        for (QueueMessage message : messages) {
+            Assert.assertEquals(message, service.get(message.getUuid()));
+        }
+        for (int i = 0; i < partitions; i++) {
+            assert service.partition(i).size() > 0 : "partition " + i + " is empty";
+        }
+    }
+
+    @Test
+    public void testPushNewRoundRobin() throws Exception {
+        for (QueueMessage message : createMessages(partitions * 10)) {
+            Assert.assertTrue(service.push(message));
+        }
+        for (int i = 0; i < partitions; i++) {
+            Assert.assertEquals(10, service.partition(i).size());
+        }
+    }
+
+    @Test
+    public void testLockAndDelete() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+
+        Assert.assertEquals(message, service.lock(message.getUuid()));
+        Assert.assertNull(service.lockAndPop());
+        Assert.assertEquals(message, service.unlockAndDelete(message.getUuid()));
+        Assert.assertNull(service.get(message.getUuid()));
+        Assert.assertEquals(0, service.size());
+    }
+
+    @Test
+    public void testLockAndRollback() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+
+        Assert.assertEquals(message, service.lock(message.getUuid()));
+        Assert.assertEquals(message, service.unlockAndRollback(message.getUuid()));
+        Assert.assertEquals(message, service.lockAndPop());
+    }
+
+    @Test
+    public void testLockAndPopAll() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(100);
+        service.push(messages);
+
+        Set<UUID> popped = new HashSet<>();
+        QueueMessage message;
+        while ((message = service.lockAndPop()) != null) {
+            Assert.assertTrue(popped.add(message.getUuid()));
+        }
+        Assert.assertEquals(messages.size(), popped.size());
+    }
+
+    @Test
+    public void testLockAndPopBatch() throws Exception {
+        service.push(createMessages(100));
+
+        Assert.assertEquals(60, service.lockAndPop(60).size());
+        Assert.assertEquals(40, service.lockAndPop(60).size());
+        Assert.assertTrue(service.lockAndPop(60).isEmpty());
+    }
+
+    @Test
+    public void testLockAndPopWait() throws Exception {
+        CompletableFuture<QueueMessage> future = service.lockAndPop(10, TimeUnit.SECONDS);
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+        Assert.assertEquals(message, future.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, service.stats().getLockedSize());
+    }
+
+    @Test
+    public void testLockAndPopWaitTimeout() throws Exception {
+        CompletableFuture<QueueMessage> future = service.lockAndPop(100, TimeUnit.MILLISECONDS);
+        Assert.assertNull(future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLockAndPopConcurrent() throws Exception {
+        final int max = max() / 10;
+        executeConcurrent(() -> service.push(createMessages(max)));
+        Assert.assertEquals(max * concurrency(), service.size());
+
+        final Set<UUID> popped = ConcurrentHashMap.newKeySet();
+        executeConcurrent(() -> {
+            QueueMessage message;
+            while ((message = service.lockAndPop()) != null) {
+                assert popped.add(message.getUuid()) : "duplicate " + message;
+            }
+        });
+        Assert.assertEquals(max * concurrency(), popped.size());
+    }
+
+    @Test
+    public void testTransactionCommit() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(20);
+        QueueTransaction transaction = service.transaction(randomUUID());
+        for (QueueMessage message : messages) {
+            transaction.push(message);
+        }
+        Assert.assertEquals(0, service.size());
+        transaction.commit();
+        Assert.assertEquals(messages.size(), service.size());
+
+        transaction = service.transaction(randomUUID());
+        for (QueueMessage message : messages) {
+            Assert.assertEquals(message, transaction.delete(message.getUuid()));
+        }
+        transaction.commit();
+        Assert.assertEquals(0, service.size());
+    }
+
+    @Test
+    public void testTransactionRollback() throws Exception {
+        service.push(createMessagesWithUuid(20));
+
+        QueueTransaction transaction = service.transaction(randomUUID());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertNotNull(transaction.pop());
+        }
+        Assert.assertNull(transaction.pop());
+        Assert.assertEquals(0, service.size());
+        transaction.rollback();
+        Assert.assertEquals(20, service.size());
+    }
+
+    @Test
+    public void testTransactionPurge() throws Exception {
+        // transactions not started in any partition are purged
+        for (int i = 0; i < 4096; i++) {
+            service.transaction(randomUUID());
+        }
+        QueueTransaction transaction = service.transaction(randomUUID());
+        transaction.push(createMessage());
+        transaction.commit();
+        Assert.assertEquals(1, service.size());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(10);
+        service.push(messages);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNotNull(service.lockAndPop());
+        }
+
+        QueueStats stats = service.stats();
+        Assert.assertEquals(6, stats.getSize());
+        Assert.assertEquals(4, stats.getLockedSize());
+        Assert.assertEquals(10, stats.getPushCount());
+        Assert.assertEquals(4, stats.getPopCount());
+        assert stats.getBytes() > 0 : stats;
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(100);
+        service.push(messages);
+        service.stop();
+        service.close();
+
+        service = createService();
+        Assert.assertEquals(messages.size(), service.size());
+        for (QueueMessage message : messages) {
+            Assert.assertEquals(message, service.get(message.getUuid()));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.mitallast.queue.queue.transactional.mmap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MMapQueueFlusherTest extends BaseTest {
+
+    @Test
+    public void testNone() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        MMapQueueFlusher flusher = new MMapQueueFlusher(ImmutableSettings.EMPTY, "test", MMapQueueDurability.NONE,
+            1000, 0, flushes::incrementAndGet);
+        flusher.sync();
+        flusher.close();
+        Assert.assertEquals(0, flushes.get());
+        Assert.assertEquals(0, flusher.getWaitCount());
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        MMapQueueFlusher flusher = new MMapQueueFlusher(ImmutableSettings.EMPTY, "test", MMapQueueDurability.INTERVAL,
+            1, 0, flushes::incrementAndGet);
+        flusher.sync();
+        Assert.assertEquals(0, flusher.getWaitCount());
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (flushes.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        flusher.close();
+        assert flushes.get() > 0;
+    }
+
+    @Test
+    public void testGroupConcurrent() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        MMapQueueFlusher flusher = new MMapQueueFlusher(ImmutableSettings.EMPTY, "test", MMapQueueDurability.GROUP,
+            1000, 0, () -> {
+                flushes.incrementAndGet();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            });
+        final int syncs = 1000;
+        executeConcurrent(() -> {
+            for (int i = 0; i < syncs; i++) {
+                flusher.sync();
+            }
+        });
+        flusher.close();
+
+        logger.info("{}", flusher);
+        Assert.assertEquals(syncs * concurrency(), flusher.getWaitCount());
+        Assert.assertEquals(syncs * concurrency(), flusher.getFlushBatchTotal());
+        Assert.assertEquals(flushes.get(), flusher.getFlushCount());
+        if (concurrency() > 1) {
+            assert flusher.getFlushCount() < flusher.getWaitCount() : "sync is not batched";
+        }
+    }
+
+    @Test
+    public void testGroupError() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        MMapQueueFlusher flusher = new MMapQueueFlusher(ImmutableSettings.EMPTY, "test", MMapQueueDurability.GROUP,
+            1000, 0, () -> {
+                if (flushes.incrementAndGet() == 1) {
+                    throw new IOException("test");
+                }
+            });
+        try {
+            flusher.sync();
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("test", e.getMessage());
+        }
+        // next batch is flushed successfully
+        flusher.sync();
+        flusher.close();
+        Assert.assertEquals(2, flushes.get());
+    }
+
+    @Test
+    public void testGroupErrorConcurrent() throws Exception {
+        MMapQueueFlusher flusher = new MMapQueueFlusher(ImmutableSettings.EMPTY, "test", MMapQueueDurability.GROUP,
+            1000, 0, () -> {
+                throw new IOException("test");
+            });
+        final int syncs = 1000;
+        AtomicInteger errors = new AtomicInteger();
+        executeConcurrent(() -> {
+            for (int i = 0; i < syncs; i++) {
+                try {
+                    flusher.sync();
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+            }
+        });
+        flusher.close();
+        // waiter of each batch receives error of it's own batch, not overwritten by later batches
+        Assert.assertEquals(syncs * concurrency(), errors.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGroupClosed() throws Exception {
+        MMapQueueFlusher flusher = new MMapQueueFlusher(ImmutableSettings.EMPTY, "test", MMapQueueDurability.GROUP,
+            1000, 0, () -> {
+            });
+        flusher.close();
+        flusher.sync();
+    }
+}
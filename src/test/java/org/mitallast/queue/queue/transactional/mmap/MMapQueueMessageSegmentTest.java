@@ -1,5 +1,6 @@
 package org.mitallast.queue.queue.transactional.mmap;
 
+import io.netty.buffer.PooledByteBufAllocator;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -7,9 +8,13 @@ import org.junit.Test;
 import org.mitallast.queue.common.BaseTest;
 import org.mitallast.queue.common.mmap.MemoryMappedFile;
 import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageUuidDuplicateException;
 import org.mitallast.queue.queue.transactional.mmap.data.MMapQueueMessageAppendSegment;
 import org.mitallast.queue.queue.transactional.mmap.meta.MMapQueueMessageMetaSegment;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class MMapQueueMessageSegmentTest extends BaseTest {
 
     private MemoryMappedFile mmapFile1;
@@ -52,6 +57,27 @@ public class MMapQueueMessageSegmentTest extends BaseTest {
         Assert.assertTrue(segment.writeMessage(message3, pos3));
     }
 
+    @Test
+    public void testFlushDirty() throws Exception {
+        Assert.assertFalse(segment.isDirty());
+
+        QueueMessage message = createMessageWithUuid();
+        int pos = segment.insert(message.getUuid());
+        segment.writeLock(pos);
+        Assert.assertTrue(segment.writeMessage(message, pos));
+        Assert.assertTrue(segment.isDirty());
+
+        segment.flush();
+        Assert.assertFalse(segment.isDirty());
+
+        // lock status is not persisted
+        Assert.assertEquals(message, segment.lockAndPop());
+        Assert.assertFalse(segment.isDirty());
+
+        Assert.assertEquals(message, segment.unlockAndDelete(message.getUuid()));
+        Assert.assertTrue(segment.isDirty());
+    }
+
     @Test
     public void testPushAndGet() throws Exception {
         QueueMessage message1 = createMessageWithUuid();
@@ -180,4 +206,74 @@ public class MMapQueueMessageSegmentTest extends BaseTest {
         Assert.assertEquals(message2, segment.unlockAndRollback(message2.getUuid()));
         Assert.assertEquals(message3, segment.unlockAndRollback(message3.getUuid()));
     }
+
+    @Test
+    public void testWriteMessagesDuplicate() throws Exception {
+        QueueMessage message1 = createMessageWithUuid();
+        int pos1 = segment.insert(message1.getUuid());
+        segment.writeLock(pos1);
+        segment.writeMessage(message1, pos1);
+
+        List<QueueMessage> messages = Arrays.asList(createMessageWithUuid(), message1, createMessageWithUuid());
+        try {
+            segment.writeMessages(messages, 0);
+            Assert.fail();
+        } catch (QueueMessageUuidDuplicateException ignore) {
+        }
+
+        // slots claimed by failed batch are deleted, reservation of duplicate is returned
+        MMapQueueMessageMetaSegment metaSegment = segment.getMessageMetaSegment();
+        Assert.assertEquals(3, metaSegment.size());
+        Assert.assertEquals(2, metaSegment.deletedSize());
+        Assert.assertEquals(1, metaSegment.queuedSize());
+        Assert.assertEquals(message1, segment.lockAndPop());
+        Assert.assertNull(segment.lockAndPop());
+    }
+
+    @Test
+    public void testZeroCopy() throws Exception {
+        segment = new MMapQueueMessageSegment(
+            new MMapQueueMessageAppendSegment(mmapFile1),
+            new MMapQueueMessageMetaSegment(mmapFile2, total(), 0.7f),
+            1
+        );
+        QueueMessage message = createMessageWithUuid();
+        int pos = segment.insert(message.getUuid());
+        segment.writeLock(pos);
+        segment.writeMessage(message, pos);
+
+        QueueMessage actual = segment.get(message.getUuid());
+        Assert.assertEquals(message, actual);
+        actual.release();
+
+        actual = segment.lockAndPop();
+        Assert.assertEquals(message, actual);
+        actual.release();
+    }
+
+    @Test
+    public void testPooledBuffers() throws Exception {
+        segment = new MMapQueueMessageSegment(
+            new MMapQueueMessageAppendSegment(mmapFile1),
+            new MMapQueueMessageMetaSegment(mmapFile2, total(), 0.7f),
+            PooledByteBufAllocator.DEFAULT,
+            0
+        );
+        QueueMessage message = createMessageWithUuid();
+        int pos = segment.insert(message.getUuid());
+        segment.writeLock(pos);
+        segment.writeMessage(message, pos);
+
+        QueueMessage actual = segment.get(message.getUuid());
+        Assert.assertEquals(message, actual);
+        actual.release();
+
+        actual = segment.lockAndPop();
+        Assert.assertEquals(message, actual);
+        actual.release();
+
+        actual = segment.unlockAndDelete(message.getUuid());
+        Assert.assertEquals(message, actual);
+        actual.release();
+    }
 }
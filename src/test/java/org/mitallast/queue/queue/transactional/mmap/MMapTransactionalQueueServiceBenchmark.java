@@ -5,6 +5,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mitallast.queue.common.BaseTest;
 import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.stream.InternalStreamService;
 import org.mitallast.queue.queue.Queue;
 import org.mitallast.queue.queue.QueueMessage;
 import org.mitallast.queue.queue.transactional.QueueTransaction;
@@ -25,7 +26,8 @@ public class MMapTransactionalQueueServiceBenchmark extends BaseTest {
                 .put("work_dir", testFolder.newFolder())
                 .build(),
             ImmutableSettings.EMPTY,
-            new Queue("test")
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
         );
         service.start();
         messages = createMessages();
@@ -72,4 +74,49 @@ public class MMapTransactionalQueueServiceBenchmark extends BaseTest {
         long end = System.currentTimeMillis();
         printQps("push/commit", messages.size(), start, end);
     }
+
+    @Test
+    public void testPushConcurrentDurabilityNone() throws Exception {
+        benchmarkPushConcurrent(MMapQueueDurability.NONE);
+    }
+
+    @Test
+    public void testPushConcurrentDurabilityGroup() throws Exception {
+        benchmarkPushConcurrent(MMapQueueDurability.GROUP);
+    }
+
+    private void benchmarkPushConcurrent(MMapQueueDurability durability) throws Exception {
+        MMapTransactionalQueueService service = new MMapTransactionalQueueService(
+            ImmutableSettings.builder()
+                .put("work_dir", testFolder.newFolder())
+                .build(),
+            ImmutableSettings.builder()
+                .put("durability", durability.name())
+                .build(),
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
+        );
+        service.start();
+        try {
+            final int max = max() / 10;
+            long start = System.currentTimeMillis();
+            executeConcurrent(() -> {
+                for (QueueMessage message : createMessages(max)) {
+                    service.push(message);
+                }
+            });
+            long end = System.currentTimeMillis();
+            printQps("push " + durability, max * concurrency(), start, end);
+            MMapQueueFlusher flusher = service.flusher();
+            if (flusher.getFlushCount() > 0) {
+                logger.info("flush batch avg {}, max {}",
+                    flusher.getFlushBatchTotal() / flusher.getFlushCount(), flusher.getFlushBatchMax());
+                logger.info("wait avg {}us, max {}us",
+                    flusher.getWaitNanosTotal() / flusher.getWaitCount() / 1000, flusher.getWaitNanosMax() / 1000);
+            }
+        } finally {
+            service.stop();
+            service.close();
+        }
+    }
 }
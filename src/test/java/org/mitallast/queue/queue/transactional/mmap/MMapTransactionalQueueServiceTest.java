@@ -7,11 +7,20 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mitallast.queue.common.BaseTest;
 import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.stream.InternalStreamService;
 import org.mitallast.queue.queue.Queue;
 import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageUuidDuplicateException;
+import org.mitallast.queue.queues.stats.QueueStats;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class MMapTransactionalQueueServiceTest extends BaseTest {
 
@@ -25,14 +34,16 @@ public class MMapTransactionalQueueServiceTest extends BaseTest {
         service = createService();
     }
 
-    private MMapTransactionalQueueService createService() throws Exception {
+    private MMapTransactionalQueueService createService(Object... settings) throws Exception {
         MMapTransactionalQueueService service = new MMapTransactionalQueueService(
             ImmutableSettings.builder()
                 .put("work_dir", folder)
                 .put("segment.max_size", segmentsSize)
+                .put(settings)
                 .build(),
             ImmutableSettings.EMPTY,
-            new Queue("test")
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
         );
         service.start();
         return service;
@@ -109,6 +120,142 @@ public class MMapTransactionalQueueServiceTest extends BaseTest {
         Assert.assertNull(service.lockAndPop());
     }
 
+    @Test
+    public void testLockAndPopOrder() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 3);
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+        assert service.segmentsSize() == 3;
+
+        for (QueueMessage message : messages) {
+            Assert.assertEquals(message, service.lockAndPop());
+            service.unlockAndDelete(message.getUuid());
+        }
+        Assert.assertNull(service.lockAndPop());
+        Assert.assertNull(service.peek());
+    }
+
+    @Test
+    public void testPushBatchAndLockAndPopBatch() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessages(segmentsSize * 3 + 10);
+        Assert.assertTrue(service.push(messages));
+        assert service.segmentsSize() == 4;
+        for (QueueMessage message : messages) {
+            Assert.assertNotNull(message.getUuid());
+        }
+
+        ImmutableList.Builder<QueueMessage> popped = ImmutableList.builder();
+        ImmutableList<QueueMessage> batch;
+        while (!(batch = service.lockAndPop(100)).isEmpty()) {
+            assert batch.size() <= 100;
+            popped.addAll(batch);
+        }
+        Assert.assertEquals(messages, popped.build());
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testPushBatchWithUuid() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+
+        ImmutableList<QueueMessage> messages = ImmutableList.<QueueMessage>builder()
+            .add(createMessage())
+            .add(createMessageWithUuid())
+            .add(createMessage())
+            .build();
+        Assert.assertTrue(service.push(messages));
+
+        Assert.assertEquals(message, service.lockAndPop());
+        Assert.assertEquals(messages, service.lockAndPop(messages.size() + 1));
+    }
+
+    @Test
+    public void testPushBatchDuplicate() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+
+        ImmutableList<QueueMessage> messages = ImmutableList.<QueueMessage>builder()
+            .add(createMessage())
+            .add(message)
+            .add(createMessage())
+            .build();
+        try {
+            service.push(messages);
+            Assert.fail();
+        } catch (QueueMessageUuidDuplicateException ignore) {
+        }
+        // only messages written before duplicate are counted
+        Assert.assertEquals(2, service.stats().getPushCount());
+    }
+
+    @Test
+    public void testLockAndPopWait() throws Exception {
+        CompletableFuture<QueueMessage> future = service.lockAndPop(10, TimeUnit.SECONDS);
+        assert !future.isDone();
+
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+
+        Assert.assertEquals(message, future.get(1, TimeUnit.SECONDS));
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testLockAndPopWaitQueued() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+
+        CompletableFuture<QueueMessage> future = service.lockAndPop(10, TimeUnit.SECONDS);
+        assert future.isDone();
+        Assert.assertEquals(message, future.get());
+    }
+
+    @Test
+    public void testLockAndPopWaitTimeout() throws Exception {
+        long start = System.currentTimeMillis();
+        Assert.assertNull(service.lockAndPop(100, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS));
+        assert System.currentTimeMillis() - start >= 100;
+
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+        Assert.assertEquals(message, service.lockAndPop());
+    }
+
+    @Test
+    public void testLockAndPopWaitRollback() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+        Assert.assertEquals(message, service.lockAndPop());
+
+        CompletableFuture<QueueMessage> future = service.lockAndPop(10, TimeUnit.SECONDS);
+        assert !future.isDone();
+
+        service.unlockAndRollback(message.getUuid());
+        Assert.assertEquals(message, future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLockAndPopWaitConcurrent() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 2);
+        List<CompletableFuture<QueueMessage>> futures = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            futures.add(service.lockAndPop(10, TimeUnit.SECONDS));
+        }
+        executeConcurrent((thread, concurrency) -> {
+            for (int i = thread; i < messages.size(); i += concurrency) {
+                service.push(messages.get(i));
+            }
+        });
+        Set<QueueMessage> popped = new HashSet<>();
+        for (CompletableFuture<QueueMessage> future : futures) {
+            popped.add(future.get(1, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(new HashSet<>(messages), popped);
+        Assert.assertNull(service.lockAndPop());
+    }
+
     @Test
     public void testPushAndUnlockAndDelete() throws Exception {
         QueueMessage message1 = createMessageWithUuid();
@@ -160,6 +307,351 @@ public class MMapTransactionalQueueServiceTest extends BaseTest {
         assert service.segmentsSize() == 0 : service.segmentsSize();
     }
 
+    @Test
+    public void testGarbageCollectAfterPushDuplicate() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 2);
+        service.push(messages.get(0));
+        try {
+            service.push(new QueueMessage(messages.get(0).getUuid(), "duplicate"));
+            Assert.fail();
+        } catch (QueueMessageUuidDuplicateException ignore) {
+        }
+        for (QueueMessage message : messages.subList(1, messages.size())) {
+            service.push(message);
+        }
+        // duplicate does not hold slot, so both segments are full of deleted messages
+        Assert.assertEquals(2, service.segmentsSize());
+        for (QueueMessage message : messages) {
+            service.lock(message.getUuid());
+            service.unlockAndDelete(message.getUuid());
+        }
+        service.garbageCollect();
+        Assert.assertEquals(0, service.segmentsSize());
+    }
+
+    @Test
+    public void testGarbageCollectScheduled() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("segment.reclaim_interval", "10ms");
+
+        for (QueueMessage message : createMessagesWithUuid(segmentsSize * 2)) {
+            service.push(message);
+            service.lock(message.getUuid());
+            service.unlockAndDelete(message.getUuid());
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (service.segmentsSize() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assert service.segmentsSize() == 0 : service.segmentsSize();
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 3);
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+        for (int i = 0; i < segmentsSize; i++) {
+            Assert.assertEquals(messages.get(i), service.lockAndPop());
+        }
+        for (int i = 2; i < segmentsSize; i++) {
+            if (i < 4) {
+                service.unlockAndRollback(messages.get(i).getUuid());
+            } else {
+                service.unlockAndDelete(messages.get(i).getUuid());
+            }
+        }
+        assert service.segmentsSize() == 3;
+        service.compact();
+        // first segment is dropped, survivors does not fit full tail segment
+        assert service.segmentsSize() == 3 : service.segmentsSize();
+
+        Assert.assertEquals(messages.get(0), service.get(messages.get(0).getUuid()));
+        Assert.assertEquals(messages.get(1), service.get(messages.get(1).getUuid()));
+        // locked messages are moved locked, queued survivors are moved to the end of queue
+        for (int i = segmentsSize; i < messages.size(); i++) {
+            Assert.assertEquals(messages.get(i), service.lockAndPop());
+        }
+        Assert.assertEquals(messages.get(2), service.lockAndPop());
+        Assert.assertEquals(messages.get(3), service.lockAndPop());
+        Assert.assertNull(service.lockAndPop());
+        Assert.assertEquals(messages.get(0), service.unlockAndDelete(messages.get(0).getUuid()));
+        Assert.assertEquals(messages.get(1), service.unlockAndRollback(messages.get(1).getUuid()));
+        Assert.assertEquals(messages.get(1), service.lockAndPop());
+    }
+
+    @Test
+    public void testCompactReopen() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 3);
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+        for (int i = 0; i < segmentsSize; i++) {
+            Assert.assertEquals(messages.get(i), service.lockAndPop());
+        }
+        for (int i = 0; i < segmentsSize; i++) {
+            if (i == 2 || i == 3) {
+                service.unlockAndRollback(messages.get(i).getUuid());
+            } else {
+                service.unlockAndDelete(messages.get(i).getUuid());
+            }
+        }
+        service.compact();
+        assert service.segmentsSize() == 3 : service.segmentsSize();
+
+        service.stop();
+        service.close();
+        service = createService();
+
+        // moved messages survive removal of compacted segment
+        Assert.assertEquals(messages.get(2), service.get(messages.get(2).getUuid()));
+        Assert.assertEquals(messages.get(3), service.get(messages.get(3).getUuid()));
+        Assert.assertNull(service.get(messages.get(4).getUuid()));
+        for (int i = segmentsSize; i < messages.size(); i++) {
+            Assert.assertEquals(messages.get(i), service.lockAndPop());
+        }
+        Assert.assertEquals(messages.get(2), service.lockAndPop());
+        Assert.assertEquals(messages.get(3), service.lockAndPop());
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testDelayed() throws Exception {
+        QueueMessage delayed = createMessageWithUuid();
+        delayed.setDeliverAt(System.currentTimeMillis() + 200);
+        QueueMessage message = createMessageWithUuid();
+        service.push(delayed);
+        service.push(message);
+
+        Assert.assertEquals(message, service.lockAndPop());
+        Assert.assertNull(service.lockAndPop());
+        Assert.assertNull(service.lock(delayed.getUuid()));
+        Assert.assertEquals(delayed, service.get(delayed.getUuid()));
+
+        QueueMessage popped = service.lockAndPop(10, TimeUnit.SECONDS).get();
+        Assert.assertEquals(delayed, popped);
+        assert System.currentTimeMillis() >= delayed.getDeliverAt();
+    }
+
+    @Test
+    public void testDeleteDelayed() throws Exception {
+        QueueMessage delayed = createMessageWithUuid();
+        delayed.setDeliverAt(System.currentTimeMillis() + 100);
+        service.push(delayed);
+        Assert.assertEquals(delayed, service.unlockAndDelete(delayed.getUuid()));
+        Assert.assertNull(service.lockAndPop(500, TimeUnit.MILLISECONDS).get());
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        QueueMessage expiring = createMessageWithUuid();
+        expiring.setTtl(100);
+        QueueMessage message = createMessageWithUuid();
+        service.push(expiring);
+        service.push(message);
+
+        Thread.sleep(300);
+        Assert.assertEquals(message, service.lockAndPop());
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testTtlRollback() throws Exception {
+        QueueMessage expiring = createMessageWithUuid();
+        expiring.setTtl(100);
+        service.push(expiring);
+        Assert.assertEquals(expiring, service.lockAndPop());
+        Thread.sleep(300);
+        service.unlockAndRollback(expiring.getUuid());
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testReopenDelayed() throws Exception {
+        QueueMessage delayed = createMessageWithUuid();
+        delayed.setDeliverAt(System.currentTimeMillis() + 300);
+        service.push(delayed);
+
+        service.stop();
+        service.close();
+        service = createService("segment.warmup_threads", 0);
+
+        Assert.assertNull(service.lockAndPop());
+        Assert.assertEquals(delayed, service.lockAndPop(10, TimeUnit.SECONDS).get());
+    }
+
+    @Test
+    public void testLockLeaseExpired() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("lease.lock_timeout", "100ms");
+
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+        Assert.assertEquals(message, service.lockAndPop());
+        Assert.assertNull(service.lockAndPop());
+
+        // abandoned lock is rolled back
+        Assert.assertEquals(message, service.lockAndPop(10, TimeUnit.SECONDS).get());
+        Assert.assertEquals(message, service.unlockAndDelete(message.getUuid()));
+        Thread.sleep(300);
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testLockWithoutLease() throws Exception {
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+        Assert.assertEquals(message, service.lockAndPop());
+        Assert.assertEquals(0, service.timersSize());
+    }
+
+    @Test
+    public void testLockLeaseCancelledOnUnlock() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("lease.lock_timeout", "1m");
+
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 2);
+        for (int i = 0; i < messages.size(); i++) {
+            QueueMessage message = messages.get(i);
+            service.push(message);
+            Assert.assertEquals(message, service.lockAndPop());
+            if (i % 2 == 0) {
+                Assert.assertEquals(message, service.unlockAndRollback(message.getUuid()));
+                Assert.assertEquals(message, service.lockAndPop());
+            }
+            Assert.assertEquals(message, service.unlockAndDelete(message.getUuid()));
+        }
+        QueueMessage locked = createMessageWithUuid();
+        service.push(locked);
+        Assert.assertEquals(locked, service.lockAndPop());
+
+        // timers of unlocked messages are removed by next advance of timers, not at lease deadline
+        long deadline = System.currentTimeMillis() + 10000;
+        while (service.timersSize() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, service.timersSize());
+    }
+
+    @Test
+    public void testLockLeaseRelocked() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("lease.lock_timeout", "300ms");
+
+        QueueMessage message = createMessageWithUuid();
+        service.push(message);
+        Assert.assertEquals(message, service.lockAndPop());
+        Thread.sleep(200);
+        service.unlockAndRollback(message.getUuid());
+        Assert.assertEquals(message, service.lockAndPop());
+        // lease of first lock does not roll back second lock
+        Thread.sleep(200);
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(10);
+        QueueMessage delayed = createMessageWithUuid();
+        delayed.setDeliverAt(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+        service.push(delayed);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(messages.get(i), service.lockAndPop());
+        }
+        service.unlockAndDelete(messages.get(0).getUuid());
+        service.unlockAndDelete(messages.get(1).getUuid());
+        service.unlockAndRollback(messages.get(2).getUuid());
+
+        QueueStats stats = service.stats();
+        Assert.assertEquals(6, stats.getSize());
+        Assert.assertEquals(6, service.size());
+        Assert.assertEquals(2, stats.getLockedSize());
+        Assert.assertEquals(1, stats.getDelayedSize());
+        Assert.assertEquals(2, stats.getDeletedSize());
+        Assert.assertEquals(11, stats.getPushCount());
+        Assert.assertEquals(5, stats.getPopCount());
+        assert stats.getBytes() > 0 : stats;
+        assert stats.getOldestAge() >= 0 : stats;
+    }
+
+    @Test
+    public void testStatsRate() throws Exception {
+        for (QueueMessage message : createMessagesWithUuid(100)) {
+            service.push(message);
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (service.stats().getPushRate() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assert service.stats().getPushRate() > 0 : service.stats();
+        Thread.sleep(200);
+        assert service.stats().getOldestAge() >= 200 : service.stats();
+    }
+
+    @Test
+    public void testStatsGarbageCollect() throws Exception {
+        for (QueueMessage message : createMessagesWithUuid(segmentsSize * 2)) {
+            service.push(message);
+            service.lock(message.getUuid());
+            service.unlockAndDelete(message.getUuid());
+        }
+        Assert.assertEquals(segmentsSize * 2, service.stats().getDeletedSize());
+        service.garbageCollect();
+        QueueStats stats = service.stats();
+        Assert.assertEquals(0, stats.getDeletedSize());
+        Assert.assertEquals(0, stats.getSize());
+        Assert.assertEquals(0, stats.getBytes());
+    }
+
+    @Test
+    public void testStatsReopen() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 2);
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+        Assert.assertEquals(messages.get(0), service.lockAndPop());
+        service.unlockAndDelete(messages.get(0).getUuid());
+        Assert.assertEquals(messages.get(1), service.lockAndPop());
+
+        service.stop();
+        service.close();
+        service = createService("segment.warmup_threads", 0);
+
+        // locked message is queued after restart
+        QueueStats stats = service.stats();
+        Assert.assertEquals(segmentsSize * 2 - 1, stats.getSize());
+        Assert.assertEquals(0, stats.getLockedSize());
+        Assert.assertEquals(1, stats.getDeletedSize());
+        Assert.assertEquals(messages.get(1), service.lockAndPop());
+        Assert.assertEquals(segmentsSize * 2 - 2, service.stats().getSize());
+    }
+
+    @Test
+    public void testGroupCommitStats() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("durability", "group");
+
+        for (QueueMessage message : createMessagesWithUuid(segmentsSize * 2)) {
+            service.push(message);
+        }
+
+        QueueStats stats = service.stats();
+        Assert.assertTrue(stats.getFlushWaitCount() >= segmentsSize * 2);
+        Assert.assertTrue(stats.getFlushCount() > 0);
+        Assert.assertTrue(stats.getFlushCount() <= stats.getFlushWaitCount());
+        Assert.assertTrue(stats.getFlushBatchMax() >= 1);
+        Assert.assertTrue(stats.getFlushWaitMaxNanos() <= stats.getFlushWaitNanos());
+    }
+
     @Test
     public void testReopen() throws Exception {
         QueueMessage message1 = createMessageWithUuid();
@@ -185,6 +677,43 @@ public class MMapTransactionalQueueServiceTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testReopenLockAndPopOrder() throws Exception {
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 3);
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+
+        service.stop();
+        service.close();
+        service = createService();
+
+        assert service.segmentsSize() == 3;
+        for (QueueMessage message : messages) {
+            Assert.assertEquals(message, service.lockAndPop());
+            service.unlockAndDelete(message.getUuid());
+        }
+        Assert.assertNull(service.lockAndPop());
+    }
+
+    @Test
+    public void testLockAndPopOrderWithoutStandby() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("segment.standby_fill_ratio", 0);
+
+        ImmutableList<QueueMessage> messages = createMessagesWithUuid(segmentsSize * 3);
+        for (QueueMessage message : messages) {
+            service.push(message);
+        }
+        assert service.segmentsSize() == 3;
+        for (QueueMessage message : messages) {
+            Assert.assertEquals(message, service.lockAndPop());
+            service.unlockAndDelete(message.getUuid());
+        }
+        Assert.assertNull(service.lockAndPop());
+    }
+
     @Test
     public void testGarbageCollectConcurrent() throws Exception {
         executeConcurrent(() -> {
@@ -213,7 +742,8 @@ public class MMapTransactionalQueueServiceTest extends BaseTest {
                 .put("segment.max_size", 1048576)
                 .build(),
             ImmutableSettings.EMPTY,
-            new Queue("test")
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
         );
         service.start();
 
@@ -6,11 +6,16 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mitallast.queue.common.BaseTest;
 import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.common.stream.InternalStreamService;
 import org.mitallast.queue.queue.Queue;
 import org.mitallast.queue.queue.QueueMessage;
 import org.mitallast.queue.queue.transactional.QueueTransaction;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class MMapTransactionalQueueServiceTransactionTest extends BaseTest {
 
@@ -24,14 +29,16 @@ public class MMapTransactionalQueueServiceTransactionTest extends BaseTest {
         service = createService();
     }
 
-    private MMapTransactionalQueueService createService() throws Exception {
+    private MMapTransactionalQueueService createService(Object... settings) throws Exception {
         MMapTransactionalQueueService service = new MMapTransactionalQueueService(
             ImmutableSettings.builder()
                 .put("work_dir", folder)
                 .put("segment.max_size", segmentsSize)
+                .put(settings)
                 .build(),
             ImmutableSettings.EMPTY,
-            new Queue("test")
+            new Queue("test"),
+            new InternalStreamService(ImmutableSettings.EMPTY)
         );
         service.start();
         return service;
@@ -141,4 +148,76 @@ public class MMapTransactionalQueueServiceTransactionTest extends BaseTest {
 
         Assert.assertEquals(message, service.lock(message.getUuid()));
     }
+
+    @Test
+    public void testPopConcurrentWithRollback() throws Exception {
+        final int count = 16;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < count; i++) {
+                service.push(createMessage());
+            }
+            QueueTransaction transaction = service.transaction(randomUUID());
+            Future<Void> rollback = submit(() -> {
+                transaction.rollback();
+                return null;
+            });
+            try {
+                while (transaction.pop() != null) {
+                    Thread.yield();
+                }
+            } catch (IOException e) {
+                // rolled back concurrently
+            }
+            rollback.get();
+
+            // message popped by rolled back transaction is not left locked
+            List<QueueMessage> messages = service.lockAndPop(count * 2);
+            Assert.assertEquals(count, messages.size());
+            for (QueueMessage message : messages) {
+                service.unlockAndDelete(message.getUuid());
+            }
+        }
+    }
+
+    @Test
+    public void testLeaseExpired() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("lease.transaction_timeout", "100ms");
+
+        QueueMessage message = createMessage();
+        service.push(message);
+
+        QueueTransaction transaction = service.transaction(randomUUID());
+        Assert.assertEquals(message, transaction.pop());
+        Assert.assertNull(service.lockAndPop());
+
+        Assert.assertEquals(message, service.lockAndPop(10, TimeUnit.SECONDS).get());
+        try {
+            transaction.commit();
+            Assert.fail("expected rolled back transaction");
+        } catch (IOException e) {
+            // rolled back by lease
+        }
+    }
+
+    @Test
+    public void testLeaseExtended() throws Exception {
+        service.stop();
+        service.close();
+        service = createService("lease.transaction_timeout", "300ms");
+
+        QueueMessage message1 = createMessage();
+        QueueMessage message2 = createMessage();
+        service.push(message1);
+        service.push(message2);
+
+        QueueTransaction transaction = service.transaction(randomUUID());
+        Assert.assertEquals(message1, transaction.pop());
+        Thread.sleep(200);
+        Assert.assertEquals(message2, transaction.pop());
+        Thread.sleep(200);
+        transaction.commit();
+        Assert.assertNull(service.lockAndPop());
+    }
 }
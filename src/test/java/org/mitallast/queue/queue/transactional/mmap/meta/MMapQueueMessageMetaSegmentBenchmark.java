@@ -81,6 +81,75 @@ public class MMapQueueMessageMetaSegmentBenchmark extends BaseTest {
         printQps("insert/lock/meta/read", metaList.size(), start, end);
     }
 
+    @Test
+    public void testLockAndPop10() throws Exception {
+        benchmarkLockAndPop(0.1f);
+    }
+
+    @Test
+    public void testLockAndPop50() throws Exception {
+        benchmarkLockAndPop(0.5f);
+    }
+
+    @Test
+    public void testLockAndPop99() throws Exception {
+        benchmarkLockAndPop(0.99f);
+    }
+
+    private void benchmarkLockAndPop(float fill) throws Exception {
+        final int count = (int) (metaList.size() * fill);
+        for (int i = 0; i < count; i++) {
+            QueueMessageMeta meta = metaList.get(i);
+            int pos = messageMetaSegment.insert(meta.getUuid());
+            assert pos >= 0;
+            assert messageMetaSegment.writeLock(pos);
+            assert messageMetaSegment.writeMeta(meta, pos);
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            assert messageMetaSegment.lockAndPop() != null;
+        }
+        long end = System.currentTimeMillis();
+        printQps("lock/pop fill " + (int) (fill * 100) + "%", count, start, end);
+    }
+
+    @Test
+    public void testHeapFootprint() throws Exception {
+        final int segmentsCount = 100;
+        final List<MMapQueueMessageMetaSegment> segments = new ArrayList<>(segmentsCount);
+        long heapBefore = usedHeap();
+        long start = System.currentTimeMillis();
+        for (int s = 0; s < segmentsCount; s++) {
+            MMapQueueMessageMetaSegment segment = new MMapQueueMessageMetaSegment(
+                new MemoryMappedFile(testFolder.newFile()), max(), 0.7f);
+            for (int i = 0; i < max(); i++) {
+                QueueMessageMeta meta = meta();
+                int pos = segment.insert(meta.getUuid());
+                assert pos >= 0;
+                assert segment.writeLock(pos);
+                assert segment.writeMeta(meta, pos);
+            }
+            segments.add(segment);
+        }
+        long end = System.currentTimeMillis();
+        long heapAfter = usedHeap();
+        printQps("fill " + segmentsCount + " segments", segmentsCount * max(), start, end);
+        logger.info("heap used by {} segments of {} messages: {} bytes, {} bytes per segment",
+            segmentsCount, max(), heapAfter - heapBefore, (heapAfter - heapBefore) / segmentsCount);
+        for (MMapQueueMessageMetaSegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
     private QueueMessageMeta meta() {
         return new QueueMessageMeta(
             randomUUID(),
@@ -104,6 +104,66 @@ public class MMapQueueMessageMetaSegmentTest extends BaseTest {
         Assert.assertEquals(QueueMessageStatus.LOCKED, metaLocked.getStatus());
     }
 
+    @Test
+    public void testLeaseTimeoutRelocked() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, total(), 0.7f);
+        final List<Integer> stamps = new ArrayList<>();
+        messageMetaSegment.setTimerListener((pos, deadline, lockStamp) -> stamps.add(lockStamp));
+        QueueMessageMeta meta = meta();
+
+        int pos = messageMetaSegment.insert(meta.getUuid());
+        assert pos >= 0;
+        assert messageMetaSegment.writeLock(pos);
+        assert messageMetaSegment.writeMeta(meta, pos);
+        long deadline = System.currentTimeMillis() + 1000;
+        assert messageMetaSegment.lock(meta.getUuid(), deadline) != null;
+        assert messageMetaSegment.unlockAndQueue(meta.getUuid()) != null;
+        assert messageMetaSegment.lock(meta.getUuid(), deadline) != null;
+        Assert.assertEquals(2, stamps.size());
+        Assert.assertNotEquals(stamps.get(0), stamps.get(1));
+
+        // lease of first lock does not unlock message locked again
+        Assert.assertEquals(0, messageMetaSegment.timeout(pos, deadline, stamps.get(0)));
+        Assert.assertEquals(QueueMessageStatus.LOCKED, messageMetaSegment.readMeta(meta.getUuid()).getStatus());
+
+        Assert.assertEquals(0, messageMetaSegment.timeout(pos, deadline, stamps.get(1)));
+        Assert.assertEquals(QueueMessageStatus.QUEUED, messageMetaSegment.readMeta(meta.getUuid()).getStatus());
+    }
+
+    @Test
+    public void testLeaseCancelledOnUnlock() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, total(), 0.7f);
+        final List<Integer> leased = new ArrayList<>();
+        final List<Integer> cancelled = new ArrayList<>();
+        messageMetaSegment.setTimerListener(new QueueMessageTimerListener() {
+            @Override
+            public void schedule(int pos, long deadline, int lockStamp) {
+            }
+
+            @Override
+            public Runnable lease(int pos, long deadline, int lockStamp) {
+                leased.add(lockStamp);
+                return () -> cancelled.add(lockStamp);
+            }
+        });
+        QueueMessageMeta meta = meta();
+
+        int pos = messageMetaSegment.insert(meta.getUuid());
+        assert pos >= 0;
+        assert messageMetaSegment.writeLock(pos);
+        assert messageMetaSegment.writeMeta(meta, pos);
+        long deadline = System.currentTimeMillis() + 1000;
+        assert messageMetaSegment.lock(meta.getUuid(), deadline) != null;
+        assert messageMetaSegment.unlockAndQueue(meta.getUuid()) != null;
+        Assert.assertEquals(leased, cancelled);
+
+        assert messageMetaSegment.lock(meta.getUuid(), deadline) != null;
+        Assert.assertEquals(2, leased.size());
+        Assert.assertEquals(1, cancelled.size());
+        assert messageMetaSegment.unlockAndDelete(meta.getUuid()) != null;
+        Assert.assertEquals(leased, cancelled);
+    }
+
     @Test
     public void testUnlockAndDelete() throws IOException {
         final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, total(), 0.7f);
@@ -152,6 +212,68 @@ public class MMapQueueMessageMetaSegmentTest extends BaseTest {
         Assert.assertEquals(meta, messageMetaSegment.peek());
     }
 
+    @Test
+    public void testLockAndPopOrder() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, total(), 0.7f);
+        final List<QueueMessageMeta> metaList = new ArrayList<>(max());
+        for (int i = 0; i < max(); i++) {
+            QueueMessageMeta meta = meta();
+            metaList.add(meta);
+            int pos = messageMetaSegment.insert(meta.getUuid());
+            assert pos >= 0;
+            assert messageMetaSegment.writeLock(pos);
+            assert messageMetaSegment.writeMeta(meta, pos);
+        }
+
+        for (QueueMessageMeta expected : metaList) {
+            Assert.assertEquals(expected, messageMetaSegment.peek());
+            Assert.assertEquals(expected, messageMetaSegment.lockAndPop());
+        }
+        Assert.assertNull(messageMetaSegment.peek());
+        Assert.assertNull(messageMetaSegment.lockAndPop());
+    }
+
+    @Test
+    public void testLockAndPopAfterUnlockAndQueue() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, total(), 0.7f);
+        QueueMessageMeta meta1 = meta();
+        QueueMessageMeta meta2 = meta();
+        QueueMessageMeta meta3 = meta();
+
+        for (QueueMessageMeta meta : new QueueMessageMeta[]{meta1, meta2, meta3}) {
+            int pos = messageMetaSegment.insert(meta.getUuid());
+            assert pos >= 0;
+            assert messageMetaSegment.writeLock(pos);
+            assert messageMetaSegment.writeMeta(meta, pos);
+        }
+
+        Assert.assertEquals(meta1, messageMetaSegment.lockAndPop());
+        Assert.assertEquals(meta2, messageMetaSegment.lockAndPop());
+        messageMetaSegment.unlockAndQueue(meta1.getUuid());
+
+        Assert.assertEquals(meta1, messageMetaSegment.lockAndPop());
+        Assert.assertEquals(meta3, messageMetaSegment.lockAndPop());
+        Assert.assertNull(messageMetaSegment.lockAndPop());
+    }
+
+    @Test
+    public void testLockAndPopConcurrent() throws Exception {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, total(), 0.7f);
+        for (int i = 0; i < total(); i++) {
+            QueueMessageMeta meta = meta();
+            int pos = messageMetaSegment.insert(meta.getUuid());
+            assert pos >= 0;
+            assert messageMetaSegment.writeLock(pos);
+            assert messageMetaSegment.writeMeta(meta, pos);
+        }
+        executeConcurrent(() -> {
+            for (int i = 0; i < max(); i++) {
+                Assert.assertNotNull(messageMetaSegment.lockAndPop());
+            }
+        });
+        Assert.assertNull(messageMetaSegment.lockAndPop());
+    }
+
     @Test
     public void testIsGarbage() throws IOException {
         final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, 3, 0.7f);
@@ -217,11 +339,94 @@ public class MMapQueueMessageMetaSegmentTest extends BaseTest {
         Assert.assertEquals(meta3, messageMetaSegmentReopen.readMeta(meta3.getUuid()));
     }
 
+    @Test
+    public void testReopenOrder() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, 3, 0.7f);
+
+        QueueMessageMeta meta1 = new QueueMessageMeta(randomUUID(), QueueMessageStatus.QUEUED, 300, 10, QueueMessageType.STRING);
+        QueueMessageMeta meta2 = new QueueMessageMeta(randomUUID(), QueueMessageStatus.QUEUED, 100, 10, QueueMessageType.STRING);
+        QueueMessageMeta meta3 = new QueueMessageMeta(randomUUID(), QueueMessageStatus.QUEUED, 200, 10, QueueMessageType.STRING);
+
+        for (QueueMessageMeta meta : new QueueMessageMeta[]{meta1, meta2, meta3}) {
+            int pos = messageMetaSegment.insert(meta.getUuid());
+            messageMetaSegment.writeLock(pos);
+            messageMetaSegment.writeMeta(meta, pos);
+        }
+
+        messageMetaSegment.close();
+
+        MemoryMappedFile mmapFileReopen = new MemoryMappedFile(mmapFile.getFile());
+        final MMapQueueMessageMetaSegment messageMetaSegmentReopen = new MMapQueueMessageMetaSegment(mmapFileReopen, 3, 0.7f);
+
+        // after reopen, queued messages are ordered by data offset
+        Assert.assertEquals(meta2, messageMetaSegmentReopen.lockAndPop());
+        Assert.assertEquals(meta3, messageMetaSegmentReopen.lockAndPop());
+        Assert.assertEquals(meta1, messageMetaSegmentReopen.lockAndPop());
+        Assert.assertNull(messageMetaSegmentReopen.lockAndPop());
+    }
+
+    @Test
+    public void testReopenLazy() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, 3, 0.7f);
+
+        QueueMessageMeta meta1 = meta();
+        QueueMessageMeta meta2 = meta();
+        for (QueueMessageMeta meta : new QueueMessageMeta[]{meta1, meta2}) {
+            int pos = messageMetaSegment.insert(meta.getUuid());
+            messageMetaSegment.writeLock(pos);
+            messageMetaSegment.writeMeta(meta, pos);
+        }
+        messageMetaSegment.unlockAndDelete(messageMetaSegment.lock(meta1.getUuid()).getUuid());
+        messageMetaSegment.close();
+
+        MemoryMappedFile mmapFileReopen = new MemoryMappedFile(mmapFile.getFile());
+        final MMapQueueMessageMetaSegment messageMetaSegmentReopen = new MMapQueueMessageMetaSegment(mmapFileReopen, 3, 0.7f);
+
+        // counters, offset range and uuid filter are read from summary, without load of segment
+        assert !messageMetaSegmentReopen.isLoaded();
+        Assert.assertEquals(2, messageMetaSegmentReopen.size());
+        Assert.assertEquals(1, messageMetaSegmentReopen.queuedSize());
+        Assert.assertEquals(Math.min(meta1.getOffset(), meta2.getOffset()), messageMetaSegmentReopen.minOffset());
+        Assert.assertEquals(Math.max(meta1.getOffset(), meta2.getOffset()), messageMetaSegmentReopen.maxOffset());
+        assert messageMetaSegmentReopen.mightContain(meta1.getUuid());
+        assert messageMetaSegmentReopen.mightContain(meta2.getUuid());
+        assert !messageMetaSegmentReopen.isLoaded();
+
+        Assert.assertEquals(meta2, messageMetaSegmentReopen.peek());
+        assert messageMetaSegmentReopen.isLoaded();
+        Assert.assertEquals(2, messageMetaSegmentReopen.size());
+        Assert.assertEquals(1, messageMetaSegmentReopen.queuedSize());
+        messageMetaSegmentReopen.close();
+    }
+
+    @Test
+    public void testReopenWithoutSummary() throws IOException {
+        final MMapQueueMessageMetaSegment messageMetaSegment = new MMapQueueMessageMetaSegment(mmapFile, 3, 0.7f);
+
+        QueueMessageMeta meta = meta();
+        int pos = messageMetaSegment.insert(meta.getUuid());
+        messageMetaSegment.writeLock(pos);
+        messageMetaSegment.writeMeta(meta, pos);
+        messageMetaSegment.close();
+
+        // summary is consumed by first reopen, so crashed segment is fully loaded on next start
+        MemoryMappedFile mmapFileReopen = new MemoryMappedFile(mmapFile.getFile());
+        new MMapQueueMessageMetaSegment(mmapFileReopen, 3, 0.7f);
+        mmapFileReopen.close();
+
+        MemoryMappedFile mmapFileCrashed = new MemoryMappedFile(mmapFile.getFile());
+        final MMapQueueMessageMetaSegment messageMetaSegmentCrashed = new MMapQueueMessageMetaSegment(mmapFileCrashed, 3, 0.7f);
+        Assert.assertEquals(1, messageMetaSegmentCrashed.queuedSize());
+        assert messageMetaSegmentCrashed.isLoaded();
+        Assert.assertEquals(meta, messageMetaSegmentCrashed.lockAndPop());
+        messageMetaSegmentCrashed.close();
+    }
+
     private QueueMessageMeta meta() {
         return new QueueMessageMeta(
             randomUUID(),
             QueueMessageStatus.QUEUED,
-            random.nextInt(),
+            random.nextInt(Integer.MAX_VALUE),
             random.nextInt(),
             QueueMessageType.STRING
         );
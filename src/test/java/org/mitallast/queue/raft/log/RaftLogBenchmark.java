@@ -11,12 +11,18 @@ import org.mitallast.queue.log.*;
 import org.mitallast.queue.raft.RaftStreamService;
 import org.mitallast.queue.raft.log.entry.RaftLogEntry;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class RaftLogBenchmark extends BaseTest {
     private SegmentManager segmentManager;
     private RaftLog raftLog;
 
     private RaftLogEntryGenerator generator = new RaftLogEntryGenerator(random);
 
+    private final static int[] batchSizes = {1, 16, 256};
+    private final static int replicas = 3;
+
     @Override
     protected int max() {
         return 1000000;
@@ -58,4 +64,34 @@ public class RaftLogBenchmark extends BaseTest {
         long end = System.currentTimeMillis();
         printQps("append", max(), start, end);
     }
+
+    @Test
+    public void testReplicateEntries() throws Exception {
+        List<RaftLogEntry> entries = Arrays.asList(generator.generate(max()));
+        long start = System.currentTimeMillis();
+        for (int from = 0; from < entries.size(); from += 256) {
+            List<RaftLogEntry> batch = entries.subList(from, Math.min(from + 256, entries.size()));
+            raftLog.appendEntries(batch);
+            for (int replica = 0; replica < replicas; replica++) {
+                for (RaftLogEntry entry : batch) {
+                    raftLog.getEntry(entry.index());
+                }
+            }
+        }
+        long end = System.currentTimeMillis();
+        printQps("replicate to " + replicas, max(), start, end);
+    }
+
+    @Test
+    public void testAppendEntries() throws Exception {
+        for (int batchSize : batchSizes) {
+            List<RaftLogEntry> entries = Arrays.asList(generator.generate(max(), (int) raftLog.lastIndex()));
+            long start = System.nanoTime();
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                raftLog.appendEntries(entries.subList(from, Math.min(from + batchSize, entries.size())));
+            }
+            long end = System.nanoTime();
+            logger.info("append batch {}: {} ns per entry", batchSize, (end - start) / entries.size());
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package org.mitallast.queue.raft.log;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.raft.log.entry.RaftLogEntry;
+
+public class RaftLogEntryCacheTest extends BaseTest {
+
+    private RaftLogEntryGenerator generator = new RaftLogEntryGenerator(random);
+
+    @Test
+    public void testGet() throws Exception {
+        RaftLogEntryCache cache = new RaftLogEntryCache(100, 10000);
+        RaftLogEntry[] entries = generator.generate(10);
+        for (RaftLogEntry entry : entries) {
+            cache.put(entry, 10);
+        }
+        Assert.assertEquals(10, cache.length());
+        Assert.assertEquals(100, cache.size());
+        for (RaftLogEntry entry : entries) {
+            Assert.assertSame(entry, cache.get(entry.index()));
+        }
+        Assert.assertNull(cache.get(11));
+    }
+
+    @Test
+    public void testEvictMaxEntries() throws Exception {
+        RaftLogEntryCache cache = new RaftLogEntryCache(10, 10000);
+        RaftLogEntry[] entries = generator.generate(20);
+        for (RaftLogEntry entry : entries) {
+            cache.put(entry, 10);
+        }
+        Assert.assertEquals(10, cache.length());
+        Assert.assertEquals(100, cache.size());
+        Assert.assertNull(cache.get(1));
+        Assert.assertSame(entries[19], cache.get(20));
+    }
+
+    @Test
+    public void testEvictMaxSize() throws Exception {
+        RaftLogEntryCache cache = new RaftLogEntryCache(100, 100);
+        RaftLogEntry[] entries = generator.generate(20);
+        for (RaftLogEntry entry : entries) {
+            cache.put(entry, 30);
+        }
+        Assert.assertEquals(3, cache.length());
+        Assert.assertEquals(90, cache.size());
+
+        cache.put(generator.generate(1, 100)[0], 101);
+        Assert.assertNull(cache.get(101));
+        Assert.assertEquals(3, cache.length());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        RaftLogEntryCache cache = new RaftLogEntryCache(3, 10000);
+        RaftLogEntry[] entries = generator.generate(4);
+        cache.put(entries[0], 10);
+        cache.put(entries[1], 10);
+        cache.put(entries[2], 10);
+        Assert.assertSame(entries[0], cache.get(1));
+        cache.put(entries[3], 10);
+        Assert.assertSame(entries[0], cache.get(1));
+        Assert.assertNull(cache.get(2));
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        RaftLogEntryCache cache = new RaftLogEntryCache(100, 10000);
+        for (RaftLogEntry entry : generator.generate(10)) {
+            cache.put(entry, 10);
+        }
+        cache.truncate(5);
+        Assert.assertEquals(5, cache.length());
+        Assert.assertEquals(50, cache.size());
+        Assert.assertNotNull(cache.get(5));
+        Assert.assertNull(cache.get(6));
+
+        cache.invalidate(5);
+        Assert.assertNull(cache.get(5));
+        Assert.assertEquals(40, cache.size());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.length());
+        Assert.assertEquals(0, cache.size());
+    }
+}
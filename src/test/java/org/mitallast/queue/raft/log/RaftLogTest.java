@@ -13,6 +13,9 @@ import org.mitallast.queue.raft.RaftStreamService;
 import org.mitallast.queue.raft.log.entry.RaftLogEntry;
 import org.unitils.reflectionassert.ReflectionAssert;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class RaftLogTest extends BaseTest {
     private SegmentManager segmentManager;
     private RaftLog raftLog;
@@ -60,6 +63,59 @@ public class RaftLogTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testAppendEntries() throws Exception {
+        List<RaftLogEntry> entries = Arrays.asList(generator.generate(max()));
+        for (int from = 0; from < entries.size(); from += 256) {
+            int to = Math.min(from + 256, entries.size());
+            Assert.assertEquals(to, raftLog.appendEntries(entries.subList(from, to)));
+            Assert.assertEquals(to, raftLog.lastIndex());
+        }
+
+        for (RaftLogEntry entry : entries) {
+            ReflectionAssert.assertReflectionEquals(entry, raftLog.getEntry(entry.index()));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAppendEntriesInconsistentIndex() throws Exception {
+        raftLog.appendEntries(Arrays.asList(generator.generate(10, 1)));
+    }
+
+    @Test
+    public void testGetEntryCached() throws Exception {
+        RaftLogEntry[] entries = generator.generate(10);
+        for (RaftLogEntry entry : entries) {
+            raftLog.appendEntry(entry);
+        }
+        for (RaftLogEntry entry : entries) {
+            Assert.assertSame(entry, raftLog.getEntry(entry.index()));
+        }
+
+        ((SegmentRaftLog) raftLog).entryCache().clear();
+        RaftLogEntry decoded = raftLog.getEntry(5);
+        ReflectionAssert.assertReflectionEquals(entries[4], decoded);
+        Assert.assertSame(decoded, raftLog.getEntry(5));
+    }
+
+    @Test
+    public void testTruncateInvalidatesCache() throws Exception {
+        RaftLogEntry[] entries = generator.generate(10);
+        for (RaftLogEntry entry : entries) {
+            raftLog.appendEntry(entry);
+        }
+        raftLog.truncate(5);
+        Assert.assertEquals(5, raftLog.lastIndex());
+
+        RaftLogEntry[] replaced = generator.generate(5, 5);
+        for (RaftLogEntry entry : replaced) {
+            raftLog.appendEntry(entry);
+        }
+        for (RaftLogEntry entry : replaced) {
+            Assert.assertSame(entry, raftLog.getEntry(entry.index()));
+        }
+    }
+
     @Test
     public void testContainsIndex() throws Exception {
         RaftLogEntry[] entries = generator.generate(max());
@@ -0,0 +1,102 @@
+package org.mitallast.queue.rest.action.queue.pop;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.action.queue.pop.PopRequest;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.ImmutableSettings;
+import org.mitallast.queue.rest.RestController;
+import org.mitallast.queue.rest.RestRequest;
+import org.mitallast.queue.rest.RestResponse;
+import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.queue.RestPopAction;
+import org.mitallast.queue.transport.TransportClient;
+import org.mitallast.queue.transport.TransportService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+public class RestPopActionTest extends BaseTest {
+    @Mock
+    private RestController restController;
+    @Mock
+    private RestRequest restRequest;
+    @Mock
+    private RestSession restSession;
+    @Mock
+    private TransportService transportService;
+    @Mock
+    private TransportClient transportClient;
+
+    @Captor
+    private ArgumentCaptor<PopRequest> captor;
+    @Captor
+    private ArgumentCaptor<Runnable> closeCaptor;
+
+    private RestPopAction restPopAction;
+
+    private CompletableFuture response;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(transportService.client()).thenReturn(transportClient);
+        restPopAction = new RestPopAction(
+            ImmutableSettings.builder()
+                .put("rest.action.queue.pop.max_wait", "1s")
+                .build(),
+            restController,
+            transportService
+        );
+        response = new CompletableFuture();
+        when(restRequest.param("queue")).thenReturn("testQueue");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWait() {
+        when(restRequest.hasParam("wait")).thenReturn(true);
+        when(restRequest.param("wait")).thenReturn("500ms");
+        when(transportClient.send(any(PopRequest.class))).thenReturn(response);
+
+        restPopAction.handleRequest(restRequest, restSession);
+
+        verify(transportClient).send(captor.capture());
+        Assert.assertEquals(500, captor.getValue().timeout());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWaitIsLimited() {
+        when(restRequest.hasParam("wait")).thenReturn(true);
+        when(restRequest.param("wait")).thenReturn("1h");
+        when(transportClient.send(any(PopRequest.class))).thenReturn(response);
+
+        restPopAction.handleRequest(restRequest, restSession);
+
+        verify(transportClient).send(captor.capture());
+        Assert.assertEquals(1000, captor.getValue().timeout());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCloseCancelsWait() {
+        when(restRequest.hasParam("wait")).thenReturn(true);
+        when(restRequest.param("wait")).thenReturn("1s");
+        when(transportClient.send(any(PopRequest.class))).thenReturn(response);
+
+        restPopAction.handleRequest(restRequest, restSession);
+
+        verify(restSession).onClose(closeCaptor.capture());
+        closeCaptor.getValue().run();
+        Assert.assertTrue(response.isCancelled());
+        verify(restSession, never()).sendResponse(any(RestResponse.class));
+        verify(restSession, never()).sendResponse(any(Throwable.class));
+    }
+}
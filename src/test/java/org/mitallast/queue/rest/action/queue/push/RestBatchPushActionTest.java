@@ -0,0 +1,130 @@
+package org.mitallast.queue.rest.action.queue.push;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.action.queue.push.BatchPushRequest;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.common.settings.Settings;
+import org.mitallast.queue.common.xstream.XStreamBuilder;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageType;
+import org.mitallast.queue.rest.RestController;
+import org.mitallast.queue.rest.RestRequest;
+import org.mitallast.queue.rest.RestSession;
+import org.mitallast.queue.rest.action.queue.RestBatchPushAction;
+import org.mitallast.queue.transport.TransportClient;
+import org.mitallast.queue.transport.TransportService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+public class RestBatchPushActionTest extends BaseTest {
+    @Mock
+    private Settings settings;
+    @Mock
+    private RestController restController;
+    @Mock
+    private RestRequest restRequest;
+    @Mock
+    private RestSession restSession;
+    @Mock
+    private TransportService transportService;
+    @Mock
+    private TransportClient transportClient;
+
+    @Captor
+    private ArgumentCaptor<BatchPushRequest> captor;
+    @Captor
+    private ArgumentCaptor<Throwable> errorCaptor;
+
+    private RestBatchPushAction restBatchPushAction;
+
+    @Mock
+    private CompletableFuture response;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(transportService.client()).thenReturn(transportClient);
+        restBatchPushAction = new RestBatchPushAction(settings, restController, transportService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMessages() throws IOException {
+
+        UUID uuid = randomUUID();
+
+        ByteBuf buffer = Unpooled.buffer();
+        try (XStreamBuilder builder = jsonBuilder(buffer)) {
+            builder.writeStartArray();
+
+            builder.writeStartObject();
+            builder.writeStringField("message", "Hello world");
+            builder.writeStringField("uuid", uuid.toString());
+            builder.writeEndObject();
+
+            builder.writeStartObject();
+            builder.writeFieldName("message");
+            builder.writeStartObject();
+            builder.writeStringField("title", "Hello title");
+            builder.writeEndObject();
+            builder.writeEndObject();
+
+            builder.writeEndArray();
+        }
+
+        when(restRequest.param("queue")).thenReturn("testQueue");
+        when(restRequest.content()).thenReturn(buffer);
+        when(transportClient.send(any(BatchPushRequest.class))).thenReturn(response);
+
+        restBatchPushAction.handleRequest(restRequest, restSession);
+
+        verify(restSession, never()).sendResponse(errorCaptor.capture());
+        verify(transportClient, atLeastOnce()).send(captor.capture());
+
+        assert "testQueue".equals(captor.getValue().queue());
+        List<QueueMessage> messages = captor.getValue().messages();
+        Assert.assertEquals(2, messages.size());
+
+        assert "Hello world".equals(messages.get(0).getMessage());
+        assert uuid.equals(messages.get(0).getUuid());
+        assert messages.get(0).getMessageType() == QueueMessageType.STRING;
+
+        Assert.assertEquals("{\"title\":\"Hello title\"}", messages.get(1).getMessage());
+        assert messages.get(1).getUuid() == null;
+        assert messages.get(1).getMessageType() == QueueMessageType.JSON;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMalformed() throws IOException {
+        ByteBuf buffer = Unpooled.buffer();
+        try (XStreamBuilder builder = jsonBuilder(buffer)) {
+            builder.writeStartObject();
+            builder.writeStringField("message", "Hello world");
+            builder.writeEndObject();
+        }
+
+        when(restRequest.param("queue")).thenReturn("testQueue");
+        when(restRequest.content()).thenReturn(buffer);
+
+        try {
+            restBatchPushAction.handleRequest(restRequest, restSession);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+        verify(transportClient, never()).send(any(BatchPushRequest.class));
+    }
+}
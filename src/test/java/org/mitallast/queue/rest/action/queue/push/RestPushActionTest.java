@@ -161,4 +161,31 @@ public class RestPushActionTest extends BaseTest {
         assert uuid.equals(queueMessage.getUuid());
         assert queueMessage.getMessageType() == QueueMessageType.JSON;
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeliverAtAndTtl() throws IOException {
+
+        ByteBuf buffer = Unpooled.buffer();
+        try (XStreamBuilder builder = jsonBuilder(buffer)) {
+            builder.writeStartObject();
+            builder.writeStringField("message", "Hello world");
+            builder.writeNumberField("deliver_at", 1000L);
+            builder.writeNumberField("ttl", 2000L);
+            builder.writeEndObject();
+        }
+
+        when(restRequest.param("queue")).thenReturn("testQueue");
+        when(restRequest.content()).thenReturn(buffer);
+        when(transportClient.send(any(PushRequest.class))).thenReturn(response);
+
+        restPushAction.handleRequest(restRequest, restSession);
+
+        verify(restSession, never()).sendResponse(errorCaptor.capture());
+        verify(transportClient, atLeastOnce()).send(captor.capture());
+
+        QueueMessage queueMessage = captor.getValue().message();
+        Assert.assertEquals(1000L, queueMessage.getDeliverAt());
+        Assert.assertEquals(2000L, queueMessage.getTtl());
+    }
 }
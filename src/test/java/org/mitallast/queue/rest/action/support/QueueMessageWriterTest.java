@@ -0,0 +1,81 @@
+package org.mitallast.queue.rest.action.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mitallast.queue.common.BaseTest;
+import org.mitallast.queue.queue.QueueMessage;
+import org.mitallast.queue.queue.QueueMessageType;
+import org.mitallast.queue.rest.RestRequest;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.mockito.Mockito.when;
+
+public class QueueMessageWriterTest extends BaseTest {
+    @Mock
+    private RestRequest restRequest;
+
+    private UUID uuid;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        uuid = randomUUID();
+    }
+
+    @Test
+    public void testJsonMessage() throws IOException {
+        Assert.assertEquals(read(write(true, message(0, 0))), read(write(false, message(0, 0))));
+    }
+
+    @Test
+    public void testJsonMessageDeliverAtAndTtl() throws IOException {
+        JsonNode pretty = read(write(true, message(1000, 2000)));
+        JsonNode fast = read(write(false, message(1000, 2000)));
+        Assert.assertEquals(pretty, fast);
+        Assert.assertEquals(1000, fast.get("deliver_at").asLong());
+        Assert.assertEquals(2000, fast.get("ttl").asLong());
+    }
+
+    @Test
+    public void testJsonMessageArray() throws IOException {
+        when(restRequest.hasParam("pretty")).thenReturn(true);
+        ByteBuf pretty = QueueMessageWriter.writeArray(UnpooledByteBufAllocator.DEFAULT, restRequest,
+            Arrays.asList(message(0, 2000), message(1000, 0)));
+        when(restRequest.hasParam("pretty")).thenReturn(false);
+        ByteBuf fast = QueueMessageWriter.writeArray(UnpooledByteBufAllocator.DEFAULT, restRequest,
+            Arrays.asList(message(0, 2000), message(1000, 0)));
+        Assert.assertEquals(read(pretty), read(fast));
+    }
+
+    private QueueMessage message(long deliverAt, long ttl) {
+        QueueMessage message = new QueueMessage(uuid, QueueMessageType.JSON,
+            Unpooled.wrappedBuffer("{\"title\":\"Hello title\",\"tags\":[1,2]}".getBytes(QueueMessage.defaultCharset)));
+        message.setDeliverAt(deliverAt);
+        message.setTtl(ttl);
+        return message;
+    }
+
+    private ByteBuf write(boolean pretty, QueueMessage message) throws IOException {
+        when(restRequest.hasParam("pretty")).thenReturn(pretty);
+        return QueueMessageWriter.write(UnpooledByteBufAllocator.DEFAULT, restRequest, message);
+    }
+
+    private JsonNode read(ByteBuf buffer) throws IOException {
+        try {
+            return new ObjectMapper().readTree(buffer.toString(QueueMessage.defaultCharset));
+        } finally {
+            buffer.release();
+        }
+    }
+}